@@ -1,7 +1,6 @@
 package edu.gemini.ags.api
 
 import edu.gemini.shared.util.immutable.ScalaConverters._
-import edu.gemini.shared.util.immutable.{Option => GemOption}
 import edu.gemini.spModel.ags.AgsStrategyKey
 import edu.gemini.spModel.gemini.altair.InstAltair
 import edu.gemini.spModel.gemini.flamingos2.Flamingos2
@@ -45,6 +44,9 @@ object AgsHash {
 
     val buf = ListBuffer.empty[Int]
 
+    // getInstrument returns a copy, so only make it once.
+    val inst = Option(ctx.getInstrument)
+
     // AGS Strategy
     val strategyKey = AgsRegistrar.currentStrategy(ctx).map(_.key)
     strategyKey.foreach { s =>
@@ -56,20 +58,28 @@ object AgsHash {
       c.cc.## +=: c.iq.## +=: c.sb.## +=: buf
     }
 
-    // Asterism
+    // Asterism.  Positions are taken at the start of the context's base
+    // position time bucket, so that the hash of a non-sidereal target doesn't
+    // change on every call.  The base position of a single target asterism is
+    // its target, which the context remembers.
     Option(ctx.getTargets).foreach { t =>
-      val time = Some(new java.lang.Long(when)).asGeminiOpt
       val asterism = t.getAsterism
-
-      def toData(coord: GemOption[java.lang.Double]): Int =
-        coord.asScalaOpt.map(_.doubleValue).##
-
-      asterism.allSpTargets.map { sp =>
-        val ra  = toData(sp.getRaDegrees(time))
-        val dec = toData(sp.getDecDegrees(time))
-        ra +=: dec +=: buf
+      val bucket   = Math.floorDiv(when, ObsContext.BASE_POSITION_BUCKET_MS) * ObsContext.BASE_POSITION_BUCKET_MS
+      val time     = Some(new java.lang.Long(bucket)).asGeminiOpt
+
+      val positions = asterism.allSpTargets.toList match {
+        case _ :: Nil => List(ctx.getBaseCoordinates(when).asScalaOpt.map(c => (c.getRaDeg, c.getDecDeg)))
+        case sps      => sps.map { sp =>
+          for {
+            ra  <- sp.getRaDegrees(time).asScalaOpt
+            dec <- sp.getDecDegrees(time).asScalaOpt
+          } yield (ra.doubleValue, dec.doubleValue)
+        }
       }
 
+      positions.foreach { p =>
+        p.map(_._1).## +=: p.map(_._2).## +=: buf
+      }
     }
 
     // Offset Positions, which are returned in a Set.  Order is not important
@@ -97,7 +107,7 @@ object AgsHash {
 
     // Vignetting calculation. Instrument-specific features that have an impact
     // on the science area and probe arm position and hence, vignetting.
-    Option(ctx.getInstrument).foreach {
+    inst.foreach {
       case i: Flamingos2 if strategyKey.contains(Flamingos2OiwfsKey)   =>
         i.getFpu.## +=: i.getLyotWheel.getPlateScale.## +=: buf
 
@@ -115,18 +125,18 @@ object AgsHash {
     // camera is in use.
     strategyKey.foreach {
       case Pwfs1NorthKey | Pwfs1SouthKey =>
-        Option(ctx.getInstrument).foreach {
+        inst.foreach {
           _.pwfs1VignettingClearance.getMagnitude.## +=: buf
         }
 
       case Pwfs2NorthKey | Pwfs2SouthKey =>
-        Option(ctx.getInstrument).foreach {
+        inst.foreach {
           _.pwfs2VignettingClearance.getMagnitude.## +=: buf
         }
 
       case GemsKey                       =>
         // GeMS works differently depending upon whether GSAOI or F2 is in use.
-        Option(ctx.getInstrument).map(_.getPhaseIResourceName).foreach { n =>
+        inst.map(_.getPhaseIResourceName).foreach { n =>
           M3.stringHash(n) +=: buf
         }
 
@@ -2,6 +2,7 @@ package edu.gemini.ags.api
 
 import edu.gemini.ags.api.AgsMagnitude.MagnitudeTable
 import edu.gemini.pot.sp.ISPObservation
+import edu.gemini.spModel.obs.ObsContextService
 import edu.gemini.spModel.obs.context.ObsContext
 import edu.gemini.spModel.rich.shared.immutable._
 import scala.concurrent.{ExecutionContext, Future}
@@ -9,7 +10,7 @@ import scala.concurrent.{ExecutionContext, Future}
 object AgsUtil {
   private def lookupAndThen[A](obs: ISPObservation, default: => A)(op: (AgsStrategy, ObsContext) => Future[A]): Future[A] =
     (for {
-      ctx      <- ObsContext.create(obs).asScalaOpt
+      ctx      <- ObsContextService.lookupObsContext(obs).asScalaOpt
       strategy <- AgsRegistrar.currentStrategy(ctx)
     } yield op(strategy, ctx)).getOrElse(Future.successful(default))
 
@@ -20,5 +21,5 @@ object AgsUtil {
     lookupAndThen(obs, Option.empty[AgsStrategy.Selection])((s,c) => s.select(c, mt)(ec))
 
   def currentStrategy(obs: ISPObservation): Option[AgsStrategy] =
-    ObsContext.create(obs).asScalaOpt.flatMap(AgsRegistrar.currentStrategy)
+    ObsContextService.lookupObsContext(obs).asScalaOpt.flatMap(AgsRegistrar.currentStrategy)
 }
@@ -0,0 +1,12 @@
+package edu.gemini.auxfile.api;
+
+/**
+ * An exception thrown when a chunk of a file arrives with data that doesn't
+ * match its checksum.  Since the data was corrupted in transit, sending the
+ * chunk again may succeed.
+ */
+public class AuxFileChecksumException extends AuxFileException {
+    public AuxFileChecksumException(String message) {
+        super(message);
+    }
+}
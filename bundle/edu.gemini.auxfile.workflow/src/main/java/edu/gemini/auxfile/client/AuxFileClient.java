@@ -11,9 +11,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * An {@link AuxFileSystem} implementation that may be used by a client
@@ -21,16 +26,33 @@ import java.util.Collection;
  */
 public final class AuxFileClient implements AuxFileSystem {
 
+    private static final Logger LOG = Logger.getLogger(AuxFileClient.class.getName());
+
     private static final int FileChunkSize = 32 * 1024;
 
+    // Number of times to try a chunk before giving up.
+    private static final int MaxAttempts = 3;
+
+    // Time to wait before the first retry, doubled for each further retry.
+    private static final long RetryDelayMs = 500;
+
     private final AuxFileServer server;
+    private final long retryDelayMs;
+
+    // Tokens of uploads that were interrupted, by upload key.
+    private final Map<String, String> unfinishedUploads = new ConcurrentHashMap<>();
 
     public AuxFileClient(String host, int port) {
-        this.server    = TrpcClient$.MODULE$.apply(host, port).withoutKeys().proxy(AuxFileServer.class);
+        this(TrpcClient$.MODULE$.apply(host, port).withoutKeys().proxy(AuxFileServer.class), RetryDelayMs);
     }
 
     public AuxFileClient(KeyChain kc, String host, int port) {
-        this.server    = TrpcClient$.MODULE$.apply(host, port).withKeyChain(kc).proxy(AuxFileServer.class);
+        this(TrpcClient$.MODULE$.apply(host, port).withKeyChain(kc).proxy(AuxFileServer.class), RetryDelayMs);
+    }
+
+    AuxFileClient(AuxFileServer server, long retryDelayMs) {
+        this.server       = server;
+        this.retryDelayMs = retryDelayMs;
     }
 
     @Override public Collection<AuxFile> list(SPProgramID programId, Collection<String> fileNames) throws AuxFileException {
@@ -76,48 +98,63 @@ public final class AuxFileClient implements AuxFileSystem {
         final long remaining  = fileLength - startPos;
         final int bufSize     = (int) Math.min(remaining, FileChunkSize);
 
-        final ByteBuffer buf = ByteBuffer.allocateDirect(bufSize);
+        // Read straight into the chunk data.
+        final byte[] chunkData = new byte[bufSize];
+        final ByteBuffer buf   = ByteBuffer.wrap(chunkData);
 
-        final RandomAccessFile raf = new RandomAccessFile(srcFile, "r");
-        FileChannel fcin = null;
-        try {
-            fcin = raf.getChannel();
-            fcin.position(startPos);
-            while ((fcin.read(buf) != -1) && buf.hasRemaining()) {
+        try (final FileChannel fcin = new RandomAccessFile(srcFile, "r").getChannel()) {
+            while (buf.hasRemaining() && (fcin.read(buf, startPos + buf.position()) != -1)) {
                 // empty
             }
-        } finally {
-            if (fcin != null) fcin.close();
         }
 
-        final byte[] chunkData = new byte[bufSize];
-        buf.flip();
-        buf.get(chunkData);
-
         final long timestamp  = srcFile.lastModified();
         return new AuxFileChunk(chunkNumber, FileChunkSize, fileLength, timestamp, chunkData);
     }
 
+    // Writes the chunk at its position in the file, so a chunk that is
+    // fetched again replaces itself.
     private static void writeChunk(AuxFileChunk chunk, File destFile) throws IOException {
-        final RandomAccessFile raf = new RandomAccessFile(destFile, "rw");
+        final ByteBuffer buf = ByteBuffer.wrap(chunk.getChunkData());
+        final long startPos  = chunk.getStartPosition();
 
-        final byte[] data = chunk.getChunkData();
+        try (final FileChannel fcout = new RandomAccessFile(destFile, "rw").getChannel()) {
+            while (buf.hasRemaining()) {
+                fcout.write(buf, startPos + buf.position());
+            }
+            fcout.force(true);
+        }
+    }
 
-        final ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
-        buf.put(data);
-        buf.flip();
+    // Determines whether a failed call may succeed if tried again: either the
+    // connection failed or the chunk was corrupted along the way.
+    private static boolean isRetryable(Exception ex) {
+        return (ex instanceof UndeclaredThrowableException) || (ex instanceof AuxFileChecksumException);
+    }
 
-        FileChannel fcout = null;
+    // Waits before trying again, longer after each failed attempt, to give
+    // the connection a chance to recover.
+    private void backoff(int attempt) throws AuxFileException {
         try {
-            fcout = raf.getChannel();
-            fcout.position(fcout.size());
-            while (buf.hasRemaining()) {
-                fcout.write(buf);
-            }
-        } finally {
-            if (fcout != null) {
-                fcout.force(true);
-                fcout.close();
+            Thread.sleep(retryDelayMs << (attempt - 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw AuxFileException.create("Interrupted while waiting to retry", ex);
+        }
+    }
+
+    private AuxFileChunk fetchChunk(SPProgramID programId, String remoteFileName, int chunkIndex, long timestamp) throws AuxFileException {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                final AuxFileChunk chunk = server.fetchChunk(programId, remoteFileName, chunkIndex, FileChunkSize, timestamp);
+                if ((chunk != null) && !chunk.isValid()) {
+                    throw new AuxFileChecksumException("checksum mismatch in chunk " + chunkIndex + " of " + remoteFileName);
+                }
+                return chunk;
+            } catch (AuxFileException | RuntimeException ex) {
+                if ((attempt >= MaxAttempts) || !isRetryable(ex)) throw ex;
+                LOG.log(Level.INFO, "Retrying chunk " + chunkIndex + " of " + remoteFileName, ex);
+                backoff(attempt);
             }
         }
     }
@@ -130,7 +167,7 @@ public final class AuxFileClient implements AuxFileSystem {
             long timestamp = 0;
             int chunkIndex = 0;
             do {
-                chunk = server.fetchChunk(programId, remoteFileName, chunkIndex++, FileChunkSize, timestamp);
+                chunk = fetchChunk(programId, remoteFileName, chunkIndex++, timestamp);
                 if (chunk == null) throw new AuxFileException("Read operation for file " + remoteFileName + " failed.");
                 timestamp = chunk.getTimestamp();
                 out.write(chunk.getChunkData());
@@ -162,7 +199,7 @@ public final class AuxFileClient implements AuxFileSystem {
             AuxFileChunk chunk;
             int chunkIndex = 0;
             do {
-                chunk = server.fetchChunk(programId, remoteFileName, chunkIndex++, FileChunkSize, timestamp);
+                chunk = fetchChunk(programId, remoteFileName, chunkIndex++, timestamp);
                 if (chunk == null) return false;
                 timestamp = chunk.getTimestamp();
                 writeChunk(chunk, tmp);
@@ -184,17 +221,51 @@ public final class AuxFileClient implements AuxFileSystem {
         }
     }
 
+    // Identifies an upload of a particular version of a local file, so that it
+    // can be resumed if it is interrupted.
+    private static String uploadKey(SPProgramID programId, String remoteFileName, File localFile) {
+        return programId + "/" + remoteFileName + "/" + localFile.getAbsolutePath() + "/" + localFile.length() + "/" + localFile.lastModified();
+    }
+
+    // Gets the chunk with which to resume the upload with the given token.
+    private int resumeChunk(SPProgramID programId, String remoteFileName, String token) throws AuxFileException {
+        return "".equals(token) ? 0 : (int) (server.storedLength(programId, remoteFileName, token) / FileChunkSize);
+    }
+
     @Override public void store(SPProgramID programId, String remoteFileName, File localFile, AuxFileTransferListener listener) throws AuxFileException {
+        final String key = uploadKey(programId, remoteFileName, localFile);
         try {
-            // Store the file one chunk at a time
-            String token = "";
-            int chunkIndex = 0;
-            AuxFileChunk chunk;
-            do {
-                chunk = readChunk(localFile, chunkIndex++);
-                token = server.storeChunk(programId, remoteFileName, chunk, token);
-                if (!notifyListener(chunk, programId, remoteFileName, listener)) return;
-            } while (!chunk.isLastChunk());
+            // Store the file one chunk at a time, resuming an earlier upload
+            // of the same file that didn't finish.  The chunk index is -1
+            // until the server has said how much of the upload it has.
+            final String previous = unfinishedUploads.get(key);
+            String token = (previous == null) ? "" : previous;
+            int chunkIndex = -1;
+            int attempt = 1;
+            while (true) {
+                final AuxFileChunk chunk;
+                try {
+                    if (chunkIndex < 0) {
+                        chunkIndex = resumeChunk(programId, remoteFileName, token);
+                        unfinishedUploads.remove(key);
+                    }
+                    chunk = readChunk(localFile, chunkIndex);
+                    token = server.storeChunk(programId, remoteFileName, chunk, token);
+                } catch (AuxFileException | RuntimeException ex) {
+                    // Remember the upload so that it can be resumed later.
+                    if (!"".equals(token)) unfinishedUploads.put(key, token);
+                    if ((attempt >= MaxAttempts) || !isRetryable(ex)) throw ex;
+
+                    // Start again after the last chunk that made it.
+                    LOG.log(Level.INFO, "Resuming upload of " + remoteFileName, ex);
+                    backoff(attempt++);
+                    chunkIndex = -1;
+                    continue;
+                }
+                attempt = 1;
+                ++chunkIndex;
+                if (!notifyListener(chunk, programId, remoteFileName, listener) || chunk.isLastChunk()) return;
+            }
         } catch (IOException ex) {
             throw AuxFileException.create(ex);
         }
@@ -3,17 +3,23 @@ package edu.gemini.auxfile.server;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.zip.CRC32;
 
 /**
  * A chunk of data from a file.  AuxFileChunk is used in the transfer to and
- * from remote servers.
+ * from remote servers.  Each chunk carries a CRC32 checksum of its data,
+ * computed by the sender, so that the receiver can verify it with
+ * {@link #isValid()} and ask for it again if it was corrupted.
  */
 public final class AuxFileChunk implements Serializable {
+    private static final long serialVersionUID = 2L;
+
     private final int    _chunkNumber;
     private final int    _chunkSize;
     private final long   _fileSize;
     private final long   _timestamp;
     private final byte[] _chunkData;
+    private final long   _checksum;
 
     public AuxFileChunk(int chunkNumber, int chunkSize, long fileSize,
                         long timestamp, byte[] chunkData) {
@@ -35,6 +41,16 @@ public final class AuxFileChunk implements Serializable {
         _fileSize    = fileSize;
         _timestamp   = timestamp;
         _chunkData   = chunkData;
+        _checksum    = checksum(chunkData);
+    }
+
+    /**
+     * Computes the checksum of the given data.
+     */
+    public static long checksum(byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
     }
 
     public int getChunkNumber() { return _chunkNumber; }
@@ -43,10 +59,28 @@ public final class AuxFileChunk implements Serializable {
         return (int) Math.ceil(((double) _fileSize) / _chunkSize);
     }
 
+    public int getChunkSize() { return _chunkSize; }
+
+    /**
+     * Gets the position in the file of the first byte of this chunk.
+     */
+    public long getStartPosition() { return (long) _chunkNumber * _chunkSize; }
+
     public byte[] getChunkData() { return _chunkData; }
 
+    /**
+     * Gets the checksum of the data computed when the chunk was created.
+     */
+    public long getChecksum() { return _checksum; }
+
+    /**
+     * Determines whether the chunk data still matches the checksum, which
+     * fails if the data was corrupted after the chunk was created.
+     */
+    public boolean isValid() { return checksum(_chunkData) == _checksum; }
+
     public boolean isLastChunk() {
-        return ((_chunkNumber+1) * _chunkSize) >= _fileSize;
+        return (getStartPosition() + _chunkSize) >= _fileSize;
     }
 
     public long getFileSize() { return _fileSize; }
@@ -64,6 +98,7 @@ public final class AuxFileChunk implements Serializable {
         if (_chunkSize != that._chunkSize) return false;
         if (_fileSize != that._fileSize) return false;
         if (_timestamp != that._timestamp) return false;
+        if (_checksum != that._checksum) return false;
         if (!Arrays.equals(_chunkData, that._chunkData)) return false;
 
         return true;
@@ -75,7 +110,7 @@ public final class AuxFileChunk implements Serializable {
         result = 31 * result + _chunkSize;
         result = 31 * result + (int) (_fileSize ^ (_fileSize >>> 32));
         result = 31 * result + (int) (_timestamp ^ (_timestamp >>> 32));
-        result = 31 * result + Arrays.hashCode(_chunkData);
+        result = 31 * result + (int) (_checksum ^ (_checksum >>> 32));
         return result;
     }
 }
@@ -28,6 +28,17 @@ public interface AuxFileServer {
     String storeChunk(SPProgramID progId, String fileName, AuxFileChunk chunk, String token)
             throws AuxFileException;
 
+    /**
+     * Gets the number of bytes received so far for the unfinished upload
+     * associated with the given token.  Stored chunks have all had their
+     * checksum verified, so an interrupted upload can be resumed with the
+     * chunk that contains this position.
+     *
+     * @return number of bytes received, or 0 if there is no such upload
+     */
+    long storedLength(SPProgramID progId, String fileName, String token)
+            throws AuxFileException;
+
     void setDescription(SPProgramID progId, Collection<String> fileNames, String newDescription)
             throws AuxFileException;
 
@@ -48,6 +48,11 @@ public abstract class AuxFileServerDecorator implements AuxFileServer {
         return delegate.storeChunk(progId, fileName, chunk, token);
     }
 
+    @Override
+    public long storedLength(SPProgramID progId, String fileName, String token) throws AuxFileException {
+        return delegate.storedLength(progId, fileName, token);
+    }
+
     @Override
     public void setDescription(SPProgramID progId, Collection<String> fileNames, String newDescription) throws AuxFileException {
         delegate.setDescription(progId, fileNames, newDescription);
@@ -5,6 +5,7 @@
 package edu.gemini.auxfile.server.file;
 
 import edu.gemini.auxfile.api.AuxFile;
+import edu.gemini.auxfile.api.AuxFileChecksumException;
 import edu.gemini.auxfile.api.AuxFileException;
 import edu.gemini.auxfile.server.AuxFileChunk;
 import edu.gemini.auxfile.server.AuxFileServer;
@@ -183,9 +184,19 @@ public final class BackendFileSystemImpl implements AuxFileServer {
         }
         File f = man.getTransferFile(progId, fileName, token);
 
-        // Write the bytes.
+        // Reject corrupted chunks, and chunks that would leave a gap in the
+        // file, so that everything that has been stored is known to be good.
+        if (!chunk.isValid()) {
+            throw new AuxFileChecksumException("checksum mismatch in chunk " + chunk.getChunkNumber() + " of " + progId + ", " + fileName);
+        }
+        if (chunk.getStartPosition() > f.length()) {
+            throw new AuxFileException("missing data before chunk " + chunk.getChunkNumber() + " of " + progId + ", " + fileName);
+        }
+
+        // Write the bytes at their position in the file, so that a chunk that
+        // is sent again after an interruption simply replaces itself.
         try {
-            FileUtil.writeChunk(f, chunk.getChunkData());
+            FileUtil.writeChunk(f, chunk.getStartPosition(), chunk.getChunkData());
         } catch (IOException ex) {
             String msg = "problem storing file " + progId + ", " + fileName;
             LOG.log(Level.WARNING, msg, ex);
@@ -197,6 +208,9 @@ public final class BackendFileSystemImpl implements AuxFileServer {
         // case of a re-upload.
         boolean lastChunk = chunk.isLastChunk();
         if (lastChunk) {
+            if (f.length() != chunk.getFileSize()) {
+                throw new AuxFileException("incomplete transfer of " + progId + ", " + fileName);
+            }
             f.renameTo(man.getProgramFile(progId, fileName));
             setChecked(progId, Collections.singleton(fileName), false);
         }
@@ -206,6 +220,13 @@ public final class BackendFileSystemImpl implements AuxFileServer {
         return token;
     }
 
+    @Override
+    public long storedLength(SPProgramID progId, String fileName, String token) {
+        if ((token == null) || "".equals(token)) return 0;
+        File f = FileManager.instance().getTransferFile(progId, fileName, token);
+        return f.exists() ? f.length() : 0;
+    }
+
     public MetaData getMetaData(SPProgramID programId, String fileName) throws AuxFileException {
         try {
             return MetaData.forFile(programId, fileName);
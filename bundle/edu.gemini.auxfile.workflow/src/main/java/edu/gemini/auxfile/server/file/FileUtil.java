@@ -18,8 +18,6 @@ import java.util.logging.Logger;
 public final class FileUtil {
     private static final Logger LOG = Logger.getLogger(FileUtil.class.getName());
 
-    private static final int CHUNK_BUFFER_SIZE = 16 * 1024;
-
     private FileUtil() {
     }
 
@@ -108,36 +106,21 @@ public final class FileUtil {
         long endPos = Math.min(startPos + chunkSize, f.length());
         chunkSize = (int) (endPos - startPos);
 
-        int bufSize = Math.min(chunkSize, CHUNK_BUFFER_SIZE);
+        // Read straight into the result array.
+        byte[] res = new byte[chunkSize];
+        ByteBuffer buf = ByteBuffer.wrap(res);
 
-        // Read the data from the chunk into a ByteBuffer.
         FileChannel fcin = null;
         try {
-            ByteBuffer buf = ByteBuffer.allocateDirect(bufSize);
-
-            // Create the result byte array.
-            byte[] res = new byte[chunkSize];
-
-            // Open the file and position to start where reading should begin
             RandomAccessFile raf = new RandomAccessFile(f, "r");
             fcin = raf.getChannel();
-            fcin.position(startPos);
 
-            long pos = startPos;
-            while (pos < endPos) {
-                int bytesRead = fcin.read(buf);
-                if (bytesRead == -1) {
+            while (buf.hasRemaining()) {
+                if (fcin.read(buf, startPos + buf.position()) == -1) {
                     // shouldn't get here, unless the file was modified while
                     // being read
                     throw new IOException("unexpected EOF");
                 }
-
-                buf.flip();
-                int offset = (int) (pos - startPos);
-                buf.get(res, offset, buf.remaining());
-                pos += bytesRead;
-
-                buf.clear();
             }
 
             return res;
@@ -146,30 +129,21 @@ public final class FileUtil {
         }
     }
 
-    public static void writeChunk(File f, byte[] chunk)
+    /**
+     * Writes the chunk at the given position in the file.  Writing the same
+     * chunk again overwrites it, so a chunk may be safely re-sent.
+     */
+    public static void writeChunk(File f, long startPos, byte[] chunk)
             throws IOException {
 
-        int bufSize = Math.min(chunk.length, CHUNK_BUFFER_SIZE);
-
         FileChannel fcout = null;
         try {
-            ByteBuffer buf = ByteBuffer.allocateDirect(bufSize);
-
             RandomAccessFile raf = new RandomAccessFile(f, "rw");
             fcout = raf.getChannel();
-            fcout.position(raf.length());
 
-            int pos = 0;
-            while (pos < chunk.length) {
-                int readLength = Math.min(bufSize, chunk.length-pos);
-                buf.put(chunk, pos, readLength);
-                buf.flip();
-
-                while (buf.hasRemaining()) {
-                    fcout.write(buf);
-                }
-                buf.clear();
-                pos += readLength;
+            ByteBuffer buf = ByteBuffer.wrap(chunk);
+            while (buf.hasRemaining()) {
+                fcout.write(buf, startPos + buf.position());
             }
             fcout.force(true);
         } finally {
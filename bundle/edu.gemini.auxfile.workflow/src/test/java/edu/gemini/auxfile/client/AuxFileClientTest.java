@@ -0,0 +1,134 @@
+package edu.gemini.auxfile.client;
+
+import edu.gemini.auxfile.server.AuxFileChunk;
+import edu.gemini.auxfile.server.AuxFileServer;
+import edu.gemini.auxfile.server.file.BackendFileSystemImpl;
+import edu.gemini.auxfile.server.file.FileManager;
+import edu.gemini.spModel.core.SPProgramID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that interrupted uploads are resumed.
+ */
+public final class AuxFileClientTest {
+
+    private static final SPProgramID PID = SPProgramID.toProgramID("GS-2019A-Q-1");
+    private static final String NAME = "finder.pdf";
+
+    private File root;
+    private File local;
+    private byte[] data;
+
+    // Chunks received by the server, by chunk number.
+    private final List<Integer> received = new ArrayList<>();
+
+    // Number of upcoming calls to fail, by method.
+    private int failStoreChunk1;
+    private int failStoredLength;
+
+    @Before
+    public void setUp() throws IOException {
+        root  = Files.createTempDirectory("AuxFileClientTest").toFile();
+        FileManager.init(new File(root, "server"));
+
+        // A bit more than two chunks.
+        data  = new byte[80 * 1024];
+        new Random(0).nextBytes(data);
+        local = new File(root, NAME);
+        Files.write(local.toPath(), data);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (final Stream<java.nio.file.Path> s = Files.walk(root.toPath())) {
+            s.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // A server that stores the file locally but whose connection fails when
+    // asked to.
+    private AuxFileServer server() {
+        final BackendFileSystemImpl backend = new BackendFileSystemImpl();
+        return (AuxFileServer) Proxy.newProxyInstance(
+            AuxFileServer.class.getClassLoader(),
+            new Class<?>[] { AuxFileServer.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "storeChunk":
+                        final int n = ((AuxFileChunk) args[2]).getChunkNumber();
+                        if ((n == 1) && (failStoreChunk1 > 0)) {
+                            --failStoreChunk1;
+                            throw new UndeclaredThrowableException(new IOException("connection lost"));
+                        }
+                        received.add(n);
+                        break;
+                    case "storedLength":
+                        if (failStoredLength > 0) {
+                            --failStoredLength;
+                            throw new UndeclaredThrowableException(new IOException("connection lost"));
+                        }
+                        break;
+                }
+                try {
+                    return method.invoke(backend, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            });
+    }
+
+    private byte[] stored() throws IOException {
+        return Files.readAllBytes(FileManager.instance().getProgramFile(PID, NAME).toPath());
+    }
+
+    @Test
+    public void testResumeAfterStoredLengthFails() throws Exception {
+        final AuxFileClient client = new AuxFileClient(server(), 1);
+
+        // Give up on the second chunk.
+        failStoreChunk1 = 3;
+        try {
+            client.store(PID, NAME, local, null);
+            fail("expected the upload to fail");
+        } catch (UndeclaredThrowableException ex) {
+            // expected
+        }
+        assertEquals(Arrays.asList(0), received);
+
+        // Storing again picks up from the second chunk even though the first
+        // attempt to find out how much was stored fails.
+        failStoredLength = 1;
+        client.store(PID, NAME, local, null);
+        assertEquals(Arrays.asList(0, 1, 2), received);
+        assertArrayEquals(data, stored());
+    }
+
+    @Test
+    public void testResumeWithinUpload() throws Exception {
+        final AuxFileClient client = new AuxFileClient(server(), 1);
+
+        failStoreChunk1  = 1;
+        failStoredLength = 1;
+        client.store(PID, NAME, local, null);
+        assertEquals(Arrays.asList(0, 1, 2), received);
+        assertArrayEquals(data, stored());
+    }
+}
@@ -1,6 +1,7 @@
 package edu.gemini.auxfile.server.file
 
-import edu.gemini.auxfile.server.AuxFileServer
+import edu.gemini.auxfile.api.{AuxFileChecksumException, AuxFileException}
+import edu.gemini.auxfile.server.{AuxFileChunk, AuxFileServer}
 import edu.gemini.spModel.core.SPProgramID
 import edu.gemini.shared.util.immutable.{ Option => GemOption }
 import edu.gemini.shared.util.immutable.ScalaConverters._
@@ -10,6 +11,7 @@ import Scalaz._
 import org.specs2.matcher.MatchResult
 import org.specs2.mutable.Specification
 
+import java.nio.file.Files
 import java.time.Instant
 import java.util.Collection
 
@@ -34,6 +36,16 @@ object FileSystemSpec extends Specification with SpecBase {
     get(s.getMetaData(env.pid, env.fileName)) shouldEqual a
   }
 
+  // A small file sent in 4 byte chunks.
+  val Data: Array[Byte] = (0 until 10).map(_.toByte).toArray
+  val ChunkSize: Int = 4
+
+  def chunk(n: Int): AuxFileChunk =
+    new AuxFileChunk(n, ChunkSize, Data.length.toLong, 0L, Data.slice(n * ChunkSize, (n + 1) * ChunkSize))
+
+  def stored(env: TestEnv): Array[Byte] =
+    Files.readAllBytes(FileManager.instance().getProgramFile(env.pid, env.fileName).toPath)
+
   "BackendFileSystemImpl" should {
     "round-trip checked" ! {
       forAllMetaData { (env) =>
@@ -53,6 +65,38 @@ object FileSystemSpec extends Specification with SpecBase {
       }
     }
 
+    "resume an interrupted store" ! {
+      forAllMetaData { (env) =>
+        val s = new BackendFileSystemImpl
+        val t = s.storeChunk(env.pid, env.fileName, chunk(0), "")
+        s.storeChunk(env.pid, env.fileName, chunk(1), t)
+
+        // The client lost track of the second chunk, so it asks how much was
+        // stored and sends it again.
+        s.storedLength(env.pid, env.fileName, t) shouldEqual 2L * ChunkSize
+        s.storeChunk(env.pid, env.fileName, chunk(1), t)
+        s.storeChunk(env.pid, env.fileName, chunk(2), t)
+        stored(env).toList shouldEqual Data.toList
+      }
+    }
+
+    "reject a corrupted chunk" ! {
+      forAllMetaData { (env) =>
+        val s = new BackendFileSystemImpl
+        val c = chunk(0)
+        c.getChunkData()(0) = 42
+        s.storeChunk(env.pid, env.fileName, c, "") must throwA[AuxFileChecksumException]
+      }
+    }
+
+    "reject a chunk after a gap" ! {
+      forAllMetaData { (env) =>
+        val s = new BackendFileSystemImpl
+        val t = s.storeChunk(env.pid, env.fileName, chunk(0), "")
+        s.storeChunk(env.pid, env.fileName, chunk(2), t) must throwA[AuxFileException]
+      }
+    }
+
   }
 
 }
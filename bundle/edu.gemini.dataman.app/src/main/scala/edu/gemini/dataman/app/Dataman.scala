@@ -70,6 +70,7 @@ object Dataman {
   private def create(config: DmanConfig, odb: IDBDatabaseService): TryDman[Dataman] = {
     val obsLogAction = new ObsLogActions(odb)
     val exec         = DmanActionExec(config, odb)
+    val index        = new DatasetIndex(odb, User)
 
     val pollArchive  = GsaPollActions(config.archiveHost, config.site, odb)
     val pollSummit   = GsaPollActions(config.summitHost, config.site, odb)
@@ -100,6 +101,7 @@ object Dataman {
 
     def shutdownNow(): Unit = {
       trigger.stop()
+      index.stop()
       pollServices.foreach(_.shutdown())
       pool.shutdownNow()
     }
@@ -110,7 +112,7 @@ object Dataman {
     def schedulePoll(a: DmanAction[DatasetUpdates], period: PollPeriod): Unit =
       schedule(exec.runnable(a), period.time, period.time)
 
-    val res = tryOp {
+    def startAll(): Dataman = {
       schedulePoll(pollArchive.tonight,  config.archivePoll.tonight)
       schedulePoll(pollSummit.tonight,   config.summitPoll.tonight)
       schedulePoll(pollArchive.thisWeek, config.archivePoll.thisWeek)
@@ -121,11 +123,11 @@ object Dataman {
       schedule(progArchiveSync, progSyncDelay, config.archivePoll.allPrograms.time)
       schedule(progSummitSync, progSyncDelay, config.summitPoll.allPrograms.time)
 
-      val orr = new ObsRefreshRunnable(odb, User, oids =>
+      val orr = new ObsRefreshRunnable(index, oids =>
         pollServices.foreach(_.addAll(oids))
       )
       schedule(orr, obsRefreshDelay, config.obsRefreshPeriod.time)
-      schedule(new RetryFailedRunnable(odb, User, retryMinDelay, exec), retryMinDelay.plusMillis(1), retryPeriod)
+      schedule(new RetryFailedRunnable(odb, index, retryMinDelay, exec), retryMinDelay.plusMillis(1), retryPeriod)
 
       trigger.start()
 
@@ -134,6 +136,8 @@ object Dataman {
       }
     }
 
+    val res = index.start().flatMap(_ => tryOp(startAll()))
+
     res <| { _.swap.foreach { _ => shutdownNow() }}
   }
 
@@ -0,0 +1,184 @@
+package edu.gemini.dataman.app
+
+import edu.gemini.dataman.core._
+import edu.gemini.pot.sp.{ISPGroupContainer, ISPNode, ISPObservation, ISPObservationContainer, ISPProgram, SPCompositeChange, SPObservationID}
+import edu.gemini.pot.sp.memImpl.MemObservation
+import edu.gemini.pot.spdb.{IDBDatabaseService, IDBTriggerAction, IDBTriggerCondition, ProgramEvent, ProgramEventListener}
+import edu.gemini.spModel.core.SPProgramID
+import edu.gemini.spModel.dataset.{DatasetExecRecord, DatasetRecord}
+import edu.gemini.spModel.obslog.{ObsExecLog, ObsLog, ObsQaLog}
+
+import java.security.Principal
+import java.util.concurrent.ConcurrentHashMap
+import java.util.logging.{Level, Logger}
+
+import scala.collection.JavaConverters._
+
+import DatasetIndex._
+
+/** An in-memory index of the dataset records of every observation in the
+  * database.
+  *
+  * Periodic Data Manager tasks need to find the handful of datasets in a
+  * particular state.  Running a `DatasetFunctor` for that walks every program
+  * and copies every observation's logs.  The index instead holds the
+  * (immutable) `DatasetRecord`s of each observation and is kept current by a
+  * trigger on obs log edits and observation adds/removes plus program
+  * add/replace/remove events, so queries only filter what is already in
+  * memory.
+  *
+  * The index is refreshed asynchronously, so a change to an observation's log
+  * becomes visible to queries shortly after it is made.
+  */
+final class DatasetIndex(odb: IDBDatabaseService, user: java.util.Set[Principal]) {
+
+  private val index = new ConcurrentHashMap[SPObservationID, List[DatasetRecord]]()
+
+  // While the initial contents are loading, observations that are removed
+  // are marked with an empty list instead of being dropped so that the
+  // (possibly stale) initial query results can't put them back.
+  @volatile private var loading = false
+
+  /** Starts tracking changes to the database and loads the initial contents
+    * of the index.
+    */
+  def start(): TryDman[Unit] = {
+    loading = true
+    odb.registerTrigger(Condition, action)
+    odb.addProgramEventListener(programListener)
+
+    // Only fill in observations that haven't already been indexed or removed
+    // because of an update that arrived while the initial query was running.
+    try {
+      DatasetFunctor.collect(odb, user) { case dr => dr }.map { drs =>
+        drs.groupBy(_.label.getObservationId).foreach { case (oid, obsDrs) =>
+          index.putIfAbsent(oid, obsDrs)
+        }
+      }
+    } finally {
+      loading = false
+      index.asScala.foreach { case (oid, drs) => if (drs.isEmpty) index.remove(oid, drs) }
+    }
+  }
+
+  def stop(): Unit = {
+    odb.removeProgramEventListener(programListener)
+    odb.unregisterTrigger(Condition, action)
+    index.clear()
+  }
+
+  /** Finds all the dataset records that match the given partial function and
+    * maps them to the desired type.
+    */
+  def collect[A](pf: PartialFunction[DatasetRecord, A]): List[A] =
+    index.values.asScala.toList.flatMap(_.collect(pf))
+
+  /** Finds all the dataset exec records that match the given partial function
+    * and maps them to the desired type.
+    */
+  def collectExec[A](pf: PartialFunction[DatasetExecRecord, A]): List[A] =
+    collect {
+      case dr if pf.isDefinedAt(dr.exec) => pf(dr.exec)
+    }
+
+  /** Gets the dataset records of the given observation. */
+  def observation(oid: SPObservationID): List[DatasetRecord] =
+    Option(index.get(oid)).getOrElse(Nil)
+
+  /** Gets the dataset records of all observations in the given program. */
+  def program(pid: SPProgramID): List[DatasetRecord] =
+    index.asScala.toList.collect {
+      case (oid, drs) if oid.getProgramID == pid => drs
+    }.flatten
+
+  private def reindex(o: ISPObservation): Unit =
+    Option(o.getObservationID).foreach { oid =>
+      Option(ObsLog.getIfExists(o)).map(_.getAllDatasetRecords.asScala.toList) match {
+        case Some(drs) if drs.nonEmpty => index.put(oid, drs)
+        case _                         => drop(oid)
+      }
+    }
+
+  private def drop(oid: SPObservationID): Unit =
+    if (loading) index.put(oid, Nil) else index.remove(oid)
+
+  // Updates all the observations in the program and then drops any that were
+  // indexed for the program but no longer exist.
+  private def reindex(p: ISPProgram): Unit = {
+    val obs = p.getAllObservations.asScala.toList
+    obs.foreach(reindex)
+    Option(p.getProgramID).foreach(prune(_, obs.flatMap(o => Option(o.getObservationID)).toSet))
+  }
+
+  private def prune(pid: SPProgramID, keep: Set[SPObservationID]): Unit =
+    index.keySet.asScala.filter(oid => oid.getProgramID == pid && !keep(oid)).foreach(drop)
+
+  // Re-reads the observation whose exec or QA log was modified, or the
+  // program whose observations were added, moved or removed.
+  private val action = new IDBTriggerAction {
+    override def doTriggerAction(change: SPCompositeChange, handback: Object): Unit =
+      handback match {
+        case o: ISPObservation => safely(s"observation ${o.getObservationID}")(reindex(o))
+        case p: ISPProgram     => safely(s"program ${p.getProgramID}")(reindex(p))
+        case _                 => Log.warning("Received trigger action for unexpected type: " + handback)
+      }
+  }
+
+  private val programListener = new ProgramEventListener[ISPProgram] {
+    override def programAdded(e: ProgramEvent[ISPProgram]): Unit =
+      safely(s"program ${e.getNewProgram.getProgramID}")(reindex(e.getNewProgram))
+
+    override def programRemoved(e: ProgramEvent[ISPProgram]): Unit =
+      Option(e.getOldProgram.getProgramID).foreach(prune(_, Set.empty))
+
+    override def programReplaced(e: ProgramEvent[ISPProgram]): Unit =
+      safely(s"program ${e.getNewProgram.getProgramID}")(reindex(e.getNewProgram))
+  }
+}
+
+object DatasetIndex {
+  private val Log = Logger.getLogger(DatasetIndex.getClass.getName)
+
+  private def safely(what: => String)(body: => Unit): Unit =
+    try {
+      body
+    } catch {
+      case t: Throwable => Log.log(Level.WARNING, s"Could not update dataset index for $what", t)
+    }
+
+  // Changes to the children of a program or group that can add or remove
+  // observations.
+  private val ObsStructureProps = Set(
+    ISPObservationContainer.OBSERVATIONS_PROP,
+    ISPGroupContainer.OBS_GROUP_PROP
+  )
+
+  // Replacement of an observation's exec or QA log node.
+  private val ObsLogProps = Set(
+    MemObservation.OBS_EXEC_LOG_PROP,
+    MemObservation.OBS_QA_LOG_PROP
+  )
+
+  object Condition extends IDBTriggerCondition {
+    /** Returns the observation whose exec or QA log changed, the program
+      * whose observations were added or removed, or `null` otherwise (as
+      * required by the `IDBTriggerCondition` contract).
+      */
+    override def matches(change: SPCompositeChange): Object = {
+      def obs(n: ISPNode): Object =
+        Option(n).map(_.getParent).collect { case o: ISPObservation => o }.orNull
+
+      val node = change.getModifiedNode
+      val prop = change.getPropertyName
+
+      if (ObsStructureProps(prop)) Option(node).map(_.getProgram).orNull
+      else if (ObsLogProps(prop)) node match {
+        case o: ISPObservation => o
+        case _                 => null
+      } else change.getNewValue match {
+        case _: ObsExecLog | _: ObsQaLog => obs(node)
+        case _                           => null // see IDBTriggerCondition
+      }
+    }
+  }
+}
@@ -6,9 +6,8 @@ import edu.gemini.spModel.dataset.DatasetExecRecord
 import edu.gemini.spModel.dataset.QaRequestStatus.Failed
 import edu.gemini.spModel.dataset.SummitState.ActiveRequest
 
-import java.security.Principal
 import java.time.{Duration, Instant}
-import java.util.logging.{Logger, Level}
+import java.util.logging.Logger
 
 import scalaz._
 import Scalaz._
@@ -18,7 +17,7 @@ import Scalaz._
   */
 final class RetryFailedRunnable(
               odb: IDBDatabaseService,
-              user: java.util.Set[Principal],
+              index: DatasetIndex,
               minDelay: Duration,
               exec: DmanActionExec) extends Runnable {
 
@@ -31,19 +30,16 @@ final class RetryFailedRunnable(
       Duration.between(i, Instant.now()).compareTo(minDelay) > 0
 
     Log.log(DetailLevel, "Dataman retry failed QA updates.")
-    DatasetFunctor.collectExec(odb, user) {
+    val labs = index.collectExec {
       case DatasetExecRecord(ds, ActiveRequest(_, _, id0, Failed(_), w, _), _) if oldEnough(w) => (ds.getLabel, id0)
-    } match {
-      case \/-(labs) =>
-        if (labs.isEmpty) {
-          Log.log(DetailLevel, "No failed QA updates.")
-        } else {
-          val (prefix, suffix) = labs.splitAt(50)
-          Log.info("Retrying failed datasets: " + prefix.mkString(", ") + (suffix.isEmpty ? "" | " ..."))
-          exec.fork(new ObsLogActions(odb).resetFailed(labs))
-        }
-      case -\/(f)   =>
-        Log.log(Level.WARNING, f.explain, f.exception.orNull)
+    }
+
+    if (labs.isEmpty) {
+      Log.log(DetailLevel, "No failed QA updates.")
+    } else {
+      val (prefix, suffix) = labs.splitAt(50)
+      Log.info("Retrying failed datasets: " + prefix.mkString(", ") + (suffix.isEmpty ? "" | " ..."))
+      exec.fork(new ObsLogActions(odb).resetFailed(labs))
     }
   }
 }
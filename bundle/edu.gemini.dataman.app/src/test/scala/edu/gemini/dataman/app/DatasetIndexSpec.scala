@@ -0,0 +1,59 @@
+package edu.gemini.dataman.app
+
+import edu.gemini.pot.sp.{ISPGroup, ISPObservation}
+import edu.gemini.spModel.dataset.{DatasetLabel, DatasetExecRecord, DatasetRecord}
+
+import scala.collection.JavaConverters._
+
+import scalaz.{-\/, \/-}
+
+
+object DatasetIndexSpec extends TestSupport {
+
+  // The index is updated asynchronously by a trigger so give it some time.
+  def settles(p: => Boolean): Boolean =
+    (1 to 50).exists { _ => p || { Thread.sleep(100); false } } || p
+
+  "DatasetIndex" should {
+    "collect the same datasets as the DatasetFunctor" ! forAllPrograms { (odb, progs) =>
+      val pf: PartialFunction[DatasetRecord, DatasetLabel] = {
+        case DatasetRecord(_, DatasetExecRecord(ds,_,Some(_))) => ds.getLabel
+      }
+
+      withIndex(odb) { index =>
+        DatasetFunctor.collect(odb, User)(pf) match {
+          case \/-(a) => a.toSet == index.collect(pf).toSet
+          case -\/(f) => sys.error(f.explain)
+        }
+      }
+    }
+
+    "find the datasets of each program" ! forAllPrograms { (odb, progs) =>
+      withIndex(odb) { index =>
+        progs.forall { p =>
+          allDatasets(List(p)).toSet == index.program(p.getProgramID).toSet
+        }
+      }
+    }
+
+    "find the datasets of each observation" ! forAllPrograms { (odb, progs) =>
+      withIndex(odb) { index =>
+        progs.flatMap(_.getAllObservations.asScala).forall { o =>
+          index.observation(o.getObservationID).map(_.label).toSet ==
+            allDatasets(progs).map(_.label).filter(_.getObservationId == o.getObservationID).toSet
+        }
+      }
+    }
+
+    "drop the datasets of deleted observations" ! forAllPrograms { (odb, progs) =>
+      withIndex(odb) { index =>
+        progs.foreach { p =>
+          p.setGroups(java.util.Collections.emptyList[ISPGroup]())
+          p.setObservations(java.util.Collections.emptyList[ISPObservation]())
+        }
+        settles(progs.forall(p => index.program(p.getProgramID).isEmpty))
+      }
+    }
+  }
+
+}
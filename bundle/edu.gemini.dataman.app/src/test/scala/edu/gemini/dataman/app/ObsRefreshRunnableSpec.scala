@@ -19,8 +19,9 @@ object ObsRefreshRunnableSpec extends TestSupport {
       }.map(_.label.getObservationId).distinct.map(Obs).toSet
 
       var actual = Set.empty[Obs]
-      val orr = new ObsRefreshRunnable(odb, User, oids => actual = oids.toSet)
-      orr.run()
+      withIndex(odb) { index =>
+        new ObsRefreshRunnable(index, oids => actual = oids.toSet).run()
+      }
 
       expected == actual
     }
@@ -2,6 +2,7 @@ package edu.gemini.dataman.app
 
 import edu.gemini.gsa.query.Arbitraries
 import edu.gemini.pot.sp.{ProgramTestSupport, ISPFactory, ISPProgram, ProgramGen}
+import edu.gemini.pot.spdb.IDBDatabaseService
 import edu.gemini.spModel.dataset.{DatasetRecord, DatasetGsaState, SummitState, DatasetQaState, Dataset, DatasetExecRecord, DatasetQaRecord, DatasetLabel}
 import edu.gemini.spModel.obslog.ObsLog
 import edu.gemini.util.security.principal.StaffPrincipal
@@ -13,6 +14,8 @@ import java.time.Instant
 
 import scala.collection.JavaConverters._
 
+import scalaz.{-\/, \/-}
+
 trait TestSupport extends ProgramTestSupport with Arbitraries {
   val User = java.util.Collections.singleton[Principal](StaffPrincipal.Gemini)
 
@@ -59,6 +62,16 @@ trait TestSupport extends ProgramTestSupport with Arbitraries {
       p
     }
 
+  // Runs the block with a started DatasetIndex, failing if it can't start.
+  def withIndex[A](odb: IDBDatabaseService)(f: DatasetIndex => A): A = {
+    val index = new DatasetIndex(odb, User)
+    index.start() match {
+      case -\/(e) => sys.error(e.explain)
+      case \/-(_) => ()
+    }
+    try { f(index) } finally { index.stop() }
+  }
+
   // Extracts all the dataset records in the program into a single list.
   def allDatasets(progs: List[ISPProgram]): List[DatasetRecord] =
     for {
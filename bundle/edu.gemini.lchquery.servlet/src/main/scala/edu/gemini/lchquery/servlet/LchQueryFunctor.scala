@@ -8,15 +8,15 @@ import java.util
 import java.util.logging.{Level, Logger}
 
 import edu.gemini.odb.browser._
-import edu.gemini.pot.sp.{ISPNode, ISPObservation, ISPProgram}
+import edu.gemini.pot.sp.{ISPNode, ISPProgram}
 import edu.gemini.pot.spdb.{DBAbstractQueryFunctor, IDBDatabaseService}
 import edu.gemini.skycalc.{DDMMSS, HHMMSS}
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality
-import edu.gemini.spModel.obs.ObservationStatus
+import edu.gemini.spModel.obs.ObsAttributeIndex
+import edu.gemini.spModel.obs.ObsAttributeIndex.ObsAttributes
 import edu.gemini.spModel.rich.shared.immutable._
 import edu.gemini.spModel.target.{SPCoordinates, SPSkyObject, SPTarget}
 import edu.gemini.spModel.target.env.TargetEnvironment
-import edu.gemini.spModel.too.Too
 
 import scala.collection.JavaConverters._
 import scalaz._
@@ -24,28 +24,33 @@ import Scalaz._
 
 class LchQueryFunctor(queryType: LchQueryFunctor.QueryType,
                       programParams: List[(LchQueryParam[ISPProgram], String)],
-                      observationParams: List[(LchQueryParam[ISPObservation], String)]) extends DBAbstractQueryFunctor {
+                      observationParams: List[(LchQueryParam[ObsAttributes], String)]) extends DBAbstractQueryFunctor {
 
   val queryResult: QueryResult = new QueryResult() {
     setProgramsNode(new ProgramsNode())
   }
 
+  // The parameter expressions are only compiled once per query, on the
+  // database side.
+  @transient private lazy val programMatchers: List[ISPProgram => Boolean] =
+    programParams.map { case (LchQueryParam(_, valueMatcher), paramValue) => valueMatcher.matcher(paramValue) }
+
+  @transient private lazy val observationMatchers: List[ObsAttributes => Boolean] =
+    observationParams.map { case (LchQueryParam(_, valueMatcher), paramValue) => valueMatcher.matcher(paramValue) }
+
   // Called once per program by IDBQueryRunner implementation.
   override def execute(db: IDBDatabaseService, node: ISPNode, principals: util.Set[Principal]): Unit = {
     val prog = node.asInstanceOf[ISPProgram]
 
-    def programMatches: Boolean = programParams.forall {
-      case (LchQueryParam(_, valueMatcher), paramValue) => valueMatcher.matches(paramValue, prog)
-    }
-    def observationMatches(obs: ISPObservation): Boolean = observationParams.forall {
-      case (LchQueryParam(_, valueMatcher), paramValue) => valueMatcher.matches(paramValue, obs)
-    }
+    def programMatches: Boolean = programMatchers.forall(_(prog))
+    def observationMatches(obs: ObsAttributes): Boolean = observationMatchers.forall(_(obs))
 
     \/.fromTryCatchNonFatal {
-      // See if an ISPProgram matches the query specifications.
+      // See if an ISPProgram matches the query specifications.  Observations
+      // are checked against the database's index of observation attributes.
       if (programMatches) {
         import LchQueryFunctor.QueryType.ProgramQuery
-        addProgram(prog, (queryType == ProgramQuery) ? List.empty[ISPObservation] | prog.getAllObservations.asScala.toList.filter(observationMatches))
+        addProgram(prog, (queryType == ProgramQuery) ? List.empty[ObsAttributes] | ObsAttributeIndex.lookup(db, prog).getObservations.asScala.toList.filter(observationMatches))
       }
     } match {
       case \/-(s) =>
@@ -56,7 +61,7 @@ class LchQueryFunctor(queryType: LchQueryFunctor.QueryType,
   }
 
 
-  private def addProgram(prog: ISPProgram, obsList: List[ISPObservation]): Unit = {
+  private def addProgram(prog: ISPProgram, obsList: List[ObsAttributes]): Unit = {
     import LchQueryParam.{ISPProgramExtractors, ISPObservationExtractors}
 
     def makeTargetNode(skyObj: SPSkyObject, env: TargetEnvironment): Option[Serializable] = {
@@ -194,16 +199,16 @@ class LchQueryFunctor(queryType: LchQueryFunctor.QueryType,
 
         if (queryType != LchQueryFunctor.QueryType.ProgramQuery) {
           setObservationsNode(new ObservationsNode() {
-            obsList.map { obs =>
+            obsList.map { attrs =>
+              val obs = attrs.getObservation
               new Observation() {
-                val spObs = obs.toSPObs
-                setAo(obs.ao.displayValue)
-                obs.instrumentType.foreach(setInstrument)
-                setName(spObs.getTitle)
-                setObsClass(obs.obsClass.displayValue)
+                setAo(attrs.getAO.displayValue)
+                Option(attrs.getInstrument).map(_.readableStr).foreach(setInstrument)
+                setName(attrs.getTitle)
+                setObsClass(attrs.getObsClass.displayValue)
                 setId(obs.getObservationID.stringValue)
-                setStatus(ObservationStatus.computeFor(obs).displayValue)
-                setTooPriority(Too.get(obs).getDisplayValue)
+                setStatus(attrs.getStatus.displayValue)
+                setTooPriority(attrs.getTooType.getDisplayValue)
 
                 // Create the timing windows.
                 obs.timingWindows.filter(_.nonEmpty).foreach { tws =>
@@ -3,22 +3,20 @@ package edu.gemini.lchquery.servlet
 import edu.gemini.odb.browser.{Investigator, Partner}
 import edu.gemini.pot.sp.{ISPObservation, ISPProgram}
 import edu.gemini.spModel.`type`.DisplayableSpType
-import edu.gemini.spModel.ao.{AOConstants, AOTreeUtil}
+import edu.gemini.spModel.ao.AOConstants
 import edu.gemini.spModel.core.ProgramId
 import edu.gemini.spModel.core.ProgramId.Science
 import edu.gemini.spModel.data.YesNoType
 import edu.gemini.spModel.dataset.{DatasetLabel, DatasetQaRecord}
-import edu.gemini.spModel.gemini.altair.{AltairParams, InstAltair}
 import edu.gemini.spModel.gemini.obscomp.{SPProgram, SPSiteQuality}
 import edu.gemini.spModel.gemini.obscomp.SPProgram.Active
 import edu.gemini.spModel.gemini.phase1.GsaPhase1Data
-import edu.gemini.spModel.obs.{ObsClassService, ObsTimesService, ObservationStatus, SPObservation}
-import edu.gemini.spModel.obsclass.ObsClass
-import edu.gemini.spModel.obscomp.SPInstObsComp
+import edu.gemini.spModel.obs.{ObsTimesService, ObservationStatus}
+import edu.gemini.spModel.obs.ObsAttributeIndex.ObsAttributes
 import edu.gemini.spModel.obslog.ObsLog
 import edu.gemini.spModel.target.env.TargetEnvironment
 import edu.gemini.spModel.target.obsComp.TargetObsComp
-import edu.gemini.spModel.too.{Too, TooType}
+import edu.gemini.spModel.too.TooType
 import edu.gemini.spModel.util.SPTreeUtil
 
 import scala.collection.JavaConverters._
@@ -29,6 +27,10 @@ import Scalaz._
 
 sealed trait ValueMatcher[A] {
   def matches(expression: String, x: A): Boolean
+
+  /** Prepares the expression once, for matching against many values. */
+  def matcher(expression: String): A => Boolean =
+    x => matches(expression, x)
 }
 
 object ValueMatcher {
@@ -46,10 +48,16 @@ object ValueMatcher {
   abstract class StringValueMatcher[A] extends ValueMatcher[A] {
     protected def extractor(a: A): Option[String]
 
-    override def matches(expression: String, x: A): Boolean = (for {
-      r <- Option(expression).map(_.toRegex)
-      m <- Option(x).flatMap(extractor)
-    } yield r.findFirstMatchIn(m).isDefined).getOrElse(false)
+    override def matches(expression: String, x: A): Boolean =
+      matcher(expression)(x)
+
+    override def matcher(expression: String): A => Boolean = {
+      val r = Option(expression).map(_.toRegex)
+      x => (for {
+        rx <- r
+        m  <- Option(x).flatMap(extractor)
+      } yield rx.findFirstMatchIn(m).isDefined).getOrElse(false)
+    }
   }
 
 
@@ -62,10 +70,16 @@ object ValueMatcher {
       case _ => expression
     }
 
-    override def matches(expression: String, x: A): Boolean = (for {
-      r <- Option(expression).map(transform).map(_.toRegex)
-      m <- Option(x).flatMap(extractor).map(_.displayValue)
-    } yield r.findFirstMatchIn(m).isDefined).getOrElse(false)
+    override def matches(expression: String, x: A): Boolean =
+      matcher(expression)(x)
+
+    override def matcher(expression: String): A => Boolean = {
+      val r = Option(expression).map(transform).map(_.toRegex)
+      x => (for {
+        rx <- r
+        m  <- Option(x).flatMap(extractor).map(_.displayValue)
+      } yield rx.findFirstMatchIn(m).isDefined).getOrElse(false)
+    }
   }
 }
 
@@ -175,34 +189,6 @@ object LchQueryParam {
 
 
   private[servlet] implicit class ISPObservationExtractors(val obs: ISPObservation) extends AnyVal {
-    def toSPObs: SPObservation =
-      obs.getDataObject.asInstanceOf[SPObservation]
-
-    def instrument: Option[SPInstObsComp] =
-      SPTreeUtil.findInstruments(obs).asScala.map(_.getDataObject).collect {
-        case inst: SPInstObsComp => inst
-      }.headOption
-
-    def instrumentType: Option[String] =
-      instrument.map(_.getType.readableStr)
-
-    def ao: AOConstants.AO = {
-      Option(AOTreeUtil.findAOSystem(obs)).map(_.getDataObject).
-        collect {
-          case inst: InstAltair if inst.getGuideStarType == AltairParams.GuideStarType.LGS => AOConstants.AO.Altair_LGS
-          case inst: InstAltair if inst.getGuideStarType == AltairParams.GuideStarType.NGS => AOConstants.AO.Altair_NGS
-        }.getOrElse(AOConstants.AO.NONE)
-    }
-
-    def tooStatus: TooType =
-      Too.get(obs)
-
-    def status: ObservationStatus =
-      ObservationStatus.computeFor(obs)
-
-    def obsClass: ObsClass =
-      ObsClassService.lookupObsClass(obs)
-
     def targetEnvironment: Option[TargetEnvironment] = for {
       n <- Option(SPTreeUtil.findTargetEnvNode(obs))
       c <- Option(n.getDataObject).map(_.asInstanceOf[TargetObsComp])
@@ -271,45 +257,48 @@ object LchQueryParam {
     }
   )
 
+  // Observation parameters are matched against the ODB's attribute index
+  // rather than the observations themselves.
+
   private[servlet] val ObservationTOOStatusParam = LchQueryParam("observationTooStatus",
-    new StringValueMatcher[ISPObservation] {
-      override protected def extractor(obs: ISPObservation): Option[String] =
-        obs.tooStatus.getDisplayValue.some
+    new StringValueMatcher[ObsAttributes] {
+      override protected def extractor(obs: ObsAttributes): Option[String] =
+        obs.getTooType.getDisplayValue.some
     }
   )
 
   private[servlet] val ObservationNameParam = LchQueryParam("observationName",
-    new StringValueMatcher[ISPObservation] {
-      override protected def extractor(obs: ISPObservation): Option[String] =
-        obs.toSPObs.getTitle.some
+    new StringValueMatcher[ObsAttributes] {
+      override protected def extractor(obs: ObsAttributes): Option[String] =
+        Option(obs.getTitle)
     }
   )
 
   private[servlet] val ObservationStatusParam = LchQueryParam("observationStatus",
-    new BooleanValueMatcher[ISPObservation,ObservationStatus] {
-      override protected def extractor(obs: ISPObservation): Option[ObservationStatus] =
-        obs.status.some
+    new BooleanValueMatcher[ObsAttributes,ObservationStatus] {
+      override protected def extractor(obs: ObsAttributes): Option[ObservationStatus] =
+        obs.getStatus.some
     }
   )
 
   private[servlet] val ObservationInstrumentParam = LchQueryParam("observationInstrument",
-    new StringValueMatcher[ISPObservation] {
-      override protected def extractor(obs: ISPObservation): Option[String] =
-        obs.instrumentType
+    new StringValueMatcher[ObsAttributes] {
+      override protected def extractor(obs: ObsAttributes): Option[String] =
+        Option(obs.getInstrument).map(_.readableStr)
     }
   )
 
   private[servlet] val ObservationAOParam = LchQueryParam("observationAo",
-    new BooleanValueMatcher[ISPObservation, AOConstants.AO] {
-      override protected def extractor(obs: ISPObservation): Option[AOConstants.AO] =
-        obs.ao.some
+    new BooleanValueMatcher[ObsAttributes, AOConstants.AO] {
+      override protected def extractor(obs: ObsAttributes): Option[AOConstants.AO] =
+        obs.getAO.some
     }
   )
 
   private[servlet] val ObservationClassParam = LchQueryParam("observationClass",
-    new StringValueMatcher[ISPObservation] {
-      override protected def extractor(obs: ISPObservation): Option[String] =
-        obs.obsClass.displayValue.some
+    new StringValueMatcher[ObsAttributes] {
+      override protected def extractor(obs: ObsAttributes): Option[String] =
+        obs.getObsClass.displayValue.some
     }
   )
 
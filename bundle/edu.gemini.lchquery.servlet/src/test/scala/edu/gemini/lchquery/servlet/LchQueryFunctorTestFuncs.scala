@@ -1,6 +1,7 @@
 package edu.gemini.lchquery.servlet
 
-import edu.gemini.pot.sp.{ISPObservation, ISPProgram}
+import edu.gemini.pot.sp.ISPProgram
+import edu.gemini.spModel.obs.ObsAttributeIndex.ObsAttributes
 
 import scala.collection.mutable.ListBuffer
 
@@ -30,8 +31,8 @@ object LchQueryFunctorTestFuncs {
                       observationStatus: String,
                       observationInstrument: String,
                       observationAo: String,
-                      observationClass: String): List[(LchQueryParam[ISPObservation],String)] = {
-    val lb = ListBuffer[(LchQueryParam[ISPObservation],String)]()
+                      observationClass: String): List[(LchQueryParam[ObsAttributes],String)] = {
+    val lb = ListBuffer[(LchQueryParam[ObsAttributes],String)]()
     Option(observationTooStatus).foreach(s => lb += ((LchQueryParam.ObservationTOOStatusParam, s)))
     Option(observationName).foreach(s => lb += ((LchQueryParam.ObservationNameParam, s)))
     Option(observationStatus).foreach(s => lb += ((LchQueryParam.ObservationStatusParam, s)))
@@ -2,6 +2,7 @@ package edu.gemini.obslog.actions;
 
 import edu.gemini.obslog.config.model.OlConfiguration;
 import edu.gemini.obslog.obslog.IObservingLog;
+import edu.gemini.obslog.obslog.IObservingLogSegment;
 import edu.gemini.obslog.obslog.OlLogException;
 import edu.gemini.obslog.obslog.OlLogOptions;
 import edu.gemini.obslog.obslog.executor.OlPlanLogRequestExecutor;
@@ -10,6 +11,7 @@ import edu.gemini.spModel.core.SPProgramID;
 import edu.gemini.spModel.util.NightlyProgIdGenerator;
 
 import java.util.Calendar;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +27,10 @@ public class FetchPlanAction extends OlBaseAction {
     private IObservingLog _observingLog;
     private OlLogOptions _options = new OlLogOptions();
 
+    // Optional paging of the log rows, the default page size of 0 shows the whole log
+    private int _page = 1;
+    private int _pageSize = 0;
+
     static private final String HINT_TODAY = "today";
     static private final String HINT_YESTERDAY = "yesterday";
     static private final String HINT_TWODAYSAGO = "two_days_ago";
@@ -43,6 +49,35 @@ public class FetchPlanAction extends OlBaseAction {
         return _observingLog;
     }
 
+    public void setPage(int page) {
+        _page = Math.max(page, 1);
+    }
+
+    public int getPage() {
+        return _page;
+    }
+
+    public void setPageSize(int pageSize) {
+        _pageSize = Math.max(pageSize, 0);
+    }
+
+    public int getPageSize() {
+        return _pageSize;
+    }
+
+    public int getPageCount() {
+        if (_observingLog == null || _pageSize == 0) return 1;
+        return Math.max(1, (_observingLog.getRowCount() + _pageSize - 1) / _pageSize);
+    }
+
+    /**
+     * Returns the segments to show, which is just the requested page of the log if a page size is set.
+     */
+    public List<IObservingLogSegment> getLogSegments() {
+        if (_pageSize == 0) return _observingLog.getLogSegments();
+        return _observingLog.getLogSegments((_page - 1) * _pageSize, _pageSize);
+    }
+
     // Special handler for convenience planIDs
     private SPProgramID _handleSpecialPlanID(String hint) {
         if (hint == null) return null;
@@ -16,6 +16,24 @@ public interface IObservingLog {
      */
     List<IObservingLogSegment> getLogSegments();
 
+    /**
+     * Get the segments for a page of the log.  Each returned segment is a view of the rows of one log segment that
+     * fall on the page, so segments without rows on the page are left out.  Rows are numbered across all the
+     * segments in order.
+     *
+     * @param firstRow index of the first row on the page
+     * @param rowCount maximum number of rows on the page
+     * @return The <code>List</code> of <code>IObservingLogSegment</code> objects on the page.
+     */
+    List<IObservingLogSegment> getLogSegments(int firstRow, int rowCount);
+
+    /**
+     * Returns the total number of rows in all the segments of the <tt>IObservingLog</tt>
+     *
+     * @return number of rows
+     */
+    int getRowCount();
+
     /**
      * Add an observing log segment to the observing log.
      *
@@ -36,6 +36,16 @@ public interface IObservingLogSegment {
      */
     List<ConfigMap> getRows();
 
+    /**
+     * Return a page of rows.  Only the rows on the page need to be created, so a long log can be shown a page at
+     * a time.
+     *
+     * @param first index of the first row to return
+     * @param count maximum number of rows to return
+     * @return the rows from <code>first</code>, which is empty if the segment has no more rows
+     */
+    List<ConfigMap> getRows(int first, int count);
+
     /**
      * Merge the segment that is the argument to the current segment if the types are the same.  The argument segment
      * is added to the end of the current segment.
@@ -10,7 +10,10 @@ import java.util.logging.Level;
 import java.io.BufferedReader;
 import java.io.Serializable;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 //
 // Gemini Observatory/AURA
@@ -20,8 +23,56 @@ import java.util.List;
 public abstract class InstrumentLogSegment extends OlBasicSegment implements Serializable {
     private static final Logger LOG = Logger.getLogger(InstrumentLogSegment.class.getName());
 
+    /**
+     * A rendered row along with what it was rendered for.  Rows are kept as long as the visit they were rendered
+     * from, which the database side reuses until the observation's log changes, so reopening a log only renders
+     * rows for new or updated datasets.  The cached row itself is never handed out; each segment gets its own copy,
+     * which it is free to modify.
+     */
+    private static final class RenderedRow {
+        private final Class<?> _segmentClass;
+        private final List<OlLogItem> _logItems;
+        private final boolean _isMultiNight;
+        private final boolean _isNorth;
+        private final ConfigMap _row;
+
+        RenderedRow(InstrumentLogSegment seg, ConfigMap row) {
+            _segmentClass = seg.getClass();
+            _logItems = seg.getTableInfo();
+            _isMultiNight = seg.getLogOptions().isMultiNight();
+            _isNorth = seg.getLogOptions().isNorth();
+            _row = row;
+        }
+
+        boolean isFor(InstrumentLogSegment seg) {
+            return (_segmentClass == seg.getClass()) &&
+                   (_logItems == seg.getTableInfo()) &&
+                   (_isMultiNight == seg.getLogOptions().isMultiNight()) &&
+                   (_isNorth == seg.getLogOptions().isNorth());
+        }
+
+        ConfigMap copyOfRow() {
+            return copy(_row);
+        }
+
+        // Copies a row along with the dataset comment list, the only value that isn't immutable.
+        static ConfigMap copy(ConfigMap row) {
+            ConfigMap copy = new ConfigMap();
+            for (Map.Entry<String, Object> e : row.entrySet()) {
+                Object value = e.getValue();
+                copy.put(e.getKey(), (value instanceof List) ? new ArrayList<Object>((List<?>) value) : value);
+            }
+            return copy;
+        }
+    }
+
+    private static final Map<EObslogVisit, RenderedRow> RENDERED_ROWS = new WeakHashMap<EObslogVisit, RenderedRow>();
+
     private OlLogOptions _obsLogOptions;
 
+    // Visits that have been added but whose rows have not been rendered yet.  They follow the rendered rows.
+    private final List<EObslogVisit> _pendingVisits = new ArrayList<EObslogVisit>();
+
     public InstrumentLogSegment(OlSegmentType type, List<OlLogItem> logItems, OlLogOptions obsLogOptions) {
         super(type, logItems);
         if (logItems == null || obsLogOptions == null) throw new NullPointerException();
@@ -34,21 +85,69 @@ public abstract class InstrumentLogSegment extends OlBasicSegment implements Ser
     }
 
     /**
-     * Add information for one observation to the segment.  This method calls mandatory decorators and allows
-     * the instrument segment to decorate its own items.
+     * Add information for one observation to the segment.  The row is rendered when it is first requested by
+     * calling mandatory decorators and allowing the instrument segment to decorate its own items.
      * This is only called if the observation has unique configs
      *
      * @param evisit the <tt>EObslogVisit</tt>
      */
     public void addObservationData(EObslogVisit evisit) {
         // Note that there should be one EObsLogVisit for each row in this case.
+        _pendingVisits.add(evisit);
+    }
+
+    /**
+     * Renders all the pending visits before returning the rows.
+     */
+    @Override
+    protected List<ConfigMap> _getSegmentDataList() {
+        List<ConfigMap> rows = super._getSegmentDataList();
+        if (_pendingVisits.size() > 0) {
+            for (EObslogVisit evisit : _pendingVisits) {
+                rows.add(_renderRow(evisit));
+            }
+            _pendingVisits.clear();
+        }
+        return rows;
+    }
+
+    @Override
+    public int getSize() {
+        return super._getSegmentDataList().size() + _pendingVisits.size();
+    }
+
+    /**
+     * Returns a page of rows, rendering only the pending visits that fall on the page.
+     */
+    @Override
+    public List<ConfigMap> getRows(int first, int count) {
+        List<ConfigMap> rendered = super._getSegmentDataList();
+        int from = Math.min(Math.max(first, 0), getSize());
+        int to = Math.min(getSize(), from + Math.max(count, 0));
+
+        List<ConfigMap> page = new ArrayList<ConfigMap>(to - from);
+        for (int i = from; i < to; i++) {
+            page.add((i < rendered.size()) ? rendered.get(i) : _renderRow(_pendingVisits.get(i - rendered.size())));
+        }
+        return page;
+    }
+
+    private ConfigMap _renderRow(EObslogVisit evisit) {
+        synchronized (RENDERED_ROWS) {
+            RenderedRow r = RENDERED_ROWS.get(evisit);
+            if ((r != null) && r.isFor(this)) return r.copyOfRow();
+        }
+
         UniqueConfigMap map = new UniqueConfigMap(evisit, getTableInfo());
 
         _mandatoryDecorations(map);
         decorateObservationData(map);
 
-        // Add them all to the segment data
-        _getSegmentDataList().add(map);
+        // Keep a private copy so that changes to the returned row don't leak into other logs.
+        synchronized (RENDERED_ROWS) {
+            RENDERED_ROWS.put(evisit, new RenderedRow(this, RenderedRow.copy(map)));
+        }
+        return map;
     }
 
     private void _mandatoryDecorations(ConfigMap m) {
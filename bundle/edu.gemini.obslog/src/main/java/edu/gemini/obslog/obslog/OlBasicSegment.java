@@ -91,6 +91,13 @@ public abstract class OlBasicSegment implements IObservingLogSegment {
         return new ArrayList<ConfigMap>(_getSegmentDataList());
     }
 
+    public List<ConfigMap> getRows(int first, int count) {
+        List<ConfigMap> rows = getRows();
+        int from = Math.min(Math.max(first, 0), rows.size());
+        int to = Math.min(rows.size(), from + Math.max(count, 0));
+        return new ArrayList<ConfigMap>(rows.subList(from, to));
+    }
+
     /**
      * This method will merge the segment in the argument onto the current segment if the types are the same.  The rows
      * are added at the end of the target segment
@@ -101,7 +108,7 @@ public abstract class OlBasicSegment implements IObservingLogSegment {
         assert segment != null : "merged segment is null";
         if (segment.getType() != getType()) return false;
 
-        _segmentData.addAll(segment.getRows());
+        _getSegmentDataList().addAll(segment.getRows());
         return true;
     }
 
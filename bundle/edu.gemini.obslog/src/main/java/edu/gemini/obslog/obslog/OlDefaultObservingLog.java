@@ -34,6 +34,31 @@ public class OlDefaultObservingLog implements IObservingLog, Serializable {
         return Collections.unmodifiableList(new ArrayList<IObservingLogSegment>(_getLogSegments()));
     }
 
+    public List<IObservingLogSegment> getLogSegments(int firstRow, int rowCount) {
+        List<IObservingLogSegment> page = new ArrayList<IObservingLogSegment>();
+        int start = 0;
+        int end = firstRow + Math.max(rowCount, 0);
+        for (IObservingLogSegment seg : getLogSegments()) {
+            if (start >= end) break;
+
+            // The part of this segment that is on the page
+            int size = seg.getSize();
+            int from = Math.max(firstRow - start, 0);
+            int to = Math.min(end - start, size);
+            if (from < to) page.add(new OlSegmentPage(seg, from, to - from));
+            start += size;
+        }
+        return page;
+    }
+
+    public int getRowCount() {
+        int count = 0;
+        for (IObservingLogSegment seg : getLogSegments()) {
+            count += seg.getSize();
+        }
+        return count;
+    }
+
     public void setLogSegments(List<IObservingLogSegment> segments) {
         if (segments == null) segments = new ArrayList<IObservingLogSegment>();
         _logSegments = segments;
@@ -0,0 +1,69 @@
+package edu.gemini.obslog.obslog;
+
+import edu.gemini.obslog.config.model.OlLogItem;
+import edu.gemini.obslog.core.OlSegmentType;
+
+import java.util.List;
+
+/**
+ * A read-only view of a range of rows of another segment.  The rows are only obtained from the segment when they
+ * are requested, so a page of a long log can be shown without creating the rows of the other pages.
+ */
+final class OlSegmentPage implements IObservingLogSegment {
+
+    private final IObservingLogSegment _segment;
+    private final int _first;
+    private final int _count;
+
+    OlSegmentPage(IObservingLogSegment segment, int first, int count) {
+        if (segment == null) throw new NullPointerException();
+        _segment = segment;
+        _first = first;
+        _count = count;
+    }
+
+    public String getSegmentCaption() {
+        return _segment.getSegmentCaption();
+    }
+
+    public OlSegmentType getType() {
+        return _segment.getType();
+    }
+
+    public int getSize() {
+        return _count;
+    }
+
+    public List<ConfigMap> getRows() {
+        return _segment.getRows(_first, _count);
+    }
+
+    public List<ConfigMap> getRows(int first, int count) {
+        int from = Math.min(Math.max(first, 0), _count);
+        int to = Math.min(_count, from + Math.max(count, 0));
+        return _segment.getRows(_first + from, to - from);
+    }
+
+    /**
+     * Pages are views of another segment, so nothing can be merged into them.
+     *
+     * @return false
+     */
+    public boolean mergeSegment(IObservingLogSegment segment) {
+        return false;
+    }
+
+    public List<OlLogItem> getTableInfo() {
+        return _segment.getTableInfo();
+    }
+
+    public List<OlLogItem> getVisibleTableInfo() {
+        return _segment.getVisibleTableInfo();
+    }
+
+    public void dump() {
+        for (ConfigMap m : getRows()) {
+            m.dump();
+        }
+    }
+}
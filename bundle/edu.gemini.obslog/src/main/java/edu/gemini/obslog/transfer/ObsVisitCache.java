@@ -0,0 +1,115 @@
+package edu.gemini.obslog.transfer;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.SPComponentType;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.version.LifespanId;
+import edu.gemini.shared.util.VersionVector;
+import edu.gemini.skycalc.ObservingNight;
+import edu.gemini.spModel.obsclass.ObsClass;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the {@link EObslogVisit}s built for each observation so that
+ * reopening a log doesn't expand every visit of every observation again.
+ * An entry is only used while the observation's exec and QA logs are at the
+ * same versions as when the visits were built, so datasets that arrive or
+ * change during the night cause just the affected observation to be redone.
+ */
+final class ObsVisitCache {
+
+    // Maximum number of observations to remember, least recently used first
+    // out.  This comfortably covers a few nights of multi-instrument logs.
+    private static final int MAX_SIZE = 2000;
+
+    private static final Map<SPNodeKey, Entry> CACHE = new LinkedHashMap<SPNodeKey, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SPNodeKey, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private ObsVisitCache() {
+    }
+
+    /**
+     * Everything that determines the visits built for an observation.
+     */
+    static final class Key {
+        private final VersionVector<LifespanId, Integer> _execVersion;
+        private final VersionVector<LifespanId, Integer> _qaVersion;
+        private final SPComponentType _type;
+        private final ObsClass _obsClass;
+        private final long _nightStart;
+        private final long _nightEnd;
+
+        Key(ISPObservation obs, SPComponentType type, ObsClass obsClass, ObservingNight night) {
+            _execVersion = _version(obs.getObsExecLog());
+            _qaVersion   = _version(obs.getObsQaLog());
+            _type        = type;
+            _obsClass    = obsClass;
+            _nightStart  = (night == null) ? -1 : night.getStartTime();
+            _nightEnd    = (night == null) ? -1 : night.getEndTime();
+        }
+
+        private static VersionVector<LifespanId, Integer> _version(ISPNode node) {
+            return (node == null) ? null : node.getVersion();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if ((o == null) || (getClass() != o.getClass())) return false;
+            final Key that = (Key) o;
+            return (_nightStart == that._nightStart) &&
+                   (_nightEnd == that._nightEnd) &&
+                   Objects.equals(_type, that._type) &&
+                   (_obsClass == that._obsClass) &&
+                   Objects.equals(_execVersion, that._execVersion) &&
+                   Objects.equals(_qaVersion, that._qaVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_execVersion, _qaVersion, _type, _obsClass, _nightStart, _nightEnd);
+        }
+    }
+
+    private static final class Entry {
+        private final Key _key;
+        private final List<EObslogVisit> _visits;
+
+        Entry(Key key, List<EObslogVisit> visits) {
+            _key    = key;
+            _visits = visits;
+        }
+    }
+
+    /**
+     * Gets the visits remembered for the observation, if they were built
+     * with the given key.
+     *
+     * @return the visits or <code>null</code> if they must be built again
+     */
+    static List<EObslogVisit> lookup(ISPObservation obs, Key key) {
+        final Entry e;
+        synchronized (CACHE) {
+            e = CACHE.get(obs.getNodeKey());
+        }
+        return ((e == null) || !e._key.equals(key)) ? null : e._visits;
+    }
+
+    /**
+     * Remembers the (unmodifiable) visits built for the observation.
+     */
+    static void store(ISPObservation obs, Key key, List<EObslogVisit> visits) {
+        synchronized (CACHE) {
+            CACHE.put(obs.getNodeKey(), new Entry(key, visits));
+        }
+    }
+}
@@ -39,28 +39,21 @@ public final class ObservationObsVisitsFactory implements Serializable {
 
     private static final Logger LOG = Logger.getLogger(ObservationObsVisitsFactory.class.getName());
 
-    // Object created at class load
-    static private final ObservationObsVisitsFactory _INSTANCE = new ObservationObsVisitsFactory();
-
-    private OlLogOptions _obsLogOptions;
-
     private ObservationObsVisitsFactory() {
-        _obsLogOptions = new OlLogOptions();
     }
 
     /**
-     * With a {@link edu.gemini.spModel.config.IConfigBuilder} build the data for this observation.
+     * With a {@link edu.gemini.spModel.config.IConfigBuilder} build the data for this observation.  The visits are
+     * remembered and reused until the observation's exec or QA log changes.
      *
      * @param obs the {@link edu.gemini.pot.sp.ISPObservation} to be used
-     * @return An instance of this class initialized for the observation
+     * @return An unmodifiable list of the visits of this observation
      * @throws java.rmi.RemoteException thrown when the database is not available
      */
     static public List<EObslogVisit> build(ISPObservation obs, OlLogOptions obsLogOptions)  {
         if (obs == null) throw new NullPointerException("null observation");
         if (obsLogOptions == null) throw new NullPointerException("null obs log options");
 
-        _INSTANCE._obsLogOptions.setOptions(obsLogOptions);
-
         ISPObsComponent inst = SPTreeUtil.findInstrument(obs);
         if (inst == null) {
             LOG.fine("Giving up: no instrument component in: " + obs.getObservationID().toString());
@@ -71,6 +64,13 @@ public final class ObservationObsVisitsFactory implements Serializable {
         SPComponentType type = inst.getType();
 
         ObsClass obsClass = ObsClassService.lookupObsClass(obs);
+        ObservingNight night = obsLogOptions.getLimitConfigDatesByNight();
+
+        // Reuse the visits if nothing that went into them has changed.
+        ObsVisitCache.Key key = new ObsVisitCache.Key(obs, type, obsClass, night);
+        List<EObslogVisit> visits = ObsVisitCache.lookup(obs, key);
+        if (visits != null) return visits;
+
         ObsLog obsLog = ObsLog.getIfExists(obs);
 
         // Check for an observing log component
@@ -80,24 +80,24 @@ public final class ObservationObsVisitsFactory implements Serializable {
             return Collections.emptyList();
         }
 
-        return _INSTANCE._buildSequence(type, obsClass, obsLog);
+        visits = Collections.unmodifiableList(_buildSequence(type, obsClass, obsLog, night));
+        ObsVisitCache.store(obs, key, visits);
+        return visits;
     }
 
     /**
      * The iterator that builds the data
      */
-    private List<EObslogVisit> _buildSequence(SPComponentType type, ObsClass obsClass, ObsLog obsLog) {
+    private static List<EObslogVisit> _buildSequence(SPComponentType type, ObsClass obsClass, ObsLog obsLog, ObservingNight night) {
 
         List<EObslogVisit> eObslogVisits = new ArrayList<EObslogVisit>();
-        OlLogOptions options = _obsLogOptions;
 
         final Option<Instrument> inst = Instrument.fromComponentType(type);
 
         ObsVisit[] visits;
-        if (options.getLimitConfigDatesByNight() == null) {
+        if (night == null) {
             visits = obsLog.getVisits(inst, obsClass);
         } else {
-            ObservingNight night = options.getLimitConfigDatesByNight();
             visits = obsLog.getVisits(inst, obsClass, night.getStartTime(), night.getEndTime());
         }
 
@@ -114,7 +114,7 @@ public final class ObservationObsVisitsFactory implements Serializable {
         return eObslogVisits;
     }
 
-    private List<EObslogVisit> _forOneVisit(SPComponentType type, ObsClass obsClass, ObsLog obsLog, ObsVisit visit) {
+    private static List<EObslogVisit> _forOneVisit(SPComponentType type, ObsClass obsClass, ObsLog obsLog, ObsVisit visit) {
         List<EObslogVisit> eObslogVisits = new ArrayList<EObslogVisit>();
 
         // Add one EObsLogVisit for each unique config
@@ -128,8 +128,9 @@ public final class ObservationObsVisitsFactory implements Serializable {
                 dsets.add(drecord);
             }
 
-            // Create an EObslogVisit with the obslog needed info
-            EObslogVisit evisit = new EObslogVisit(type, obsClass, uc, dsets);
+            // Create an EObslogVisit with the obslog needed info.  Visits are cached and shared, so the dataset
+            // records can't be modified.
+            EObslogVisit evisit = new EObslogVisit(type, obsClass, uc, Collections.unmodifiableList(dsets));
             eObslogVisits.add(evisit);
         }
         return eObslogVisits;
@@ -34,7 +34,18 @@
 
 </p>
 
-<s:iterator value="observingLog.logSegments" id="seg">
+<s:if test="pageCount > 1">
+<p>Page <s:property value="page"/> of <s:property value="pageCount"/>
+    <s:if test="page > 1">
+        <a href='<s:url value="fetchPlan.action" includeParams="none"><s:param name="planID" value="planID"/><s:param name="pageSize" value="pageSize"/><s:param name="page" value="page - 1"/></s:url>'>previous</a>
+    </s:if>
+    <s:if test="page < pageCount">
+        <a href='<s:url value="fetchPlan.action" includeParams="none"><s:param name="planID" value="planID"/><s:param name="pageSize" value="pageSize"/><s:param name="page" value="page + 1"/></s:url>'>next</a>
+    </s:if>
+</p>
+</s:if>
+
+<s:iterator value="logSegments" id="seg">
     <table class="log" id="rowID">
         <caption><s:property value='segmentCaption'/></caption>
         <thead>
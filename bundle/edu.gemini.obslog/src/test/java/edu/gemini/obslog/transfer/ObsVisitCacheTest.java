@@ -0,0 +1,134 @@
+package edu.gemini.obslog.transfer;
+
+import edu.gemini.obslog.config.model.OlBasicLogItem;
+import edu.gemini.obslog.config.model.OlLogItem;
+import edu.gemini.obslog.instruments.NIRILogSegment;
+import edu.gemini.obslog.obslog.ConfigMap;
+import edu.gemini.obslog.obslog.ConfigMapUtil;
+import edu.gemini.obslog.obslog.InstrumentLogSegment;
+import edu.gemini.obslog.obslog.OlLogOptions;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.Instrument;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.shared.util.immutable.Some;
+import edu.gemini.spModel.config2.DefaultConfig;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.dataset.Dataset;
+import edu.gemini.spModel.dataset.DatasetLabel;
+import edu.gemini.spModel.event.EndDatasetEvent;
+import edu.gemini.spModel.event.StartDatasetEvent;
+import edu.gemini.spModel.event.StartVisitEvent;
+import edu.gemini.spModel.obslog.ObsLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the visits cached per observation and the rows cached per visit are reused only until the
+ * observation's exec log changes, and that cached rows can't be modified through a log.
+ */
+public final class ObsVisitCacheTest {
+
+    private static final long START = 1446336000000L;
+
+    private final List<OlLogItem> _items = Collections.<OlLogItem>singletonList(new OlBasicLogItem("filter"));
+    private final OlLogOptions _options = new OlLogOptions();
+
+    private IDBDatabaseService _odb;
+    private ISPObservation _obs;
+
+    @Before
+    public void setUp() throws Exception {
+        _odb = DBLocalDatabase.createTransient();
+        final ISPProgram prog = _odb.getFactory().createProgram(new SPNodeKey(), SPProgramID.toProgramID("GN-2015B-Q-1"));
+        _odb.put(prog);
+        _obs = _odb.getFactory().createObservation(prog, new Some<>(Instrument.Niri), null);
+        prog.addObservation(_obs);
+    }
+
+    @After
+    public void tearDown() {
+        _odb.getDBAdmin().shutdown();
+    }
+
+    // Records the execution of a dataset, which edits the observation's exec log.
+    private void _execDataset(final int index) {
+        final DatasetLabel label = new DatasetLabel(_obs.getObservationID(), index);
+        final long time = START + index * 1000;
+        ObsLog.update(_odb, _obs.getObservationID(), (obs, log) -> {
+            if (index == 1) {
+                log.execLogDataObject.getRecord().addEvent(new StartVisitEvent(time, obs.getObservationID()), null);
+            }
+            log.execLogDataObject.getRecord().addEvent(new StartDatasetEvent(time + 1, new Dataset(label, "N20151101S000" + index, time + 1)), new DefaultConfig());
+            log.execLogDataObject.getRecord().addEvent(new EndDatasetEvent(time + 2, label), null);
+        });
+    }
+
+    private List<ConfigMap> _rows(List<EObslogVisit> visits) {
+        final InstrumentLogSegment seg = new NIRILogSegment(_items, _options);
+        for (EObslogVisit v : visits) seg.addObservationData(v);
+        return seg.getRows();
+    }
+
+    private static List<String> _labels(List<ConfigMap> rows) {
+        final List<String> labels = new ArrayList<>();
+        for (ConfigMap row : rows) labels.add(row.sget(ConfigMapUtil.DATA_LABELS_ITEM_NAME));
+        return labels;
+    }
+
+    @Test
+    public void testVisitsReusedWhileLogUnchanged() {
+        _execDataset(1);
+        final List<EObslogVisit> visits = ObservationObsVisitsFactory.build(_obs, _options);
+        assertEquals(1, visits.size());
+        assertSame(visits, ObservationObsVisitsFactory.build(_obs, _options));
+    }
+
+    @Test
+    public void testExecLogEditInvalidatesVisitsAndRows() {
+        _execDataset(1);
+        final List<EObslogVisit> before = ObservationObsVisitsFactory.build(_obs, _options);
+        assertEquals(Collections.singletonList("1"), _labels(_rows(before)));
+
+        _execDataset(2);
+        final List<EObslogVisit> after = ObservationObsVisitsFactory.build(_obs, _options);
+        assertNotSame(before, after);
+
+        // The rows are rendered again and include the new dataset.
+        final List<String> labels = _labels(_rows(after));
+        assertNotEquals(Collections.singletonList("1"), labels);
+        assertTrue(labels.toString(), labels.toString().contains("2"));
+    }
+
+    @Test
+    public void testCachedRowsAreCopied() {
+        _execDataset(1);
+        final List<EObslogVisit> visits = ObservationObsVisitsFactory.build(_obs, _options);
+
+        final List<ConfigMap> first = _rows(visits);
+        final ConfigMap original = new ConfigMap();
+        original.putAll(first.get(0));
+        first.get(0).put(ConfigMapUtil.DATA_LABELS_ITEM_NAME, "edited");
+        first.get(0).put("extra", "value");
+
+        // Served from the row cache, but unaffected by the edits to the first log.
+        final List<ConfigMap> second = _rows(visits);
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(original, second.get(0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedVisitsAreReadOnly() {
+        _execDataset(1);
+        ObservationObsVisitsFactory.build(_obs, _options).get(0).getDatasetRecords().clear();
+    }
+}
@@ -13,6 +13,7 @@ import edu.gemini.spModel.gemini.calunit.smartgcal.CalibrationProviderHolder;
 import edu.gemini.spModel.gemini.gems.Gems;
 import edu.gemini.spModel.gemini.obscomp.SPProgram;
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality;
+import edu.gemini.spModel.obs.ObsContextService;
 import edu.gemini.spModel.obs.SPObservation;
 import edu.gemini.spModel.obs.SchedulingBlock;
 import edu.gemini.spModel.obs.context.ObsContext;
@@ -212,8 +213,10 @@ public class ObservationElements implements Serializable {
     }
 
 
+    // The data objects are only examined by the rules, so there is no need to
+    // copy them.
     private Object _getDataObject(ISPNode node) {
-        return (node == null) ? null : node.getDataObject();
+        return (node == null) ? null : node.getReadOnlyDataObject();
     }
 
     /**
@@ -223,9 +226,9 @@ public class ObservationElements implements Serializable {
         ISPNode parent = node.getParent();
 
         if (parent == null) { //no parent, this might be the Program
-            Object o = node.getDataObject();
+            Object o = _getDataObject(node);
             if (o instanceof SPProgram && node instanceof ISPProgram) {
-                _program = (SPProgram)node.getDataObject();
+                _program = (SPProgram) o;
                 _programNode = (ISPProgram)node;
             }
             return;
@@ -242,7 +245,7 @@ public class ObservationElements implements Serializable {
      * no instrument
      */
     public Option<ObsContext> getObsContext() {
-        return ObsContext.create(_observationNode);
+        return ObsContextService.lookupObsContext(_observationNode);
     }
 
     public boolean isTemplate()  {
@@ -181,6 +181,24 @@ public interface ISPNode {
      */
     ISPDataObject getDataObject();
 
+    /**
+     * Returns the data object for this node without copying it.  This is
+     * intended for code that only reads the data object, such as query
+     * functors that visit every observation in the database, and avoids the
+     * clone implied by {@link #getDataObject()}.
+     *
+     * <p>The returned object is shared with the node and with any other
+     * caller, so it must not be modified.  The node never modifies a data
+     * object once stored, it only replaces it, so the result remains a
+     * consistent snapshot of the node's data at the time of the call even if
+     * the node is updated afterwards.  Use {@link #getDataObject()} to obtain
+     * a copy that may be edited and passed to {@link #setDataObject}.
+     *
+     * @return the data object for the node, which must be treated as
+     * read-only
+     */
+    ISPDataObject getReadOnlyDataObject();
+
     /**
      * Replaces the data object for this node.  This is a convenience method
      * that allows direct access to the "DataObject" client data.  It is
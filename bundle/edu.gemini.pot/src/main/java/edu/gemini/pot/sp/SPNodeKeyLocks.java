@@ -1,8 +1,12 @@
 package edu.gemini.pot.sp;
 
+import edu.gemini.pot.spdb.DBMetrics;
+import edu.gemini.shared.util.metrics.Histogram;
+import edu.gemini.shared.util.metrics.Metrics;
+
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -12,25 +16,115 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public enum SPNodeKeyLocks {
     instance;
 
-    private Map<SPNodeKey, ReentrantReadWriteLock> locks = new HashMap<SPNodeKey, ReentrantReadWriteLock>();
+    private static final Histogram READ_WAIT  = DBMetrics.instance.histogram(DBMetrics.LOCK_READ_WAIT);
+    private static final Histogram READ_HOLD  = DBMetrics.instance.histogram(DBMetrics.LOCK_READ_HOLD);
+    private static final Histogram WRITE_WAIT = DBMetrics.instance.histogram(DBMetrics.LOCK_WRITE_WAIT);
+    private static final Histogram WRITE_HOLD = DBMetrics.instance.histogram(DBMetrics.LOCK_WRITE_HOLD);
+
+    /**
+     * A lock that remembers when its current writer first took it, for the
+     * hold time metrics.  Only the writer touches the field.
+     */
+    private static final class KeyLock extends ReentrantReadWriteLock {
+        long writeStart;
+    }
+
+    /**
+     * When the current thread first took each read lock it holds.  A thread
+     * seldom holds more than a couple of program locks at once, so a short
+     * array scanned from the end is cheaper than a map and needs no boxing.
+     */
+    private static final class ReadHolds {
+        private KeyLock[] locks = new KeyLock[4];
+        private long[] starts   = new long[4];
+        private int size;
+
+        void push(KeyLock l, long start) {
+            if (size == locks.length) {
+                locks  = Arrays.copyOf(locks,  size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            locks[size]  = l;
+            starts[size] = start;
+            ++size;
+        }
+
+        int indexOf(KeyLock l) {
+            for (int i = size - 1; i >= 0; --i) if (locks[i] == l) return i;
+            return -1;
+        }
+
+        /** Removes the entry at the given index and returns its start time. */
+        long remove(int i) {
+            final long start = starts[i];
+            --size;
+            System.arraycopy(locks,  i + 1, locks,  i, size - i);
+            System.arraycopy(starts, i + 1, starts, i, size - i);
+            locks[size] = null;
+            return start;
+        }
+    }
+
+    private static final ThreadLocal<ReadHolds> READ_HOLDS = ThreadLocal.withInitial(ReadHolds::new);
+
+    private Map<SPNodeKey, KeyLock> locks = new HashMap<SPNodeKey, KeyLock>();
 
-    private synchronized ReentrantReadWriteLock getLock(SPNodeKey key) {
-        ReentrantReadWriteLock l = locks.get(key);
+    private synchronized KeyLock getLock(SPNodeKey key) {
+        KeyLock l = locks.get(key);
         if (l == null) {
-            l = new ReentrantReadWriteLock();
+            l = new KeyLock();
             locks.put(key, l);
         }
         return l;
     }
 
-    private Lock getReadLock(SPNodeKey key)  { return getLock(key).readLock();  }
-    private Lock getWriteLock(SPNodeKey key) { return getLock(key).writeLock(); }
+    // Only the outermost acquisition is timed; reentrant ones don't wait and
+    // are part of the outermost hold.
 
-    public void readLock(SPNodeKey key)     { getReadLock(key).lock();   }
-    public void readUnlock(SPNodeKey key)   { getReadLock(key).unlock(); }
+    public void readLock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (l.getReadHoldCount() > 0) {
+            l.readLock().lock();
+        } else {
+            final long start = System.nanoTime();
+            l.readLock().lock();
+            final long now = System.nanoTime();
+            READ_WAIT.record((now - start) / 1000);
+            READ_HOLDS.get().push(l, now);
+        }
+    }
 
-    public void writeLock(SPNodeKey key)    { getWriteLock(key).lock();   }
-    public void writeUnlock(SPNodeKey key)  { getWriteLock(key).unlock(); }
+    public void readUnlock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        final boolean outermost = l.getReadHoldCount() == 1;
+        l.readLock().unlock();
+        if (outermost) {
+            final ReadHolds holds = READ_HOLDS.get();
+            final int i = holds.indexOf(l);
+            if (i >= 0) Metrics.recordTime(READ_HOLD, holds.remove(i));
+        }
+    }
+
+    public void writeLock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        if (l.isWriteLockedByCurrentThread()) {
+            l.writeLock().lock();
+        } else {
+            final long start = System.nanoTime();
+            l.writeLock().lock();
+            final long now = System.nanoTime();
+            WRITE_WAIT.record((now - start) / 1000);
+            l.writeStart = now;
+        }
+    }
+
+    public void writeUnlock(SPNodeKey key) {
+        final KeyLock l = getLock(key);
+        final boolean outermost = l.getWriteHoldCount() == 1;
+        final long start = l.writeStart;
+        l.writeLock().unlock();
+        if (outermost) Metrics.recordTime(WRITE_HOLD, start);
+    }
 
     /**
      * Returns <code>true</code> if the current thread has a write lock for the
@@ -31,7 +31,9 @@ public class DocumentData implements Serializable {
     private final LifespanId lifespanId;
 
     private final Map<Object, Object> _programClientData;
-    private scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions = JavaVersionMapOps.emptyVersionMap();
+    // Kept packed since programs may have tens of thousands of nodes.  See
+    // PackedVersionMap.
+    private scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions = JavaVersionMapOps.emptyPackedVersionMap();
 
     // The last modification timestamp.
     private long _lastModified;
@@ -124,7 +126,7 @@ public class DocumentData implements Serializable {
     void setVersions(scala.collection.immutable.Map<SPNodeKey, VersionVector<LifespanId, Integer>> versions) {
         getProgramWriteLock();
         try {
-            this.versions = versions;
+            this.versions = JavaVersionMapOps.pack(versions);
         } finally {
             returnProgramWriteLock();
         }
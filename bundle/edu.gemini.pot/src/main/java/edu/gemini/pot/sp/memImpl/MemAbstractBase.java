@@ -76,16 +76,12 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
     protected MemAbstractBase(DocumentData docData, ISPNode node, boolean preserveKeys) {
         this(docData, preserveKeys ? node.getNodeKey() : (node instanceof ISPRootNode ? docData.getDocumentKey() : new SPNodeKey()));
 
-        // Copy the client data.  Clone the objects that are cloneable, add a
-        // reference to the ones that aren't.
+        // Copy the client data.  putClientData stores a clone of the objects
+        // that are cloneable and a reference to the ones that aren't.
         Set<String> nameSet = node.getClientDataKeys();
         if (nameSet != null) {
             for (String key : nameSet) {
-                Object value = node.getClientData(key);
-                if (value instanceof ISPCloneable) {
-                    value = ((ISPCloneable) value).clone();
-                }
-                putClientData(key, value);
+                putClientData(key, node.getClientData(key));
             }
         }
     }
@@ -365,6 +361,15 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
         return (ISPDataObject) getClientData(DATA_OBJECT_KEY);
     }
 
+    public ISPDataObject getReadOnlyDataObject() {
+        getProgramReadLock();
+        try {
+            return (ISPDataObject) _clientData.get(DATA_OBJECT_KEY);
+        } finally {
+            returnProgramReadLock();
+        }
+    }
+
     public PropagationId setDataObject(ISPDataObject newValue) {
         return setDataObject(newValue, false);
     }
@@ -489,7 +494,9 @@ public abstract class MemAbstractBase implements ISPNode, Serializable {
                 throw new IllegalArgumentException("Primary data object (client data object " + DATA_OBJECT_KEY + ") must implement ISPDataObject.");
             }
 
-            Object oldValue = copyClientData(_clientData.get(name));
+            // The node lets go of the old value, so there's no need to copy it
+            // before handing it to listeners.
+            Object oldValue = _clientData.get(name);
             Object newValue = copyClientData(obj);
             if (oldValue == newValue) {
                 // copy didn't work
@@ -304,6 +304,7 @@ public final class DBLocalDatabase implements IDBDatabaseService {
 
         WithPriority.exec(functor.getPriority(), new Runnable() {
             public void run() {
+                final long start = System.nanoTime();
                 FunctorLogger.Handback hb = _dataMan.functorLogger.logStart(functor);
                 try {
                     functor.execute(DBLocalDatabase.this, node, ps);
@@ -311,6 +312,7 @@ public final class DBLocalDatabase implements IDBDatabaseService {
                     functor.setException(ex);
                 }
                 _dataMan.functorLogger.logEnd(functor, hb);
+                DBMetrics.instance.recordTime(DBMetrics.FUNCTOR + functor.getClass().getName(), start);
 
             }
         });
@@ -0,0 +1,104 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.shared.util.metrics.Histogram;
+import edu.gemini.shared.util.metrics.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Histograms of the time spent in the hot paths of the database, by name.
+ * Names are made of a prefix that identifies what is measured (see the
+ * constants below) followed by a qualifier such as a functor class name.
+ * Timings are recorded in microseconds.
+ *
+ * <p>The histograms live in the shared {@link Metrics} registry, so that
+ * lower level bundles such as TRPC can record into it without depending on
+ * the database.  All of it, not only the histograms named here, is available
+ * through JMX under {@link #OBJECT_NAME} once {@link #register} has been
+ * called, which the bundle activator does.</p>
+ */
+public enum DBMetrics implements DBMetricsMXBean {
+    instance;
+
+    private static final Logger LOG = Logger.getLogger(DBMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "edu.gemini.pot.spdb:type=DBMetrics";
+
+    /** Execution of a functor run with {@link IDBDatabaseService#execute}. */
+    public static final String FUNCTOR = "functor.";
+
+    /** Execution of a query functor over all of its nodes. */
+    public static final String QUERY = "query.";
+
+    /** Time waiting for, and holding, program read and write locks. */
+    public static final String LOCK_READ_WAIT  = "lock.read.wait";
+    public static final String LOCK_READ_HOLD  = "lock.read.hold";
+    public static final String LOCK_WRITE_WAIT = "lock.write.wait";
+    public static final String LOCK_WRITE_HOLD = "lock.write.hold";
+
+    /** Time to store the modified programs, and how many there were. */
+    public static final String STORAGE_FLUSH = "storage.flush";
+    public static final String STORAGE_DIRTY = "storage.dirty";
+
+    /**
+     * Gets the histogram with the given name, creating it if necessary.
+     */
+    public Histogram histogram(String name) {
+        return Metrics.instance.histogram(name);
+    }
+
+    /**
+     * Records a value in the named histogram.
+     */
+    public void record(String name, long value) {
+        Metrics.instance.record(name, value);
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, a value
+     * obtained from {@link System#nanoTime}, in the named histogram.
+     */
+    public void recordTime(String name, long startNanos) {
+        Metrics.instance.recordTime(name, startNanos);
+    }
+
+    @Override public Map<String, Histogram.Summary> getHistograms() {
+        return Metrics.instance.summarize();
+    }
+
+    @Override public void reset() {
+        Metrics.instance.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, if not already
+     * registered.
+     */
+    public void register() {
+        try {
+            final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName   on = new ObjectName(OBJECT_NAME);
+            if (!mbs.isRegistered(on)) mbs.registerMBean(this, on);
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Could not register database metrics with JMX", ex);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered.
+     */
+    public void unregister() {
+        try {
+            final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName   on = new ObjectName(OBJECT_NAME);
+            if (mbs.isRegistered(on)) mbs.unregisterMBean(on);
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Could not unregister database metrics from JMX", ex);
+        }
+    }
+}
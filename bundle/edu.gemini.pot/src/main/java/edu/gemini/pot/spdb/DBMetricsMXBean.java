@@ -0,0 +1,21 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.shared.util.metrics.Histogram;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link DBMetrics}.
+ */
+public interface DBMetricsMXBean {
+
+    /**
+     * Summaries of all the histograms by name.  Timings are in microseconds.
+     */
+    Map<String, Histogram.Summary> getHistograms();
+
+    /**
+     * Clears all the histograms, for example before measuring a change.
+     */
+    void reset();
+}
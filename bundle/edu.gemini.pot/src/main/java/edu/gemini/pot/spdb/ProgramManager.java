@@ -15,27 +15,52 @@ import java.util.logging.Logger;
  * to all the programs in the database are kept.  It provides access to those
  * programs and support for listening to changes when programs are added or
  * removed.
+ *
+ * <p>The programs are kept in an immutable {@link Registry} that is replaced
+ * whenever a program is added or removed, so lookups and listing the
+ * programs never wait for a lock.  Changes are serialized on the manager
+ * itself.</p>
  */
 final class ProgramManager<N extends ISPRootNode> {
     private static final Logger LOG = Logger.getLogger(ProgramManager.class.getName());
 
+    /**
+     * A snapshot of the programs, indexed by key and by id.  Never modified
+     * once created.
+     */
+    private static final class Registry<N extends ISPRootNode> {
+        final SortedMap<SPNodeKey, N> progKeyMap;
+        final Map<SPProgramID, N>     progIdMap;
+        final List<N>                 programs;   // in key order
+
+        Registry(SortedMap<SPNodeKey, N> progKeyMap, Map<SPProgramID, N> progIdMap) {
+            this.progKeyMap = Collections.unmodifiableSortedMap(progKeyMap);
+            this.progIdMap  = Collections.unmodifiableMap(progIdMap);
+            this.programs   = Collections.unmodifiableList(new ArrayList<>(progKeyMap.values()));
+        }
+
+        static <N extends ISPRootNode> Registry<N> empty() {
+            return new Registry<>(new TreeMap<>(), new HashMap<>());
+        }
+    }
+
     private final List<ProgramEventListener<N>> _listeners;  // Can't use EventSupport with non-public inf.
-    private final Map<SPNodeKey, N>   _progKeyMap;
-    private final Map<SPProgramID, N> _progIdMap;
+    private volatile Registry<N> _registry;
 
     /**
      * Constructs with the initial collection of programs.
      */
     ProgramManager(Collection<N> progCollection) {
         _listeners  = new ArrayList<>();
-        _progKeyMap = new TreeMap<>();
-        _progIdMap  = new TreeMap<>();
 
+        final TreeMap<SPNodeKey, N> progKeyMap = new TreeMap<>();
+        final Map<SPProgramID, N>   progIdMap  = new HashMap<>();
         for (N prog : progCollection) {
-            _progKeyMap.put(prog.getProgramKey(), prog);
+            progKeyMap.put(prog.getProgramKey(), prog);
             final SPProgramID progId = prog.getProgramID();
-            if (progId != null) _progIdMap.put(progId, prog);
+            if (progId != null) progIdMap.put(progId, prog);
         }
+        _registry = new Registry<>(progKeyMap, progIdMap);
     }
 
     /**
@@ -106,11 +131,11 @@ final class ProgramManager<N extends ISPRootNode> {
      * Fetches the named program if the <code>ProgramManager</code>
      * knows of it; returns <code>null</code> otherwise.
      */
-    synchronized N lookupProgram(SPNodeKey progKey) {
-        return _progKeyMap.get(progKey);
+    N lookupProgram(SPNodeKey progKey) {
+        return _registry.progKeyMap.get(progKey);
     }
 
-    synchronized SPNodeKey lookupProgramKey(SPProgramID progID) {
+    SPNodeKey lookupProgramKey(SPProgramID progID) {
         final N prog = lookupProgramByID(progID);
         return (prog == null) ? null : prog.getProgramKey();
     }
@@ -118,8 +143,8 @@ final class ProgramManager<N extends ISPRootNode> {
     /**
      * Fetches the named program if found; returns <code>null</code> otherwise
      */
-    synchronized N lookupProgramByID(SPProgramID progID) {
-        return (progID == null) ? null : _progIdMap.get(progID);
+    N lookupProgramByID(SPProgramID progID) {
+        return (progID == null) ? null : _registry.progIdMap.get(progID);
     }
 
     /**
@@ -131,25 +156,30 @@ final class ProgramManager<N extends ISPRootNode> {
         final SPProgramID id = newProg.getProgramID();
         final N oldProg;
         synchronized (this) {
-            final N tmp0 = _progKeyMap.get(key);
+            final Registry<N> reg = _registry;
+            final N tmp0 = reg.progKeyMap.get(key);
             if (tmp0 == newProg) return null; // already present, do nothing
             oldProg = tmp0;
 
             // If some other program has the same id, we cannot add newProg
             if (id != null) {
-                final N tmp1 = _progIdMap.get(id);
+                final N tmp1 = reg.progIdMap.get(id);
                 if ((tmp1 != null) && (tmp1 != oldProg)) {
                     throw new DBIDClashException(id, tmp1.getProgramKey(), key);
                 }
             }
 
+            final TreeMap<SPNodeKey, N> progKeyMap = new TreeMap<>(reg.progKeyMap);
+            final Map<SPProgramID, N>   progIdMap  = new HashMap<>(reg.progIdMap);
+
             // Whatever the existing program's id was, we are removing it now
             if ((oldProg != null) && (oldProg.getProgramID() != null)) {
-                _progIdMap.remove(oldProg.getProgramID());
+                progIdMap.remove(oldProg.getProgramID());
             }
 
-            _progKeyMap.put(key, newProg);
-            if (id != null) _progIdMap.put(id, newProg);
+            progKeyMap.put(key, newProg);
+            if (id != null) progIdMap.put(id, newProg);
+            _registry = new Registry<>(progKeyMap, progIdMap);
         }
 
         _fireProgramEvent(oldProg, newProg);
@@ -166,10 +196,16 @@ final class ProgramManager<N extends ISPRootNode> {
     boolean removeProgram(SPNodeKey key) {
         final N prog;
         synchronized (this) {
-            prog = _progKeyMap.remove(key);
+            final Registry<N> reg = _registry;
+            prog = reg.progKeyMap.get(key);
             if (prog == null) return false;
+
+            final TreeMap<SPNodeKey, N> progKeyMap = new TreeMap<>(reg.progKeyMap);
+            final Map<SPProgramID, N>   progIdMap  = new HashMap<>(reg.progIdMap);
+            progKeyMap.remove(key);
             final SPProgramID id = prog.getProgramID();
-            if (id != null) _progIdMap.remove(id);
+            if (id != null) progIdMap.remove(id);
+            _registry = new Registry<>(progKeyMap, progIdMap);
         }
 
         _fireProgramEvent(prog, null);
@@ -177,18 +213,18 @@ final class ProgramManager<N extends ISPRootNode> {
     }
 
     /**
-     * Fetches a <code>List</code> of the available programs.  The list may
-     * be freely modified by the caller.
+     * Fetches a <code>List</code> of the available programs, ordered by key.
+     * The list is an unmodifiable snapshot that is not affected by programs
+     * added or removed later.
      */
-    synchronized List<N> getPrograms() {
-        return new ArrayList<>(_progKeyMap.values());
+    List<N> getPrograms() {
+        return _registry.programs;
     }
 
     /**
      * Shuts down the program manager, un-exporting all of its programs.
      */
     synchronized void shutdown() {
-        _progKeyMap.clear();
-        _progIdMap.clear();
+        _registry = Registry.empty();
     }
 }
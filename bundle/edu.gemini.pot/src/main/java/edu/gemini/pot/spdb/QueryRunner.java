@@ -68,6 +68,7 @@ final class QueryRunner implements IDBQueryRunner {
     <T extends IDBQueryFunctor> T _doQuery(final List<? extends ISPNode> nodeList, final T queryFunctor) {
         WithPriority.exec(queryFunctor.getPriority(), () -> {
             Iterator<? extends ISPNode> it = nodeList.iterator();
+            final long start = System.nanoTime();
             FunctorLogger.Handback hb = _dataMan.functorLogger.logQueryStart(queryFunctor);
             try {
                 queryFunctor.init();
@@ -81,6 +82,7 @@ final class QueryRunner implements IDBQueryRunner {
                 queryFunctor.setException(ex);
             }
             _dataMan.functorLogger.logQueryEnd(queryFunctor, hb);
+            DBMetrics.instance.recordTime(DBMetrics.QUERY + queryFunctor.getClass().getName(), start);
         });
         return queryFunctor;
     }
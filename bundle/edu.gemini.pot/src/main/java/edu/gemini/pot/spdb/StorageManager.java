@@ -10,6 +10,7 @@ package edu.gemini.pot.spdb;
 import edu.gemini.pot.sp.ISPRootNode;
 import edu.gemini.spModel.core.SPProgramID;
 
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -201,13 +202,20 @@ final class StorageManager<N extends ISPRootNode> implements ProgramEventListene
      * Stores all the modified programs, if any.
      */
     private void _storeDirtyPrograms() {
-        for (N n : _dirty.getDirtyPrograms()) {
+        final long start = System.nanoTime();
+        final List<N> dirty = _dirty.getDirtyPrograms();
+        if (dirty.isEmpty()) return;
+
+        for (N n : dirty) {
             try {
                 _persister.store(n);
             } catch (Exception ex) {
                 log(n, ex);
             }
         }
+
+        DBMetrics.instance.record(DBMetrics.STORAGE_DIRTY, dirty.size());
+        DBMetrics.instance.recordTime(DBMetrics.STORAGE_FLUSH, start);
     }
 
     /**
@@ -1,6 +1,7 @@
 package edu.gemini.pot.spdb.osgi;
 
 import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.DBMetrics;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.pot.spdb.IDBQueryRunner;
 import edu.gemini.util.BundleProperties;
@@ -39,6 +40,8 @@ public class Activator implements BundleActivator {
 
     public void start(BundleContext context) throws Exception {
 
+        DBMetrics.instance.register();
+
         // Get the mode and dbDir. Both will be non-null.
         BundleProperties props = new BundleProperties(context);
         final Mode mode = props.getEnum(BUNDLE_PROP_MODE, Mode.DEFAULT, Mode.class);
@@ -62,6 +65,7 @@ public class Activator implements BundleActivator {
             if (loader != null) loader.stop();
         } finally {
             loader = null;
+            DBMetrics.instance.unregister();
         }
     }
 
@@ -8,7 +8,7 @@ import edu.gemini.spModel.config2.Config;
 import edu.gemini.spModel.config2.ConfigSequence;
 import edu.gemini.spModel.config2.ItemKey;
 import edu.gemini.spModel.data.config.*;
-import edu.gemini.spModel.obs.context.ObsContext;
+import edu.gemini.spModel.obs.ObsContextService;
 import edu.gemini.spModel.target.obsComp.GuideSequence;
 
 import java.util.Collection;
@@ -121,6 +121,6 @@ public final class ConfigBridge {
 
         // Post-process to fix guiding for offset positions as required by the
         // seqexec. :-(
-        return (new GuideSequence(ObsContext.create(obs))).postProcessSequence(configSeq);
+        return (new GuideSequence(ObsContextService.lookupObsContext(obs))).postProcessSequence(configSeq);
     }
 }
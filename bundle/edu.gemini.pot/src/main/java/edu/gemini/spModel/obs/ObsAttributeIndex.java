@@ -0,0 +1,284 @@
+package edu.gemini.spModel.obs;
+
+import edu.gemini.pot.sp.ISPObsComponent;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPComponentBroadType;
+import edu.gemini.pot.sp.SPComponentType;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.spdb.ProgramEvent;
+import edu.gemini.pot.spdb.ProgramEventListener;
+import edu.gemini.spModel.ao.AOConstants;
+import edu.gemini.spModel.ao.AOTreeUtil;
+import edu.gemini.spModel.core.ProgramId;
+import edu.gemini.spModel.core.ProgramId$;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.altair.AltairParams;
+import edu.gemini.spModel.gemini.altair.InstAltair;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import edu.gemini.spModel.obsclass.ObsClass;
+import edu.gemini.spModel.target.SPTarget;
+import edu.gemini.spModel.target.env.TargetEnvironment;
+import edu.gemini.spModel.target.obsComp.TargetObsComp;
+import edu.gemini.spModel.too.Too;
+import edu.gemini.spModel.too.TooType;
+import edu.gemini.spModel.util.SPTreeUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A secondary index of the attributes that observation queries most often
+ * filter on, kept for each program in a database.  Query functors can check
+ * these values instead of cloning the data objects of every observation of
+ * every program on each query.
+ *
+ * <p>The attributes of a program are extracted when it is first looked up
+ * and reused until the program's version map changes.  Programs that are
+ * removed from or replaced in the database are dropped as the corresponding
+ * {@link ProgramEvent}s arrive.</p>
+ */
+public final class ObsAttributeIndex implements ProgramEventListener<ISPProgram> {
+
+    private static final Map<IDBDatabaseService, ObsAttributeIndex> INDICES = new WeakHashMap<>();
+
+    /**
+     * Gets the index for the given database, creating it and registering it
+     * for program events the first time it is requested.
+     */
+    public static ObsAttributeIndex forDatabase(IDBDatabaseService db) {
+        synchronized (INDICES) {
+            ObsAttributeIndex index = INDICES.get(db);
+            if (index == null) {
+                index = new ObsAttributeIndex();
+                db.addProgramEventListener(index);
+                INDICES.put(db, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Gets the attributes of the given program, using the index for the
+     * database if there is one.
+     *
+     * @param db database containing the program, or <code>null</code> to
+     * simply extract the attributes
+     */
+    public static ProgramAttributes lookup(IDBDatabaseService db, ISPProgram prog) {
+        return (db == null) ? ProgramAttributes.extract(prog) : forDatabase(db).lookup(prog);
+    }
+
+    /**
+     * The indexed attributes of a program and its observations.
+     */
+    public static final class ProgramAttributes {
+        private final ISPProgram program;
+        private final Object versions;
+        private final String title;
+        private final String semester;
+        private final String queueBand;
+        private final List<ObsAttributes> observations;
+
+        private ProgramAttributes(ISPProgram program, Object versions, String title, String semester,
+                                  String queueBand, List<ObsAttributes> observations) {
+            this.program      = program;
+            this.versions     = versions;
+            this.title        = title;
+            this.semester     = semester;
+            this.queueBand    = queueBand;
+            this.observations = observations;
+        }
+
+        static ProgramAttributes extract(ISPProgram prog) {
+            // Get the versions first so that an update made while extracting
+            // is noticed on the next lookup.
+            final Object versions = prog.getVersions();
+            final SPProgram spProg = (SPProgram) prog.getDataObject();
+
+            final List<ObsAttributes> obs = new ArrayList<>();
+            for (ISPObservation o : prog.getAllObservations()) obs.add(ObsAttributes.extract(o));
+
+            return new ProgramAttributes(prog, versions,
+                    (spProg == null) ? null : spProg.getTitle(),
+                    scienceSemester(prog.getProgramID()),
+                    (spProg == null) ? null : spProg.getQueueBand(),
+                    Collections.unmodifiableList(obs));
+        }
+
+        private static String scienceSemester(SPProgramID progId) {
+            if (progId == null) return null;
+            final ProgramId pid = ProgramId$.MODULE$.parse(progId.stringValue());
+            return (pid instanceof ProgramId.Science) ? ((ProgramId.Science) pid).semester().toString() : null;
+        }
+
+        boolean isCurrent(ISPProgram prog) {
+            final Object cur = prog.getVersions();
+            return (program == prog) && ((versions == cur) || versions.equals(cur));
+        }
+
+        public ISPProgram getProgram() { return program; }
+
+        /** Program title, if any. */
+        public String getTitle() { return title; }
+
+        /** Semester of a science program, or <code>null</code> for other programs. */
+        public String getSemester() { return semester; }
+
+        /** Queue band, if any. */
+        public String getQueueBand() { return queueBand; }
+
+        /** Attributes of all the observations of the program, in program order. */
+        public List<ObsAttributes> getObservations() { return observations; }
+    }
+
+    /**
+     * The indexed attributes of an observation.
+     */
+    public static final class ObsAttributes {
+        private final ISPObservation observation;
+        private final String title;
+        private final ObservationStatus status;
+        private final ObsClass obsClass;
+        private final TooType tooType;
+        private final AOConstants.AO ao;
+        private final List<SPComponentType> instruments;
+        private final String targetName;
+        private final List<String> targetNames;
+
+        private ObsAttributes(ISPObservation observation, String title, ObservationStatus status,
+                              ObsClass obsClass, TooType tooType, AOConstants.AO ao,
+                              List<SPComponentType> instruments, String targetName, List<String> targetNames) {
+            this.observation = observation;
+            this.title       = title;
+            this.status      = status;
+            this.obsClass    = obsClass;
+            this.tooType     = tooType;
+            this.ao          = ao;
+            this.instruments = instruments;
+            this.targetName  = targetName;
+            this.targetNames = targetNames;
+        }
+
+        static ObsAttributes extract(ISPObservation o) {
+            final SPObservation spObs = (SPObservation) o.getDataObject();
+
+            final List<SPComponentType> instruments = new ArrayList<>();
+            for (ISPObsComponent oc : SPTreeUtil.findInstruments(o)) instruments.add(oc.getType());
+
+            String targetName = null;
+            final List<String> targetNames = new ArrayList<>();
+            final ISPObsComponent targetNode = SPTreeUtil.findTargetEnvNode(o);
+            final TargetObsComp targetComp = (targetNode == null) ? null : (TargetObsComp) targetNode.getDataObject();
+            if (targetComp != null) {
+                final TargetEnvironment env = targetComp.getTargetEnvironment();
+                targetName = env.getAsterism().name();
+                for (SPTarget t : env.getTargets()) targetNames.add(t.getName());
+            }
+
+            return new ObsAttributes(o,
+                    (spObs == null) ? null : spObs.getTitle(),
+                    ObservationStatus.computeFor(o),
+                    ObsClassService.lookupObsClass(o),
+                    Too.get(o),
+                    ao(o),
+                    Collections.unmodifiableList(instruments),
+                    targetName,
+                    Collections.unmodifiableList(targetNames));
+        }
+
+        private static AOConstants.AO ao(ISPObservation o) {
+            final ISPObsComponent aoComp = AOTreeUtil.findAOSystem(o);
+            if ((aoComp != null) && InstAltair.SP_TYPE.equals(aoComp.getType())) {
+                final AltairParams.GuideStarType gst = ((InstAltair) aoComp.getDataObject()).getGuideStarType();
+                if (gst == AltairParams.GuideStarType.LGS) return AOConstants.AO.Altair_LGS;
+                if (gst == AltairParams.GuideStarType.NGS) return AOConstants.AO.Altair_NGS;
+            }
+            return AOConstants.AO.NONE;
+        }
+
+        public ISPObservation getObservation() { return observation; }
+
+        /** Observation title, if any. */
+        public String getTitle() { return title; }
+
+        public ObservationStatus getStatus() { return status; }
+
+        public ObsClass getObsClass() { return obsClass; }
+
+        public TooType getTooType() { return tooType; }
+
+        public AOConstants.AO getAO() { return ao; }
+
+        /**
+         * Types of the instrument components of the observation, as found by
+         * {@link SPTreeUtil#findInstruments}, so Altair comes last if present.
+         */
+        public List<SPComponentType> getInstruments() { return instruments; }
+
+        /**
+         * Type of the (non-AO) instrument of the observation, or
+         * <code>null</code> if it has none.
+         */
+        public SPComponentType getInstrument() {
+            for (SPComponentType t : instruments) {
+                if (t.broadType == SPComponentBroadType.INSTRUMENT) return t;
+            }
+            return null;
+        }
+
+        /** Name of the asterism, or <code>null</code> if there is no target component. */
+        public String getTargetName() { return targetName; }
+
+        /** Names of all the targets in the target environment. */
+        public List<String> getTargetNames() { return targetNames; }
+    }
+
+    private final Map<SPNodeKey, ProgramAttributes> programs = new HashMap<>();
+
+    private ObsAttributeIndex() {
+    }
+
+    /**
+     * Gets the attributes of the given program, extracting them only if the
+     * program has changed since they were last extracted.
+     */
+    public ProgramAttributes lookup(ISPProgram prog) {
+        final SPNodeKey key = prog.getProgramKey();
+        final ProgramAttributes cached;
+        synchronized (programs) {
+            cached = programs.get(key);
+        }
+        if ((cached != null) && cached.isCurrent(prog)) return cached;
+
+        final ProgramAttributes attrs = ProgramAttributes.extract(prog);
+        synchronized (programs) {
+            programs.put(key, attrs);
+        }
+        return attrs;
+    }
+
+    private void forget(ISPProgram prog) {
+        if (prog == null) return;
+        synchronized (programs) {
+            programs.remove(prog.getProgramKey());
+        }
+    }
+
+    @Override public void programAdded(ProgramEvent<ISPProgram> pme) {
+        // Indexed when first looked up.
+    }
+
+    @Override public void programReplaced(ProgramEvent<ISPProgram> pme) {
+        forget(pme.getOldProgram());
+    }
+
+    @Override public void programRemoved(ProgramEvent<ISPProgram> pme) {
+        forget(pme.getOldProgram());
+    }
+}
@@ -0,0 +1,106 @@
+package edu.gemini.spModel.obs;
+
+import edu.gemini.pot.sp.ISPObsComponent;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.ISPSeqComponent;
+import edu.gemini.pot.sp.SPObservationID;
+import edu.gemini.pot.sp.version.LifespanId;
+import edu.gemini.shared.util.VersionVector;
+import edu.gemini.shared.util.immutable.None;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.spModel.obs.context.ObsContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A service used to obtain the {@link ObsContext} for an observation.  The
+ * context is rebuilt from the observation tree only when something in the
+ * observation changes.  The targets, instrument and AO component of a
+ * context are mutable, so each caller gets its own copy of the cached
+ * context (see {@link ObsContext#cloneState}) and callers such as AGS, the
+ * phase 2 checks and the sequence code can't affect one another.
+ *
+ * <p>The cached context is keyed on the version vectors of the observation,
+ * its obs components and its sequence, so it is not used after an update
+ * even if no change event was delivered to the {@link SPObsCache} (for
+ * example while events are disabled during a merge).</p>
+ */
+public final class ObsContextService {
+
+    private ObsContextService() {
+    }
+
+    /**
+     * An {@link ObsContext} along with the versions of the nodes from which
+     * it was created.
+     */
+    public static final class Entry {
+        private final Key key;
+        private final Option<ObsContext> context;
+
+        private Entry(Key key, Option<ObsContext> context) {
+            this.key     = key;
+            this.context = context;
+        }
+    }
+
+    // The observation id (which determines the site if the instrument does
+    // not) and the versions of the nodes that go into the context.
+    private static final class Key {
+        private final SPObservationID obsId;
+        private final List<VersionVector<LifespanId, Integer>> versions;
+
+        Key(ISPObservation obs) {
+            obsId    = obs.getObservationID();
+            versions = new ArrayList<>();
+            versions.add(obs.getVersion());
+            for (ISPObsComponent oc : obs.getObsComponents()) versions.add(oc.getVersion());
+            addVersions(obs.getSeqComponent());
+        }
+
+        private void addVersions(ISPSeqComponent sc) {
+            if (sc == null) return;
+            versions.add(sc.getVersion());
+            for (ISPSeqComponent child : sc.getSeqComponents()) addVersions(child);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if ((o == null) || (getClass() != o.getClass())) return false;
+            final Key that = (Key) o;
+            return Objects.equals(obsId, that.obsId) && versions.equals(that.versions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(obsId, versions);
+        }
+    }
+
+    /**
+     * Gets a copy of the {@link ObsContext} for the given observation,
+     * reading the observation only if it has changed since it was last
+     * requested.
+     *
+     * @param obs the observation whose context is sought
+     *
+     * @return the observation context, or {@link None}
+     * if the observation has no target or no instrument
+     */
+    public static Option<ObsContext> lookupObsContext(ISPObservation obs) {
+        if (obs == null) return None.instance();
+        final Key key = new Key(obs);
+
+        // First check the cache.
+        final Entry cached = SPObsCache.getObsContext(obs);
+        if ((cached != null) && cached.key.equals(key)) return cached.context.map(ObsContext::cloneState);
+
+        // Compute the value and cache the results.
+        final Option<ObsContext> ctx = ObsContext.create(obs);
+        SPObsCache.setObsContext(obs, new Entry(key, ctx));
+        return ctx.map(ObsContext::cloneState);
+    }
+}
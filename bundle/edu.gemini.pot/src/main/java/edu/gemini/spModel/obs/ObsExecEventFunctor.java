@@ -9,6 +9,8 @@ import edu.gemini.shared.util.GeminiRuntimeException;
 import edu.gemini.spModel.event.ObsExecEvent;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 
@@ -18,13 +20,28 @@ import java.util.Set;
  */
 public final class ObsExecEventFunctor extends DBAbstractFunctor {
     private final ObsExecEvent event;
+    private final List<ObsExecEvent> events;
 
     public ObsExecEventFunctor(ObsExecEvent event) {
-        this.event = event;
+        this.event  = event;
+        this.events = null;
+    }
+
+    /**
+     * Creates a functor that records a series of events of a single
+     * observation with one update of its log.
+     */
+    public ObsExecEventFunctor(List<ObsExecEvent> events) {
+        this.event  = null;
+        this.events = new ArrayList<>(events);
     }
 
     public void execute(IDBDatabaseService database, ISPNode node, Set<Principal> principals) {
-        ObsExecEventHandler.handle(event, database);
+        if (events == null) {
+            ObsExecEventHandler.handle(event, database);
+        } else {
+            ObsExecEventHandler.handle(events, database);
+        }
     }
 
     public static void handle(ObsExecEvent event, Set<Principal> principals)  {
@@ -32,7 +49,14 @@ public final class ObsExecEventFunctor extends DBAbstractFunctor {
     }
 
     public static void handle(ObsExecEvent event, IDBDatabaseService db, Set<Principal> principals)  {
-        ObsExecEventFunctor func = new ObsExecEventFunctor(event);
+        execute(new ObsExecEventFunctor(event), db, principals);
+    }
+
+    public static void handle(List<ObsExecEvent> events, IDBDatabaseService db, Set<Principal> principals)  {
+        execute(new ObsExecEventFunctor(events), db, principals);
+    }
+
+    private static void execute(ObsExecEventFunctor func, IDBDatabaseService db, Set<Principal> principals)  {
         try {
             db.getQueryRunner(principals).execute(func, null);
         } catch (SPNodeNotLocalException ex) {
@@ -10,7 +10,7 @@ import edu.gemini.spModel.event.ObsExecEvent;
 import edu.gemini.spModel.event.StartDatasetEvent;
 import edu.gemini.spModel.obslog.ObsExecLog;
 
-
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +35,31 @@ public final class ObsExecEventHandler {
         }
     }
 
+    /**
+     * Handles a series of events of a single observation, in order, with one
+     * update of the observation's log.
+     */
+    public static void handle(List<ObsExecEvent> evts, IDBDatabaseService db)  {
+        if (evts.isEmpty()) return;
+        final SPObservationID obsId = evts.get(0).getObsId();
+        for (ObsExecEvent evt : evts) {
+            if (!obsId.equals(evt.getObsId())) {
+                throw new IllegalArgumentException("Events for more than one observation: " + obsId + ", " + evt.getObsId());
+            }
+        }
+
+        ISPObservation obs = db.lookupObservationByID(obsId);
+        if (obs == null) {
+            LOG.log(Level.WARNING, "Cannot handle events for '" + obsId + "'. No observation with this id.");
+        } else {
+            try {
+                ObsExecLog.updateObsLog(db, obs.getObservationID(), evts);
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Problem handling observation exec events.", ex);
+            }
+        }
+    }
+
     private static final class Action implements ExecAction {
         private final ObsExecEvent evt;
         private final IDBDatabaseService db;
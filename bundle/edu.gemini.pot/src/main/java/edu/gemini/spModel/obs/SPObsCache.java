@@ -60,6 +60,19 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         setObsCache(obs, c);
     }
 
+    public static ObsContextService.Entry getObsContext(ISPObservation obs) {
+        final SPObsCache cache = getObsCache(obs);
+        if (cache == null) return null;
+        return cache.getObsContext();
+    }
+
+    public static void setObsContext(ISPObservation obs, ObsContextService.Entry obsContext) {
+        SPObsCache cache = getObsCache(obs);
+        if (cache == null) cache = new SPObsCache();
+        cache.setObsContext(obsContext);
+        setObsCache(obs, cache);
+    }
+
     public static ObsClass getObsClass(ISPObservation obs) {
         SPObsCache cache = getObsCache(obs);
         if (cache == null) return null;
@@ -187,6 +200,9 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
     // The observation's instrument, if any.
     private Option<Instrument> _instrument = ImOption.empty();
 
+    // The observation context and the node versions from which it was made.
+    private ObsContextService.Entry _obsContext;
+
     // The observation class (The value is determined by examining the sequence
     // and is cached here)
     private ObsClass _obsClass;
@@ -259,6 +275,14 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         _instrument = instrument;
     }
 
+    public ObsContextService.Entry getObsContext() {
+        return _obsContext;
+    }
+
+    public void setObsContext(ObsContextService.Entry obsContext) {
+        _obsContext = obsContext;
+    }
+
     public ObsTimes getCorrectedObsTimes() {
         return _correctedObsTimes;
     }
@@ -335,6 +359,7 @@ public final class SPObsCache implements ISPEventMonitor, ISPCloneable, Serializ
         _stepCount          = null;
         _targetCalculator   = null;
         _instrument         = ImOption.empty();
+        _obsContext         = null;
     }
 
     public void structureChanged(SPStructureChange change) {
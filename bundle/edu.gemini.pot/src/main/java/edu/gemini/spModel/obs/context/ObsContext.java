@@ -9,6 +9,7 @@ import edu.gemini.spModel.ags.AgsStrategyKey;
 import edu.gemini.spModel.core.Angle;
 import edu.gemini.spModel.core.Angle$;
 import edu.gemini.spModel.core.Site;
+import edu.gemini.spModel.core.Target;
 import edu.gemini.spModel.data.AbstractDataObject;
 import edu.gemini.spModel.gemini.altair.InstAltair;
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality;
@@ -30,6 +31,7 @@ import edu.gemini.spModel.telescope.PosAngleConstraintAware;
 import edu.gemini.spModel.util.SPTreeUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Configuration context information for an observation.
@@ -130,9 +132,9 @@ public final class ObsContext {
             offsets = Collections.unmodifiableSet(new LinkedHashSet<>(sciencePos));
         }
         if (aoComp != null) {
-            return new ObsContext(ags, targets, inst, site, conds, offsets, new Some<>(aoComp), schedulingBlock);
+            return new ObsContext(ags, targets, inst, site, conds, offsets, new Some<>(aoComp), schedulingBlock, null);
         } else {
-            return new ObsContext(ags, targets, inst, site, conds, offsets, None.instance(), schedulingBlock);
+            return new ObsContext(ags, targets, inst, site, conds, offsets, None.instance(), schedulingBlock, null);
         }
     }
 
@@ -210,6 +212,63 @@ public final class ObsContext {
         }
     }
 
+    /**
+     * The time buckets used by {@link #getBaseCoordinates(long)}.
+     */
+    public static final long BASE_POSITION_BUCKET_MS = 60 * 1000;
+
+    /**
+     * Memoized base positions for a target environment, shared by all the
+     * contexts derived from one another that have the same targets, such as
+     * the many position angle variants that AGS creates.  For non-sidereal
+     * targets each lookup interpolates the ephemeris so it is worth
+     * remembering the positions that have been asked for.
+     *
+     * <p>SPTargets are mutable, so the positions are only used for as long as
+     * the targets still hold the data they were calculated from.
+     */
+    private static final class BasePositions {
+        // Bounds the memory used if many distinct times are requested.
+        private static final int MAX_SIZE = 256;
+
+        private static final class Memo {
+            final ImList<Target> data;
+            final Map<Option<Long>, Option<Coordinates>> positions = new ConcurrentHashMap<>();
+
+            Memo(ImList<Target> data) {
+                this.data = data;
+            }
+        }
+
+        private final TargetEnvironment targets;
+        private volatile Memo memo;
+
+        BasePositions(TargetEnvironment targets) {
+            this.targets = targets;
+        }
+
+        Option<Coordinates> at(Option<Long> when) {
+            final Asterism target = targets.getAsterism();
+            final ImList<Target> data = target.allSpTargetsJava().map(SPTarget::getTarget);
+
+            Memo m = memo;
+            if ((m == null) || !m.data.equals(data) || (m.positions.size() >= MAX_SIZE)) {
+                m    = new Memo(data);
+                memo = m;
+            }
+
+            Option<Coordinates> res = m.positions.get(when);
+            if (res == null) {
+                res = target.getRaDegrees(when).flatMap(raDeg ->
+                      target.getDecDegrees(when).map(decDeg ->
+                          new Coordinates(raDeg, decDeg)
+                      ));
+                m.positions.put(when, res);
+            }
+            return res;
+        }
+    }
+
     private final Option<AgsStrategyKey> agsOverride;
     private final TargetEnvironment targets;
     private final SPInstObsComp inst;
@@ -218,10 +277,11 @@ public final class ObsContext {
     private final Option<AbstractDataObject> aoCompOpt;
     private final Option<Site> site;
     private final Option<SchedulingBlock> schedulingBlock;
+    private final BasePositions basePositions;
 
     private ObsContext(Option<AgsStrategyKey> ags, TargetEnvironment targets, SPInstObsComp inst, Option<Site> site,
                        Conditions conds, Set<Offset> sciencePositions, Option<AbstractDataObject> aoCompOpt,
-                       Option<SchedulingBlock> schedulingBlock) {
+                       Option<SchedulingBlock> schedulingBlock, BasePositions basePositions) {
         this.agsOverride = ags;
         this.targets          = targets;
         this.inst             = (SPInstObsComp) inst.clone();
@@ -230,18 +290,19 @@ public final class ObsContext {
         this.sciencePositions = sciencePositions;
         this.aoCompOpt        = aoCompOpt;
         this.schedulingBlock  = schedulingBlock;
+        this.basePositions    = (basePositions == null) ? new BasePositions(targets) : basePositions;
     }
 
     private ObsContext(Option<AgsStrategyKey> ags, TargetEnvironment targets, SPInstObsComp inst, Option<Site> site,
                        Conditions conds, Set<Offset> sciencePositions, Option<AbstractDataObject> aoCompOpt,
-                       Angle posAngle, Option<SchedulingBlock> schedulingBlock) {
-        this(ags, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+                       Angle posAngle, Option<SchedulingBlock> schedulingBlock, BasePositions basePositions) {
+        this(ags, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, basePositions);
         this.inst.setPosAngle(posAngle.toDegrees());
     }
     private ObsContext(Option<AgsStrategyKey> ags, TargetEnvironment targets, SPInstObsComp inst, Option<Site> site,
                        Conditions conds, Set<Offset> sciencePositions, Option<AbstractDataObject> aoCompOpt,
-                       IssPort port, Option<SchedulingBlock> schedulingBlock) {
-        this(ags, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+                       IssPort port, Option<SchedulingBlock> schedulingBlock, BasePositions basePositions) {
+        this(ags, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, basePositions);
         if (this.inst instanceof IssPortProvider) {
             ((IssPortProvider) this.inst).setIssPort(port);
         }
@@ -253,7 +314,7 @@ public final class ObsContext {
 
     public ObsContext withAgsStrategyOverride(Option<AgsStrategyKey> s) {
         if (s.equals(agsOverride)) return this;
-        return new ObsContext(s, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+        return new ObsContext(s, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, basePositions);
     }
 
     public TargetEnvironment getTargets() {
@@ -262,17 +323,28 @@ public final class ObsContext {
 
     public ObsContext withTargets(TargetEnvironment targets) {
         if (targets.equals(this.targets)) return this;
-        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, null);
     }
 
+    /**
+     * Gets the base position at the start of the scheduling block, if any.
+     */
     public Option<Coordinates> getBaseCoordinates() {
-        final Option<Long> when = getSchedulingBlockStart();
-        Asterism target = targets.getAsterism();
-        return
-            target.getRaDegrees(when).flatMap(raDeg ->
-            target.getDecDegrees(when).map(decDeg ->
-                new Coordinates(raDeg, decDeg)
-            ));
+        return basePositions.at(getSchedulingBlockStart());
+    }
+
+    /**
+     * Gets the base position at the start of the
+     * {@link #BASE_POSITION_BUCKET_MS} time bucket that contains the given
+     * time.  Positions are remembered so that repeated requests for nearby
+     * times, for example for the current time, don't recalculate
+     * non-sidereal positions.
+     *
+     * @param when time in milliseconds since 1970
+     */
+    public Option<Coordinates> getBaseCoordinates(long when) {
+        final long bucket = Math.floorDiv(when, BASE_POSITION_BUCKET_MS) * BASE_POSITION_BUCKET_MS;
+        return basePositions.at(new Some<>(bucket));
     }
 
     public Angle getPositionAngle() {
@@ -285,7 +357,7 @@ public final class ObsContext {
 
     public ObsContext withPositionAngle(final Angle angle) {
         if (angle.equals(getPositionAngle())) return this;
-        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, angle, schedulingBlock);
+        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, angle, schedulingBlock, basePositions);
     }
 
     public ObsContext withPositionAngleJava(final edu.gemini.skycalc.Angle angleJava) {
@@ -319,7 +391,7 @@ public final class ObsContext {
 
     public ObsContext withIssPort(IssPort port) {
         if (getIssPort() == port) return this;
-        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, port, schedulingBlock);
+        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, port, schedulingBlock, basePositions);
     }
 
     public SPInstObsComp getInstrument(){
@@ -333,7 +405,7 @@ public final class ObsContext {
     public Option<Site> getSite() { return site; }
 
     public ObsContext withSite(final Option<Site> site) {
-        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, basePositions);
     }
 
     public Conditions getConditions() {
@@ -342,7 +414,7 @@ public final class ObsContext {
 
     public ObsContext withConditions(Conditions conds) {
         if (getConditions().equals(conds)) return this;
-        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock);
+        return new ObsContext(agsOverride, targets, inst, site, conds, sciencePositions, aoCompOpt, schedulingBlock, basePositions);
     }
 
     public Option<AbstractDataObject> getAOComponent(){
@@ -350,11 +422,22 @@ public final class ObsContext {
     }
 
     public ObsContext withAOComponent(AbstractDataObject aoCompOpt){
-        return new ObsContext(agsOverride, targets,  inst, site, conds, sciencePositions, new Some<>(aoCompOpt), schedulingBlock);
+        return new ObsContext(agsOverride, targets,  inst, site, conds, sciencePositions, new Some<>(aoCompOpt), schedulingBlock, basePositions);
     }
 
     public ObsContext withoutAOComponent(){
-        return new ObsContext(agsOverride, targets,  inst, site, conds, sciencePositions, None.instance(), schedulingBlock);
+        return new ObsContext(agsOverride, targets,  inst, site, conds, sciencePositions, None.instance(), schedulingBlock, basePositions);
+    }
+
+    /**
+     * Creates an identical ObsContext but with its own copies of the mutable
+     * targets, instrument and AO component.  This can be important when one
+     * context is handed out to several callers, since the SPTargets and data
+     * objects are mutable.
+     */
+    public ObsContext cloneState() {
+        final Option<AbstractDataObject> ao = aoCompOpt.map(a -> (AbstractDataObject) a.clone());
+        return new ObsContext(agsOverride, targets.cloneTargets(), inst, site, conds, sciencePositions, ao, schedulingBlock, null);
     }
 
 
@@ -54,11 +54,11 @@ public enum PlannedTimeCalculator {
         if (instNode == null) {
             setupTime = DEFAULT_SETUP;
         } else {
-            setupTime = ImOption.apply((SPInstObsComp) instNode.getDataObject())
+            setupTime = ImOption.apply((SPInstObsComp) instNode.getReadOnlyDataObject())
                                 .flatMap(i -> {
                                   final Duration s = i.getSetupTime(obs);
                                   final Duration r = i.getReacquisitionTime(obs);
-                                  final SetupTime.Type t = ((SPObservation) obs.getDataObject()).getSetupTimeType();
+                                  final SetupTime.Type t = ((SPObservation) obs.getReadOnlyDataObject()).getSetupTimeType();
                                   return SetupTime.fromDuration(s, r, t);
                                 })
                                 .getOrElse(DEFAULT_SETUP);
@@ -66,6 +66,7 @@ public enum PlannedTimeCalculator {
         final Setup setup = Setup.apply(setupTime, obsChargeClass);
 
         // Calculate the overhead time
+        final StepCalculator calculator = calculator(instNode);
         Option<Config> prev = None.instance();
         List<PlannedTime.Step> steps = new ArrayList<>();
         ConfigSequence cs = ConfigBridge.extractSequence(obs, null, ConfigValMapInstances.IDENTITY_MAP, false);
@@ -73,7 +74,7 @@ public enum PlannedTimeCalculator {
             ChargeClass stepChargeClass = stepChargeClass(obsChargeClass, c);
             boolean executed            = isExecuted(obsExecRecord, c);
             String obsType              = getObsType(c);
-            CategorizedTimeGroup gtc    = calculator(instNode).calc(c, prev);
+            CategorizedTimeGroup gtc    = calculator.calc(c, prev);
             prev = new Some<Config>(c);
 
             steps.add(Step.apply(gtc, stepChargeClass, executed, obsType));
@@ -84,7 +85,7 @@ public enum PlannedTimeCalculator {
 
     private StepCalculator calculator(ISPObsComponent inst)  {
         if (inst == null) return DefaultStepCalculator.instance;
-        SPInstObsComp dobj = (SPInstObsComp) inst.getDataObject();
+        SPInstObsComp dobj = (SPInstObsComp) inst.getReadOnlyDataObject();
         return (dobj instanceof StepCalculator) ? (StepCalculator) dobj : DefaultStepCalculator.instance;
     }
 
@@ -17,6 +17,7 @@ import edu.gemini.spModel.config2.ItemKey;
 import edu.gemini.spModel.data.AbstractDataObject;
 import edu.gemini.spModel.dataset.DatasetLabel;
 import edu.gemini.spModel.event.ObsExecEvent;
+import edu.gemini.spModel.event.StartDatasetEvent;
 import edu.gemini.spModel.gemini.calunit.calibration.CalConfigFactory;
 import edu.gemini.spModel.gemini.calunit.calibration.CalConfigPio;
 import edu.gemini.spModel.gemini.init.SimpleNodeInitializer;
@@ -210,8 +211,12 @@ public final class ObsExecLog extends AbstractDataObject implements ISPMergeable
         final int index;
 
         SequenceData(ISPObservation obs, DatasetLabel label) {
+            this(computeSequence(obs), label);
+        }
+
+        SequenceData(ConfigSequence seq, DatasetLabel label) {
             this.label  = label;
-            this.seq    = computeSequence(obs);
+            this.seq    = seq;
             this.index  = label.getIndex() - 1;
             this.config = DatasetConfigService.configForStep(seq, index);
         }
@@ -239,27 +244,7 @@ public final class ObsExecLog extends AbstractDataObject implements ISPMergeable
             });
 
             try {
-                // Add the event to the obs record, if one was provided.
-                evt.foreach(oee -> {
-                    // Extract the config out of the sequence, if any.
-                    final Option<Config> rawConfig = seqData.flatMap(new MapOp<SequenceData, Option<Config>>() {
-                        @Override public Option<Config> apply(SequenceData sd) { return sd.config; }
-                    });
-
-                    // Add the event, but map the config to String/display values.
-                    log.execLogDataObject.getRecord().addEvent(oee, rawConfig.map(new MapOp<Config, Config>() {
-                        @Override
-                        public Config apply(Config config) {
-                            return ConfigValMapUtil.mapValues(config, ConfigValMapInstances.TO_DISPLAY_VALUE);
-                        }
-                    }).getOrNull());
-                });
-
-
-                // Write the completed step into the obslog component
-                // (for smart gcal).
-                seqData.foreach(sd -> log.execLogDataObject.setCompletedSteps(sd.seq, sd.label));
-
+                record(log, seqData, evt);
             } catch (Exception ex) {
                 LOG.log(Level.WARNING, String.format("Could not update %s ObsLog for event: %s", obsId, evt.getOrNull()), ex);
                 throw new RuntimeException(ex);
@@ -267,4 +252,60 @@ public final class ObsExecLog extends AbstractDataObject implements ISPMergeable
         });
     }
 
+    /**
+     * Updates the ObsLog components of the corresponding observation (creating
+     * them if necessary) with a series of events, in the order given.  This
+     * has the same effect as calling {@link #updateObsLog} for each event,
+     * with the dataset label of each <code>StartDatasetEvent</code>, but the
+     * sequence is computed and the log components written only once.  An
+     * event that cannot be recorded is logged and skipped.
+     *
+     * @param obsId reference to the observation whose obs log component should be updated
+     * @param events obs exec events of the observation, in the order they occurred
+     */
+    public static void updateObsLog(final IDBDatabaseService db, final SPObservationID obsId, final List<ObsExecEvent> events) {
+        if (events.isEmpty()) return;
+
+        ObsLog.update(db, obsId, (obs, log) -> {
+            ConfigSequence seq = null;
+            for (ObsExecEvent oee : events) {
+                try {
+                    final Option<SequenceData> seqData;
+                    if (oee instanceof StartDatasetEvent) {
+                        if (seq == null) seq = SequenceData.computeSequence(obs);
+                        final DatasetLabel label = ((StartDatasetEvent) oee).getDataset().getLabel();
+                        seqData = new Some<>(new SequenceData(seq, label));
+                    } else {
+                        seqData = None.instance();
+                    }
+                    record(log, seqData, new Some<>(oee));
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, String.format("Could not update %s ObsLog for event: %s", obsId, oee), ex);
+                }
+            }
+        });
+    }
+
+    private static void record(ObsLog log, Option<SequenceData> seqData, Option<ObsExecEvent> evt) {
+        // Add the event to the obs record, if one was provided.
+        evt.foreach(oee -> {
+            // Extract the config out of the sequence, if any.
+            final Option<Config> rawConfig = seqData.flatMap(new MapOp<SequenceData, Option<Config>>() {
+                @Override public Option<Config> apply(SequenceData sd) { return sd.config; }
+            });
+
+            // Add the event, but map the config to String/display values.
+            log.execLogDataObject.getRecord().addEvent(oee, rawConfig.map(new MapOp<Config, Config>() {
+                @Override
+                public Config apply(Config config) {
+                    return ConfigValMapUtil.mapValues(config, ConfigValMapInstances.TO_DISPLAY_VALUE);
+                }
+            }).getOrNull());
+        });
+
+        // Write the completed step into the obslog component
+        // (for smart gcal).
+        seqData.foreach(sd -> log.execLogDataObject.setCompletedSteps(sd.seq, sd.label));
+    }
+
 }
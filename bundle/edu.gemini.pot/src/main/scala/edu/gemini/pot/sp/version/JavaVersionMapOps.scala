@@ -1,6 +1,6 @@
 package edu.gemini.pot.sp.version
 
-import edu.gemini.pot.sp.SPNodeKey
+import edu.gemini.pot.sp.{ISPNode, SPNodeKey}
 
 /**
  * Basic operations required from Java but difficult or awkward without this
@@ -10,6 +10,12 @@ object JavaVersionMapOps {
   def emptyNodeVersions = EmptyNodeVersions
   def emptyVersionMap   = EmptyVersionMap
 
+  def emptyPackedVersionMap: VersionMap  = PackedVersionMap.empty
+  def pack(vm: VersionMap): VersionMap   = PackedVersionMap(vm)
+
+  def checksum(vm: VersionMap): Long     = vmChecksum(vm)
+  def nodeChecksum(n: ISPNode): Long     = edu.gemini.pot.sp.version.nodeChecksum(n)
+
   def getOrNull(m: VersionMap, k: SPNodeKey): NodeVersions  = m.get(k).orNull
   def getOrEmpty(m: VersionMap, k: SPNodeKey): NodeVersions = m.getOrElse(k, EmptyNodeVersions)
 
@@ -1,6 +1,7 @@
 package edu.gemini.pot.sp.version
 
 import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
 
 import scalaz._
 
@@ -12,11 +13,53 @@ import scalaz._
  */
 case class LifespanId(uuid: UUID) {
   override def toString: String = uuid.toString
+
+  // Deserialized ids are replaced with the canonical instance.
+  private def readResolve(): AnyRef = LifespanId.intern(this)
 }
 
 object LifespanId {
-  def random: LifespanId = LifespanId(UUID.randomUUID())
-  def fromString(uuid: String): LifespanId = LifespanId(UUID.fromString(uuid))
+  def random: LifespanId = intern(LifespanId(UUID.randomUUID()))
+  def fromString(uuid: String): LifespanId = intern(LifespanId(UUID.fromString(uuid)))
 
   implicit def LifespanIdEqual: Equal[LifespanId] = Equal.equalA
-}
\ No newline at end of file
+
+  // Canonical instances, each with a small ordinal used by PackedVersionMap
+  // in place of the id itself.  There are only ever a handful of lifespans
+  // (one per database a program has lived in), so the tables are never
+  // trimmed.
+  private val canonical = new ConcurrentHashMap[UUID, LifespanId]()
+  private val ordinals  = new ConcurrentHashMap[UUID, Integer]()
+  @volatile private var byOrdinal = Array.empty[LifespanId]
+
+  /** Returns the canonical instance equal to `id`. */
+  def intern(id: LifespanId): LifespanId = {
+    val c = canonical.get(id.uuid)
+    if (c == null) register(id) else c
+  }
+
+  // Publishes the ordinal before the canonical instance so that anyone who
+  // finds one can always look up the other.
+  private def register(id: LifespanId): LifespanId = synchronized {
+    val c = canonical.get(id.uuid)
+    if (c != null) c
+    else {
+      byOrdinal = byOrdinal :+ id
+      ordinals.put(id.uuid, byOrdinal.length - 1)
+      canonical.put(id.uuid, id)
+      id
+    }
+  }
+
+  private[version] def ordinal(id: LifespanId): Int = {
+    val o = ordinals.get(id.uuid)
+    if (o != null) o.intValue
+    else {
+      register(id)
+      ordinals.get(id.uuid).intValue
+    }
+  }
+
+  private[version] def fromOrdinal(o: Int): LifespanId =
+    byOrdinal(o)
+}
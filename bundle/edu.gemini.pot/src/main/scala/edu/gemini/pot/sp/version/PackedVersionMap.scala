@@ -0,0 +1,488 @@
+package edu.gemini.pot.sp.version
+
+import edu.gemini.pot.sp.SPNodeKey
+import edu.gemini.shared.util.VersionVector
+import edu.gemini.shared.util.IntegerIsIntegral._
+
+import java.io.{ObjectInputStream, ObjectOutputStream}
+import java.util.UUID
+
+import scala.collection.immutable.ListMap
+
+/**
+ * A `VersionMap` stored in a handful of primitive arrays rather than as a map
+ * of `SPNodeKey` to `VersionVector` objects.  Node keys are split into the two
+ * longs of their UUID and kept sorted, and each node's clocks are stored as
+ * (lifespan ordinal, counter) int pairs where the ordinal identifies an
+ * interned `LifespanId`.  `NodeVersions` are created on demand when looked up.
+ *
+ * Updates are collected in a small ordinary map and folded into new arrays
+ * once there are enough of them, so that a series of single node edits stays
+ * cheap.  Comparing two fully packed maps works directly on the arrays, and
+ * the serialized form is just the arrays and a table of the lifespans used.
+ */
+final class PackedVersionMap private (
+  // Sorted node keys, split into the two halves of the UUID.
+  private val msbs: Array[Long],
+  private val lsbs: Array[Long],
+
+  // The clocks of the node at index i are at [offsets(i), offsets(i+1)) in
+  // ordinals and counters, sorted by ordinal.
+  private val offsets:  Array[Int],
+  private val ordinals: Array[Int],
+  private val counters: Array[Int],
+
+  // Changes not yet packed, where None marks a removed key.
+  private val pending: Map[SPNodeKey, Option[NodeVersions]],
+
+  override val size: Int
+) extends scala.collection.immutable.AbstractMap[SPNodeKey, NodeVersions] with Serializable {
+
+  import PackedVersionMap._
+
+  private def packedSize: Int =
+    msbs.length
+
+  /** Whether all entries are in the packed arrays. */
+  def isPacked: Boolean =
+    pending.isEmpty
+
+  private def indexOf(k: SPNodeKey): Int =
+    search(msbs, lsbs, k.uuid.getMostSignificantBits, k.uuid.getLeastSignificantBits)
+
+  private def keyAt(i: Int): SPNodeKey =
+    new SPNodeKey(new UUID(msbs(i), lsbs(i)))
+
+  private def versionsAt(i: Int): NodeVersions = {
+    var clocks = ListMap.empty[LifespanId, java.lang.Integer]
+    var j      = offsets(i)
+    while (j < offsets(i + 1)) {
+      clocks = clocks.updated(LifespanId.fromOrdinal(ordinals(j)), java.lang.Integer.valueOf(counters(j)))
+      j += 1
+    }
+    VersionVector(clocks)
+  }
+
+  override def get(k: SPNodeKey): Option[NodeVersions] =
+    pending.get(k) match {
+      case Some(change) => change
+      case None         =>
+        val i = indexOf(k)
+        if (i < 0) None else Some(versionsAt(i))
+    }
+
+  override def contains(k: SPNodeKey): Boolean =
+    pending.get(k).fold(indexOf(k) >= 0)(_.isDefined)
+
+  override def iterator: Iterator[(SPNodeKey, NodeVersions)] = {
+    val packed  = Iterator.range(0, packedSize).map(i => (keyAt(i), i))
+    val current = if (pending.isEmpty) packed else packed.filterNot { case (k, _) => pending.contains(k) }
+    current.map { case (k, i) => (k, versionsAt(i)) } ++ pending.iterator.collect { case (k, Some(nv)) => (k, nv) }
+  }
+
+  override def +[B1 >: NodeVersions](kv: (SPNodeKey, B1)): Map[SPNodeKey, B1] =
+    kv._2 match {
+      case nv: VersionVector[_, _] => updatedVersions(kv._1, nv.asInstanceOf[NodeVersions])
+      case _                       => Map.empty[SPNodeKey, B1] ++ this + kv
+    }
+
+  override def -(k: SPNodeKey): PackedVersionMap =
+    if (!contains(k)) this
+    else if (indexOf(k) < 0) withPending(pending - k, size - 1)
+    else withPending(pending.updated(k, None), size - 1)
+
+  private def updatedVersions(k: SPNodeKey, nv: NodeVersions): PackedVersionMap =
+    withPending(pending.updated(k, Some(nv)), if (contains(k)) size else size + 1)
+
+  private def withPending(p: Map[SPNodeKey, Option[NodeVersions]], n: Int): PackedVersionMap = {
+    val res = new PackedVersionMap(msbs, lsbs, offsets, ordinals, counters, p, n)
+    if (p.size > (MinRepack max (packedSize >> 3))) res.repacked else res
+  }
+
+  /** Returns an equivalent map with any pending changes packed. */
+  def repacked: PackedVersionMap =
+    if (isPacked) this else pack(iterator)
+
+  // Marks the packed entries whose keys are in `ks`, which are then skipped
+  // by the array walks below and handled separately.
+  private def mask(ks: Set[SPNodeKey]): Array[Boolean] =
+    if (ks.isEmpty) NoMask
+    else {
+      val m = new Array[Boolean](packedSize)
+      ks.foreach { k =>
+        val i = indexOf(k)
+        if (i >= 0) m(i) = true
+      }
+      m
+    }
+
+  /**
+   * Computes the same result as `VersionMap.tryCompare` by walking the packed
+   * arrays of both maps.  Keys with pending changes on either side, of which
+   * there are only a few, are compared as ordinary `NodeVersions`.
+   */
+  private[version] def tryComparePacked(that: PackedVersionMap): Option[Int] = {
+    val ks  = pending.keySet ++ that.pending.keySet
+    val m0  = mask(ks)
+    val m1  = that.mask(ks)
+    val n0  = packedSize
+    val n1  = that.packedSize
+    var acc = 0
+    var i   = 0
+    var j   = 0
+    while ((i < n0 || j < n1) && (acc != Conflict)) {
+      if ((i < n0) && isMasked(m0, i)) i += 1
+      else if ((j < n1) && isMasked(m1, j)) j += 1
+      else {
+        val c =
+          if (i == n0) 1
+          else if (j == n1) -1
+          else compareBits(msbs(i), lsbs(i), that.msbs(j), that.lsbs(j))
+
+        // A node missing from one side is compared against empty versions.
+        val cur =
+          if (c < 0) {
+            val r = compareClocks(this, offsets(i), offsets(i + 1), that, 0, 0)
+            i += 1
+            r
+          } else if (c > 0) {
+            val r = compareClocks(this, 0, 0, that, that.offsets(j), that.offsets(j + 1))
+            j += 1
+            r
+          } else {
+            val r = compareClocks(this, offsets(i), offsets(i + 1), that, that.offsets(j), that.offsets(j + 1))
+            i += 1
+            j += 1
+            r
+          }
+        acc = combine(acc, cur)
+      }
+    }
+
+    val res = (acc/:ks) { (a, k) =>
+      if (a == Conflict) a
+      else combine(a, nodeVersions(this, k).tryCompareTo(nodeVersions(that, k)).getOrElse(Conflict))
+    }
+    if (res == Conflict) None else Some(res)
+  }
+
+  /**
+   * Computes the same result as `VersionMap.sync` by merging the packed
+   * arrays of both maps.  As for comparison, keys with pending changes on
+   * either side are synchronized as ordinary `NodeVersions` and left pending
+   * in the result.
+   */
+  private[version] def syncPacked(that: PackedVersionMap): PackedVersionMap = {
+    val ks = pending.keySet ++ that.pending.keySet
+    val m0 = mask(ks)
+    val m1 = that.mask(ks)
+    val n0 = packedSize
+    val n1 = that.packedSize
+
+    // Sized for the worst case, where no keys or lifespans are shared.
+    val rMsbs     = new Array[Long](n0 + n1)
+    val rLsbs     = new Array[Long](n0 + n1)
+    val rOffsets  = new Array[Int](n0 + n1 + 1)
+    val rOrdinals = new Array[Int](ordinals.length + that.ordinals.length)
+    val rCounters = new Array[Int](ordinals.length + that.ordinals.length)
+
+    var n = 0 // entries written
+    var o = 0 // clocks written
+
+    def copyClocks(x: PackedVersionMap, a0: Int, a1: Int): Unit = {
+      System.arraycopy(x.ordinals, a0, rOrdinals, o, a1 - a0)
+      System.arraycopy(x.counters, a0, rCounters, o, a1 - a0)
+      o += a1 - a0
+    }
+
+    def mergeClocks(a0: Int, a1: Int, b0: Int, b1: Int): Unit = {
+      var a = a0
+      var b = b0
+      while (a < a1 || b < b1) {
+        if ((b == b1) || ((a < a1) && (ordinals(a) < that.ordinals(b)))) {
+          rOrdinals(o) = ordinals(a)
+          rCounters(o) = counters(a)
+          a += 1
+        } else if ((a == a1) || (that.ordinals(b) < ordinals(a))) {
+          rOrdinals(o) = that.ordinals(b)
+          rCounters(o) = that.counters(b)
+          b += 1
+        } else {
+          rOrdinals(o) = ordinals(a)
+          rCounters(o) = math.max(counters(a), that.counters(b))
+          a += 1
+          b += 1
+        }
+        o += 1
+      }
+    }
+
+    var i = 0
+    var j = 0
+    while (i < n0 || j < n1) {
+      if ((i < n0) && isMasked(m0, i)) i += 1
+      else if ((j < n1) && isMasked(m1, j)) j += 1
+      else {
+        val c =
+          if (i == n0) 1
+          else if (j == n1) -1
+          else compareBits(msbs(i), lsbs(i), that.msbs(j), that.lsbs(j))
+
+        rOffsets(n) = o
+        if (c <= 0) {
+          rMsbs(n) = msbs(i)
+          rLsbs(n) = lsbs(i)
+        } else {
+          rMsbs(n) = that.msbs(j)
+          rLsbs(n) = that.lsbs(j)
+        }
+
+        if (c < 0) {
+          copyClocks(this, offsets(i), offsets(i + 1))
+          i += 1
+        } else if (c > 0) {
+          copyClocks(that, that.offsets(j), that.offsets(j + 1))
+          j += 1
+        } else {
+          mergeClocks(offsets(i), offsets(i + 1), that.offsets(j), that.offsets(j + 1))
+          i += 1
+          j += 1
+        }
+        n += 1
+      }
+    }
+    rOffsets(n) = o
+
+    val base = new PackedVersionMap(
+      java.util.Arrays.copyOf(rMsbs, n),
+      java.util.Arrays.copyOf(rLsbs, n),
+      java.util.Arrays.copyOf(rOffsets, n + 1),
+      java.util.Arrays.copyOf(rOrdinals, o),
+      java.util.Arrays.copyOf(rCounters, o),
+      Map.empty,
+      n
+    )
+
+    (base/:ks) { (vm, k) =>
+      if (contains(k) || that.contains(k)) vm.updatedVersions(k, nodeVersions(this, k).sync(nodeVersions(that, k)))
+      else vm
+    }
+  }
+
+  // Always serialize the packed arrays.
+  private def writeReplace(): AnyRef =
+    new SerializationProxy(repacked)
+}
+
+object PackedVersionMap {
+
+  // Pending changes are packed once there are more than this many, or more
+  // than an eighth of the packed size.
+  private val MinRepack = 64
+
+  // Comparison result marking conflicting versions.
+  private val Conflict = 2
+
+  // Mask used when no packed entries are skipped.
+  private val NoMask = Array.emptyBooleanArray
+
+  private def isMasked(m: Array[Boolean], i: Int): Boolean =
+    (m.length != 0) && m(i)
+
+  val empty: PackedVersionMap =
+    new PackedVersionMap(Array.emptyLongArray, Array.emptyLongArray, Array(0), Array.emptyIntArray, Array.emptyIntArray, Map.empty, 0)
+
+  /** Returns a packed copy of the given version map. */
+  def apply(vm: VersionMap): PackedVersionMap =
+    vm match {
+      case p: PackedVersionMap => p.repacked
+      case _                   => pack(vm.iterator)
+    }
+
+  private def pack(entries: Iterator[(SPNodeKey, NodeVersions)]): PackedVersionMap = {
+    val sorted = entries.toArray.sortWith { case ((k0, _), (k1, _)) =>
+      compareBits(k0.uuid.getMostSignificantBits, k0.uuid.getLeastSignificantBits,
+                  k1.uuid.getMostSignificantBits, k1.uuid.getLeastSignificantBits) < 0
+    }
+
+    val n        = sorted.length
+    val msbs     = new Array[Long](n)
+    val lsbs     = new Array[Long](n)
+    val offsets  = new Array[Int](n + 1)
+    val total    = sorted.foldLeft(0)(_ + _._2.clocks.size)
+    val ordinals = new Array[Int](total)
+    val counters = new Array[Int](total)
+
+    var j = 0
+    sorted.zipWithIndex.foreach { case ((k, nv), i) =>
+      msbs(i)    = k.uuid.getMostSignificantBits
+      lsbs(i)    = k.uuid.getLeastSignificantBits
+      offsets(i) = j
+      nv.clocks.foreach { case (id, c) =>
+        ordinals(j) = LifespanId.ordinal(id)
+        counters(j) = c.intValue
+        j += 1
+      }
+      sortClocks(ordinals, counters, offsets(i), j)
+    }
+    offsets(n) = j
+
+    new PackedVersionMap(msbs, lsbs, offsets, ordinals, counters, Map.empty, n)
+  }
+
+  // Insertion sort of a node's clocks by ordinal.  There are only ever a few.
+  private def sortClocks(ordinals: Array[Int], counters: Array[Int], from: Int, until: Int): Unit =
+    for (i <- from + 1 until until) {
+      val o = ordinals(i)
+      val c = counters(i)
+      var k = i - 1
+      while (k >= from && ordinals(k) > o) {
+        ordinals(k + 1) = ordinals(k)
+        counters(k + 1) = counters(k)
+        k -= 1
+      }
+      ordinals(k + 1) = o
+      counters(k + 1) = c
+    }
+
+  private def compareBits(msb0: Long, lsb0: Long, msb1: Long, lsb1: Long): Int = {
+    val c = java.lang.Long.compare(msb0, msb1)
+    if (c != 0) c else java.lang.Long.compare(lsb0, lsb1)
+  }
+
+  // Binary search for a node key, with the same result convention as
+  // java.util.Arrays.binarySearch.
+  private def search(msbs: Array[Long], lsbs: Array[Long], msb: Long, lsb: Long): Int = {
+    var lo = 0
+    var hi = msbs.length - 1
+    while (lo <= hi) {
+      val mid = (lo + hi) >>> 1
+      val c   = compareBits(msbs(mid), lsbs(mid), msb, lsb)
+      if (c < 0) lo = mid + 1
+      else if (c > 0) hi = mid - 1
+      else return mid
+    }
+    -(lo + 1)
+  }
+
+  // Combines per-key comparisons the way VersionVector and VersionMap do:
+  // equal keys don't matter, otherwise all differences must agree.
+  private def combine(acc: Int, cur: Int): Int =
+    if ((acc == cur) || (cur == 0)) acc
+    else if (acc == 0) cur
+    else Conflict
+
+  // Compares the clocks in [a0, a1) of x with those in [b0, b1) of y, which
+  // is the VersionVector tryCompareTo result or Conflict.
+  private def compareClocks(x: PackedVersionMap, a0: Int, a1: Int, y: PackedVersionMap, b0: Int, b1: Int): Int = {
+    var acc = 0
+    var a   = a0
+    var b   = b0
+    while ((a < a1 || b < b1) && (acc != Conflict)) {
+      val cur =
+        if ((b == b1) || ((a < a1) && (x.ordinals(a) < y.ordinals(b)))) {
+          val r = Integer.signum(x.counters(a))
+          a += 1
+          r
+        } else if ((a == a1) || (y.ordinals(b) < x.ordinals(a))) {
+          val r = -Integer.signum(y.counters(b))
+          b += 1
+          r
+        } else {
+          val r = Integer.signum(Integer.compare(x.counters(a), y.counters(b)))
+          a += 1
+          b += 1
+          r
+        }
+      acc = combine(acc, cur)
+    }
+    acc
+  }
+
+  /**
+   * Serialized form of a packed map.  Ordinals are only meaningful within
+   * one JVM, so the lifespans used are written once up front and clocks
+   * refer to them by position.  Small ints are written as varints.
+   */
+  @SerialVersionUID(1L)
+  private final class SerializationProxy(@transient private var vm: PackedVersionMap) extends Serializable {
+
+    private def writeObject(out: ObjectOutputStream): Unit = {
+      val used = vm.ordinals.distinct.sorted
+      writeVarInt(out, used.length)
+      used.foreach { o =>
+        val id = LifespanId.fromOrdinal(o)
+        out.writeLong(id.uuid.getMostSignificantBits)
+        out.writeLong(id.uuid.getLeastSignificantBits)
+      }
+
+      writeVarInt(out, vm.packedSize)
+      for (i <- 0 until vm.packedSize) {
+        out.writeLong(vm.msbs(i))
+        out.writeLong(vm.lsbs(i))
+        writeVarInt(out, vm.offsets(i + 1) - vm.offsets(i))
+        for (j <- vm.offsets(i) until vm.offsets(i + 1)) {
+          writeVarInt(out, java.util.Arrays.binarySearch(used, vm.ordinals(j)))
+          writeVarInt(out, vm.counters(j))
+        }
+      }
+    }
+
+    private def readObject(in: ObjectInputStream): Unit = {
+      val lifespans = Array.fill(readVarInt(in)) {
+        val msb = in.readLong()
+        val lsb = in.readLong()
+        LifespanId.ordinal(LifespanId.intern(LifespanId(new UUID(msb, lsb))))
+      }
+
+      val n        = readVarInt(in)
+      val msbs     = new Array[Long](n)
+      val lsbs     = new Array[Long](n)
+      val offsets  = new Array[Int](n + 1)
+      val ordinals = Array.newBuilder[Int]
+      val counters = Array.newBuilder[Int]
+      var j        = 0
+      for (i <- 0 until n) {
+        msbs(i)    = in.readLong()
+        lsbs(i)    = in.readLong()
+        offsets(i) = j
+        for (_ <- 0 until readVarInt(in)) {
+          ordinals += lifespans(readVarInt(in))
+          counters += readVarInt(in)
+          j += 1
+        }
+      }
+      offsets(n) = j
+
+      // This JVM may have numbered the lifespans in a different order.
+      val os = ordinals.result()
+      val cs = counters.result()
+      for (i <- 0 until n) sortClocks(os, cs, offsets(i), offsets(i + 1))
+
+      vm = new PackedVersionMap(msbs, lsbs, offsets, os, cs, Map.empty, n)
+    }
+
+    private def readResolve(): AnyRef = vm
+  }
+
+  private def writeVarInt(out: ObjectOutputStream, i: Int): Unit = {
+    var v = i
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80)
+      v >>>= 7
+    }
+    out.writeByte(v)
+  }
+
+  private def readVarInt(in: ObjectInputStream): Int = {
+    var res   = 0
+    var shift = 0
+    var b     = in.readByte()
+    while ((b & 0x80) != 0) {
+      res   |= (b & 0x7F) << shift
+      shift += 7
+      b      = in.readByte()
+    }
+    res | (b << shift)
+  }
+}
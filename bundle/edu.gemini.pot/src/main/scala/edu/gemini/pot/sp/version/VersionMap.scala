@@ -1,5 +1,6 @@
 package edu.gemini.pot.sp.version
 
+import edu.gemini.pot.sp.SPNodeKey
 import edu.gemini.shared.util.VersionComparison
 
 /**
@@ -17,16 +18,24 @@ object VersionMap {
       case _               => None
     }
 
-    def tryCompare(xvm: VersionMap, yvm: VersionMap): Option[Int] = {
-      val zero: Option[Int] = Some(0)
-      (zero/:(xvm.keySet ++ yvm.keySet)) { (iopt,key) =>
-        for {
-          a <- iopt
-          b <- xvm.getOrElse(key, EmptyNodeVersions).tryCompareTo(yvm.getOrElse(key, EmptyNodeVersions))
-          c <- combine(a, b)
-        } yield c
+    def tryCompare(xvm: VersionMap, yvm: VersionMap): Option[Int] =
+      (xvm, yvm) match {
+        case (x: PackedVersionMap, y: PackedVersionMap) =>
+          x.tryComparePacked(y)
+
+        case _ =>
+          def step(iopt: Option[Int], key: SPNodeKey): Option[Int] =
+            for {
+              a <- iopt
+              b <- nodeVersions(xvm, key).tryCompareTo(nodeVersions(yvm, key))
+              c <- combine(a, b)
+            } yield c
+
+          // Visit every key in either map once, without building their union.
+          val zero: Option[Int] = Some(0)
+          val xRes = (zero/:xvm.keysIterator)(step)
+          (xRes/:yvm.keysIterator.filterNot(xvm.contains))(step)
       }
-    }
 
     def lteq(xvm: VersionMap, yvm: VersionMap): Boolean = {
       // a less efficient (probably) but more concise (definitely) way to do this
@@ -68,7 +77,13 @@ object VersionMap {
     * Intuitively, this method returns the `VersionMap` that results from
     * synchronizing two program versions with these maps. */
   def sync(x: VersionMap, y: VersionMap): VersionMap =
-    (x/:y.keySet) { (vm, k) =>
-      vm.updated(k, nodeVersions(x, k).sync(nodeVersions(y, k)))
+    (x, y) match {
+      case (px: PackedVersionMap, py: PackedVersionMap) =>
+        px.syncPacked(py)
+
+      case _ =>
+        (x/:y.keySet) { (vm, k) =>
+          vm.updated(k, nodeVersions(x, k).sync(nodeVersions(y, k)))
+        }
     }
 }
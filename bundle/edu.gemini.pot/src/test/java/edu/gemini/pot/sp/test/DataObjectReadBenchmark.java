@@ -0,0 +1,112 @@
+package edu.gemini.pot.sp.test;
+
+import edu.gemini.pot.sp.*;
+import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.shared.util.immutable.Some;
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.data.ISPDataObject;
+
+import java.lang.management.ManagementFactory;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Measures the memory allocated by a query functor that reads the data object
+ * of every observation, obs component and sequence component in the
+ * database, using the copying {@link ISPNode#getDataObject()} versus
+ * {@link ISPNode#getReadOnlyDataObject()}.
+ *
+ * <pre>
+ * DataObjectReadBenchmark [programs] [observations per program] [iterations]
+ * </pre>
+ */
+public final class DataObjectReadBenchmark {
+
+    private static final class ReadFunctor extends DBAbstractQueryFunctor {
+        private final boolean readOnly;
+        private int count;
+
+        ReadFunctor(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+
+        private void read(ISPNode node) {
+            final ISPDataObject dObj = readOnly ? node.getReadOnlyDataObject() : node.getDataObject();
+            if (dObj.getTitle() != null) ++count;
+        }
+
+        private void read(ISPSeqComponent seq) {
+            if (seq == null) return;
+            read((ISPNode) seq);
+            for (ISPSeqComponent child : seq.getSeqComponents()) read(child);
+        }
+
+        @Override
+        public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
+            final ISPProgram prog = (ISPProgram) node;
+            read(prog);
+            for (ISPObservation obs : prog.getAllObservations()) {
+                read(obs);
+                for (ISPObsComponent comp : obs.getObsComponents()) read(comp);
+                read(obs.getSeqComponent());
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void run(IDBDatabaseService odb, boolean readOnly, int iterations) {
+        final Set<Principal> user = Collections.emptySet();
+
+        final long startBytes = allocatedBytes();
+        final long startTime  = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < iterations; ++i) {
+            count += odb.getQueryRunner(user).queryPrograms(new ReadFunctor(readOnly)).count;
+        }
+        final long bytes = allocatedBytes() - startBytes;
+        final long nanos = System.nanoTime() - startTime;
+
+        System.out.printf("%-10s %10.1f KB/query %8.2f ms/query %6d bytes/data object%n",
+                readOnly ? "read-only" : "copy",
+                bytes / 1024.0 / iterations,
+                nanos / 1e6 / iterations,
+                bytes / Math.max(1, count));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int programs     = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+        final int observations = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        final int iterations   = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+        final IDBDatabaseService odb = DBLocalDatabase.createTransient();
+        try {
+            final ISPFactory fact = odb.getFactory();
+            for (int p = 0; p < programs; ++p) {
+                final SPProgramID pid = SPProgramID.toProgramID("GS-2016A-Q-" + (p + 1));
+                final ISPProgram prog = fact.createProgram(new SPNodeKey(), pid);
+                odb.put(prog);
+                for (int o = 0; o < observations; ++o) {
+                    prog.addObservation(fact.createObservation(prog, new Some<>(Instrument.GmosSouth), null));
+                }
+            }
+            System.out.printf("%d programs, %d observations each%n", programs, observations);
+
+            // Warm up.
+            run(odb, false, 2);
+            run(odb, true, 2);
+
+            run(odb, false, iterations);
+            run(odb, true, iterations);
+        } finally {
+            odb.getDBAdmin().shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.gemini.pot.spdb;
+
+import edu.gemini.pot.sp.ISPFactory;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.spModel.core.SPProgramID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public final class ProgramManagerTest {
+
+    private IDBDatabaseService odb;
+    private ISPFactory factory;
+
+    @Before
+    public void setUp() {
+        odb     = DBLocalDatabase.createTransient();
+        factory = odb.getFactory();
+    }
+
+    @After
+    public void tearDown() {
+        odb.getDBAdmin().shutdown();
+    }
+
+    private ISPProgram create(String id) throws Exception {
+        return factory.createProgram(new SPNodeKey(), SPProgramID.toProgramID(id));
+    }
+
+    @Test
+    public void testSnapshotIsStable() throws Exception {
+        final ISPProgram p1 = create("GS-2017A-Q-1");
+        final ProgramManager<ISPProgram> pm = new ProgramManager<>(Collections.singletonList(p1));
+
+        final List<ISPProgram> before = pm.getPrograms();
+        pm.putProgram(create("GS-2017A-Q-2"));
+
+        assertEquals(Collections.singletonList(p1), before);
+        assertEquals(2, pm.getPrograms().size());
+
+        pm.removeProgram(p1.getProgramKey());
+        assertEquals(Collections.singletonList(p1), before);
+        assertEquals(1, pm.getPrograms().size());
+    }
+
+    @Test
+    public void testLookupAndReplace() throws Exception {
+        final ISPProgram p1 = create("GS-2017A-Q-1");
+        final ProgramManager<ISPProgram> pm = new ProgramManager<>(Collections.<ISPProgram>emptyList());
+
+        final List<String> events = new ArrayList<>();
+        pm.addListener(new ProgramEventListener<ISPProgram>() {
+            @Override public void programAdded(ProgramEvent<ISPProgram> pme)    { events.add("added");    }
+            @Override public void programReplaced(ProgramEvent<ISPProgram> pme) { events.add("replaced"); }
+            @Override public void programRemoved(ProgramEvent<ISPProgram> pme)  { events.add("removed");  }
+        });
+
+        assertNull(pm.putProgram(p1));
+        assertNull(pm.putProgram(p1)); // already present, no event
+        assertSame(p1, pm.lookupProgram(p1.getProgramKey()));
+        assertSame(p1, pm.lookupProgramByID(p1.getProgramID()));
+
+        // Same key, new id.
+        final ISPProgram p2 = factory.createProgram(p1.getProgramKey(), SPProgramID.toProgramID("GS-2017A-Q-2"));
+        assertSame(p1, pm.putProgram(p2));
+        assertNull(pm.lookupProgramByID(p1.getProgramID()));
+        assertSame(p2, pm.lookupProgramByID(p2.getProgramID()));
+
+        assertTrue(pm.removeProgram(p2.getProgramKey()));
+        assertFalse(pm.removeProgram(p2.getProgramKey()));
+        assertNull(pm.lookupProgram(p2.getProgramKey()));
+
+        assertEquals(Arrays.asList("added", "replaced", "removed"), events);
+    }
+
+    @Test(expected = DBIDClashException.class)
+    public void testIdClash() throws Exception {
+        final ProgramManager<ISPProgram> pm = new ProgramManager<>(Collections.singletonList(create("GS-2017A-Q-1")));
+        pm.putProgram(create("GS-2017A-Q-1"));
+    }
+}
@@ -0,0 +1,58 @@
+package edu.gemini.spModel.obs;
+
+import edu.gemini.spModel.core.SPProgramID;
+import edu.gemini.spModel.gemini.flamingos2.Flamingos2;
+import edu.gemini.spModel.obs.ObsAttributeIndex.ObsAttributes;
+import edu.gemini.spModel.obs.ObsAttributeIndex.ProgramAttributes;
+import edu.gemini.spModel.test.SpModelTestBase;
+
+/**
+ * Tests that the {@link ObsAttributeIndex} reuses program attributes until
+ * the program changes.
+ */
+public class ObsAttributeIndexTest extends SpModelTestBase {
+
+    public void setUp() throws Exception {
+        super.setUp(SPProgramID.toProgramID("GS-2017A-Q-1"));
+        addObsComponent(Flamingos2.SP_TYPE);
+    }
+
+    private ProgramAttributes lookup() {
+        return ObsAttributeIndex.lookup(getOdb(), getProgram());
+    }
+
+    public void testAttributes() throws Exception {
+        final ProgramAttributes p = lookup();
+        assertEquals("2017A", p.getSemester());
+        assertEquals(1, p.getObservations().size());
+
+        final ObsAttributes o = p.getObservations().get(0);
+        assertSame(getObs(), o.getObservation());
+        assertEquals(Flamingos2.SP_TYPE, o.getInstrument());
+        assertEquals(ObservationStatus.computeFor(getObs()), o.getStatus());
+    }
+
+    public void testReuse() throws Exception {
+        assertSame(lookup(), lookup());
+    }
+
+    public void testUpdate() throws Exception {
+        final ProgramAttributes p0 = lookup();
+
+        final SPObservation spObs = (SPObservation) getObs().getDataObject();
+        spObs.setTitle("Updated");
+        getObs().setDataObject(spObs);
+
+        final ProgramAttributes p1 = lookup();
+        assertNotSame(p0, p1);
+        assertEquals("Updated", p1.getObservations().get(0).getTitle());
+        assertSame(p1, lookup());
+    }
+
+    public void testRemove() throws Exception {
+        final ProgramAttributes p0 = lookup();
+        getOdb().remove(getProgram());
+        getOdb().put(getProgram());
+        assertNotSame(p0, lookup());
+    }
+}
@@ -0,0 +1,92 @@
+package edu.gemini.spModel.obs;
+
+import edu.gemini.pot.sp.ISPObsComponent;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.skycalc.Angle;
+import edu.gemini.skycalc.Coordinates;
+import edu.gemini.spModel.gemini.flamingos2.Flamingos2;
+import edu.gemini.spModel.obs.context.ObsContext;
+import edu.gemini.spModel.test.SpModelTestBase;
+
+/**
+ * Tests that the {@link ObsContextService} reuses contexts until the
+ * observation changes, without sharing their mutable state between callers.
+ */
+public class ObsContextServiceTest extends SpModelTestBase {
+
+    private static final long TIME = 1477958400000L; // 2016-11-01 00:00 UTC
+
+    private ISPObsComponent instComp;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        instComp = addObsComponent(Flamingos2.SP_TYPE);
+    }
+
+    private ObsContext lookup() {
+        final Option<ObsContext> ctx = ObsContextService.lookupObsContext(getObs());
+        assertFalse(ctx.isEmpty());
+        return ctx.getValue();
+    }
+
+    public void testNoInstrument() throws Exception {
+        removeObsComponent(Flamingos2.SP_TYPE);
+        assertTrue(ObsContextService.lookupObsContext(getObs()).isEmpty());
+    }
+
+    public void testReuse() throws Exception {
+        lookup();
+        final ObsContextService.Entry e = SPObsCache.getObsContext(getObs());
+        assertNotNull(e);
+        lookup();
+        assertSame(e, SPObsCache.getObsContext(getObs()));
+    }
+
+    public void testNoSharedState() throws Exception {
+        final ObsContext ctx0 = lookup();
+        final ObsContext ctx1 = lookup();
+        assertNotSame(ctx0, ctx1);
+        assertNotSame(ctx0.getTargets().getAsterism().allSpTargetsJava().head(),
+                      ctx1.getTargets().getAsterism().allSpTargetsJava().head());
+
+        // Changing one caller's copy doesn't affect the next caller.
+        final double ra = ctx1.getBaseCoordinates().getValue().getRaDeg();
+        ctx0.getTargets().getAsterism().allSpTargetsJava().head().setRaDegrees(ra + 10.0);
+
+        final ObsContext ctx2 = lookup();
+        assertEquals(ra, ctx2.getBaseCoordinates().getValue().getRaDeg(), 0.0);
+    }
+
+    public void testUpdate() throws Exception {
+        final ObsContext ctx0 = lookup();
+
+        final Flamingos2 f2 = (Flamingos2) instComp.getDataObject();
+        f2.setPosAngle(30.0);
+        instComp.setDataObject(f2);
+
+        final ObsContext ctx1 = lookup();
+        assertNotSame(ctx0, ctx1);
+        assertEquals(30.0, ctx1.getPositionAngle().toDegrees(), 0.0);
+    }
+
+    public void testBaseCoordinates() throws Exception {
+        final ObsContext ctx = lookup();
+        final Option<Coordinates> c = ctx.getBaseCoordinates(TIME);
+        assertFalse(c.isEmpty());
+
+        // Same time bucket, and contexts derived with the same targets share
+        // the remembered positions.
+        assertSame(c, ctx.getBaseCoordinates(TIME + ObsContext.BASE_POSITION_BUCKET_MS - 1));
+        assertSame(c, ctx.withPositionAngleJava(Angle.degrees(45)).getBaseCoordinates(TIME));
+    }
+
+    public void testBaseCoordinatesFollowTargetEdits() throws Exception {
+        final ObsContext ctx     = lookup();
+        final ObsContext derived = ctx.withPositionAngleJava(Angle.degrees(45));
+        final double ra = derived.getBaseCoordinates(TIME).getValue().getRaDeg();
+
+        ctx.getTargets().getAsterism().allSpTargetsJava().head().setRaDegrees(ra + 10.0);
+        assertEquals(ra + 10.0, derived.getBaseCoordinates(TIME).getValue().getRaDeg(), 1e-9);
+        assertEquals(ra + 10.0, derived.getBaseCoordinates().getValue().getRaDeg(), 1e-9);
+    }
+}
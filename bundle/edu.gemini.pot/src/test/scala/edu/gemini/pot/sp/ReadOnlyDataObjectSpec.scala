@@ -0,0 +1,50 @@
+package edu.gemini.pot.sp
+
+import edu.gemini.spModel.rich.pot.sp._
+import org.scalacheck.Gen
+
+object ReadOnlyDataObjectSpec extends ProgramTestSupport {
+
+  val genTestProg: Gen[ISPFactory => ISPProgram] =
+    ProgramGen.genProg
+
+  def allNodes(progs: List[ISPProgram]): List[ISPNode] =
+    progs.flatMap(_.toStream)
+
+  def allObs(progs: List[ISPProgram]): List[ISPObservation] =
+    allNodes(progs).collect { case o: ISPObservation => o }
+
+  "getReadOnlyDataObject" should {
+    "match the data object copy" ! forAllPrograms { (_, progs) =>
+      allNodes(progs).forall { n =>
+        DataObjectBlob.same(n.getReadOnlyDataObject, n.getDataObject)
+      }
+    }
+
+    "return the same instance until the data object is replaced" ! forAllPrograms { (_, progs) =>
+      allNodes(progs).forall { n =>
+        n.getReadOnlyDataObject eq n.getReadOnlyDataObject
+      }
+    }
+
+    "not share the instance with getDataObject" ! forAllPrograms { (_, progs) =>
+      allObs(progs).forall { n =>
+        n.getReadOnlyDataObject ne n.getDataObject
+      }
+    }
+
+    "be unaffected by later updates to the node" ! forAllPrograms { (_, progs) =>
+      allObs(progs).forall { n =>
+        val before = n.getReadOnlyDataObject
+        val title  = before.getTitle
+
+        val update = n.getDataObject
+        update.setTitle(s"$title (updated)")
+        n.setDataObject(update)
+
+        val after = n.getReadOnlyDataObject
+        (before.getTitle == title) && (after ne before) && (after.getTitle == s"$title (updated)")
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package edu.gemini.pot.sp.version
+
+import edu.gemini.pot.sp.{Instrument, SPNodeKey}
+import edu.gemini.pot.spdb.DBLocalDatabase
+import edu.gemini.shared.util.VersionVector
+import edu.gemini.shared.util.IntegerIsIntegral._
+
+import org.scalacheck.{Arbitrary, Gen}
+import org.scalacheck.Prop.forAll
+import org.specs2.ScalaCheck
+import org.specs2.mutable.Specification
+
+import java.io._
+
+object PackedVersionMapSpec extends Specification with ScalaCheck {
+
+  // Small pools so that generated maps overlap and sometimes compare.
+  val keys: Vector[SPNodeKey]       = Vector.fill(20)(new SPNodeKey())
+  val lifespans: Vector[LifespanId] = Vector.fill(3)(LifespanId.random)
+
+  val genNodeVersions: Gen[NodeVersions] =
+    for {
+      ids <- Gen.someOf(lifespans)
+      cs  <- Gen.listOfN(ids.size, Gen.choose(0, 3))
+    } yield VersionVector(ids.zip(cs.map(Integer.valueOf)): _*)
+
+  val genVersionMap: Gen[VersionMap] =
+    for {
+      ks  <- Gen.someOf(keys)
+      nvs <- Gen.listOfN(ks.size, genNodeVersions)
+    } yield ks.zip(nvs).toMap
+
+  implicit val arbVersionMap: Arbitrary[VersionMap] =
+    Arbitrary(genVersionMap)
+
+  sealed trait Edit
+  case class Put(k: SPNodeKey, nv: NodeVersions) extends Edit
+  case class Remove(k: SPNodeKey) extends Edit
+
+  implicit val arbEdits: Arbitrary[List[Edit]] =
+    Arbitrary(Gen.listOf(Gen.oneOf[Edit](
+      for { k <- Gen.oneOf(keys); nv <- genNodeVersions } yield Put(k, nv),
+      Gen.oneOf(keys).map(Remove)
+    )))
+
+  def edit(vm: VersionMap, e: Edit): VersionMap =
+    e match {
+      case Put(k, nv) => vm.updated(k, nv)
+      case Remove(k)  => vm - k
+    }
+
+  def roundTrip(vm: VersionMap): AnyRef = {
+    val bos = new ByteArrayOutputStream()
+    val oos = new ObjectOutputStream(bos)
+    oos.writeObject(vm)
+    oos.close()
+    new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray)).readObject()
+  }
+
+  "PackedVersionMap" should {
+    "equal the map it packs" ! forAll { (vm: VersionMap) =>
+      val p = PackedVersionMap(vm)
+      (p == vm) && (p.size == vm.size) && keys.forall(k => p.get(k) == vm.get(k))
+    }
+
+    "track edits like an ordinary map" ! forAll { (vm: VersionMap, es: List[Edit]) =>
+      val expected = (vm/:es)(edit)
+      val result   = ((PackedVersionMap(vm): VersionMap)/:es)(edit)
+      (result == expected) && (result.size == expected.size) && result.isInstanceOf[PackedVersionMap]
+    }
+
+    "compare like an ordinary map" ! forAll { (x: VersionMap, y: VersionMap) =>
+      val expected = VersionMap.tryCompare(x, y)
+      (VersionMap.tryCompare(PackedVersionMap(x), PackedVersionMap(y)) == expected) &&
+        (VersionMap.tryCompare(PackedVersionMap(x), y) == expected)
+    }
+
+    "compare unpacked edits like an ordinary map" ! forAll { (x: VersionMap, y: VersionMap, es: List[Edit]) =>
+      val px = ((PackedVersionMap(x): VersionMap)/:es)(edit)
+      val ex = (x/:es)(edit)
+      VersionMap.tryCompare(px, PackedVersionMap(y)) == VersionMap.tryCompare(ex, y)
+    }
+
+    "compare edits on both sides like an ordinary map" ! forAll { (x: VersionMap, y: VersionMap, es0: List[Edit], es1: List[Edit]) =>
+      val px = ((PackedVersionMap(x): VersionMap)/:es0)(edit)
+      val py = ((PackedVersionMap(y): VersionMap)/:es1)(edit)
+      VersionMap.tryCompare(px, py) == VersionMap.tryCompare((x/:es0)(edit), (y/:es1)(edit))
+    }
+
+    "sync like an ordinary map" ! forAll { (x: VersionMap, y: VersionMap, es0: List[Edit], es1: List[Edit]) =>
+      val px  = ((PackedVersionMap(x): VersionMap)/:es0)(edit)
+      val py  = ((PackedVersionMap(y): VersionMap)/:es1)(edit)
+      val res = VersionMap.sync(px, py)
+      (res == VersionMap.sync((x/:es0)(edit), (y/:es1)(edit))) && res.isInstanceOf[PackedVersionMap]
+    }
+
+    "compare the version maps of edited programs" in {
+      val odb = DBLocalDatabase.createTransient()
+      try {
+        val f = odb.getFactory
+        val p = f.createProgram(new SPNodeKey(), null)
+        odb.put(p)
+        (1 to 5).foreach { _ => p.addObservation(f.createObservation(p, Instrument.none, null)) }
+        p.setVersions(p.getVersions) // packs
+        val before = p.getVersions
+
+        val obs = p.getAllObservations.get(0)
+        val dob = obs.getDataObject
+        dob.setTitle("Edited")
+        obs.setDataObject(dob)
+        val after = p.getVersions
+
+        // Edits are kept pending rather than repacking the whole map.
+        val pending = after match {
+          case pvm: PackedVersionMap => !pvm.isPacked
+          case _                     => false
+        }
+        val ordinary: VersionMap = Map.empty ++ after
+
+        (pending must beTrue) and
+          (VersionMap.tryCompare(after, before) must_== Some(1)) and
+          (VersionMap.tryCompare(before, after) must_== Some(-1)) and
+          (VersionMap.tryCompare(after, ordinary) must_== Some(0)) and
+          (VersionMap.sync(before, after) must_== after)
+      } finally {
+        odb.getDBAdmin.shutdown()
+      }
+    }
+
+    "serialize as a packed map" ! forAll { (vm: VersionMap, es: List[Edit]) =>
+      val e = ((PackedVersionMap(vm): VersionMap)/:es)(edit)
+      roundTrip(e) match {
+        case r: PackedVersionMap => (r == e) && r.isPacked
+        case _                   => false
+      }
+    }
+
+    "intern deserialized lifespan ids" ! forAll { (vm: VersionMap) =>
+      roundTrip(PackedVersionMap(vm)) match {
+        case r: PackedVersionMap => r.values.flatMap(_.clocks.keys).forall(id => lifespans.exists(_ eq id))
+        case _                   => false
+      }
+    }
+  }
+}
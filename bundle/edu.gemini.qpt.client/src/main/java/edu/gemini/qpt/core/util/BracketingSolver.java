@@ -0,0 +1,71 @@
+package edu.gemini.qpt.core.util;
+
+/**
+ * Solver for constraints of the form <code>lower &lt;= g(t) &lt;= upper</code> where g is a
+ * continuous function such as an elevation or a sky brightness. The search itself is done by
+ * {@link edu.gemini.skycalc.BracketingSolver}; this class only adapts it to the QPT
+ * {@link Solver}, {@link Interval} and {@link Union} types, which are distinct from (and
+ * serializable to PIO unlike) their skycalc counterparts.
+ * <p>
+ * This is a drop-in replacement for the stepping {@link Solver}; single domains (see
+ * {@link Solver#solve(Interval, long)}) are still found by stepping.
+ */
+public abstract class BracketingSolver extends Solver {
+
+    private final Search search;
+
+    /**
+     * @param stepSize the sampling step
+     * @param tolerance the accuracy of the interval boundaries
+     * @param lower the lowest acceptable value of g, or negative infinity
+     * @param upper the highest acceptable value of g, or positive infinity
+     */
+    protected BracketingSolver(long stepSize, long tolerance, double lower, double upper) {
+        super(stepSize, tolerance);
+        this.search = new Search(stepSize, tolerance, lower, upper);
+    }
+
+    /**
+     * The continuous function whose value is constrained.
+     */
+    protected abstract double g(long t);
+
+    @Override
+    protected boolean f(long t) {
+        return search.met(t);
+    }
+
+    /**
+     * Find all domains on the specified interval.
+     */
+    @Override
+    public Union<Interval> solve(Interval interval) {
+        final Union<Interval> ret = new Union<Interval>();
+        if (interval.getEnd() <= interval.getStart()) return ret;
+        for (edu.gemini.skycalc.Interval i : search.solve(interval.getStart(), interval.getEnd())) {
+            ret.add(new Interval(i.getStart(), i.getEnd()));
+        }
+        return ret;
+    }
+
+    /**
+     * The skycalc solver, evaluating this solver's g.
+     */
+    private final class Search extends edu.gemini.skycalc.BracketingSolver {
+
+        Search(long stepSize, long tolerance, double lower, double upper) {
+            super(stepSize, tolerance, lower, upper);
+        }
+
+        @Override
+        protected double g(long t) {
+            return BracketingSolver.this.g(t);
+        }
+
+        boolean met(long t) {
+            return f(t);
+        }
+
+    }
+
+}
@@ -1,31 +1,40 @@
 package edu.gemini.qpt.core.util;
 
-import java.util.Date;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
 import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalcMethods;
+import edu.gemini.skycalc.SkyCalcEngine;
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
 import edu.gemini.qpt.shared.sp.Obs;
 
-public abstract class ElevationConstraintSolver extends Solver {
+public abstract class ElevationConstraintSolver extends BracketingSolver {
 
     @SuppressWarnings("unused")
     private static final Logger LOGGER = Logger.getLogger(ElevationConstraintSolver.class.getName());
 
-    protected final ImprovedSkyCalc calc;
+    protected final SkyCalcEngine engine;
     protected final Function<Long, WorldCoords> coords;
     protected final double min, max;
 
-    protected ElevationConstraintSolver(Site site, Function<Long, WorldCoords> coords, double min, double max) {
-        super(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE);
+    protected ElevationConstraintSolver(Site site, Function<Long, WorldCoords> coords, double min, double max, double lower, double upper) {
+        super(2 * TimeUtils.MS_PER_HOUR, TimeUtils.MS_PER_MINUTE, lower, upper);
         this.coords = coords;
-        this.calc = new ImprovedSkyCalc(site);
+        this.engine = new SkyCalcEngine(site);
         this.max = max;
         this.min = min;
     }
 
+    /**
+     * Calculates the circumstances of the target at time t; the moon is not needed here.
+     */
+    protected SkyCalcEngine.Circumstances circumstances(long t) {
+        final WorldCoords c = coords.apply(t);
+        return engine.calculate(engine.epoch(t, false), c.getRaDeg(), c.getDecDeg());
+    }
+
     public static ElevationConstraintSolver forObs(Site site, Obs obs) {
         switch (obs.getElevationConstraintType()) {
         case AIRMASS:    return new AirmassSolver(site, obs);
@@ -36,21 +45,37 @@ public abstract class ElevationConstraintSolver extends Solver {
         }
     }
 
+    /**
+     * Airmass decreases monotonically with altitude above the horizon, so the airmass limits
+     * are turned into altitude limits; unlike airmass, altitude is continuous across the horizon.
+     */
     static class AirmassSolver extends ElevationConstraintSolver {
 
         protected AirmassSolver(Site site, Obs obs) {
-            super(site, obs::getCoords, obs.getElevationConstraintMin(), obs.getElevationConstraintMax());
+            this(site, obs, obs.getElevationConstraintMin(), obs.getElevationConstraintMax());
         }
 
         protected AirmassSolver(Site site, Obs obs, double min, double max) {
-            super(site, obs::getCoords, min, max);
+            super(site, obs::getCoords, min, max, altitude(max), min <= 1.0 ? Double.POSITIVE_INFINITY : altitude(min));
         }
 
         @Override
-        protected boolean f(long t) {
-            calc.calculate(coords.apply(t), new Date(t), false);
-            double airmass = calc.getAirmass();
-            return (min <= airmass) && (airmass <= max);
+        protected double g(long t) {
+            return circumstances(t).getAltitude();
+        }
+
+        /**
+         * Finds the altitude at which the airmass drops to the given value.
+         */
+        static double altitude(double airmass) {
+            double lo = 0, hi = 90;
+            for (int i = 0; i < 40; i++) {
+                final double alt = (lo + hi) / 2;
+                final double am = ImprovedSkyCalcMethods.getAirmass(alt);
+                if (am == 0 || am > airmass) lo = alt;
+                else hi = alt;
+            }
+            return hi;
         }
 
     }
@@ -58,14 +83,13 @@ public abstract class ElevationConstraintSolver extends Solver {
     static class HourAngleSolver extends ElevationConstraintSolver {
 
         protected HourAngleSolver(Site site, Obs obs) {
-            super(site, obs::getCoords, obs.getElevationConstraintMin(), obs.getElevationConstraintMax());
+            super(site, obs::getCoords, obs.getElevationConstraintMin(), obs.getElevationConstraintMax(),
+                  obs.getElevationConstraintMin(), obs.getElevationConstraintMax());
         }
 
         @Override
-        protected boolean f(long t) {
-            calc.calculate(coords.apply(t), new Date(t), false);
-            double ha = calc.getHourAngle();
-            return (min <= ha) && (ha <= max);
+        protected double g(long t) {
+            return circumstances(t).getHourAngle();
         }
 
     }
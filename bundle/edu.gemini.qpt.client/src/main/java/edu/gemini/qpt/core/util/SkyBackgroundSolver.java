@@ -1,17 +1,16 @@
 package edu.gemini.qpt.core.util;
 
-import java.util.Date;
 import java.util.function.Function;
 
 import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.SkyCalcEngine;
 import edu.gemini.spModel.core.Site;
 import jsky.coords.WorldCoords;
 
-public class SkyBackgroundSolver extends Solver {
+public class SkyBackgroundSolver extends BracketingSolver {
 
-    private final ImprovedSkyCalc calc;
+    private final SkyCalcEngine engine;
     private final Function <Long, WorldCoords> coords;
-    private final double mag;
     
     /**
      * Creates a new SkyBackgroundSolver that finds intervals in which the sky background
@@ -20,16 +19,15 @@ public class SkyBackgroundSolver extends Solver {
      * @param mag
      */
     public SkyBackgroundSolver(Site site, Function<Long, WorldCoords> coords, double mag) {
-        super(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE);
+        super(TimeUtils.MS_PER_HOUR, TimeUtils.MS_PER_MINUTE, mag, Double.POSITIVE_INFINITY);
         this.coords = coords;
-        this.calc = new ImprovedSkyCalc(site);
-        this.mag = mag;
+        this.engine = new SkyCalcEngine(site);
     }
     
     @Override
-    protected boolean f(long t) {
-        calc.calculate(coords.apply(t), new Date(t), true);
-        return calc.getTotalSkyBrightness() >= mag;
+    protected double g(long t) {
+        final WorldCoords c = coords.apply(t);
+        return engine.calculate(engine.epoch(t, true), c.getRaDeg(), c.getDecDeg()).getTotalSkyBrightness();
     }
 
     @Override
@@ -71,7 +71,7 @@ public class RefreshAction extends AbstractAsyncAction implements PropertyChange
             MiniModel miniModel = null;
             for (int i = 1; miniModel == null ; i++) {
                 try {
-                    miniModel = MiniModel.newInstance(authClient, peer, sched.getEnd(), sched.getExtraSemesters(), magTable);
+                    miniModel = MiniModel.newInstance(authClient, peer, sched.getEnd(), sched.getExtraSemesters(), magTable, sched.getMiniModel());
                 } catch (TimeoutException te) {
                     pm.setMessage("Retrying (" + i + ") ...");
                     if (pm.isCancelled())
@@ -1,7 +1,7 @@
 package edu.gemini.qpt.ui.view.lchWindow;
 
 import edu.gemini.qpt.core.Schedule;
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.qpt.shared.util.TimeUtils;
 import edu.gemini.qpt.ui.util.TimePreference;
 import edu.gemini.ui.gface.GSubElementDecorator;
@@ -23,7 +23,7 @@ import edu.gemini.qpt.core.Alloc;
 import edu.gemini.qpt.core.Variant;
 import edu.gemini.qpt.core.Marker.Severity;
 import edu.gemini.qpt.shared.sp.Obs;
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.qpt.ui.util.ColorWheel;
 import edu.gemini.qpt.ui.util.CompositeIcon;
 import edu.gemini.qpt.ui.util.TimePreference;
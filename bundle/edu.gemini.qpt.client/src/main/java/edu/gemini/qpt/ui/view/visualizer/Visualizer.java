@@ -38,7 +38,7 @@ import edu.gemini.qpt.core.Variant;
 import edu.gemini.qpt.core.Marker.Severity;
 import edu.gemini.qpt.shared.sp.Conds;
 import edu.gemini.qpt.shared.sp.Obs;
-import edu.gemini.qpt.core.util.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalc;
 import edu.gemini.qpt.core.util.Interval;
 import edu.gemini.qpt.shared.util.TimeUtils;
 import edu.gemini.qpt.core.util.AirmassLimit;
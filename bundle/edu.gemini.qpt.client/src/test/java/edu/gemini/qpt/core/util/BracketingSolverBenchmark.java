@@ -0,0 +1,112 @@
+package edu.gemini.qpt.core.util;
+
+import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalc;
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+
+import java.util.Date;
+
+/**
+ * Compares the stepping {@link Solver} as the QPT used it (15 minute steps, 1 minute
+ * tolerance) with the {@link BracketingSolver} for the elevation and sky background
+ * constraints of a grid of targets, reporting the number of sky calculations and the time.
+ *
+ * <pre>
+ * BracketingSolverBenchmark [nights] [iterations]
+ * </pre>
+ */
+public final class BracketingSolverBenchmark {
+
+    private static final long START = 1477958400000L; // 2016-11-01 00:00 UTC
+
+    private static long evaluations;
+    private static int sink;
+
+    private interface Factory {
+        Solver create(ImprovedSkyCalc calc, WorldCoords coords);
+    }
+
+    private static double airmass(ImprovedSkyCalc calc, WorldCoords coords, long t) {
+        ++evaluations;
+        calc.calculate(coords, new Date(t), false);
+        return calc.getAirmass();
+    }
+
+    private static double altitude(ImprovedSkyCalc calc, WorldCoords coords, long t) {
+        ++evaluations;
+        calc.calculate(coords, new Date(t), false);
+        return calc.getAltitude();
+    }
+
+    private static double skyBrightness(ImprovedSkyCalc calc, WorldCoords coords, long t) {
+        ++evaluations;
+        calc.calculate(coords, new Date(t), true);
+        return calc.getTotalSkyBrightness();
+    }
+
+    private static void run(String name, Factory f, long end, int iterations, boolean report) {
+        evaluations = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            for (int ra = 0; ra < 360; ra += 30) {
+                for (int dec = -80; dec <= 60; dec += 20) {
+                    final WorldCoords coords = new WorldCoords(ra, dec);
+                    final Solver s = f.create(new ImprovedSkyCalc(Site.GS), coords);
+                    sink += s.solve(START, end).getIntervals().size();
+                }
+            }
+        }
+        final long time = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%-28s %10d evaluations %8d ms%n", name, evaluations / iterations, time / iterations / 1000000);
+        }
+    }
+
+    public static void main(String[] args) {
+        final int nights = (args.length > 0) ? Integer.parseInt(args[0]) : 30;
+        final int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        final long end = START + nights * TimeUtils.MS_PER_DAY;
+
+        final double lower = ElevationConstraintSolver.AirmassSolver.altitude(2.0);
+        final double mag = 20.78;
+
+        final Factory steppingAirmass = (calc, coords) -> new Solver(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE) {
+            @Override
+            protected boolean f(long t) {
+                final double am = airmass(calc, coords, t);
+                return 1.0 <= am && am <= 2.0;
+            }
+        };
+        final Factory bracketingAirmass = (calc, coords) -> new BracketingSolver(2 * TimeUtils.MS_PER_HOUR, TimeUtils.MS_PER_MINUTE, lower, Double.POSITIVE_INFINITY) {
+            @Override
+            protected double g(long t) {
+                return altitude(calc, coords, t);
+            }
+        };
+        final Factory steppingSky = (calc, coords) -> new Solver(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE) {
+            @Override
+            protected boolean f(long t) {
+                return skyBrightness(calc, coords, t) >= mag;
+            }
+        };
+        final Factory bracketingSky = (calc, coords) -> new BracketingSolver(TimeUtils.MS_PER_HOUR, TimeUtils.MS_PER_MINUTE, mag, Double.POSITIVE_INFINITY) {
+            @Override
+            protected double g(long t) {
+                return skyBrightness(calc, coords, t);
+            }
+        };
+
+        // Warm up.
+        run("", steppingAirmass, end, 1, false);
+        run("", bracketingAirmass, end, 1, false);
+
+        System.out.printf("%d targets, %d nights%n", 12 * 8, nights);
+        run("airmass, stepping", steppingAirmass, end, iterations, true);
+        run("airmass, bracketing", bracketingAirmass, end, iterations, true);
+        run("sky brightness, stepping", steppingSky, end, iterations, true);
+        run("sky brightness, bracketing", bracketingSky, end, iterations, true);
+        if (sink == 42) System.out.println();
+    }
+
+}
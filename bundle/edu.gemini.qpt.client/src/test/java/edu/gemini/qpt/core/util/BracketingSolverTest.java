@@ -0,0 +1,247 @@
+package edu.gemini.qpt.core.util;
+
+import edu.gemini.qpt.shared.util.TimeUtils;
+import edu.gemini.skycalc.ImprovedSkyCalc;
+import edu.gemini.skycalc.ImprovedSkyCalcMethods;
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.LongPredicate;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.sin;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the bracketing solver against the stepping solver.
+ */
+public class BracketingSolverTest {
+
+    private static final long START = 1477958400000L; // 2016-11-01 00:00 UTC
+    private static final long END   = START + 3 * TimeUtils.MS_PER_DAY;
+
+    @Test public void testSine() {
+        for (double lower = -0.9; lower < 1; lower += 0.3) {
+            final Solver stepping = new SteppingSolver(1, new SineSolver(1, 1, lower, Double.POSITIVE_INFINITY));
+            final Solver bracketing = new SineSolver(100, 1, lower, Double.POSITIVE_INFINITY);
+            assertSameIntervals(stepping.solve(0, 5000), bracketing.solve(0, 5000), 1);
+        }
+    }
+
+    @Test public void testBand() {
+        // Crosses both limits between two samples.
+        final Solver bracketing = new SineSolver(100, 1, 0.2, 0.3);
+        final Solver stepping = new SteppingSolver(1, bracketing);
+        final Union<Interval> solution = bracketing.solve(0, 5000);
+        assertSameIntervals(stepping.solve(0, 5000), solution, 1);
+        assertEquals(10, solution.getIntervals().size());
+    }
+
+    @Test public void testNarrowPeak() {
+        // The peak lies between two samples and is shorter than the step.
+        final Solver s = new BracketingSolver(100, 1, 0.5, Double.POSITIVE_INFINITY) {
+            @Override
+            protected double g(long t) {
+                return 1.0 - Math.abs(t - 1234) / 10.0;
+            }
+        };
+        final SortedSet<Interval> solutions = s.solve(0, 5000).getIntervals();
+        assertEquals(1, solutions.size());
+        assertSameIntervals(new Interval(1229, 1240), solutions.first(), 1);
+    }
+
+    @Test public void testBounds() {
+        final Solver s = new SineSolver(100, 1, 0, Double.POSITIVE_INFINITY);
+        assertSameIntervals(new Union<Interval>(new Interval(40, 60)), s.solve(40, 60), 0);
+        assertSameIntervals(new Union<Interval>(new Interval(40, 500)), s.solve(40, 750), 1);
+        assertTrue(s.solve(600, 900).isEmpty());
+        assertTrue(s.solve(600, 600).isEmpty());
+    }
+
+    @Test public void testAirmassAltitude() {
+        for (double airmass = 1.05; airmass < 3; airmass += 0.05) {
+            final double alt = ElevationConstraintSolver.AirmassSolver.altitude(airmass);
+            assertEquals(airmass, ImprovedSkyCalcMethods.getAirmass(alt), 1e-6);
+        }
+    }
+
+    @Test public void testElevation() {
+        for (Site site: Site.values()) {
+            for (int ra = 0; ra < 360; ra += 45) {
+                for (int dec = -85; dec < 90; dec += 25) {
+                    final WorldCoords coords = new WorldCoords(ra, dec);
+                    for (double[] airmass: new double[][] {{1.0, 2.0}, {1.0, 1.2}, {1.3, 1.6}}) {
+                        final double lower = ElevationConstraintSolver.AirmassSolver.altitude(airmass[1]);
+                        final double upper = airmass[0] <= 1.0 ? Double.POSITIVE_INFINITY : ElevationConstraintSolver.AirmassSolver.altitude(airmass[0]);
+                        final SkyCalcSolver bracketing = new SkyCalcSolver(site, coords, lower, upper, false);
+                        final Solver stepping = new SteppingSolver(TimeUtils.MS_PER_MINUTE, bracketing) {
+                            @Override
+                            protected boolean f(long t) {
+                                final double am = bracketing.airmass(t);
+                                return airmass[0] <= am && am <= airmass[1];
+                            }
+                        };
+                        assertSameIntervals(stepping, bracketing, t -> false);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test public void testSkyBrightness() {
+        final Site site = Site.GS;
+        for (int ra = 0; ra < 360; ra += 60) {
+            for (int dec = -75; dec < 90; dec += 50) {
+                final WorldCoords coords = new WorldCoords(ra, dec);
+                for (double mag: new double[] {19.61, 20.78, 21.37}) {
+                    final SkyCalcSolver bracketing = new SkyCalcSolver(site, coords, mag, Double.POSITIVE_INFINITY, true);
+                    final Solver stepping = new SteppingSolver(TimeUtils.MS_PER_MINUTE, bracketing);
+                    // Where the sky brightness just grazes the limit around moonset it can turn
+                    // around more than once within a step; ignore differences that are this close.
+                    assertSameIntervals(stepping, bracketing, t -> Math.abs(bracketing.g(t) - mag) < 0.02);
+                }
+            }
+        }
+    }
+
+    @Test public void testFewerEvaluations() {
+        // The stepping solver as the QPT used it: 15 minute steps, halved down to a minute.
+        final Site site = Site.GS;
+        for (boolean skyBrightness: new boolean[] {false, true}) {
+            final double lower = skyBrightness ? 20.78 : ElevationConstraintSolver.AirmassSolver.altitude(2.0);
+            int stepped = 0, bracketed = 0;
+            for (int ra = 0; ra < 360; ra += 30) {
+                for (int dec = -80; dec <= 60; dec += 20) {
+                    final WorldCoords coords = new WorldCoords(ra, dec);
+                    final SkyCalcSolver bracketing = new SkyCalcSolver(site, coords, lower, Double.POSITIVE_INFINITY, skyBrightness);
+                    final Solver stepping = new Solver(TimeUtils.MS_PER_HOUR / 4, TimeUtils.MS_PER_MINUTE) {
+                        @Override
+                        protected boolean f(long t) {
+                            return bracketing.f(t);
+                        }
+                    };
+                    stepping.solve(START, END);
+                    stepped += bracketing.evaluations;
+                    bracketing.evaluations = 0;
+                    bracketing.solve(START, END);
+                    bracketed += bracketing.evaluations;
+                }
+            }
+            assertTrue(bracketed + " >= " + stepped, bracketed < stepped);
+        }
+    }
+
+    /**
+     * Asserts that the bracketing solver finds the same solution from START to END as the
+     * stepping solver to within twice the tolerance, apart from the marginal times.
+     */
+    private static void assertSameIntervals(Solver stepping, Solver bracketing, LongPredicate marginal) {
+        final Union<Interval> expected = stepping.solve(START, END);
+        final Union<Interval> actual = bracketing.solve(START, END);
+        final TreeSet<Long> bounds = new TreeSet<Long>();
+        bounds.add(START);
+        bounds.add(END);
+        assertSameIntervals(expected, actual, 2 * TimeUtils.MS_PER_MINUTE, bounds, marginal);
+    }
+
+    private static void assertSameIntervals(Union<Interval> expected, Union<Interval> actual, long tolerance) {
+        assertSameIntervals(expected, actual, tolerance, new TreeSet<Long>(), t -> false);
+    }
+
+    /**
+     * Asserts that two solutions only differ close to the boundaries of the expected one.
+     */
+    private static void assertSameIntervals(Union<Interval> expected, Union<Interval> actual, long tolerance, TreeSet<Long> bounds, LongPredicate marginal) {
+        for (Interval i: expected) { bounds.add(i.getStart()); bounds.add(i.getEnd()); }
+        final Union<Interval> both = new Union<Interval>(expected);
+        both.add(actual);
+        for (Interval i: both) {
+            for (long t = i.getStart(); t < i.getEnd(); t += Math.max(1, tolerance / 2)) {
+                if (expected.contains(t) != actual.contains(t) && !marginal.test(t)) {
+                    final Long before = bounds.floor(t), after = bounds.ceiling(t);
+                    assertTrue("expected " + expected + " but was " + actual + " at " + t,
+                            (before != null && t - before <= tolerance) || (after != null && after - t <= tolerance));
+                }
+            }
+        }
+    }
+
+    private static void assertSameIntervals(Interval expected, Interval actual, long tolerance) {
+        assertSameIntervals(new Union<Interval>(expected), new Union<Interval>(actual), tolerance);
+    }
+
+    /**
+     * Solver for (sine wave with period 1000) within the limits.
+     */
+    private static class SineSolver extends BracketingSolver {
+
+        SineSolver(long stepSize, long tolerance, double lower, double upper) {
+            super(stepSize, tolerance, lower, upper);
+        }
+
+        @Override
+        protected double g(long t) {
+            return sin(t * PI / 500);
+        }
+
+    }
+
+    /**
+     * Stepping solver for the same constraint as the given solver, with a step size equal to
+     * the tolerance so that it evaluates the constraint over the whole interval.
+     */
+    private static class SteppingSolver extends Solver {
+
+        private final Solver solver;
+
+        SteppingSolver(long stepSize, Solver solver) {
+            super(stepSize, stepSize);
+            this.solver = solver;
+        }
+
+        @Override
+        protected boolean f(long t) {
+            return solver.f(t);
+        }
+
+    }
+
+    /**
+     * Solver for the altitude or sky brightness of a fixed target, set up like the QPT solvers.
+     */
+    private static class SkyCalcSolver extends BracketingSolver {
+
+        private final ImprovedSkyCalc calc;
+        private final WorldCoords coords;
+        private final boolean skyBrightness;
+
+        // Number of sky calculations done by g.
+        int evaluations;
+
+        SkyCalcSolver(Site site, WorldCoords coords, double lower, double upper, boolean skyBrightness) {
+            super((skyBrightness ? 1 : 2) * TimeUtils.MS_PER_HOUR, TimeUtils.MS_PER_MINUTE, lower, upper);
+            this.calc = new ImprovedSkyCalc(site);
+            this.coords = coords;
+            this.skyBrightness = skyBrightness;
+        }
+
+        double airmass(long t) {
+            calc.calculate(coords, new Date(t), false);
+            return calc.getAirmass();
+        }
+
+        @Override
+        protected double g(long t) {
+            ++evaluations;
+            calc.calculate(coords, new Date(t), skyBrightness);
+            return skyBrightness ? calc.getTotalSkyBrightness() : calc.getAltitude();
+        }
+
+    }
+
+}
@@ -0,0 +1,85 @@
+package edu.gemini.qpt.shared.sp;
+
+import edu.gemini.ags.api.AgsAnalysis;
+import edu.gemini.ags.api.AgsMagnitude;
+import edu.gemini.ags.api.AgsRegistrar;
+import edu.gemini.ags.api.AgsStrategy;
+import edu.gemini.pot.sp.ISPObservation;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.sp.version.JavaVersionMapOps;
+import edu.gemini.shared.util.LruCache;
+import edu.gemini.shared.util.immutable.DefaultImList;
+import edu.gemini.shared.util.immutable.ImList;
+import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.spModel.obs.ObsContextService;
+import edu.gemini.spModel.obs.context.ObsContext;
+import scala.collection.JavaConversions;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Server side cache of the AGS analysis computed by the {@link ObsQueryFunctor} for each
+ * observation. Planned steps and times are already kept in the observation's
+ * {@link edu.gemini.spModel.obs.SPObsCache}, but the analysis is by far the most expensive part
+ * of building an {@link Obs} and was recomputed on every query. Entries are keyed by observation
+ * node key and only used while the version checksum of the observation subtree and the
+ * magnitude table are unchanged. Tables are compared by value, using the key computed by the
+ * functor.
+ */
+final class AgsAnalysisCache {
+
+    private static final int MAX_SIZE = Integer.getInteger("edu.gemini.qpt.shared.sp.AgsAnalysisCache.size", 20000);
+
+    private static final Map<SPNodeKey, Entry> CACHE = Collections.synchronizedMap(new LruCache<>(MAX_SIZE));
+
+    private static final class Entry {
+        final long version;
+        final Object magTableKey;
+        final ImList<AgsAnalysis> analysis;
+
+        Entry(long version, Object magTableKey, ImList<AgsAnalysis> analysis) {
+            this.version     = version;
+            this.magTableKey = magTableKey;
+            this.analysis    = analysis;
+        }
+    }
+
+    private AgsAnalysisCache() {}
+
+    /**
+     * Gets the AGS analysis for the current version of the observation, computing and caching
+     * it if necessary.
+     * @param magTableKey value key of the magnitude table
+     */
+    static ImList<AgsAnalysis> get(ISPObservation obsShell, AgsMagnitude.MagnitudeTable magTable, Object magTableKey) {
+        final SPNodeKey key = obsShell.getNodeKey();
+        final long version  = JavaVersionMapOps.nodeChecksum(obsShell);
+
+        final Entry cached = CACHE.get(key);
+        if (cached != null && cached.version == version && Objects.equals(cached.magTableKey, magTableKey)) {
+            return cached.analysis;
+        }
+
+        // Computed outside of the lock; at worst two queries analyze the same observation.
+        final ImList<AgsAnalysis> analysis = DefaultImList.create(analyze(obsShell, magTable));
+        CACHE.put(key, new Entry(version, magTableKey, analysis));
+        return analysis;
+    }
+
+    private static List<AgsAnalysis> analyze(ISPObservation obsShell, AgsMagnitude.MagnitudeTable magTable) {
+        final Option<ObsContext> ctxOpt = ObsContextService.lookupObsContext(obsShell);
+        if (!ctxOpt.isEmpty()) {
+            final ObsContext ctx = ctxOpt.getValue();
+
+            // Perform the analysis.
+            final scala.Option<AgsStrategy> strategyOption = AgsRegistrar.currentStrategy(ctx);
+            if (strategyOption.isDefined()) {
+                return JavaConversions.seqAsJavaList(strategyOption.get().analyze(ctx, magTable));
+            }
+        }
+        return Collections.emptyList();
+    }
+}
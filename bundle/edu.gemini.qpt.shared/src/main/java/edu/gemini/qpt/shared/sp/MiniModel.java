@@ -49,19 +49,25 @@ public class MiniModel {
     private final long timestamp = System.currentTimeMillis();
     private final Map<SPProgramID, ProgramExclusion> programExclusions;
     private final Map<SPObservationID, ObsExclusion> obsExclusions;
+    private final Map<SPProgramID, Long> programVersions;
+    private final List<Object> resultKey;
 
     private MiniModel(Site site,
                       SortedSet<Prog> programs,
                       SortedSet<String> misconfiguredObservations,
                       SortedSet<String> allSemesters,
                       Map<SPProgramID, ProgramExclusion> programExclusions,
-                      Map<SPObservationID, ObsExclusion> obsExclusions) {
+                      Map<SPObservationID, ObsExclusion> obsExclusions,
+                      Map<SPProgramID, Long> programVersions,
+                      List<Object> resultKey) {
         this.site = site;
         this.programs = Collections.unmodifiableSortedSet(new TreeSet<>(programs));
         this.misconfiguredObservations = Collections.unmodifiableSortedSet(new TreeSet<>(misconfiguredObservations));
         this.allSemesters = Collections.unmodifiableSortedSet(new TreeSet<>(allSemesters));
         this.programExclusions = Collections.unmodifiableMap(programExclusions);
         this.obsExclusions = Collections.unmodifiableMap(obsExclusions);
+        this.programVersions = Collections.unmodifiableMap(programVersions);
+        this.resultKey = resultKey;
         SortedSet<Obs> accum = new TreeSet<>();
         for (Prog prog: programs) accum.addAll(prog.getFullObsSet());
         allObservations = Collections.unmodifiableSortedSet(accum);
@@ -75,7 +81,9 @@ public class MiniModel {
                 Collections.emptySortedSet(),
                 Collections.emptySortedSet(),
                 Collections.emptyMap(),
-                Collections.emptyMap()
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyList()
         );
     }
 
@@ -143,6 +151,10 @@ public class MiniModel {
             Set<String> extraSemesters,
             AgsMagnitude.MagnitudeTable magTable) throws IOException, TimeoutException {
 
+        return newInstance(kc, peer, new Date(date), parseSemesters(extraSemesters), ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+    }
+
+    private static Set<Semester> parseSemesters(Set<String> extraSemesters) {
         Set<Semester> semesters = new HashSet<Semester>();
         for (String s : extraSemesters) {
             try {
@@ -151,7 +163,33 @@ public class MiniModel {
                 throw new RuntimeException("can not parse semester: " + s);
             }
         }
-        return newInstance(kc, peer, new Date(date), semesters, ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+        return semesters;
+    }
+
+    /**
+     * Refreshes a mini model for the given peer, date and some additional semesters.
+     * Only programs that changed since the previous model was created are computed by the
+     * database; the others are carried over from the previous model.
+     * This is a convenience method used by QPT.
+     * @param peer
+     * @param date the date on which the night ends / sunrise
+     * @param extraSemesters
+     * @param previous the model to refresh, may be null
+     * @return
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public static MiniModel newInstance(
+            KeyChain kc,
+            Peer peer,
+            long date,
+            Set<String> extraSemesters,
+            AgsMagnitude.MagnitudeTable magTable,
+            MiniModel previous) throws IOException, TimeoutException {
+
+        final ObsQueryFunctor func = new ObsQueryFunctor(peer.site, new Date(date), parseSemesters(extraSemesters), ProgramType$.MODULE$.AllAsJava(), RELEVANT_OBS_CLASSES, RELEVANT_OBS_STATUSES, magTable);
+        func.setBaseline(previous);
+        return newInstance(kc, peer, func, previous);
     }
 
     /**
@@ -180,7 +218,7 @@ public class MiniModel {
             AgsMagnitude.MagnitudeTable magTable) throws IOException, TimeoutException {
 
         ObsQueryFunctor func = new ObsQueryFunctor(peer.site, date, extraSemesters, progTypes, obsClasses, obsStatuses, magTable);
-        return newInstance(kc, peer, func);
+        return newInstance(kc, peer, func, null);
 
     }
 
@@ -197,10 +235,71 @@ public class MiniModel {
                 result.getMisconfiguredObservations(),
                 result.getAllSemesters(),
                 result.getProgramExclusions(),
-                result.getObsExclusions());
+                result.getObsExclusions(),
+                result.getProgramVersions(),
+                result.resultKey());
+    }
+
+    /**
+     * Creates a mini model from an already executed delta functor, i.e. one that was given the
+     * previous model as its baseline (see {@link ObsQueryFunctor#setBaseline(MiniModel)}).
+     * Programs reported as unchanged are carried over from the previous model together with
+     * their observation exclusions and misconfigured observations; programs that are gone from
+     * the result are dropped.
+     * @param peer
+     * @param result
+     * @param previous the baseline model the functor was given
+     * @return
+     */
+    public static MiniModel newInstanceFromExecuted(Peer peer, ObsQueryFunctor result, MiniModel previous) {
+        final SortedSet<SPProgramID> unchanged = result.getUnchangedPrograms();
+        if (previous == null || unchanged.isEmpty()) return newInstanceFromExecuted(peer, result);
+
+        final SortedSet<Prog> programs = new TreeSet<>(result.getProgramSet());
+        for (Prog p : previous.getPrograms()) {
+            if (unchanged.contains(p.getProgramId())) programs.add(p);
+        }
+
+        final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>(result.getObsExclusions());
+        for (Map.Entry<SPObservationID, ObsExclusion> e : previous.getObsExclusions().entrySet()) {
+            if (unchanged.contains(e.getKey().getProgramID())) obsExclusions.put(e.getKey(), e.getValue());
+        }
+
+        final Set<String> unchangedIds = new HashSet<>();
+        for (SPProgramID pid : unchanged) unchangedIds.add(pid.stringValue());
+
+        final SortedSet<String> misconfigured = new TreeSet<>(result.getMisconfiguredObservations());
+        for (String obsId : previous.getMisconfiguredObservations()) {
+            final int i = obsId.lastIndexOf('-');
+            if (i > 0 && unchangedIds.contains(obsId.substring(0, i))) misconfigured.add(obsId);
+        }
+
+        return new MiniModel(
+                peer.site,
+                programs,
+                misconfigured,
+                result.getAllSemesters(),
+                result.getProgramExclusions(),
+                obsExclusions,
+                result.getProgramVersions(),
+                result.resultKey());
+    }
+
+    /**
+     * Version checksums of the programs in this model, used to request a delta on refresh.
+     */
+    Map<SPProgramID, Long> getProgramVersions() {
+        return programVersions;
+    }
+
+    /**
+     * The query parameters this model was created with that affect the program contents.
+     */
+    List<Object> getResultKey() {
+        return resultKey;
     }
 
-    private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor) throws IOException, TimeoutException {
+    private static MiniModel newInstance(KeyChain kc, Peer peer, ObsQueryFunctor functor, MiniModel previous) throws IOException, TimeoutException {
 
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
@@ -216,7 +315,7 @@ public class MiniModel {
 
             final IDBQueryRunner qr = TrpcClient$.MODULE$.apply(peer.host, peer.port).withKeyChain(kc).proxy(IDBQueryRunner.class);
             final ObsQueryFunctor result = qr.queryPrograms(functor);
-            return newInstanceFromExecuted(peer, result);
+            return newInstanceFromExecuted(peer, result, previous);
 
         } catch (UndeclaredThrowableException ute) {
             try {
@@ -4,10 +4,12 @@ import edu.gemini.ags.api.*;
 import edu.gemini.pot.sp.*;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.pot.sp.version.JavaVersionMapOps;
 import edu.gemini.shared.util.TimeValue;
 import edu.gemini.shared.util.immutable.ApplyOp;
 import edu.gemini.shared.util.immutable.DefaultImList;
-import edu.gemini.shared.util.immutable.Option;
+import edu.gemini.shared.util.immutable.ImList;
+import edu.gemini.spModel.core.Peer;
 import edu.gemini.spModel.core.SPProgramID;
 import edu.gemini.spModel.core.Semester;
 import edu.gemini.spModel.core.Site;
@@ -35,7 +37,6 @@ import edu.gemini.spModel.obs.ObsClassService;
 import edu.gemini.spModel.obs.ObsTimesService;
 import edu.gemini.spModel.obs.ObservationStatus;
 import edu.gemini.spModel.obs.SPObservation;
-import edu.gemini.spModel.obs.context.ObsContext;
 import edu.gemini.spModel.obs.plannedtime.PlannedStepSummary;
 import edu.gemini.spModel.obs.plannedtime.PlannedTimeSummary;
 import edu.gemini.spModel.obs.plannedtime.PlannedTimeSummaryService;
@@ -58,12 +59,17 @@ import edu.gemini.spModel.too.Too;
 import edu.gemini.spModel.too.TooType;
 
 import java.beans.PropertyDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
 import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import scala.collection.JavaConversions;
 
 /**
  * Query functor that generates the sp mini-model snapshot.
@@ -83,6 +89,11 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private final SortedSet<String> allSemesters = new TreeSet<>();
     private final Map<SPProgramID, ProgramExclusion> programExclusions = new TreeMap<>();
     private final Map<SPObservationID, ObsExclusion> obsExclusions = new TreeMap<>();
+    private final Map<SPProgramID, Long> programVersions = new TreeMap<>();
+    private final SortedSet<SPProgramID> unchangedPrograms = new TreeSet<>();
+
+    // Version checksums of the programs for which the client already has an up-to-date result.
+    private Map<SPProgramID, Long> knownVersions = Collections.emptyMap();
 
     private final Site site;
     private final Calendar date;
@@ -96,6 +107,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private final Boolean skipInvalidObservations; // skips observations that have no conditions, instrument or target
     private final Boolean skipNoStepsObservations; // skips observations that have no remaining steps (QPT does not need those)
     private final AgsMagnitude.MagnitudeTable magTable;
+    private final Object magTableKey;
 
     /**
      * Constructs a functor that will retrieve candidate observations for the given input values.
@@ -124,6 +136,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         this.skipInvalidObservations = true;
         this.skipNoStepsObservations = false; // QV wants those, while QPT is not interested in them
         this.magTable = magTable;
+        this.magTableKey = magTableKey(magTable);
 
     }
 
@@ -165,6 +178,62 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         this.skipInactivePrograms = false;
         this.skipNoStepsObservations = true;
         this.magTable = magTable;
+        this.magTableKey = magTableKey(magTable);
+    }
+
+    /**
+     * A key that compares magnitude tables by value: a digest of the serialized table. It is
+     * computed once on the client and shipped along with the functor, so the key of a result
+     * matches the key of a later query with an equal table even though the tables themselves
+     * are distinct copies. Falls back to the table itself if it can't be serialized.
+     */
+    private static Object magTableKey(AgsMagnitude.MagnitudeTable magTable) {
+        if (magTable == null) return null;
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(magTable);
+            }
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bos.toByteArray());
+            return new BigInteger(1, digest).toString(16);
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            LOGGER.log(Level.FINE, "Could not compute magnitude table digest", ex);
+            return magTable;
+        }
+    }
+
+    /**
+     * Turns this query into a delta against a previous result. Programs that have not changed
+     * since the previous model was created are reported as unchanged rather than computed
+     * and shipped again; see {@link MiniModel#newInstanceFromExecuted(Peer, ObsQueryFunctor, MiniModel)}.
+     * Nothing is reused if the previous model was created with different observation filters or
+     * magnitude table.
+     */
+    public void setBaseline(MiniModel previous) {
+        if (previous == null || !resultKey().equals(previous.getResultKey())) {
+            knownVersions = Collections.emptyMap();
+        } else {
+            final Map<SPProgramID, Long> known = new TreeMap<>();
+            for (Prog p : previous.getPrograms()) {
+                final Long v = previous.getProgramVersions().get(p.getProgramId());
+                if (v != null) known.put(p.getProgramId(), v);
+            }
+            knownVersions = known;
+        }
+    }
+
+    /**
+     * The parameters that determine the content of a {@link Prog} for a given program version.
+     * Program level filters (semesters, types, date) are cheap and are always re-evaluated.
+     */
+    List<Object> resultKey() {
+        return Arrays.asList(
+                site,
+                new HashSet<>(relevantObsClasses),
+                new HashSet<>(relevantObsStatuses),
+                skipInvalidObservations,
+                skipNoStepsObservations,
+                CalculateAgsAnalysis ? magTableKey : null);
     }
 
     @SuppressWarnings("unchecked")
@@ -172,7 +241,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         try {
 
             final ISPProgram programShell = (ISPProgram) progNode;
-            final SPProgram program = (SPProgram) programShell.getDataObject();
+            final SPProgram program = (SPProgram) programShell.getReadOnlyDataObject();
 
             // Get program ID and its string value. Punt if it's null.
             final SPProgramID id = programShell.getProgramID();
@@ -232,6 +301,15 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 }
             }
 
+            // -- Skip the expensive part if the client already has this version of the program
+            final long version = JavaVersionMapOps.checksum(programShell.getVersions());
+            programVersions.put(id, version);
+            final Long known = knownVersions.get(id);
+            if (known != null && known == version) {
+                unchangedPrograms.add(id);
+                return;
+            }
+
             // -- Get the science band and times
             final int band;
             long plannedTime = 0;
@@ -308,7 +386,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 } else if (rn instanceof ISPGroup) {
 
                     ISPGroup groupShell = (ISPGroup) rn;
-                    SPGroup group = (SPGroup) rn.getDataObject();
+                    SPGroup group = (SPGroup) rn.getReadOnlyDataObject();
                     List<Obs> groupObservations = new ArrayList<>();
                     List<Note> groupNotes = new ArrayList<>();
 
@@ -323,7 +401,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
                         } else {
 
-                            Object o = rn2.getDataObject();
+                            Object o = rn2.getReadOnlyDataObject();
                             if (o instanceof SPNote) {
                                 SPNote spnote = (SPNote) o;
                                 groupNotes.add(new Note(Scope.Group, spnote.getTitle(), spnote.getNote()));
@@ -338,7 +416,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
                 } else {
 
-                    Object o = rn.getDataObject();
+                    Object o = rn.getReadOnlyDataObject();
                     if (o instanceof SPNote) {
                         SPNote spnote = (SPNote) o;
                         noteList.add(new Note(Scope.Group, spnote.getTitle(), spnote.getNote()));
@@ -410,8 +488,8 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
             SPComponentType type = comp.getType();
 
             // This is only relevant for some instruments
-            if (type.equals(InstGNIRS.SP_TYPE)) return ((InstGNIRS) comp.getDataObject()).getCentralWavelength().doubleValue();
-            if (type.equals(InstTReCS.SP_TYPE)) return ((InstTReCS) comp.getDataObject()).getDisperserLambda();
+            if (type.equals(InstGNIRS.SP_TYPE)) return ((InstGNIRS) comp.getReadOnlyDataObject()).getCentralWavelength().doubleValue();
+            if (type.equals(InstTReCS.SP_TYPE)) return ((InstTReCS) comp.getReadOnlyDataObject()).getDisperserLambda();
 
         }
 
@@ -433,7 +511,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // GMOS
                 if (type.equals(InstGmosNorth.SP_TYPE) || type.equals(InstGmosSouth.SP_TYPE)) {
 
-                    InstGmosCommon<?, ?, ?, ?> gmos = (InstGmosCommon<?, ?, ?, ?>) comp.getDataObject();
+                    InstGmosCommon<?, ?, ?, ?> gmos = (InstGmosCommon<?, ?, ?, ?>) comp.getReadOnlyDataObject();
                     ret.add(gmos.getFPUnit());
                     ret.add(gmos.getDisperser());
                     ret.add(gmos.getFilter());
@@ -451,7 +529,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // Flamingos2
                 if (type.equals(Flamingos2.SP_TYPE)) {
 
-                    Flamingos2 f2 = (Flamingos2) comp.getDataObject();
+                    Flamingos2 f2 = (Flamingos2) comp.getReadOnlyDataObject();
                     ret.add(f2.getFpu());
                     ret.add(f2.getDisperser());
                     ret.add(f2.getFilter());
@@ -467,7 +545,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // GSAOI
                 if (type.equals(Gsaoi.SP_TYPE)) {
 
-                    Gsaoi gsaoi = (Gsaoi) comp.getDataObject();
+                    Gsaoi gsaoi = (Gsaoi) comp.getReadOnlyDataObject();
                     ret.add(gsaoi.getFilter());
 
                     addFromIterators(obsShell, ret,
@@ -478,7 +556,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // NIRI
                 if (type.equals(InstNIRI.SP_TYPE)) {
 
-                    InstNIRI niri = (InstNIRI) comp.getDataObject();
+                    InstNIRI niri = (InstNIRI) comp.getReadOnlyDataObject();
                     ret.add(niri.getFilter());
                     ret.add(niri.getDisperser());
                     ret.add(niri.getMask());
@@ -495,7 +573,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // GNIRS
                 if (type.equals(InstGNIRS.SP_TYPE)) {
 
-                    InstGNIRS gnirs = (InstGNIRS) comp.getDataObject();
+                    InstGNIRS gnirs = (InstGNIRS) comp.getReadOnlyDataObject();
                     ret.add(gnirs.getDisperser());
                     ret.add(gnirs.getSlitWidth());
                     ret.add(gnirs.getCrossDispersed());
@@ -526,7 +604,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // TReCS
                 if (type.equals(InstTReCS.SP_TYPE)) {
 
-                    InstTReCS trecs = (InstTReCS) comp.getDataObject();
+                    InstTReCS trecs = (InstTReCS) comp.getReadOnlyDataObject();
                     ret.add(trecs.getDisperser());
                     ret.add(trecs.getMask());
 
@@ -539,7 +617,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // NIFS
                 if (type.equals(InstNIFS.SP_TYPE)) {
 
-                    InstNIFS nifs = (InstNIFS) comp.getDataObject();
+                    InstNIFS nifs = (InstNIFS) comp.getReadOnlyDataObject();
                     ret.add(nifs.getDisperser());
                     ret.add(nifs.getFilter());
                     ret.add(nifs.getMask());
@@ -553,7 +631,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // NICI
                 if (type.equals(InstNICI.SP_TYPE)) {
 
-                    InstNICI nici = (InstNICI) comp.getDataObject();
+                    InstNICI nici = (InstNICI) comp.getReadOnlyDataObject();
                     ret.add(nici.getFocalPlaneMask());
                     ret.add(nici.getDichroicWheel());
                     ret.add(nici.getChannel1Fw());
@@ -569,7 +647,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
                 // Texes
                 if (type.equals(InstTexes.SP_TYPE)) {
 
-                    InstTexes texes = (InstTexes) comp.getDataObject();
+                    InstTexes texes = (InstTexes) comp.getReadOnlyDataObject();
                     ret.add(texes.getDisperser());
 
                     addFromIterators(obsShell, ret,
@@ -583,7 +661,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
                 // If it's altair we need to grab the guide star type
                 if (type.equals(InstAltair.SP_TYPE)) {
-                    InstAltair altair = (InstAltair)  comp.getDataObject();
+                    InstAltair altair = (InstAltair)  comp.getReadOnlyDataObject();
                     ret.add(altair.getGuideStarType());
                 }
 
@@ -591,7 +669,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
             // REL-293: check for WFS
             if (TargetObsComp.SP_TYPE.equals(type)) {
-                TargetObsComp targetObsComp = (TargetObsComp)comp.getDataObject();
+                TargetObsComp targetObsComp = (TargetObsComp)comp.getReadOnlyDataObject();
                 for(GuideProbe guideProbe : targetObsComp.getTargetEnvironment().getPrimaryGuideGroup().getReferencedGuiders()) {
                     if (guideProbe instanceof Enum) {
                         ret.add((Enum)guideProbe);
@@ -621,7 +699,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
                 // If it's altair we need to grab the guide star type
                 if (type.equals(InstAltair.SP_TYPE)) {
-                    InstAltair altair = (InstAltair) comp.getDataObject();
+                    InstAltair altair = (InstAltair) comp.getReadOnlyDataObject();
                     AltairParams.GuideStarType gs = altair.getGuideStarType();
                     if (gs == AltairParams.GuideStarType.LGS) return true;
                 }
@@ -660,7 +738,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
      */
     private boolean usesAverageParallacticAngle(final ISPObservation obsShell) throws RemoteException {
         return obsShell.getObsComponents().stream().anyMatch(comp -> {
-            final ISPDataObject dObj = comp.getDataObject();
+            final ISPDataObject dObj = comp.getReadOnlyDataObject();
             return (dObj instanceof PosAngleConstraintAware) && ((PosAngleConstraintAware) dObj).getPosAngleConstraint().isParallactic();
         });
     }
@@ -676,7 +754,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
             while (!queue.isEmpty()) {
                 seqShell = queue.removeFirst();
                 queue.addAll(seqShell.getSeqComponents());
-                Object obj = seqShell.getDataObject();
+                Object obj = seqShell.getReadOnlyDataObject();
                 if (obj instanceof SeqConfigComp) { // this should always be true, I think
                     SeqConfigComp scc = (SeqConfigComp) obj;
                     ISysConfig config = scc.getSysConfig();
@@ -748,13 +826,13 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
                 // GMOS
                 if (type.equals(InstGmosNorth.SP_TYPE) || type.equals(InstGmosSouth.SP_TYPE)) {
-                    InstGmosCommon<?, ?, ?, ?> gmos = (InstGmosCommon<?, ?, ?, ?>) comp.getDataObject();
+                    InstGmosCommon<?, ?, ?, ?> gmos = (InstGmosCommon<?, ?, ?, ?>) comp.getReadOnlyDataObject();
                     return gmos.getFPUnitCustomMask();
                 }
 
                 // Flamingos2 - FPU
                 if (type.equals(Flamingos2.SP_TYPE)) {
-                    Flamingos2 flam2 = (Flamingos2) comp.getDataObject();
+                    Flamingos2 flam2 = (Flamingos2) comp.getReadOnlyDataObject();
                     return flam2.getFpuCustomMask();
                 }
 
@@ -768,7 +846,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
     private Obs getObs(Prog info, ISPObservation obsShell, Group group) throws RemoteException {
 
         // Collect obs info
-        SPObservation obs = (SPObservation) obsShell.getDataObject();
+        SPObservation obs = (SPObservation) obsShell.getReadOnlyDataObject();
         SPObservationID id = obsShell.getObservationID(); // will never be null if there's a progid (which there is)
 
         // Only look at those that are of the proper obs class.
@@ -790,7 +868,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         for (ISPObsComponent obsCompShell: obsShell.getObsComponents()) {
             SPComponentType type = obsCompShell.getType();
             if (type.equals(TargetObsComp.SP_TYPE)) {
-                TargetObsComp targetObsComp = (TargetObsComp) obsCompShell.getDataObject();
+                TargetObsComp targetObsComp = (TargetObsComp) obsCompShell.getReadOnlyDataObject();
                 if (targetObsComp != null) targetEnv = targetObsComp.getTargetEnvironment();
                 break;
             }
@@ -801,6 +879,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         for (ISPObsComponent obsCompShell: obsShell.getObsComponents()) {
             SPComponentType type = obsCompShell.getType();
             if (type.equals(SPSiteQuality.SP_TYPE)) {
+                // A copy since it becomes part of the mini-model.
                 quality = (SPSiteQuality) obsCompShell.getDataObject();
                 break;
             }
@@ -849,20 +928,11 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         // Construct the AgsAnalyses for this observation under the following conditions:
         // 1. IF the system property is not set or is set to true, and
         // 2. IF the observation needs a guide star.
-        List<AgsAnalysis> analysis = new ArrayList<>();
+        // The analysis is cached per observation version.
+        ImList<AgsAnalysis> analysis = DefaultImList.create(Collections.emptyList());
 
         if (CalculateAgsAnalysis && SPObservation.needsGuideStar(obsShell)) {
-            Option<ObsContext> ctxOpt = ObsContext.create(obsShell);
-            if (!ctxOpt.isEmpty()) {
-                ObsContext ctx = ctxOpt.getValue();
-
-                // Perform the analysis.
-                scala.Option<AgsStrategy> strategyOption = AgsRegistrar.currentStrategy(ctx);
-                if (strategyOption.isDefined()) {
-                    AgsStrategy strategy = strategyOption.get();
-                    analysis.addAll(JavaConversions.seqAsJavaList(strategy.analyze(ctx, magTable)));
-                }
-            }
+            analysis = AgsAnalysisCache.get(obsShell, magTable, magTableKey);
         }
 
 
@@ -890,7 +960,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
             hasLGS(obsShell),
             hasAO(obsShell),
             usesAverageParallacticAngle(obsShell),
-            DefaultImList.create(analysis),
+            analysis,
             obs.getSchedulingBlock()
         );
 
@@ -898,7 +968,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
 
     private static boolean isRollover(ISPProgram programShell) throws RemoteException {
         try {
-            return ((SPProgram) programShell.getDataObject()).getRolloverStatus();
+            return ((SPProgram) programShell.getReadOnlyDataObject()).getRolloverStatus();
 //            return P1DocumentUtil.getGeminiPart(P1DocumentUtil.lookupProposal(programShell)).getITacExtension().getRolloverFlag();
         } catch (NullPointerException npe) {
             // If the required structure isn't there, rollover is false. This
@@ -931,6 +1001,21 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor implements Iterable<
         return obsExclusions;
     }
 
+    /**
+     * Version checksums of all programs that passed the program level filters.
+     */
+    Map<SPProgramID, Long> getProgramVersions() {
+        return programVersions;
+    }
+
+    /**
+     * Programs that were skipped because the client already has a result for their current
+     * version.
+     */
+    SortedSet<SPProgramID> getUnchangedPrograms() {
+        return unchangedPrograms;
+    }
+
 }
 
 
@@ -0,0 +1,129 @@
+package edu.gemini.qpt.shared.sp
+
+import edu.gemini.ags.conf.ProbeLimitsTable
+import edu.gemini.ags.api.AgsMagnitude.MagnitudeTable
+import edu.gemini.pot.sp.{ISPProgram, SPNodeKey}
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.spModel.core.{Peer, ProgramType, SPProgramID, Semester, Site}
+import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.obs.ObservationStatus
+import edu.gemini.spModel.obsclass.ObsClass
+import org.specs2.mutable.Specification
+
+import java.security.Principal
+
+import scala.collection.JavaConverters._
+
+/**
+ * Tests refreshing a mini model against the baseline of a previous one.
+ */
+object MiniModelDeltaSpec extends Specification {
+
+  val peer = new Peer("localhost", 8443, Site.GS)
+  val user = java.util.Collections.emptySet[Principal]()
+  val ids  = List("GS-2015B-Q-1", "GS-2015B-Q-2").map(SPProgramID.toProgramID)
+
+  def withPrograms[A](body: (IDBDatabaseService, List[ISPProgram]) => A): A = {
+    val odb = DBLocalDatabase.createTransient()
+    try {
+      val ps = ids.map { id =>
+        val p = odb.getFactory.createProgram(new SPNodeKey(), id)
+        val dob = p.getDataObject.asInstanceOf[SPProgram]
+        dob.setQueueBand("1")
+        p.setDataObject(dob)
+        odb.put(p)
+        p
+      }
+      body(odb, ps)
+    } finally {
+      odb.getDBAdmin.shutdown()
+    }
+  }
+
+  def functor(magTable: MagnitudeTable): ObsQueryFunctor =
+    new ObsQueryFunctor(
+      Site.GS,
+      Set(Semester.parse("2015B")).asJava,
+      ProgramType.AllAsJava,
+      ObsClass.values().toSet.asJava,
+      ObservationStatus.values().toSet.asJava,
+      false,
+      false,
+      magTable)
+
+  def query(odb: IDBDatabaseService, magTable: MagnitudeTable, previous: MiniModel): (ObsQueryFunctor, MiniModel) = {
+    val f = functor(magTable)
+    f.setBaseline(previous)
+    val res = odb.getQueryRunner(user).queryPrograms(f)
+    (res, MiniModel.newInstanceFromExecuted(peer, res, previous))
+  }
+
+  def programIds(m: MiniModel): Set[SPProgramID] =
+    m.getPrograms.asScala.map(_.getProgramId).toSet
+
+  def titles(m: MiniModel): Map[SPProgramID, String] =
+    m.getPrograms.asScala.map(p => p.getProgramId -> p.getTitle).toMap
+
+  "MiniModel refresh" should {
+    "compute every program without a baseline" in {
+      withPrograms { (odb, _) =>
+        val (f, m) = query(odb, ProbeLimitsTable.loadOrThrow(), null)
+        (f.getUnchangedPrograms.asScala must beEmpty) and
+          (programIds(m) must_== ids.toSet) and
+          (m.getProgramVersions.keySet.asScala must_== ids.toSet)
+      }
+    }
+
+    "reuse unchanged programs when given a baseline with an equal magnitude table" in {
+      withPrograms { (odb, _) =>
+        val (_, m0) = query(odb, ProbeLimitsTable.loadOrThrow(), null)
+
+        // A separately loaded table is a different object with the same values.
+        val (f, m1) = query(odb, ProbeLimitsTable.loadOrThrow(), m0)
+        (f.getUnchangedPrograms.asScala must_== ids.toSet) and
+          (f.getProgramSet.asScala must beEmpty) and
+          (programIds(m1) must_== ids.toSet) and
+          (m1.getProgramVersions must_== m0.getProgramVersions) and
+          (m1.getResultKey must_== m0.getResultKey)
+      }
+    }
+
+    "recompute only the programs that changed since the baseline" in {
+      withPrograms { (odb, ps) =>
+        val (_, m0) = query(odb, ProbeLimitsTable.loadOrThrow(), null)
+
+        val p   = ps.head
+        val dob = p.getDataObject.asInstanceOf[SPProgram]
+        dob.setTitle("Edited")
+        p.setDataObject(dob)
+
+        val (f, m1) = query(odb, ProbeLimitsTable.loadOrThrow(), m0)
+        (f.getUnchangedPrograms.asScala must_== Set(ids(1))) and
+          (f.getProgramSet.asScala.map(_.getProgramId) must_== Set(ids.head)) and
+          (programIds(m1) must_== ids.toSet) and
+          (titles(m1)(ids.head) must_== "Edited") and
+          (m1.getProgramVersions.get(ids.head) must_!= m0.getProgramVersions.get(ids.head))
+      }
+    }
+
+    "drop programs that are gone since the baseline" in {
+      withPrograms { (odb, ps) =>
+        val (_, m0) = query(odb, ProbeLimitsTable.loadOrThrow(), null)
+        odb.remove(ps.head)
+
+        val (_, m1) = query(odb, ProbeLimitsTable.loadOrThrow(), m0)
+        programIds(m1) must_== Set(ids(1))
+      }
+    }
+
+    "not reuse anything if the magnitude table differs" in {
+      withPrograms { (odb, _) =>
+        val (_, m0) = query(odb, ProbeLimitsTable.loadOrThrow(), null)
+        val (f, m1) = query(odb, ProbeLimitsTable(Map.empty), m0)
+        (f.getUnchangedPrograms.asScala must beEmpty) and
+          (programIds(m1) must_== ids.toSet) and
+          (m1.getResultKey must_!= m0.getResultKey)
+      }
+    }
+  }
+}
@@ -31,6 +31,9 @@ class OdbDataSource(val peer: Peer, mt: MagnitudeTable) extends DataSource {
 
   def site = peer.site
 
+  // The last model read from the ODB; refreshes only fetch programs that changed since.
+  @volatile private var lastModel: Option[MiniModel] = None
+
   /**
    * Initiates refresh of data and update in the background.
    *
@@ -53,6 +56,8 @@ class OdbDataSource(val peer: Peer, mt: MagnitudeTable) extends DataSource {
     val javaStatuses = new java.util.HashSet[ObservationStatus](); selectedStatuses.foreach(javaStatuses.add)
     val javaTypes = new java.util.ArrayList[ProgramType](); selectedTypes.foreach(javaTypes.add)
     val functor = new ObsQueryFunctor(peer.site, javaSemesters, javaTypes, javaClasses, javaStatuses, !includeCompletedPrograms, !includeInactivePrograms, mt)
+    val baseline = lastModel
+    functor.setBaseline(baseline.orNull)
 
     // create and initiate db read operation
     val client = {
@@ -71,7 +76,8 @@ class OdbDataSource(val peer: Peer, mt: MagnitudeTable) extends DataSource {
     val obsSet = client.future[Set[Obs]] { r =>
 
       val result = r[IDBQueryRunner].queryPrograms(functor)
-      val model  = MiniModel.newInstanceFromExecuted(peer, result)
+      val model  = MiniModel.newInstanceFromExecuted(peer, result, baseline.orNull)
+      lastModel  = Some(model)
       val obs    = model.getAllObservations
       scala.collection.JavaConversions.asScalaSet[Obs](obs).toSet
 
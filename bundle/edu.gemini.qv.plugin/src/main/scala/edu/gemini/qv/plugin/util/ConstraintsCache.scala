@@ -1,19 +1,23 @@
 package edu.gemini.qv.plugin.util
 
 import java.time.Instant
+import java.util.logging.{Level, Logger}
 
 import ConstraintsCache._
 import edu.gemini.qpt.shared.sp.{Conds, Obs}
-import edu.gemini.qv.plugin.QvContext
+import edu.gemini.qv.plugin.{QvContext, QvTool}
 import edu.gemini.qv.plugin.data.FoldedTargetsProvider
 import edu.gemini.qv.plugin.util.ConstraintsCache.ConstraintCalculationEnd
 import edu.gemini.qv.plugin.util.ConstraintsCache.ConstraintCalculationProgress
 import edu.gemini.qv.plugin.util.ConstraintsCache.ConstraintCalculationStart
 import edu.gemini.qv.plugin.util.SolutionProvider.{ConstraintType, ValueType}
-import edu.gemini.skycalc.TimeUtils
-import edu.gemini.spModel.core.{Coordinates, Peer, Site}
+import edu.gemini.services.client.ConstraintSolutionClient
+import edu.gemini.services.client.ConstraintSolutions
+import edu.gemini.services.client.ConstraintSolutions._
+import edu.gemini.spModel.core.{Coordinates, Ephemeris, Peer, Site}
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.TimingWindow
+import edu.gemini.spModel.target.env.Asterism
 import edu.gemini.util.skycalc.calc._
 import edu.gemini.util.skycalc.constraint._
 import edu.gemini.util.skycalc.Night
@@ -21,6 +25,7 @@ import edu.gemini.util.skycalc.Night
 import scala.collection.concurrent
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent._
+import scala.concurrent.duration._
 import scala.swing.Swing._
 import scala.swing.event.Event
 import scala.swing.{Publisher, Swing}
@@ -47,6 +52,12 @@ object ConstraintsCache {
 
   val Constraints: Set[ConstraintType] = Set(AboveHorizon, SkyBrightness, TimingWindows, Elevation, MinimumTime)
 
+  val Log = Logger.getLogger(classOf[ConstraintsCache].getName)
+
+  /** Number of targets for which solutions are requested from the ODB at once. */
+  private val RemoteBatchSize = 25
+  private val RemoteTimeout   = 5.minutes
+
 }
 
 class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
@@ -126,24 +137,61 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
       publish(ConstraintCalculationStart(c, observations.size * nights.size))
     }))
 
-    // Note: The default execution context is pretty good at keeping the CPU usage at 80% if there are enough
-    // tasks around; throwing the semesters and for each semester the folded obs at it seems to work pretty well.
+    def progress(obs: Obs): Unit =
+      Swing.onEDT({
+        constraints.foreach(c => publish(ConstraintCalculationProgress(c, foldedMap(obs).size * nights.size)))
+      })
+
+    // Solutions for targets that can be described by a single track are shared by all QV instances
+    // and kept in the ODB; get them in batches of targets and calculate the rest locally.
+    // Fingerprint each ephemeris once, the tracks are then cheap to use as keys.
+    val tracks = foldedObs.flatMap(o => ephemeris(o).map(o -> _)).toMap
+    val ephs   = tracks.values.toMap
+    val keyed  = foldedObs.flatMap(o => solutionKey(ctx.site, o, tracks.get(o).map(_._1)).map(o -> _)).toMap
+    val remote = ctx.peer != null && keyed.nonEmpty
+    val dates  = nights.map(_.date).toList
+    var failed = !remote
+    val done   = scala.collection.mutable.Set[Obs]()
+
+    keyed.groupBy(_._2).toList.grouped(RemoteBatchSize).foreach { batch =>
+      if (!failed) {
+        val keys = batch.map(_._1)
+        try {
+          val sols = Await.result(ConstraintSolutionClient.solutions(QvTool.authClient, ctx.peer, dates, keys, ephs), RemoteTimeout)
+          batch.zip(sols).foreach { case ((_, obsMap), ns) =>
+            obsMap.keys.foreach { obs =>
+              store(obs, foldedMap(obs), nights, ns)
+              progress(obs)
+              done += obs
+            }
+          }
+        } catch {
+          case t: Exception =>
+            Log.log(Level.WARNING, "Could not get constraint solutions from the ODB, calculating them locally.", t)
+            failed = true
+        }
+      }
+    }
 
     // force calculation of lazily initialised moon calculator in all nights
     // (it will be needed later and slows UI interaction down too much when only initialised when needed)
     nights.map(_.moonCalculator)
 
-    // do calculations for each "folded" obs, i.e. for each position
+    // Note: The default execution context is pretty good at keeping the CPU usage at 80% if there are enough
+    // tasks around; throwing the semesters and for each semester the folded obs at it seems to work pretty well.
+
+    // do calculations for each remaining "folded" obs, i.e. for each position
     // this can be done in parallel!
-    foldedObs.par.foreach(obs => {                                   // work on observation groups in parallel!
+    val local = foldedObs.filterNot(done)
+    local.par.foreach(obs => {                                       // work on observation groups in parallel!
 
       val target = (t: Long) => obs.getTargetEnvironment.getAsterism.basePosition(Some(Instant.ofEpochMilli(t))).getOrElse(Coordinates.zero)
-      calculatePosSemester(nights, target, obs, foldedMap(obs))
+      val sb     = Conds.getBrightestMagnitude(obs.getConditions.getSB)
+      val el     = elevationLimits(ctx.site, obs)
+      store(obs, foldedMap(obs), nights, nights.map(n => ConstraintSolutions.calculate(n, target, sb, el)))
 
       // update progress, we've calculated all constraints for obs.size observations for all nights in the semester
-      Swing.onEDT({
-        constraints.foreach(c => publish(ConstraintCalculationProgress(c, foldedMap(obs).size * nights.size)))
-      })
+      progress(obs)
 
     })
 
@@ -153,16 +201,51 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
   }
 
+  /**
+   * The key for the shared solutions of an observation, if its target can be described by a single track.
+   * Non-sidereal targets use the given ephemeris track.
+   */
+  private def solutionKey(site: Site, o: Obs, ephemerisTrack: Option[EphemerisTrack]): Option[SolutionKey] = {
+    val track = o.getTargetEnvironment.getAsterism match {
+      case Asterism.Single(t) => t.getTarget.fold[Option[TargetTrack]](
+          _ => Some(FixedTrack(Coordinates.zero)),       // no position for ToOs, just like basePosition
+          s => Some(FixedTrack(s.coordinates)),
+          _ => ephemerisTrack)
+      case _                  => None
+    }
+    track.map(SolutionKey(_, Conds.getBrightestMagnitude(o.getConditions.getSB), elevationLimits(site, o)))
+  }
+
+  /**
+   * The ephemeris of an observation with a single non-sidereal target, along with its track.
+   * Ephemerides that are too long for the ODB are left out, their solutions are calculated locally.
+   */
+  private def ephemeris(o: Obs): Option[(EphemerisTrack, Ephemeris)] =
+    o.getTargetEnvironment.getAsterism match {
+      case Asterism.Single(t) => t.getTarget.fold[Option[(EphemerisTrack, Ephemeris)]](
+          _ => None,
+          _ => None,
+          n => if (n.ephemeris.size > MaxEphemerisSize) None else Some(EphemerisTrack(n.name, n.ephemeris) -> n.ephemeris))
+      case _                  => None
+    }
+
+  private def elevationLimits(site: Site, o: Obs): ElevationLimits = {
+    import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.ElevationConstraintType._
+    o.getElevationConstraintType match {
+      case NONE       => MinimumElevation(minElevationFor(site, o))
+      case HOUR_ANGLE => HourAngleLimits(o.getElevationConstraintMin, o.getElevationConstraintMax)
+      case AIRMASS    => AirmassLimits(o.getElevationConstraintMin, o.getElevationConstraintMax)
+    }
+  }
 
-  private def calculatePosSemester(nights: Seq[Night], target: Long => Coordinates, foldedObs: Obs, obs: Set[Obs]): Unit = {
+  private def store(foldedObs: Obs, obs: Set[Obs], nights: Seq[Night], cc: Seq[NightSolutions]): Unit = {
 
-    // calculate all constraints on a per-night basis and then concatenate the results
-    val cc = nights.map(n => calculatePosNight(n, target, foldedObs))
-    val ah = cc.map(_._1).reduce(_ add _)
-    val sb = cc.map(_._2).reduce(_ add _)
-    val el = cc.map(_._3).reduce(_ add _)
-    val minEl = cc.map(_._4)
-    val maxEl = cc.map(_._5)
+    // the per-night solutions are concatenated into solutions for the whole range
+    val ah = cc.map(_.aboveHorizon).reduce(_ add _)
+    val sb = cc.map(_.skyBrightness).reduce(_ add _)
+    val el = cc.map(_.elevation).reduce(_ add _)
+    val minEl = cc.map(_.minElevation)
+    val maxEl = cc.map(_.maxElevation)
     // timing windows for an observation are calculated once per semester only, convert windows to immutable sequence
     val tws = Seq(scala.collection.JavaConversions.asScalaBuffer(foldedObs.getTimingWindows):_*)
     val twsSol = TimingWindowConstraint(tws).solve(nights, foldedObs)
@@ -179,40 +262,6 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
 
   }
 
-  private def calculatePosNight(night: Night, target: Long => Coordinates, o: Obs): (Solution, Solution, Solution, Double, Double) = {
-
-    import edu.gemini.spModel.gemini.obscomp.SPSiteQuality.ElevationConstraintType._
-
-    // restrict all calculations to time between nautical twilights (science time)
-    val bounds = night.scienceTime
-    val tc = TargetCalculator(night.site, target, bounds, TimeUtils.minutes(10))
-
-    // return a tuple with all values of interest
-    (
-      // calculate and return the three constraints for AboveHorizon, SkyBrightness and Elevation
-      {
-        ElevationConstraint(0, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
-      },
-      {
-        val minSb = Conds.getBrightestMagnitude(o.getConditions.getSB)
-        SkyBrightnessConstraint(minSb, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
-      },
-      {
-        val min = o.getElevationConstraintMin
-        val max = o.getElevationConstraintMax
-        o.getElevationConstraintType match {
-          case NONE       => ElevationConstraint(minElevationFor(night, o), Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
-          case HOUR_ANGLE => HourAngleConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
-          case AIRMASS    => AirmassConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
-        }
-      },
-
-      // some additional values that need to be cached..
-      tc.minElevation,
-      tc.maxElevation
-    )
-  }
-
   /**
    * Gets the minimal elevation for an observation to be observable depending on LGS or not.
    * NOTE: This should be done by checking for the actual instrument used by the observation from o.instruments
@@ -220,8 +269,8 @@ class ConstraintsCache(allNights: Seq[Night]) extends Publisher {
    * and was replaced by an artificial Canopus component in the QPT; see also ObsQueryFunctor.instrument().
    * Since fixing this properly would need additional work in the QPT this is out of scope for now.
    */
-  private def minElevationFor(n: Night, o: Obs) =
-    if (o.getLGS && n.site == Site.GS) 45           // lower limit for GeMS (LGS + site = GS): 45 deg
+  private def minElevationFor(site: Site, o: Obs) =
+    if (o.getLGS && site == Site.GS) 45           // lower limit for GeMS (LGS + site = GS): 45 deg
     else if (o.getLGS) 40                           // lower limit for Altair + LGS: 40 deg
     else 30                                         // lower limit for everything else: 30 deg
 
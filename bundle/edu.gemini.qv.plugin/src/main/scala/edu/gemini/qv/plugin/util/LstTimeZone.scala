@@ -1,6 +1,6 @@
 package edu.gemini.qv.plugin.util
 
-import edu.gemini.skycalc.ImprovedSkyCalc
+import edu.gemini.skycalc.SkyCalcEngine
 import edu.gemini.spModel.core.Site
 import java.util.{Date, TimeZone}
 
@@ -8,7 +8,7 @@ import java.util.{Date, TimeZone}
  * An artificial time zone to represent local sidereal time for a site.
  */
 class LstTimeZone(site: Site) extends TimeZone {
-  private val skyCalc = new ImprovedSkyCalc(site)
+  private val skyCalc = new SkyCalcEngine(site)
 
   def setRawOffset(p1: Int) = {}
 
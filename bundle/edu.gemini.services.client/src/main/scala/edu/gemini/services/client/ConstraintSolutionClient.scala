@@ -0,0 +1,49 @@
+package edu.gemini.services.client
+
+import edu.gemini.services.client.ConstraintSolutions._
+import edu.gemini.spModel.core.{Ephemeris, Peer}
+import edu.gemini.util.security.auth.keychain.KeyChain
+import edu.gemini.util.trpc.client.TrpcClient
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+
+/**
+ * Client side implementation to get constraint solutions from given peer.
+ */
+object ConstraintSolutionClient {
+
+  /**
+   * Gets the solutions for the given keys for all nights; see [[ConstraintSolutionService]].
+   * Ephemerides are only sent for the keys the service doesn't know yet, so `ephemerides` must
+   * contain every ephemeris track used by the keys. Nights and keys are split into as many
+   * requests as needed to stay within the limits of the service.
+   */
+  def solutions(kc: Option[KeyChain], peer: Peer, nights: List[Long], keys: List[SolutionKey], ephemerides: Map[EphemerisTrack, Ephemeris]): Future[List[List[NightSolutions]]] =
+    TrpcClient(peer).withOptionalKeyChain(kc) future { r =>
+      val service = r[ConstraintSolutionService]
+      keys.grouped(MaxKeys).toList.flatMap { ks =>
+        val parts = nights.grouped(MaxNights).toList.map(ns => solutions(service, peer, ns, ks, ephemerides))
+        ks.indices.toList.map(i => parts.flatMap(_(i)))
+      }
+    }
+
+  // A single request, within the limits of the service.
+  private def solutions(service: ConstraintSolutionService, peer: Peer, nights: List[Long], keys: List[SolutionKey], ephemerides: Map[EphemerisTrack, Ephemeris]): List[List[NightSolutions]] = {
+    val first   = keys.zip(service.solutions(peer.site, nights, keys))
+    val unknown = first.collect { case (k, None) => k }
+
+    val second  =
+      if (unknown.isEmpty) Map.empty[SolutionKey, Option[List[NightSolutions]]]
+      else {
+        val tracks = unknown.collect { case SolutionKey(t: EphemerisTrack, _, _) => t }.distinct
+        tracks.grouped(MaxEphemerides).foreach(ts => service.addEphemerides(ts.map(t => t -> ephemerides(t))))
+        unknown.zip(service.solutions(peer.site, nights, unknown)).toMap
+      }
+
+    first.map { case (k, s) =>
+      s.orElse(second(k)).getOrElse(sys.error(s"No constraint solutions for $k"))
+    }
+  }
+
+}
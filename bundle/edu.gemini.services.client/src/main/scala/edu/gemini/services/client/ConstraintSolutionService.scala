@@ -0,0 +1,139 @@
+package edu.gemini.services.client
+
+import ConstraintSolutions._
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Ephemeris, Site}
+import edu.gemini.util.skycalc.Night
+import edu.gemini.util.skycalc.calc.{Solution, TargetCalculator}
+import edu.gemini.util.skycalc.constraint.{AirmassConstraint, ElevationConstraint, HourAngleConstraint, SkyBrightnessConstraint}
+
+object ConstraintSolutions {
+
+  // ==== Request limits
+
+  /** Most nights per `solutions` request, a little more than the year the QV looks at. */
+  val MaxNights = 400
+
+  /** Most keys per `solutions` request. */
+  val MaxKeys = 100
+
+  /** Most ephemerides per `addEphemerides` request. */
+  val MaxEphemerides = 100
+
+  /** Most elements of an ephemeris the service accepts; solutions for longer ones are calculated by the client. */
+  val MaxEphemerisSize = 50000
+
+  // ==== Target positions
+
+  /** The position of a target over time, which is what its constraint solutions depend on. */
+  sealed trait TargetTrack
+
+  /** A target at a fixed position. */
+  case class FixedTrack(coords: Coordinates) extends TargetTrack
+
+  /**
+   * A non-sidereal target, identified by its name and a fingerprint of its ephemeris. Keys stay
+   * small and cheap to compare, and the ephemeris itself is only sent to the service if it doesn't
+   * know it yet (see [[ConstraintSolutionService.addEphemerides]]).
+   */
+  case class EphemerisTrack(name: String, fingerprint: Long) extends TargetTrack
+
+  object EphemerisTrack {
+    def apply(name: String, ephemeris: Ephemeris): EphemerisTrack =
+      EphemerisTrack(name, fingerprint(ephemeris))
+
+    /**
+     * A 64 bit hash of the ephemeris contents. Unlike `Ephemeris.hashCode` this is the same in
+     * every JVM, so it can be computed by the client and kept by the service across restarts.
+     */
+    def fingerprint(ephemeris: Ephemeris): Long = {
+      val h = ephemeris.toList.foldLeft(ephemeris.site.name.hashCode.toLong) { case (h0, (t, c)) =>
+        val h1 = 31 * h0 + t
+        val h2 = 31 * h1 + java.lang.Double.doubleToLongBits(c.ra.toDegrees)
+        31 * h2 + java.lang.Double.doubleToLongBits(c.dec.toDegrees)
+      }
+      h ^ (h >>> 32)
+    }
+  }
+
+  /** Positions along an ephemeris; times outside of it use zero coordinates like the QV always did. */
+  def position(ephemeris: Ephemeris): Long => Coordinates =
+    t => ephemeris.iLookup(t).getOrElse(Coordinates.zero)
+
+  // ==== Elevation limits
+
+  sealed trait ElevationLimits
+  case class MinimumElevation(min: Double) extends ElevationLimits
+  case class HourAngleLimits(min: Double, max: Double) extends ElevationLimits
+  case class AirmassLimits(min: Double, max: Double) extends ElevationLimits
+
+  /**
+   * Everything the solutions of an observation depend on apart from site and night: the target
+   * position, the brightest acceptable sky background and the elevation limits.
+   */
+  case class SolutionKey(target: TargetTrack, skyBrightness: Double, elevation: ElevationLimits)
+
+  /** The solutions for one observation and night, restricted to the science time of the night. */
+  case class NightSolutions(
+    aboveHorizon:  Solution,
+    skyBrightness: Solution,
+    elevation:     Solution,
+    minElevation:  Double,
+    maxElevation:  Double)
+
+  /**
+   * Does the actual calculations. This is used by the service implementation but also by clients
+   * for targets that can not be described by a single target track.
+   */
+  def calculate(night: Night, target: Long => Coordinates, skyBrightness: Double, elevation: ElevationLimits): NightSolutions = {
+
+    // restrict all calculations to time between nautical twilights (science time)
+    val bounds = night.scienceTime
+    val tc = TargetCalculator(night.site, target, bounds, TimeUtils.minutes(10))
+
+    // keep the intervals in a list, other sequences don't necessarily serialize well
+    def norm(s: Solution): Solution = Solution(s.intervals.toList)
+
+    NightSolutions(
+      norm(ElevationConstraint(0, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)),
+      norm(SkyBrightnessConstraint(skyBrightness, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)),
+      norm(elevation match {
+        case MinimumElevation(min)     => ElevationConstraint(min, Double.MaxValue, TimeUtils.minutes(3)).solve(bounds, tc)
+        case HourAngleLimits(min, max) => HourAngleConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
+        case AirmassLimits(min, max)   => AirmassConstraint(min, max, TimeUtils.minutes(3)).solve(bounds, tc)
+      }),
+      tc.minElevation,
+      tc.maxElevation
+    )
+  }
+
+  def calculate(night: Night, key: SolutionKey, target: Long => Coordinates): NightSolutions =
+    calculate(night, target, key.skyBrightness, key.elevation)
+
+}
+
+// ==== Constraint solution service interface
+
+/**
+ * Provides constraint solutions from a store shared by all QV clients, so that solutions are
+ * only calculated once per target, site and night.
+ */
+trait ConstraintSolutionService {
+
+  /**
+   * Gets the solutions for all given keys and nights, where a night is identified by the date
+   * used to create it (see [[edu.gemini.util.skycalc.Night]]). The result contains one element per
+   * key, in the order of the keys, with one solution for each night in the order of the nights.
+   * The element is `None` for keys with an ephemeris the service doesn't know; add it with
+   * `addEphemerides` and ask again. Requests with more than `MaxNights` nights or `MaxKeys` keys
+   * are rejected.
+   */
+  def solutions(site: Site, nights: List[Long], keys: List[SolutionKey]): List[Option[List[NightSolutions]]]
+
+  /**
+   * Makes the given ephemerides known to the service. Requests with more than `MaxEphemerides`
+   * ephemerides, or with ephemerides longer than `MaxEphemerisSize`, are rejected.
+   */
+  def addEphemerides(ephemerides: List[(EphemerisTrack, Ephemeris)]): Unit
+
+}
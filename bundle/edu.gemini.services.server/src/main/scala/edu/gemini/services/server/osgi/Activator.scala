@@ -1,19 +1,42 @@
 package edu.gemini.services.server.osgi
 
 import Activator._
-import edu.gemini.services.client.TelescopeScheduleService
+import edu.gemini.pot.spdb.IDBDatabaseService
+import edu.gemini.services.client.{ConstraintSolutionService, TelescopeScheduleService}
+import edu.gemini.services.server.solutions.{ConstraintSolutionServiceImpl, ConstraintSolutionStore}
 import edu.gemini.services.server.util.CalendarService
+import edu.gemini.skycalc.TimeUtils
 import edu.gemini.spModel.core.Site
 import edu.gemini.spModel.core.osgi.SiteProperty
+import edu.gemini.util.osgi.SecureServiceFactory
+import edu.gemini.util.osgi.SecureServiceFactory._
+import edu.gemini.util.osgi.Tracker._
+import java.io.File
+import java.security.Principal
+import java.util.concurrent.{Executors, ScheduledExecutorService, ThreadFactory, TimeUnit}
 import java.util.logging.{Level, Logger}
 import java.util.logging.Level._
 import org.osgi.framework.{ServiceRegistration, BundleActivator, BundleContext}
+import org.osgi.util.tracker.ServiceTracker
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.Future
 import scala.util.{Try, Success, Failure}
 
 object Activator {
   val ServiceStart = "edu.gemini.services.server.start"
+
+  /** Set to false to not provide the constraint solution service (default is true). */
+  val SolutionsStart = "edu.gemini.services.server.solutions.start"
+
+  /** Directory in which constraint solutions are kept across restarts; if not set they're kept in memory only. */
+  val SolutionsDir   = "edu.gemini.services.server.solutions.dir"
+
+  /** Number of nights ahead for which solutions are precomputed every day, QV looks at a full year. */
+  val SolutionsNights = 365
+
+  /** Targets that have not been requested for this long are dropped from the store. */
+  val SolutionsRetention = TimeUtils.days(30)
+
   val Log = Logger.getLogger(classOf[Activator].getName)
 }
 
@@ -24,6 +47,7 @@ object Activator {
 class Activator extends BundleActivator {
 
   private var telescopeScheduleService: Option[ServiceRegistration[TelescopeScheduleService]] = None
+  private var constraintSolutionService: Option[(ServiceTracker[_, _], ConstraintSolutionStore, ScheduledExecutorService)] = None
 
   private def recordRegistration(reg: ServiceRegistration[TelescopeScheduleService]): Unit =
     synchronized {
@@ -34,6 +58,13 @@ class Activator extends BundleActivator {
     synchronized {
       telescopeScheduleService.foreach(_.unregister())
       telescopeScheduleService = None
+      constraintSolutionService.foreach { case (tracker, store, exec) =>
+        tracker.close()
+        exec.shutdownNow()
+        store.shutdown()
+        store.save()
+      }
+      constraintSolutionService = None
     }
 
 
@@ -41,6 +72,10 @@ class Activator extends BundleActivator {
     val site = SiteProperty.get(ctx)
     Log.info(s"Starting services bundle for site $site.")
 
+    if ((site != null) && Option(ctx.getProperty(SolutionsStart)).forall(_.toLowerCase == "true")) {
+      registerConstraintSolutions(ctx, site)
+    }
+
     if ((site != null) && Option(ctx.getProperty(ServiceStart)).forall(_.toLowerCase == "true")) {
       // register the services..
       registerTelescopeSchedule(ctx, site)
@@ -89,6 +124,54 @@ class Activator extends BundleActivator {
     t.start()
   }
 
+  /**
+   * Registers the constraint solution service once the ODB is available (callers' permissions are
+   * checked against it) and schedules the daily precomputation of the
+   * solutions for the upcoming nights (starting shortly after the bundle is started).
+   */
+  private def registerConstraintSolutions(ctx: BundleContext, site: Site): Unit = synchronized {
+    Log.info("Registering constraint solution service.")
+
+    val file  = Option(ctx.getProperty(SolutionsDir)).map(d => new File(d, s"constraintSolutions-${site.name}.ser"))
+    file.foreach(_.getParentFile.mkdirs())
+    val store = new ConstraintSolutionStore(file, SolutionsRetention)
+
+    val exec  = Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+      def newThread(r: Runnable): Thread = {
+        val t = new Thread(r, "Constraint Solutions")
+        t.setDaemon(true)
+        t.setPriority(Thread.NORM_PRIORITY - 1)
+        t
+      }
+    })
+
+    exec.execute(new Runnable {
+      def run(): Unit = store.load()
+    })
+    exec.scheduleAtFixedRate(new Runnable {
+      def run(): Unit =
+        try {
+          val today = TimeUtils.startOfDay(System.currentTimeMillis, site.timezone)
+          store.prune(today)
+          store.precompute(site, List.tabulate(SolutionsNights)(i => today + TimeUtils.days(i)))
+          store.save()
+        } catch {
+          case t: Throwable => Log.log(SEVERE, "Constraint solution precomputation failed.", t)
+        }
+    }, 10, TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES)
+
+    val tracker = track[IDBDatabaseService, ServiceRegistration[SecureServiceFactory[ConstraintSolutionService]]](ctx) { db =>
+      val factory = new SecureServiceFactory[ConstraintSolutionService] {
+        def getService(ps: Set[Principal]): ConstraintSolutionService =
+          new ConstraintSolutionServiceImpl(store, db, ps)
+      }
+      ctx.registerSecureService(factory, Map("trpc" -> ""))           // publish as TRPC services
+    } { _.unregister() }
+    tracker.open()
+
+    constraintSolutionService = Some((tracker, store, exec))
+  }
+
   /** Simple retry mechanism. */
   private def retry[T](name: String, n: Int, wait: Long)(doRegistration: => T): Try[T] =
     Try {
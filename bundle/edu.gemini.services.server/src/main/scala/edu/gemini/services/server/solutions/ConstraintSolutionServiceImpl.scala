@@ -0,0 +1,39 @@
+package edu.gemini.services.server.solutions
+
+import java.security.{AccessControlException, Principal}
+
+import edu.gemini.pot.spdb.IDBDatabaseService
+import edu.gemini.services.client.ConstraintSolutionService
+import edu.gemini.services.client.ConstraintSolutions._
+import edu.gemini.spModel.core.{Ephemeris, Site}
+import edu.gemini.util.security.permission.StaffPermission
+import edu.gemini.util.security.policy.ImplicitPolicy
+
+/**
+ * Implementation of the constraint solution service backed by a store that is shared by all clients.
+ * The service is for the QV, so callers need staff permission; requests beyond the limits given in
+ * [[edu.gemini.services.client.ConstraintSolutions]] are rejected.
+ */
+class ConstraintSolutionServiceImpl(store: ConstraintSolutionStore, db: IDBDatabaseService, ps: Set[Principal]) extends ConstraintSolutionService {
+
+  private def checkPermission(): Unit =
+    if (!ImplicitPolicy.hasPermission(db, ps, StaffPermission(None)).unsafePerformIO())
+      throw new AccessControlException("permission needed to access constraint solutions")
+
+  def solutions(site: Site, nights: List[Long], keys: List[SolutionKey]): List[Option[List[NightSolutions]]] = {
+    checkPermission()
+    require(nights.size <= MaxNights, s"At most $MaxNights nights per request, got ${nights.size}.")
+    require(keys.size <= MaxKeys, s"At most $MaxKeys keys per request, got ${keys.size}.")
+    store.solutions(site, nights, keys)
+  }
+
+  def addEphemerides(ephemerides: List[(EphemerisTrack, Ephemeris)]): Unit = {
+    checkPermission()
+    require(ephemerides.size <= MaxEphemerides, s"At most $MaxEphemerides ephemerides per request, got ${ephemerides.size}.")
+    ephemerides.foreach { case (t, e) =>
+      require(e.size <= MaxEphemerisSize, s"Ephemeris of ${t.name} has ${e.size} elements, at most $MaxEphemerisSize are accepted.")
+    }
+    store.addEphemerides(ephemerides)
+  }
+
+}
@@ -0,0 +1,241 @@
+package edu.gemini.services.server.solutions
+
+import java.io._
+import java.util.concurrent.TimeUnit
+import java.util.logging.{Level, Logger}
+
+import ConstraintSolutionStore._
+import edu.gemini.services.client.ConstraintSolutions
+import edu.gemini.services.client.ConstraintSolutions._
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Ephemeris, Site}
+import edu.gemini.util.skycalc.Night
+
+import scala.collection.concurrent.TrieMap
+import scala.collection.parallel.ForkJoinTaskSupport
+import scala.collection.parallel.immutable.ParSeq
+import scala.concurrent.forkjoin.ForkJoinPool
+
+object ConstraintSolutionStore {
+  val Log = Logger.getLogger(classOf[ConstraintSolutionStore].getName)
+
+  /** Solutions are stored per site, night (start of the day in the site's time zone) and key. */
+  case class StoreKey(site: Site, day: Long, key: SolutionKey)
+
+  /** Keys are remembered per site so they can be precomputed for upcoming nights. */
+  case class UsageKey(site: Site, key: SolutionKey)
+
+  /** Most keys kept; beyond that the least recently requested ones are dropped. */
+  val DefaultMaxKeys = 20000
+
+  /** Most ephemerides kept; beyond that the least recently used ones are dropped. */
+  val DefaultMaxEphemerides = 2000
+
+  /** Threads used for calculations, leaving the rest of the machine to the ODB. */
+  val DefaultParallelism: Int = (Runtime.getRuntime.availableProcessors / 2) max 1
+
+  /** The persisted form of the store. */
+  case class Snapshot(solutions: Map[StoreKey, NightSolutions], usage: Map[UsageKey, Long], ephemerides: Map[EphemerisTrack, Ephemeris])
+
+  // A night that is only calculated if one of its solutions is missing.
+  private final class LazyNight(site: Site, date: Long) {
+    val day: Long = TimeUtils.startOfDay(date, site.timezone)
+    lazy val night: Night = Night(site, date)
+  }
+}
+
+/**
+ * A store of constraint solutions shared by all clients. Missing solutions are calculated on
+ * demand; solutions for keys that have been requested recently can be calculated ahead of time
+ * by calling `precompute` (e.g. once a day) so that clients only find them in the store.
+ *
+ * Non-sidereal targets are keyed by an [[EphemerisTrack]]; their ephemerides are added separately
+ * and only once, and are kept for as long as any key uses them.
+ *
+ * The store is bounded: at most `maxKeys` keys and `maxEphemerides` ephemerides are kept, the
+ * least recently used ones are dropped first. Calculations run on a pool of `parallelism` threads
+ * of its own, so that they can't take over the ODB; call `shutdown` when done with the store.
+ *
+ * @param file           the file used to persist the store across restarts, if any
+ * @param retention      how long a key is remembered after it was last requested
+ * @param clock          current time in milliseconds
+ * @param maxKeys        most keys (per site) whose solutions are kept
+ * @param maxEphemerides most ephemerides that are kept
+ * @param parallelism    number of threads used for calculations
+ */
+final class ConstraintSolutionStore(
+  file:           Option[File],
+  retention:      Long,
+  clock:          () => Long = () => System.currentTimeMillis,
+  maxKeys:        Int        = DefaultMaxKeys,
+  maxEphemerides: Int        = DefaultMaxEphemerides,
+  parallelism:    Int        = DefaultParallelism) {
+
+  private val store: TrieMap[StoreKey, NightSolutions] = TrieMap()
+  private val usage: TrieMap[UsageKey, Long] = TrieMap()
+  private val ephemerides: TrieMap[EphemerisTrack, Ephemeris] = TrieMap()
+  private val ephemerisUsage: TrieMap[EphemerisTrack, Long] = TrieMap()
+
+  private val pool  = new ForkJoinPool(parallelism)
+  private val tasks = new ForkJoinTaskSupport(pool)
+
+  private def par[A](as: List[A]): ParSeq[A] = {
+    val p = as.par
+    p.tasksupport = tasks
+    p
+  }
+
+  def size: Int = store.size
+
+  def ephemerisCount: Int = ephemerides.size
+
+  /** Gets the solutions for all keys and nights; see [[edu.gemini.services.client.ConstraintSolutionService]]. */
+  def solutions(site: Site, nights: List[Long], keys: List[SolutionKey]): List[Option[List[NightSolutions]]] = {
+    val now = clock()
+    val ns  = nights.map(new LazyNight(site, _))
+    val res = par(keys).map { k =>
+      target(k.target, now).map { pos =>
+        usage.put(UsageKey(site, k), now)
+        ns.map(n => lookup(site, n, k, pos))
+      }
+    }.toList
+    if (usage.size > maxKeys) evictKeys()
+    res
+  }
+
+  /** Adds ephemerides for the solutions of non-sidereal targets. */
+  def addEphemerides(es: List[(EphemerisTrack, Ephemeris)]): Unit = {
+    val now = clock()
+    es.foreach { case (t, e) =>
+      ephemerides.put(t, e)
+      ephemerisUsage.put(t, now)
+    }
+    if (ephemerides.size > maxEphemerides) evictEphemerides()
+  }
+
+  // The position of the target, if known.
+  private def target(t: TargetTrack, now: Long): Option[Long => Coordinates] =
+    t match {
+      case FixedTrack(c)     => Some((_: Long) => c)
+      case e: EphemerisTrack =>
+        ephemerides.get(e).map { eph =>
+          ephemerisUsage.put(e, now)
+          ConstraintSolutions.position(eph)
+        }
+    }
+
+  // The entries of the map with the oldest times, down to 90% of the limit so that this doesn't
+  // happen on every request.
+  private def oldest[K](times: Iterable[(K, Long)], limit: Int): List[K] = {
+    val all = times.toList
+    all.sortBy(_._2).take(all.size - limit * 9 / 10).map(_._1)
+  }
+
+  private def evictKeys(): Unit = synchronized {
+    usage.readOnlySnapshot().groupBy(_._1.site).foreach { case (_, u) =>
+      if (u.size > maxKeys) {
+        val drop = oldest(u, maxKeys).toSet
+        drop.foreach(usage.remove)
+        store.keys.foreach { k => if (drop(UsageKey(k.site, k.key))) store.remove(k) }
+        Log.info(s"Dropped constraint solutions for ${drop.size} least recently used targets.")
+      }
+    }
+  }
+
+  private def evictEphemerides(): Unit = synchronized {
+    if (ephemerides.size > maxEphemerides) {
+      val drop = oldest(ephemerisUsage.readOnlySnapshot(), maxEphemerides)
+      drop.foreach { e =>
+        ephemerides.remove(e)
+        ephemerisUsage.remove(e)
+      }
+      Log.info(s"Dropped ${drop.size} least recently used ephemerides.")
+    }
+  }
+
+  private def lookup(site: Site, n: LazyNight, k: SolutionKey, pos: Long => Coordinates): NightSolutions =
+    store.getOrElseUpdate(StoreKey(site, n.day, k), ConstraintSolutions.calculate(n.night, k, pos))
+
+  /**
+   * Calculates all missing solutions for the given nights of the given site for all keys that
+   * have been requested within the retention time.
+   */
+  def precompute(site: Site, nights: List[Long]): Unit = {
+    val cutoff = clock() - retention
+    val keys   = usage.collect { case (UsageKey(s, k), t) if s == site && t >= cutoff => k }.toList
+    val ns     = nights.map(new LazyNight(site, _))
+    val before = store.size
+    par(keys).foreach(k => target(k.target, clock()).foreach(pos => ns.foreach(n => lookup(site, n, k, pos))))
+    Log.info(s"Precomputed constraint solutions for ${keys.size} targets on ${nights.size} nights at $site, ${store.size - before} new.")
+  }
+
+  /**
+   * Drops solutions for nights before the given time, and keys that have not been used recently
+   * along with the ephemerides that no remaining key uses.
+   */
+  def prune(before: Long): Unit = {
+    val cutoff = clock() - retention
+    usage.foreach { case (k, t) => if (t < cutoff) usage.remove(k, t) }
+    store.keys.foreach { k =>
+      if (k.day < before || !usage.contains(UsageKey(k.site, k.key))) store.remove(k)
+    }
+    val used = usage.keys.map(_.key.target).toSet
+    ephemerides.keys.foreach { e =>
+      if (!used(e)) {
+        ephemerides.remove(e)
+        ephemerisUsage.remove(e)
+      }
+    }
+  }
+
+  /** Stops the calculation threads, waiting a little for calculations in progress. */
+  def shutdown(): Unit = {
+    pool.shutdown()
+    if (!pool.awaitTermination(10, TimeUnit.SECONDS))
+      Log.warning("Constraint solution calculations still running after shutdown.")
+  }
+
+  /** Loads the persisted solutions, if any. */
+  def load(): Unit =
+    file.filter(_.exists).foreach { f =>
+      try {
+        val in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)))
+        try {
+          val s = in.readObject().asInstanceOf[Snapshot]
+          store ++= s.solutions
+          usage ++= s.usage
+          ephemerides ++= s.ephemerides
+          ephemerisUsage ++= s.ephemerides.keys.map(_ -> clock())
+          Log.info(s"Loaded ${s.solutions.size} constraint solutions from $f.")
+        } finally {
+          in.close()
+        }
+      } catch {
+        case ex: Exception =>
+          // Incompatible or damaged, solutions will simply be recalculated.
+          Log.log(Level.WARNING, s"Could not load constraint solutions from $f.", ex)
+      }
+    }
+
+  /** Persists the solutions, if a file is configured. */
+  def save(): Unit =
+    file.foreach { f =>
+      val tmp = new File(f.getPath + ".tmp")
+      try {
+        val out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+        try {
+          out.writeObject(Snapshot(store.readOnlySnapshot().toMap, usage.readOnlySnapshot().toMap, ephemerides.readOnlySnapshot().toMap))
+        } finally {
+          out.close()
+        }
+        if (!tmp.renameTo(f)) {
+          f.delete()
+          tmp.renameTo(f)
+        }
+      } catch {
+        case ex: IOException =>
+          Log.log(Level.WARNING, s"Could not save constraint solutions to $f.", ex)
+      }
+    }
+
+}
@@ -0,0 +1,162 @@
+package edu.gemini.services.server.solutions
+
+import java.io.File
+
+import edu.gemini.services.client.ConstraintSolutions
+import edu.gemini.services.client.ConstraintSolutions._
+import edu.gemini.skycalc.TimeUtils
+import edu.gemini.spModel.core.{Coordinates, Ephemeris, Site}
+import edu.gemini.util.skycalc.Night
+import org.specs2.mutable.Specification
+
+import scalaz.==>>
+import scalaz.std.anyVal._
+
+object ConstraintSolutionStoreSpec extends Specification {
+
+  val site      = Site.GS
+  val nights    = List(1446336000000L, 1446422400000L)  // 2015-11-01 and 2015-11-02
+  val retention = TimeUtils.days(30)
+
+  val coords    = Coordinates.fromDegrees(150.0, -30.0).get
+  val fixed     = SolutionKey(FixedTrack(coords), 20.0, MinimumElevation(30))
+
+  val ephemeris = Ephemeris(site, ==>>.fromList(List.tabulate(6) { i =>
+    (nights.head + TimeUtils.days(i - 1), Coordinates.fromDegrees(150.0 + i, -30.0 + i).get)
+  }))
+  val track     = EphemerisTrack("Ceres", ephemeris)
+  val moving    = SolutionKey(track, 20.0, AirmassLimits(1.0, 2.0))
+
+  def calculated(k: SolutionKey, pos: Long => Coordinates): List[NightSolutions] =
+    nights.map(n => ConstraintSolutions.calculate(Night(site, n), k, pos))
+
+  // A store with a clock that only moves when the test says so.
+  class TestStore(file: Option[File], maxKeys: Int = ConstraintSolutionStore.DefaultMaxKeys, maxEphemerides: Int = ConstraintSolutionStore.DefaultMaxEphemerides) {
+    var now: Long = nights.head
+    val store = new ConstraintSolutionStore(file, retention, () => now, maxKeys, maxEphemerides, 2)
+  }
+
+  def fixedAt(ra: Double): SolutionKey =
+    SolutionKey(FixedTrack(Coordinates.fromDegrees(ra, -30.0).get), 20.0, MinimumElevation(30))
+
+  "ConstraintSolutionStore" should {
+
+    "calculate missing solutions on demand" in {
+      val s = new TestStore(None).store
+      (s.solutions(site, nights, List(fixed)) must_== List(Some(calculated(fixed, _ => coords)))) and
+        (s.size must_== 2)
+    }
+
+    "answer None for unknown ephemerides until they are added" in {
+      val s = new TestStore(None).store
+      val before = s.solutions(site, nights, List(fixed, moving))
+      s.addEphemerides(List(track -> ephemeris))
+      val after  = s.solutions(site, nights, List(moving))
+
+      (before.map(_.isDefined) must_== List(true, false)) and
+        (after must_== List(Some(calculated(moving, ConstraintSolutions.position(ephemeris)))))
+    }
+
+    "precompute solutions for the keys used at a site" in {
+      val s = new TestStore(None).store
+      s.addEphemerides(List(track -> ephemeris))
+      s.solutions(site, nights.take(1), List(fixed, moving))
+      val used = s.size
+      s.precompute(site, nights)
+      val precomputed = s.size
+      s.precompute(Site.GN, nights)
+
+      (used must_== 2) and (precomputed must_== 4) and (s.size must_== 4)
+    }
+
+    "not precompute keys that were not used within the retention time" in {
+      val t = new TestStore(None)
+      t.store.solutions(site, nights.take(1), List(fixed))
+      t.now += retention + 1
+      t.store.precompute(site, nights)
+      t.store.size must_== 1
+    }
+
+    "prune past nights" in {
+      val s = new TestStore(None).store
+      s.solutions(site, nights, List(fixed))
+      s.prune(TimeUtils.startOfDay(nights(1), site.timezone))
+      (s.size must_== 1) and
+        (s.solutions(site, nights.drop(1), List(fixed)) must_== List(Some(calculated(fixed, _ => coords).drop(1)))) and
+        (s.size must_== 1)
+    }
+
+    "prune unused keys along with their ephemerides" in {
+      val t = new TestStore(None)
+      t.store.addEphemerides(List(track -> ephemeris))
+      t.store.solutions(site, nights, List(fixed, moving))
+      t.now += retention + 1
+      t.store.prune(0)
+      (t.store.size must_== 0) and
+        (t.store.solutions(site, nights, List(moving)) must_== List(None))
+    }
+
+    "drop the least recently requested keys beyond its limit" in {
+      val t  = new TestStore(None, maxKeys = 10)
+      val ks = List.tabulate(11)(i => fixedAt(10.0 * i))
+      ks.foreach { k =>
+        t.store.solutions(site, nights.take(1), List(k))
+        t.now += 1
+      }
+      // down to 9 keys, the two oldest are gone
+      (t.store.size must_== 9) and {
+        t.store.solutions(site, nights.take(1), ks.take(1))
+        t.store.size must_== 10
+      }
+    }
+
+    "drop the least recently used ephemerides beyond its limit" in {
+      val t  = new TestStore(None, maxEphemerides = 10)
+      val ts = List.tabulate(11)(i => EphemerisTrack(s"Asteroid $i", ephemeris))
+      ts.foreach { e =>
+        t.store.addEphemerides(List(e -> ephemeris))
+        t.now += 1
+      }
+      val known = t.store.solutions(site, nights.take(1), ts.map(e => moving.copy(target = e)))
+      (t.store.ephemerisCount must_== 9) and
+        (known.map(_.isDefined) must_== List.fill(2)(false) ++ List.fill(9)(true))
+    }
+
+    "save and load its solutions and ephemerides" in {
+      val f = File.createTempFile("constraintSolutions", ".ser")
+      try {
+        val s0 = new TestStore(Some(f)).store
+        s0.addEphemerides(List(track -> ephemeris))
+        val expected = s0.solutions(site, nights, List(fixed, moving))
+        s0.save()
+
+        val s1 = new TestStore(Some(f)).store
+        s1.load()
+        val loaded = s1.size
+        (loaded must_== 4) and
+          (s1.solutions(site, nights, List(fixed, moving)) must_== expected) and
+          (s1.size must_== loaded)
+      } finally {
+        f.delete()
+      }
+    }
+
+    "start out empty if there is nothing to load" in {
+      val f = File.createTempFile("constraintSolutions", ".ser")
+      f.delete()
+      val s = new TestStore(Some(f)).store
+      s.load()
+      s.size must_== 0
+    }
+  }
+
+  "EphemerisTrack" should {
+    "identify ephemerides by value" in {
+      val copy    = Ephemeris(site, ephemeris.data)
+      val changed = Ephemeris(site, ephemeris.data.insert(nights.head, coords))
+      (EphemerisTrack("Ceres", copy) must_== track) and
+        (EphemerisTrack("Ceres", changed) must_!= track) and
+        (EphemerisTrack("Ceres", Ephemeris(Site.GN, ephemeris.data)) must_!= track)
+    }
+  }
+}
@@ -9,7 +9,10 @@ import java.util.stream.StreamSupport;
  * Default implementation of the {@link ImList} interface.  This implementation
  * is backed with a <code>java.util.ArrayList</code>, which results in quicker
  * random access but wasteful construction and appending operations than a
- * more traditional immutable list implementation.
+ * more traditional immutable list implementation.  See
+ * {@link PersistentImList} for lists that are modified incrementally; the
+ * <code>create</code> methods return one instead when selected by
+ * {@link ImCollections#PERSISTENT_LIST_PROPERTY}.
  */
 public final class DefaultImList<T> implements ImList<T>, Serializable {
     private static final long serialVersionUID = 1L;
@@ -22,7 +25,7 @@ public final class DefaultImList<T> implements ImList<T>, Serializable {
         final List<T> copy = new ArrayList<>(elements.length);
         copy.addAll(Arrays.asList(elements));
 
-        return new DefaultImList<>(copy);
+        return ImCollections.newList(copy);
     }
 
     public static <T> ImList<T> create(final Collection<? extends T> list) {
@@ -31,7 +34,7 @@ public final class DefaultImList<T> implements ImList<T>, Serializable {
         final List<T> copy = new ArrayList<>(list.size());
         copy.addAll(list);
 
-        return new DefaultImList<>(copy);
+        return ImCollections.newList(copy);
     }
 
     // Quickly implemented with a backing java.util.List, though it would be
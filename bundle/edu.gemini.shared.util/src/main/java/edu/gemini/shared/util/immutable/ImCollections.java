@@ -11,6 +11,24 @@ public final class ImCollections {
 
     private ImCollections() { }
 
+    /**
+     * System property that, when set to "true", makes the general purpose
+     * list factories ({@link DefaultImList#create}, {@link #singletonList}
+     * and <code>cons</code> or <code>append</code> on the empty list) produce
+     * {@link PersistentImList} instead of {@link DefaultImList}.
+     */
+    public static final String PERSISTENT_LIST_PROPERTY = "edu.gemini.shared.util.immutable.persistentList";
+
+    private static final boolean PERSISTENT_LISTS = Boolean.getBoolean(PERSISTENT_LIST_PROPERTY);
+
+    /**
+     * Wraps a list that is subsequently owned by the result, using the
+     * implementation selected by {@link #PERSISTENT_LIST_PROPERTY}.
+     */
+    static <T> ImList<T> newList(final List<T> owned) {
+        return PERSISTENT_LISTS ? PersistentImList.create(owned) : new DefaultImList<>(owned);
+    }
+
     @SuppressWarnings("rawtypes")
     public static final ImList EMPTY_LIST = new EmptyList();
 
@@ -21,7 +39,7 @@ public final class ImCollections {
         public ImList<Object> cons(final Object o) {
             final List<Object> lst = new ArrayList<>();
             lst.add(o);
-            return new DefaultImList<>(lst);
+            return newList(lst);
         }
 
         @Override
@@ -280,6 +298,21 @@ public final class ImCollections {
         return DefaultImList.create(Collections.singletonList(item));
     }
 
+    /**
+     * Returns a persistent immutable list containing the given elements.
+     * Prefer this to {@link DefaultImList#create} for lists that are built or
+     * modified one element at a time.
+     *
+     * @param elements the items contained in the list, in order
+     *
+     * @param <T> type of the elements associated with the list
+     *
+     * @return a {@link PersistentImList} holding the elements
+     */
+    public static <T> ImList<T> persistentList(final Collection<? extends T> elements) {
+        return PersistentImList.create(elements);
+    }
+
     /**
      * Takes an immutable list of tuples and returns a tuple of two lists.
      * Essentially this method undoes the work of the {@link ImList#zip} method.
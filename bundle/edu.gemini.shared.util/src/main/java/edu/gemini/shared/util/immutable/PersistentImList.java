@@ -0,0 +1,605 @@
+package edu.gemini.shared.util.immutable;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A persistent implementation of the {@link ImList} interface.  Elements are
+ * kept in a height balanced (AVL) binary tree indexed by position, so that
+ * <code>cons</code>, <code>append</code>, <code>updated</code>,
+ * <code>remove</code>, {@link #splitAt} and concatenation share all but a
+ * logarithmic number of nodes with the original list instead of copying it.
+ * Random access is O(log n) rather than the O(1) of {@link DefaultImList},
+ * which remains the better choice for lists that are built once and read many
+ * times.
+ *
+ * <p>Instances serialize as a {@link DefaultImList}, so the serialized form is
+ * unchanged for peers that do not know this class.
+ */
+public final class PersistentImList<T> implements ImList<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final PersistentImList<Object> EMPTY = new PersistentImList<>(null);
+
+    /**
+     * A tree node holding one element along with the size and height of the
+     * subtree rooted at the node.  Nodes are never modified once created.
+     */
+    private static final class Node<T> {
+        final Node<T> left;
+        final T value;
+        final Node<T> right;
+        final int size;
+        final int height;
+
+        Node(final Node<T> left, final T value, final Node<T> right) {
+            this.left   = left;
+            this.value  = value;
+            this.right  = right;
+            this.size   = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentImList<T> empty() {
+        return (PersistentImList<T>) EMPTY;
+    }
+
+    @SafeVarargs
+    public static <T> PersistentImList<T> create(final T... elements) {
+        if (elements == null) return empty();
+        return create(Arrays.asList(elements));
+    }
+
+    public static <T> PersistentImList<T> create(final Collection<? extends T> elements) {
+        if ((elements == null) || elements.isEmpty()) return empty();
+        final Object[] a = elements.toArray();
+        return wrap(PersistentImList.<T>build(a, 0, a.length));
+    }
+
+    private final transient Node<T> root;
+
+    private PersistentImList(final Node<T> root) {
+        this.root = root;
+    }
+
+    private static <T> PersistentImList<T> wrap(final Node<T> root) {
+        return (root == null) ? PersistentImList.<T>empty() : new PersistentImList<>(root);
+    }
+
+    // Height of the tree, so that tests can check that it stays balanced.
+    int height() {
+        return height(root);
+    }
+
+    // ---- Tree operations ---------------------------------------------------
+
+    private static int size(final Node<?> n) {
+        return (n == null) ? 0 : n.size;
+    }
+
+    private static int height(final Node<?> n) {
+        return (n == null) ? 0 : n.height;
+    }
+
+    // Builds a perfectly balanced tree from a[from, to).
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T> build(final Object[] a, final int from, final int to) {
+        if (from >= to) return null;
+        final int mid = (from + to) >>> 1;
+        return new Node<>(PersistentImList.<T>build(a, from, mid), (T) a[mid], PersistentImList.<T>build(a, mid + 1, to));
+    }
+
+    private static <T> Node<T> rotateLeft(final Node<T> n) {
+        final Node<T> r = n.right;
+        return new Node<>(new Node<>(n.left, n.value, r.left), r.value, r.right);
+    }
+
+    private static <T> Node<T> rotateRight(final Node<T> n) {
+        final Node<T> l = n.left;
+        return new Node<>(l.left, l.value, new Node<>(l.right, n.value, n.right));
+    }
+
+    /**
+     * Joins two trees with an element between them, rebalancing along one
+     * spine only.  Takes time proportional to the difference in their heights.
+     */
+    private static <T> Node<T> join(final Node<T> l, final T value, final Node<T> r) {
+        if (height(l) > height(r) + 1) return joinRight(l, value, r);
+        if (height(r) > height(l) + 1) return joinLeft(l, value, r);
+        return new Node<>(l, value, r);
+    }
+
+    // l is the taller tree: descend its right spine.
+    private static <T> Node<T> joinRight(final Node<T> l, final T value, final Node<T> r) {
+        final Node<T> c = l.right;
+        if (height(c) <= height(r) + 1) {
+            final Node<T> t = new Node<>(c, value, r);
+            return (height(t) <= height(l.left) + 1) ?
+                    new Node<>(l.left, l.value, t) :
+                    rotateLeft(new Node<>(l.left, l.value, rotateRight(t)));
+        } else {
+            final Node<T> t = joinRight(c, value, r);
+            final Node<T> res = new Node<>(l.left, l.value, t);
+            return (height(t) <= height(l.left) + 1) ? res : rotateLeft(res);
+        }
+    }
+
+    // r is the taller tree: descend its left spine.
+    private static <T> Node<T> joinLeft(final Node<T> l, final T value, final Node<T> r) {
+        final Node<T> c = r.left;
+        if (height(c) <= height(l) + 1) {
+            final Node<T> t = new Node<>(l, value, c);
+            return (height(t) <= height(r.right) + 1) ?
+                    new Node<>(t, r.value, r.right) :
+                    rotateRight(new Node<>(rotateLeft(t), r.value, r.right));
+        } else {
+            final Node<T> t = joinLeft(l, value, c);
+            final Node<T> res = new Node<>(t, r.value, r.right);
+            return (height(t) <= height(r.right) + 1) ? res : rotateRight(res);
+        }
+    }
+
+    // The first n elements of the tree.
+    private static <T> Node<T> takeNodes(final Node<T> n, final int count) {
+        if ((n == null) || (count <= 0)) return null;
+        if (count >= n.size) return n;
+        final int ls = size(n.left);
+        if (count <= ls) return takeNodes(n.left, count);
+        return join(n.left, n.value, takeNodes(n.right, count - ls - 1));
+    }
+
+    // All but the first n elements of the tree.
+    private static <T> Node<T> dropNodes(final Node<T> n, final int count) {
+        if ((n == null) || (count <= 0)) return n;
+        if (count >= n.size) return null;
+        final int ls = size(n.left);
+        if (count > ls) return dropNodes(n.right, count - ls - 1);
+        return join(dropNodes(n.left, count), n.value, n.right);
+    }
+
+    private static <T> T lastValue(Node<T> n) {
+        while (n.right != null) n = n.right;
+        return n.value;
+    }
+
+    // Concatenates two trees.
+    private static <T> Node<T> concat(final Node<T> l, final Node<T> r) {
+        if (l == null) return r;
+        if (r == null) return l;
+        return join(takeNodes(l, l.size - 1), lastValue(l), r);
+    }
+
+    private static <T> Node<T> insertAt(final Node<T> n, final int index, final T value) {
+        if (n == null) return new Node<>(null, value, null);
+        final int ls = size(n.left);
+        if (index <= ls) return join(insertAt(n.left, index, value), n.value, n.right);
+        return join(n.left, n.value, insertAt(n.right, index - ls - 1, value));
+    }
+
+    private static <T> Node<T> removeAt(final Node<T> n, final int index) {
+        final int ls = size(n.left);
+        if (index < ls) return join(removeAt(n.left, index), n.value, n.right);
+        if (index > ls) return join(n.left, n.value, removeAt(n.right, index - ls - 1));
+        return concat(n.left, n.right);
+    }
+
+    private static <T> Node<T> set(final Node<T> n, final int index, final T value) {
+        final int ls = size(n.left);
+        if (index < ls) return new Node<>(set(n.left, index, value), n.value, n.right);
+        if (index > ls) return new Node<>(n.left, n.value, set(n.right, index - ls - 1, value));
+        return new Node<>(n.left, value, n.right);
+    }
+
+    private void checkIndex(final int index) {
+        if ((index < 0) || (index >= size(root))) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+        }
+    }
+
+    // Wraps elements collected into a fresh list.
+    private static <U> PersistentImList<U> fromList(final List<U> lst) {
+        return create(lst);
+    }
+
+    // ---- Additional operations ---------------------------------------------
+
+    /**
+     * Returns all but the first <code>n</code> elements of this list, sharing
+     * structure with it.
+     */
+    public PersistentImList<T> drop(final int n) {
+        return (n <= 0) ? this : wrap(dropNodes(root, n));
+    }
+
+    /**
+     * Splits this list into its first <code>n</code> elements and the rest,
+     * sharing structure with it.
+     */
+    public Tuple2<ImList<T>, ImList<T>> splitAt(final int n) {
+        return new Pair<>(take(n), drop(n));
+    }
+
+    // ---- ImList ------------------------------------------------------------
+
+    @Override
+    public ImList<T> cons(final T t) {
+        return new PersistentImList<>(insertAt(root, 0, t));
+    }
+
+    @Override
+    public ImList<T> append(final ImList<? extends T> tail) {
+        if (tail.isEmpty()) return this;
+
+        @SuppressWarnings("unchecked")
+        final PersistentImList<T> that = (tail instanceof PersistentImList) ?
+                (PersistentImList<T>) tail : create(tail.toList());
+        return wrap(concat(root, that.root));
+    }
+
+    @Override
+    public ImList<T> append(final T t) {
+        return new PersistentImList<>(insertAt(root, size(root), t));
+    }
+
+    @Override
+    public ImList<T> remove(final T t) {
+        final int index = indexOf(t);
+        return (index < 0) ? this : wrap(removeAt(root, index));
+    }
+
+    @Override
+    public ImList<T> remove(final Function1<? super T, Boolean> op) {
+        return filter(t -> !op.apply(t));
+    }
+
+    @Override
+    public ImList<T> updated(final int index, final T t) {
+        checkIndex(index);
+        return new PersistentImList<>(set(root, index, t));
+    }
+
+    @Override
+    public T head() {
+        if (root == null) return null;
+        Node<T> n = root;
+        while (n.left != null) n = n.left;
+        return n.value;
+    }
+
+    @Override
+    public Option<T> headOption() {
+        return (root == null) ? None.instance() : new Some<>(head());
+    }
+
+    @Override
+    public T last() {
+        return (root == null) ? null : lastValue(root);
+    }
+
+    @Override
+    public ImList<T> tail() {
+        return drop(1);
+    }
+
+    @Override
+    public ImList<T> initial() {
+        return take(size(root) - 1);
+    }
+
+    @Override
+    public boolean contains(final T t) {
+        return indexOf(t) >= 0;
+    }
+
+    @Override
+    public boolean containsAll(final ImList<?> c) {
+        return toList().containsAll(c.toList());
+    }
+
+    @Override
+    public T get(final int index) {
+        checkIndex(index);
+        Node<T> n = root;
+        int i = index;
+        while (true) {
+            final int ls = size(n.left);
+            if (i < ls) {
+                n = n.left;
+            } else if (i > ls) {
+                i -= ls + 1;
+                n = n.right;
+            } else {
+                return n.value;
+            }
+        }
+    }
+
+    @Override
+    public Option<T> getOption(final int index) {
+        return (index < 0 || index >= size(root)) ? None.instance() : new Some<>(get(index));
+    }
+
+    @Override
+    public int indexOf(final T t) {
+        return indexWhere(e -> (t == null) ? (e == null) : t.equals(e));
+    }
+
+    @Override
+    public int indexWhere(final Function1<? super T, Boolean> p) {
+        int i = 0;
+        for (final T t : this) {
+            if (p.apply(t)) return i;
+            ++i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public boolean nonEmpty() {
+        return !isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns an unmodifiable view of this list.  Note that random access on
+     * the view is O(log n).
+     */
+    @Override
+    public List<T> toList() {
+        return new AbstractList<T>() {
+            @Override public T get(final int index) { return PersistentImList.this.get(index); }
+            @Override public int size() { return PersistentImList.this.size(); }
+            @Override public Iterator<T> iterator() { return PersistentImList.this.iterator(); }
+        };
+    }
+
+    /** In-order traversal keeping the path to the current node on a stack. */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final Deque<Node<T>> stack = new ArrayDeque<>();
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node<T> n) {
+                while (n != null) {
+                    stack.push(n);
+                    n = n.left;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (stack.isEmpty()) throw new NoSuchElementException();
+                final Node<T> n = stack.pop();
+                pushLeft(n.right);
+                return n.value;
+            }
+        };
+    }
+
+    @Override
+    public <U> ImList<U> map(final Function1<? super T, U> op) {
+        final List<U> res = new ArrayList<>(size());
+        for (final T t : this) res.add(op.apply(t));
+        return fromList(res);
+    }
+
+    @Override
+    public <U> ImList<U> flatMap(final Function1<? super T, ImList<U>> op) {
+        final List<U> res = new ArrayList<>();
+        for (final T t : this) res.addAll(op.apply(t).toList());
+        return fromList(res);
+    }
+
+    @Override
+    public void foreach(final ApplyOp<? super T> op) {
+        for (final T t : this) op.apply(t);
+    }
+
+    @Override
+    public ImList<T> filter(final Function1<? super T, Boolean> op) {
+        final List<T> res = new ArrayList<>();
+        for (final T t : this) if (op.apply(t)) res.add(t);
+        return (res.size() == size()) ? this : fromList(res);
+    }
+
+    @Override
+    public Option<T> find(final Function1<? super T, Boolean> op) {
+        for (final T t : this) if (op.apply(t)) return new Some<>(t);
+        return None.instance();
+    }
+
+    @Override
+    public Tuple2<ImList<T>, ImList<T>> partition(final Function1<? super T, Boolean> op) {
+        final List<T> lst1 = new ArrayList<>();
+        final List<T> lst2 = new ArrayList<>();
+        for (final T t : this) {
+            if (op.apply(t)) {
+                lst1.add(t);
+            } else {
+                lst2.add(t);
+            }
+        }
+        return new Pair<>(fromList(lst1), fromList(lst2));
+    }
+
+    @Override
+    public boolean forall(final Function1<? super T, Boolean> op) {
+        for (final T t : this) if (!op.apply(t)) return false;
+        return true;
+    }
+
+    @Override
+    public boolean exists(final Function1<? super T, Boolean> op) {
+        for (final T t : this) if (op.apply(t)) return true;
+        return false;
+    }
+
+    @Override
+    public String mkString(final String prefix, final String separator, final String suffix) {
+        final StringBuilder buf = new StringBuilder(prefix);
+        final Iterator<T> it = iterator();
+        if (it.hasNext()) {
+            buf.append(it.next());
+            while (it.hasNext()) {
+                buf.append(separator).append(it.next());
+            }
+        }
+        buf.append(suffix);
+        return buf.toString();
+    }
+
+    @Override
+    public <U> ImList<Tuple2<T, U>> zip(final ImList<U> list) {
+        final List<Tuple2<T, U>> res = new ArrayList<>();
+        final Iterator<T> it1 = iterator();
+        final Iterator<U> it2 = list.iterator();
+        while (it1.hasNext() && it2.hasNext()) {
+            res.add(new Pair<>(it1.next(), it2.next()));
+        }
+        return fromList(res);
+    }
+
+    @Override
+    public ImList<Tuple2<T, Integer>> zipWithIndex() {
+        final List<Tuple2<T, Integer>> res = new ArrayList<>(size());
+        int index = 0;
+        for (final T t : this) res.add(new Pair<>(t, index++));
+        return fromList(res);
+    }
+
+    @Override
+    public ImList<T> sort(final Comparator<? super T> c) {
+        if (size() < 2) return this;
+        final List<T> sortedList = new ArrayList<>(toList());
+        sortedList.sort(c);
+        return fromList(sortedList);
+    }
+
+    @Override
+    public T min(final Comparator<? super T> c) {
+        final Iterator<T> it = iterator();
+        T minElement = it.next();
+        while (it.hasNext()) {
+            final T cur = it.next();
+            if (c.compare(minElement, cur) > 0) minElement = cur;
+        }
+        return minElement;
+    }
+
+    @Override
+    public T max(final Comparator<? super T> c) {
+        final Iterator<T> it = iterator();
+        T maxElement = it.next();
+        while (it.hasNext()) {
+            final T cur = it.next();
+            if (c.compare(maxElement, cur) < 0) maxElement = cur;
+        }
+        return maxElement;
+    }
+
+    @Override
+    public ImList<T> reverse() {
+        if (size() < 2) return this;
+        final List<T> revList = new ArrayList<>(toList());
+        Collections.reverse(revList);
+        return fromList(revList);
+    }
+
+    @Override
+    public <U> U foldLeft(final U start, final Function2<U, ? super T, U> op) {
+        U cur = start;
+        for (final T t : this) cur = op.apply(cur, t);
+        return cur;
+    }
+
+    @Override
+    public <U> U foldRight(final U start, final Function2<? super T, U, U> op) {
+        final List<T> lst = new ArrayList<>(toList());
+        U cur = start;
+        for (int i = lst.size() - 1; i >= 0; --i) cur = op.apply(lst.get(i), cur);
+        return cur;
+    }
+
+    @Override
+    public <K> HashMap<K, ImList<T>> groupBy(final Function1<? super T, K> f) {
+        final HashMap<K, ImList<T>> m = new HashMap<>();
+        for (final T elem : this) {
+            final K key = f.apply(elem);
+            final ImList<T> lst = m.get(key);
+            m.put(key, (lst == null) ? PersistentImList.<T>empty().append(elem) : lst.append(elem));
+        }
+        return m;
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    @Override
+    public ImList<T> take(final int n) {
+        return (n >= size()) ? this : wrap(takeNodes(root, n));
+    }
+
+    // Serialize as a DefaultImList.
+    private Object writeReplace() throws ObjectStreamException {
+        return new DefaultImList<>(new ArrayList<>(toList()));
+    }
+
+    /**
+     * Calls {@link #mkString(String, String, String)} with the arguments
+     * "{", ", ", "}".
+     * @return String representation of this list
+     */
+    @Override
+    public String toString() {
+        return mkString("{", ", ", "}");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ImList)) return false;
+
+        final ImList<?> that = (ImList<?>) o;
+        if (this.size() != that.size()) return false;
+
+        final Iterator<?> thatIt = that.iterator();
+        for (final T t : this) {
+            if (!Objects.equals(t, thatIt.next())) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int res = 1;
+        for (final T t : this) {
+            res = 31*res + ((t == null) ? 0 : t.hashCode());
+        }
+        return res;
+    }
+
+}
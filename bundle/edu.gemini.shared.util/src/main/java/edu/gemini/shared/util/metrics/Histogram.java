@@ -0,0 +1,127 @@
+package edu.gemini.shared.util.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values that can be updated from many threads
+ * without locking.  Values are counted in buckets of eight per power of two,
+ * so percentiles are reported to within 12.5% of the recorded values.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS         = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum   = new AtomicLong();
+    private final AtomicLong max   = new AtomicLong();
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exp = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) ((value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Largest value that is counted in the given bucket.
+    static long bucketMax(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int exp = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        final long width = 1L << (exp - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Records a value.  Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        final long v = Math.max(value, 0);
+        counts.incrementAndGet(bucket(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long m = max.get();
+        while ((v > m) && !max.compareAndSet(m, v)) m = max.get();
+    }
+
+    /**
+     * Clears all recorded values.  Values recorded while the histogram is
+     * being reset may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summarizes the values recorded so far.  The summary is not an atomic
+     * view if values are being recorded at the same time, but each figure is
+     * consistent with the values recorded up to some point.
+     */
+    public Summary summarize() {
+        final long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+
+        final long m = max.get();
+        return new Summary(n, (n == 0) ? 0 : sum.get() / n, m,
+                percentile(snapshot, n, 0.50, m),
+                percentile(snapshot, n, 0.90, m),
+                percentile(snapshot, n, 0.99, m));
+    }
+
+    private static long percentile(long[] counts, long total, double p, long max) {
+        if (total == 0) return 0;
+        final long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(bucketMax(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Count, mean, maximum and percentiles of the values of a histogram.
+     * Percentiles are the upper bound of the bucket that contains them.
+     */
+    public static final class Summary {
+        private final long count;
+        private final long mean;
+        private final long max;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+
+        @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99"})
+        public Summary(long count, long mean, long max, long p50, long p90, long p99) {
+            this.count = count;
+            this.mean  = mean;
+            this.max   = max;
+            this.p50   = p50;
+            this.p90   = p90;
+            this.p99   = p99;
+        }
+
+        public long getCount() { return count; }
+        public long getMean()  { return mean;  }
+        public long getMax()   { return max;   }
+        public long getP50()   { return p50;   }
+        public long getP90()   { return p90;   }
+        public long getP99()   { return p99;   }
+
+        @Override public String toString() {
+            return String.format("count=%d mean=%d max=%d p50=%d p90=%d p99=%d", count, mean, max, p50, p90, p99);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package edu.gemini.shared.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide registry of named {@link Histogram}s.  Any bundle can record
+ * into it without depending on the bundle that publishes the results; names
+ * are made of a prefix chosen by the recording code followed by a qualifier
+ * such as a class name.  Timings are recorded in microseconds.
+ */
+public enum Metrics {
+    instance;
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the histogram with the given name, creating it if necessary.  The
+     * same instance is returned for as long as the process runs, so callers
+     * on hot paths can look it up once and keep it.
+     */
+    public Histogram histogram(String name) {
+        final Histogram h = histograms.get(name);
+        if (h != null) return h;
+        final Histogram n = new Histogram();
+        final Histogram p = histograms.putIfAbsent(name, n);
+        return (p == null) ? n : p;
+    }
+
+    /**
+     * Records a value in the named histogram.
+     */
+    public void record(String name, long value) {
+        histogram(name).record(value);
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, a value
+     * obtained from {@link System#nanoTime}, in the named histogram.
+     */
+    public void recordTime(String name, long startNanos) {
+        recordTime(histogram(name), startNanos);
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code> in the given
+     * histogram.
+     */
+    public static void recordTime(Histogram h, long startNanos) {
+        h.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Summaries of all the histograms by name.
+     */
+    public Map<String, Histogram.Summary> summarize() {
+        final Map<String, Histogram.Summary> res = new TreeMap<>();
+        for (Map.Entry<String, Histogram> me : histograms.entrySet()) {
+            res.put(me.getKey(), me.getValue().summarize());
+        }
+        return res;
+    }
+
+    /**
+     * Clears all the histograms.  They remain registered.
+     */
+    public void reset() {
+        for (Histogram h : histograms.values()) h.reset();
+    }
+}
@@ -71,12 +71,8 @@ case class VersionVector[K, V : Integral](clocks: Map[K, V]) extends PartiallyOr
       case _ => None
     }
 
-  private def combinedKeys(that: VersionVector[K, V]): Set[K] =
-    clocks.keySet | that.clocks.keySet
-
   private def tryCompareVectors(that: VersionVector[K, V]): Option[Int] = {
-    val zero: Option[Int] = Some(0)
-    (zero/:combinedKeys(that)) {(res, k) =>
+    def step(res: Option[Int], k: K): Option[Int] =
       res flatMap { i =>
         val cur = intg.compare(this(k), that(k)).signum
         i.signum match {
@@ -85,7 +81,11 @@ case class VersionVector[K, V : Integral](clocks: Map[K, V]) extends PartiallyOr
           case _ => None
         }
       }
-    }
+
+    // Visit every key in either vector once, without building their union.
+    val zero: Option[Int] = Some(0)
+    val mine = (zero/:clocks.keysIterator)(step)
+    (mine/:that.clocks.keysIterator.filterNot(clocks.contains))(step)
   }
 
   def compare(that: VersionVector[K, V]): VersionComparison =
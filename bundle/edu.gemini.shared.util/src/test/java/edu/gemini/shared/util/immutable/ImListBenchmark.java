@@ -0,0 +1,86 @@
+package edu.gemini.shared.util.immutable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares {@link DefaultImList} with {@link PersistentImList} for building
+ * a list one element at a time, updating elements and iterating.
+ *
+ * <pre>
+ * ImListBenchmark [elements] [iterations]
+ * </pre>
+ */
+public final class ImListBenchmark {
+
+    private interface Factory {
+        ImList<Integer> create(List<Integer> elements);
+    }
+
+    private static long time(final Runnable r, final int iterations) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) r.run();
+        return System.nanoTime() - start;
+    }
+
+    private static int sink;
+
+    private static void run(final String name, final Factory f, final int n, final int iterations, final boolean report) {
+        final List<Integer> elements = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) elements.add(i);
+        final ImList<Integer> full = f.create(elements);
+        final ImList<Integer> empty = f.create(new ArrayList<>());
+
+        final long append = time(() -> {
+            ImList<Integer> lst = empty;
+            for (int i = 0; i < n; ++i) lst = lst.append(i);
+            sink += lst.size();
+        }, iterations);
+
+        final long cons = time(() -> {
+            ImList<Integer> lst = empty;
+            for (int i = 0; i < n; ++i) lst = lst.cons(i);
+            sink += lst.size();
+        }, iterations);
+
+        final long updated = time(() -> {
+            ImList<Integer> lst = full;
+            for (int i = 0; i < n; ++i) lst = lst.updated(i, -i);
+            sink += lst.size();
+        }, iterations);
+
+        final long get = time(() -> {
+            for (int i = 0; i < n; ++i) sink += full.get(i);
+        }, iterations);
+
+        final long iterate = time(() -> {
+            for (final Integer i : full) sink += i;
+        }, iterations);
+
+        if (report) {
+            System.out.printf("%-12s append %9.3f ms  cons %9.3f ms  updated %9.3f ms  get %8.3f ms  iterate %8.3f ms%n",
+                    name, ms(append, iterations), ms(cons, iterations), ms(updated, iterations),
+                    ms(get, iterations), ms(iterate, iterations));
+        }
+    }
+
+    private static double ms(final long nanos, final int iterations) {
+        return nanos / 1e6 / iterations;
+    }
+
+    public static void main(final String[] args) {
+        final int n          = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+        final int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        final Factory def = lst -> new DefaultImList<>(lst);
+        final Factory per = PersistentImList::create;
+
+        // Warm up.
+        run("default",    def, n, 2, false);
+        run("persistent", per, n, 2, false);
+
+        System.out.printf("%d elements%n", n);
+        run("default",    def, n, iterations, true);
+        run("persistent", per, n, iterations, true);
+    }
+}
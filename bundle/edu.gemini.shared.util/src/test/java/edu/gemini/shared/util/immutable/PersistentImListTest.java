@@ -0,0 +1,124 @@
+package edu.gemini.shared.util.immutable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runs the {@link ImListTest} suite against {@link PersistentImList} and
+ * checks the structural operations against a <code>java.util.List</code>.
+ */
+public class PersistentImListTest extends ImListTest {
+    @Override
+    protected <T> ImList<T> create(T... elements) {
+        return PersistentImList.create(elements);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        final List<Integer> res = new ArrayList<>();
+        for (int i = from; i < to; ++i) res.add(i);
+        return res;
+    }
+
+    public void testRandomEdits() {
+        final Random r = new Random(42);
+        final List<Integer> expected = new ArrayList<>();
+        ImList<Integer> lst = PersistentImList.empty();
+
+        for (int i = 0; i < 2000; ++i) {
+            switch (r.nextInt(5)) {
+                case 0:
+                    lst = lst.cons(i);
+                    expected.add(0, i);
+                    break;
+                case 1:
+                    lst = lst.append(i);
+                    expected.add(i);
+                    break;
+                case 2:
+                    if (!expected.isEmpty()) {
+                        final int index = r.nextInt(expected.size());
+                        lst = lst.updated(index, -i);
+                        expected.set(index, -i);
+                    }
+                    break;
+                case 3:
+                    if (!expected.isEmpty()) {
+                        final Integer value = expected.get(r.nextInt(expected.size()));
+                        lst = lst.remove(value);
+                        expected.remove(value);
+                    }
+                    break;
+                default:
+                    final List<Integer> more = range(i, i + r.nextInt(10));
+                    lst = lst.append(PersistentImList.create(more));
+                    expected.addAll(more);
+            }
+            assertEquals(expected.size(), lst.size());
+        }
+
+        assertEquals(expected, new ArrayList<>(lst.toList()));
+        for (int i = 0; i < expected.size(); ++i) assertEquals(expected.get(i), lst.get(i));
+    }
+
+    public void testSplitAt() {
+        final List<Integer> elements = range(0, 100);
+        final PersistentImList<Integer> lst = PersistentImList.create(elements);
+
+        for (int i = -1; i <= 101; ++i) {
+            final int n = Math.max(0, Math.min(100, i));
+            final Tuple2<ImList<Integer>, ImList<Integer>> t = lst.splitAt(i);
+            assertEquals(DefaultImList.create(elements.subList(0, n)), t._1());
+            assertEquals(DefaultImList.create(elements.subList(n, 100)), t._2());
+            assertEquals(lst, t._1().append(t._2()));
+        }
+    }
+
+    // An AVL tree of n elements is at most about 1.44 log2(n + 2) high, which
+    // is what keeps single element edits logarithmic.
+    private static void assertBalanced(PersistentImList<Integer> lst) {
+        final double bound = 1.4405 * Math.log(lst.size() + 2) / Math.log(2);
+        assertTrue(lst.height() + " > " + bound, lst.height() <= bound);
+    }
+
+    public void testBalancedWhenBuiltOneElementAtATime() {
+        ImList<Integer> appended = PersistentImList.empty();
+        ImList<Integer> consed   = PersistentImList.empty();
+        for (int i = 0; i < 5000; ++i) {
+            appended = appended.append(i);
+            consed   = consed.cons(i);
+        }
+        assertBalanced((PersistentImList<Integer>) appended);
+        assertBalanced((PersistentImList<Integer>) consed);
+
+        ImList<Integer> updated = appended;
+        for (int i = 0; i < 5000; ++i) updated = updated.updated(i, -i);
+        assertBalanced((PersistentImList<Integer>) updated);
+        assertEquals(-4999, updated.get(4999).intValue());
+    }
+
+    public void testUnchangedByEdits() {
+        final PersistentImList<Integer> lst = PersistentImList.create(range(0, 10));
+        lst.cons(-1);
+        lst.append(10);
+        lst.updated(5, 50);
+        lst.remove(Integer.valueOf(3));
+        lst.drop(4);
+        assertEquals(PersistentImList.create(range(0, 10)), lst);
+    }
+
+    public void testSerializesAsDefaultImList() throws Exception {
+        final ImList<Integer> lst = PersistentImList.create(range(0, 10)).append(10);
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(lst);
+        }
+        final Object res;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            res = ois.readObject();
+        }
+
+        assertTrue(res instanceof DefaultImList);
+        assertEquals(lst, res);
+    }
+}
@@ -0,0 +1,45 @@
+package edu.gemini.shared.util.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class HistogramTest {
+
+    @Test
+    public void testBucketsCoverValues() {
+        final long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE };
+        for (long v : values) {
+            final int b = Histogram.bucket(v);
+            final long min = (b == 0) ? 0 : Histogram.bucketMax(b - 1) + 1;
+            assertTrue(v + " below bucket " + b, min <= v);
+            assertTrue(v + " above bucket " + b, v <= Histogram.bucketMax(b));
+        }
+    }
+
+    @Test
+    public void testSummary() {
+        final Histogram h = new Histogram();
+        for (int i = 1; i <= 1000; ++i) h.record(i);
+
+        final Histogram.Summary s = h.summarize();
+        assertEquals(1000, s.getCount());
+        assertEquals(500, s.getMean());
+        assertEquals(1000, s.getMax());
+
+        // Within a bucket (12.5%) of the exact value, never above the max.
+        assertTrue(s.getP50() >= 500 && s.getP50() <= 500 * 1.125);
+        assertTrue(s.getP90() >= 900 && s.getP90() <= 900 * 1.125);
+        assertTrue(s.getP99() >= 990 && s.getP99() <= 1000);
+    }
+
+    @Test
+    public void testReset() {
+        final Histogram h = new Histogram();
+        h.record(42);
+        h.reset();
+        assertEquals(0, h.summarize().getCount());
+        assertEquals(0, h.summarize().getP99());
+    }
+}
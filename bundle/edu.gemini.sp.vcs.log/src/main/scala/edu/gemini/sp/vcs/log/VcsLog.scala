@@ -27,6 +27,26 @@ trait VcsLog {
   def log(op: VcsOp, pid: SPProgramID, subject: Subject): VcsEvent =
     log(op, pid, geminiPrincipals(subject))
 
+  /** Log an event to the database without waiting for it to be written. The event is guaranteed
+    * to be durable only after a subsequent call to `flush` returns.
+    * @param op the kind of operation
+    * @param pid science program id
+    * @param principals set of principals assocated with this event
+    */
+  def append(op: VcsOp, pid: SPProgramID, principals: Set[GeminiPrincipal]): Unit = {
+    log(op, pid, principals)
+    ()
+  }
+
+  /** Block until all previously appended events have been written.
+    * @throws RuntimeException if some of the events appended since the last flush could not be
+    *                          written and were dropped
+    */
+  def flush(): Unit = ()
+
+  /** Write any pending events and release resources held by the log. */
+  def close(): Unit = ()
+
   /** Select `VcsEventSet`s for the specified program, from newest to oldest. Because there may be many such sets,
     * `offset` and `size` must be specified. This mechanism can be used to provide a "paged" user interface.
     * @param pid science program
@@ -50,29 +70,59 @@ trait VcsLog {
 object VcsLog {
   import scalaz.effect.IO
 
-  def apply(dir: File): IO[VcsLog] = {
+  def apply(dir: File): IO[VcsLog] =
+    apply(dir, impl.VcsLogWriter.DefaultCapacity, impl.VcsLogWriter.DefaultBatchSize)
+
+  /** Opens the log database in `dir`. Connections are pooled, and events passed to `append` are
+    * queued (at most `capacity` of them) and written in batches of up to `batchSize` per
+    * transaction. Queries wait for pending events first so that they always see prior appends.
+    */
+  def apply(dir: File, capacity: Int, batchSize: Int): IO[VcsLog] = {
     import impl.PersistentVcsLog2._
+    import impl.VcsLogWriter
     import doobie.imports._
+    import org.h2.jdbcx.JdbcConnectionPool
     import java.sql.Timestamp
 
     for {
-      p <- IO(dir.getAbsolutePath) // can throw
-      _ <- IO(require(dir.mkdirs() || dir.isDirectory, s"Not a valid directory: $p"))
-      xa = DriverManagerTransactor[IO]("org.h2.Driver", s"jdbc:h2:$p;DB_CLOSE_ON_EXIT=FALSE;TRACE_LEVEL_FILE=4", "", "")
-      x <- checkSchema(p).transact(xa)
+      p  <- IO(dir.getAbsolutePath) // can throw
+      _  <- IO(require(dir.mkdirs() || dir.isDirectory, s"Not a valid directory: $p"))
+      ds <- IO(JdbcConnectionPool.create(s"jdbc:h2:$p;DB_CLOSE_ON_EXIT=FALSE;TRACE_LEVEL_FILE=4", "", ""))
+      xa = DataSourceTransactor[IO](ds)
+      x  <- checkSchema(p).transact(xa)
+      w  <- IO(new VcsLogWriter(xa, capacity, batchSize))
     } yield new VcsLog {
 
-      def archive(f: File): Unit =
+      def archive(f: File): Unit = {
+        w.await()
         doArchive(f).transact(xa).unsafePerformIO
+      }
 
       def log(op: VcsOp, pid: SPProgramID, principals: Set[GeminiPrincipal]): VcsEvent =
         doLog(op, new Timestamp(System.currentTimeMillis), pid, principals.toList).transact(xa).unsafePerformIO
 
-      def selectByProgram(pid: SPProgramID, offset: Int, size: Int): (List[VcsEventSet], Boolean) =
+      override def append(op: VcsOp, pid: SPProgramID, principals: Set[GeminiPrincipal]): Unit =
+        w.append(op, new Timestamp(System.currentTimeMillis), pid, principals.toList)
+
+      override def flush(): Unit = {
+        val n = w.flush()
+        if (n > 0) sys.error(s"$n VCS events could not be written")
+      }
+
+      override def close(): Unit = {
+        w.close()
+        ds.dispose()
+      }
+
+      def selectByProgram(pid: SPProgramID, offset: Int, size: Int): (List[VcsEventSet], Boolean) = {
+        w.await()
         doSelectByProgram(pid, offset, size).transact(xa).unsafePerformIO
+      }
 
-      override def selectLastSyncTimestamps(): SPProgramID ==>> Map[GeminiPrincipal, Long] =
+      override def selectLastSyncTimestamps(): SPProgramID ==>> Map[GeminiPrincipal, Long] = {
+        w.await()
         doSelectLastSyncTimestamps().transact(xa).unsafePerformIO
+      }
 
     }
   }
@@ -29,7 +29,7 @@ object PersistentVcsLog2 {
 
   // The idea here is that when we change the schema, we update this number and add a case to the upgradeFrom
   // function below. This may end up being difficult in practice but at least we have a mechanism to do it.
-  val SchemaVersion = 4
+  val SchemaVersion = 5
 
   // These are DB-specific, sadly
   val DUPLICATE_KEY = SqlState("what is it?")
@@ -73,6 +73,24 @@ object PersistentVcsLog2 {
       foreign key(PRINCIPAL_ID) references PRINCIPAL(PRINCIPAL_ID)
       on update NO ACTION
       on delete NO ACTION;
+    """.update.run.void *> createLastSync
+
+  // Materialized "most recent event per program and principal", maintained incrementally as
+  // events are logged so that selecting last sync timestamps doesn't scan the whole history.
+  def createLastSync: ConnectionIO[Unit] =
+    sql"""
+      create table LAST_SYNC (
+        PROGRAM_ID VARCHAR NOT NULL,
+        PRINCIPAL_ID INTEGER NOT NULL,
+        TIMESTAMP TIMESTAMP NOT NULL,
+        PRIMARY KEY (PROGRAM_ID, PRINCIPAL_ID)
+      );
+
+      alter table LAST_SYNC
+      add constraint LAST_SYNC_FK1
+      foreign key(PRINCIPAL_ID) references PRINCIPAL(PRINCIPAL_ID)
+      on update NO ACTION
+      on delete NO ACTION;
     """.update.run.void
 
   def insertSchemaVersion(version: Int): ConnectionIO[Unit] =
@@ -125,6 +143,18 @@ object PersistentVcsLog2 {
           update VERSION set VALUE = 4";
         """.update.run.void
 
+      case 4 =>
+        info("Creating and populating LAST_SYNC table.") *>
+        createLastSync *>
+        sql"""
+          insert into LAST_SYNC (PROGRAM_ID, PRINCIPAL_ID, TIMESTAMP)
+          select   E.PROGRAM_ID, J.PRINCIPAL_ID, max(E.TIMESTAMP)
+          from     EVENT E
+          join     EVENT_PRINCIPAL J on J.EVENT_ID = E.EVENT_ID
+          group by E.PROGRAM_ID, J.PRINCIPAL_ID;
+          update VERSION set VALUE = 5;
+        """.update.run.void
+
       // Newer versions here
 
       case n =>
@@ -142,14 +172,35 @@ object PersistentVcsLog2 {
   def doLog(op: VcsOp, time:Timestamp, pid: SPProgramID, principals: List[GeminiPrincipal]): ConnectionIO[VcsEvent] =
     doLog2(op, time, pid, principals.toNel.getOrElse(Anonymous))
 
-  // Log implementation. Insert the event, insert the principals, hook them up, read it back.
+  // Log implementation. Append the event and read it back.
   def doLog2(op: VcsOp, time:Timestamp, pid: SPProgramID, principals: NonEmptyList[GeminiPrincipal]): ConnectionIO[VcsEvent] =
+    doAppend2(op, time, pid, principals) >>= selectEvent
+
+  // OCSINF-118: if the principal set is empty, add an anonymous principal
+  def doAppend(op: VcsOp, time:Timestamp, pid: SPProgramID, principals: List[GeminiPrincipal]): ConnectionIO[Id[VcsEvent]] =
+    doAppend2(op, time, pid, principals.toNel.getOrElse(Anonymous))
+
+  // Append implementation. Insert the event, insert the principals, hook them up and bring the
+  // last sync table up to date. Nothing is read back, so this is suitable for batching.
+  def doAppend2(op: VcsOp, time:Timestamp, pid: SPProgramID, principals: NonEmptyList[GeminiPrincipal]): ConnectionIO[Id[VcsEvent]] =
     for {
       ids <- principals.traverse(insertPrincipal)
       eid <- insertEvent(op, time, pid, PersistentVcsUtil.setHash(ids.map(_.n)))
       _   <- ids.traverse(insertJoin(eid, _))
-      e   <- selectEvent(eid)
-    } yield e
+      _   <- ids.traverse(updateLastSync(pid, _, time))
+    } yield eid
+
+  // Record the event time as the last sync for the program and principal, unless a later one is
+  // already recorded (batches aren't necessarily written in timestamp order across writers).
+  def updateLastSync(pid: SPProgramID, prid: Id[GeminiPrincipal], time: Timestamp): ConnectionIO[Int] =
+    sql"""
+      merge into LAST_SYNC (PROGRAM_ID, PRINCIPAL_ID, TIMESTAMP)
+      key (PROGRAM_ID, PRINCIPAL_ID)
+      select $pid, $prid, greatest($time, coalesce(max(L.TIMESTAMP), $time))
+      from   LAST_SYNC L
+      where  L.PROGRAM_ID   = $pid
+      and    L.PRINCIPAL_ID = $prid
+    """.update.run
 
   // An uninspiring type that we're selecting twice below.
   type U = ((Id[VcsEvent], VcsOp, Timestamp, SPProgramID, String), (String, String))
@@ -216,7 +267,20 @@ object PersistentVcsLog2 {
 
   val EmptyTsMap = ==>>.empty[SPProgramID, Map[GeminiPrincipal, Long]]
 
+  // Last sync timestamps come from the materialized LAST_SYNC table, which has one row per
+  // program and principal regardless of how much history has been logged.
   def doSelectLastSyncTimestamps(): ConnectionIO[SPProgramID ==>> Map[GeminiPrincipal, Long]] =
+    sql"""
+      select  L.PROGRAM_ID, L.TIMESTAMP, P.CLASS, P.NAME
+      from    LAST_SYNC L
+      join    PRINCIPAL P on P.PRINCIPAL_ID = L.PRINCIPAL_ID
+    """.query[(SPProgramID, Timestamp, String, String)]
+       .vector
+       .map(foldTimestamps)
+
+  // The original full-history computation of the same information. Only used to verify that the
+  // LAST_SYNC table is consistent with the event log.
+  def doScanLastSyncTimestamps(): ConnectionIO[SPProgramID ==>> Map[GeminiPrincipal, Long]] =
     sql"""
       select  E.PROGRAM_ID, E.TIMESTAMP, P.CLASS, P.NAME
       from    EVENT E
@@ -224,13 +288,14 @@ object PersistentVcsLog2 {
       join    PRINCIPAL P on P.PRINCIPAL_ID = J.PRINCIPAL_ID
     """.query[(SPProgramID, Timestamp, String, String)]
        .vector
-       .map { v =>
-         v.foldLeft(EmptyTsMap) { case (m, (id, ts, cz, nm)) =>
-           val ps     = GeminiPrincipal(cz, nm)
-           val subMap = m.lookup(id).getOrElse(Map.empty[GeminiPrincipal, Long])
-           m.insert(id, subMap.insertWith(ps, ts.getTime)(_ max _))
-         }
-       }
+       .map(foldTimestamps)
+
+  private def foldTimestamps(v: Vector[(SPProgramID, Timestamp, String, String)]): SPProgramID ==>> Map[GeminiPrincipal, Long] =
+    v.foldLeft(EmptyTsMap) { case (m, (id, ts, cz, nm)) =>
+      val ps     = GeminiPrincipal(cz, nm)
+      val subMap = m.lookup(id).getOrElse(Map.empty[GeminiPrincipal, Long])
+      m.insert(id, subMap.insertWith(ps, ts.getTime)(_ max _))
+    }
 
   // Insert the event and return its Id
   def insertEvent(op: VcsOp, time: Timestamp, pid: SPProgramID, principalHash:String): ConnectionIO[Id[VcsEvent]] =
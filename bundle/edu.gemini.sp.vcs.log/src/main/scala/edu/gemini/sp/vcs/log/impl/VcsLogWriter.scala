@@ -0,0 +1,128 @@
+package edu.gemini.sp.vcs.log.impl
+
+import edu.gemini.sp.vcs.log._
+import edu.gemini.spModel.core.SPProgramID
+import edu.gemini.util.security.principal.GeminiPrincipal
+import doobie.imports._
+import java.sql.Timestamp
+import java.util.concurrent.{TimeUnit, LinkedBlockingQueue}
+import java.util.logging.Level
+import scala.collection.JavaConverters._
+import scalaz._, Scalaz._, effect.IO
+
+/**
+ * Background writer that appends events to the log database in batches. Callers enqueue events
+ * and return immediately; a single writer thread drains the queue and writes up to `batchSize`
+ * events per transaction. The queue is bounded by `capacity`, so if the database falls behind
+ * callers block in `append` rather than accumulating events without limit.
+ *
+ * Events are durable only once `flush` returns. Events that can't be written even on their own
+ * are logged and dropped, and `flush` reports how many.
+ */
+final class VcsLogWriter(xa: Transactor[IO], capacity: Int, batchSize: Int) {
+  import PersistentVcsLog2.{Log, doAppend}
+
+  require(capacity > 0,  s"capacity must be positive: $capacity")
+  require(batchSize > 0, s"batchSize must be positive: $batchSize")
+
+  private case class Pending(op: VcsOp, time: Timestamp, pid: SPProgramID, principals: List[GeminiPrincipal])
+
+  private val queue = new LinkedBlockingQueue[Pending](capacity)
+
+  // Count of events handed to `append`, count of events the writer has finished with (whether
+  // written or dropped) and count of dropped events not yet reported by `flush`. All are guarded
+  // by `lock`, which is also used to wake up threads waiting in `flush`.
+  private val lock     = new Object
+  private var enqueued = 0L
+  private var finished = 0L
+  private var dropped  = 0L
+
+  @volatile private var running = true
+
+  private val worker = new Thread(new Runnable {
+    def run(): Unit = writeLoop()
+  }, "VcsLogWriter")
+  worker.setDaemon(true)
+  worker.start()
+
+  /** Enqueues an event to be logged, blocking if the queue is full. */
+  def append(op: VcsOp, time: Timestamp, pid: SPProgramID, principals: List[GeminiPrincipal]): Unit = {
+    if (!running) sys.error("VcsLogWriter has been closed")
+    // Count before enqueueing so that the writer can never complete an event that hasn't been
+    // counted, which would let a concurrent flush return early.
+    lock.synchronized { enqueued += 1 }
+    queue.put(Pending(op, time, pid, principals))
+  }
+
+  /** Blocks until the writer has finished with every event appended before the call. */
+  def await(): Unit =
+    lock.synchronized {
+      val target = enqueued
+      while (finished < target && worker.isAlive) lock.wait(100)
+    }
+
+  /**
+   * Blocks like `await` and returns the number of events dropped since the last flush, including
+   * any left unwritten because the writer thread died, so zero means that everything was written.
+   */
+  def flush(): Int =
+    lock.synchronized {
+      val target = enqueued
+      await()
+
+      val lost = target - finished
+      if (lost > 0) finished = target // don't report them again
+      val n = dropped + (lost max 0)
+      dropped = 0
+      n.toInt
+    }
+
+  /** Writes any pending events and stops the writer thread. */
+  def close(): Unit = {
+    flush()
+    running = false
+    worker.join()
+  }
+
+  private def writeLoop(): Unit =
+    while (running || !queue.isEmpty) {
+      Option(queue.poll(1, TimeUnit.SECONDS)).foreach { first =>
+        val batch = new java.util.ArrayList[Pending](batchSize)
+        batch.add(first)
+        queue.drainTo(batch, batchSize - 1)
+        val failed = write(batch.asScala.toList)
+        lock.synchronized {
+          finished += batch.size
+          dropped  += failed
+          lock.notifyAll()
+        }
+      }
+    }
+
+  // Write the batch in a single transaction. If that fails, fall back to writing events one at a
+  // time so that one bad event doesn't cost us the rest of the batch. Returns the number of events
+  // that couldn't be written.
+  private def write(batch: List[Pending]): Int = {
+    def append1(p: Pending): ConnectionIO[Unit] =
+      doAppend(p.op, p.time, p.pid, p.principals).void
+
+    def attempt(ps: List[Pending]): Throwable \/ Unit =
+      ps.traverse_(append1).transact(xa).attempt.unsafePerformIO
+
+    attempt(batch).fold({ t =>
+      Log.log(Level.WARNING, s"Could not write batch of ${batch.size} VCS events, retrying individually.", t)
+      batch.count { p =>
+        attempt(List(p)).fold({ t =>
+          Log.log(Level.SEVERE, s"Dropping VCS event $p", t)
+          true
+        }, _ => false)
+      }
+    }, _ => 0)
+  }
+
+}
+
+object VcsLogWriter {
+  val DefaultCapacity  = 10000
+  val DefaultBatchSize = 100
+}
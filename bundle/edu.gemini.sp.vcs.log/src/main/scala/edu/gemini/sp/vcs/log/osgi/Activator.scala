@@ -16,15 +16,21 @@ class Activator extends BundleActivator {
 
   import Activator._
 
+  private var vcsLog: Option[VcsLog] = None
+
   def start(ctx: BundleContext) {
     val root:File = Option(ctx.getProperty(BUNDLE_PROP_DIR)).fold(getExternalDataFile(ctx, "spdb"))(new File(_))
     val file:File = new File(OcsVersionUtil.getVersionDir(root, Version.current), "vcs")
     file.mkdirs()
     LOG.info(s"VCS log storage is at ${file.getAbsolutePath}")
-    ctx.registerService(classOf[VcsLog], VcsLog(file).unsafePerformIO, null)
+    val log = VcsLog(file).unsafePerformIO
+    vcsLog  = Some(log)
+    ctx.registerService(classOf[VcsLog], log, null)
   }
 
   def stop(ctx: BundleContext) {
+    vcsLog.foreach(_.close())
+    vcsLog = None
   }
 
 }
@@ -199,8 +199,74 @@ object PersistentVcsLog2Spec extends Specification {
 
   }
 
+  "selectLastSyncTimestamps" should {
 
-}
+    "agree with a full scan of an upgraded database" in go {
+      for {
+        _ <- initTestData
+        m <- doSelectLastSyncTimestamps()
+        s <- doScanLastSyncTimestamps()
+      } yield m must_== s
+    }
+
+    "track newly logged events" in go {
+      for {
+        _  <- initTestData
+        ts <- FC.delay(new Timestamp(System.currentTimeMillis))
+        _  <- doAppend(OpStore, ts, pid, principals)
+        _  <- doAppend(OpFetch, new Timestamp(ts.getTime - 1000), pid, principals)
+        m  <- doSelectLastSyncTimestamps()
+        s  <- doScanLastSyncTimestamps()
+      } yield {
+        (m must_== s) and
+        (m.lookup(pid).map(mm => principals.map(mm).toSet) must_== Some(Set(ts.getTime)))
+      }
+    }
+
+  }
+
+  "VcsLogWriter" should {
 
+    "write all appended events by the time flush returns" in {
+      val xa = DriverManagerTransactor[IO]("org.h2.Driver", s"jdbc:h2:mem:ks${serialId.getAndIncrement};DB_CLOSE_DELAY=-1")
+      checkSchema("«in memory»").transact(xa).unsafePerformIO
 
+      val w  = new VcsLogWriter(xa, 16, 5)
+      val ts = new Timestamp(System.currentTimeMillis)
+      (1 to 100).foreach { i => w.append(OpFetch, new Timestamp(ts.getTime + i), pid, principals) }
+      w.flush()
 
+      val n = count.transact(xa).unsafePerformIO
+      val m = doSelectLastSyncTimestamps().transact(xa).unsafePerformIO
+      w.close()
+      sql"SHUTDOWN IMMEDIATELY".update.run.transact(xa).unsafePerformIO
+
+      (n must_== 100) and
+      (m.lookup(pid).map(mm => principals.map(mm).toSet) must_== Some(Set(ts.getTime + 100)))
+    }
+
+    "write the rest of a batch when an event fails and report the failures from flush" in {
+      val xa = DriverManagerTransactor[IO]("org.h2.Driver", s"jdbc:h2:mem:ks${serialId.getAndIncrement};DB_CLOSE_DELAY=-1")
+      checkSchema("«in memory»").transact(xa).unsafePerformIO
+
+      // Make the database reject events for one program.
+      val bad = SPProgramID.toProgramID("GS-2010A-Q-12")
+      sql"alter table EVENT add constraint BAD_PROGRAM check (PROGRAM_ID <> 'GS-2010A-Q-12')".update.run.transact(xa).unsafePerformIO
+
+      // Every tenth event fails, which causes its whole batch to be retried one event at a time.
+      val w  = new VcsLogWriter(xa, 16, 5)
+      val ts = new Timestamp(System.currentTimeMillis)
+      (1 to 100).foreach { i => w.append(OpFetch, new Timestamp(ts.getTime + i), if (i % 10 == 0) bad else pid, principals) }
+      val dropped = w.flush()
+      val again   = w.flush()
+
+      val n = count.transact(xa).unsafePerformIO
+      w.close()
+      sql"SHUTDOWN IMMEDIATELY".update.run.transact(xa).unsafePerformIO
+
+      (n must_== 90) and (dropped must_== 10) and (again must_== 0)
+    }
+
+  }
+
+}
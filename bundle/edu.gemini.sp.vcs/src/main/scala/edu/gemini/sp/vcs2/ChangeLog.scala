@@ -0,0 +1,129 @@
+package edu.gemini.sp.vcs2
+
+import edu.gemini.pot.sp.{ISPProgram, SPNodeKey}
+import edu.gemini.pot.sp.version.{LifespanId, VersionMap}
+import edu.gemini.spModel.rich.pot.sp._
+
+import scalaz._
+import Scalaz._
+
+/** A log of the nodes that changed between recent versions of each program,
+  * used to find the differences with a remote copy without comparing every
+  * node of the program.
+  *
+  * Versions are identified by their `Clock`, the total of the edit counters
+  * of all nodes for each `LifespanId`.  Counters only grow, so successive
+  * versions of a program have distinct clocks and the version a remote copy
+  * is at can be found by computing the clock of its `VersionMap` (the maps
+  * are still compared to rule out a coincidence).  From there the log
+  * answers what changed since that version in time proportional to the
+  * number of changes, so that `ProgramDiff.compare` only has to visit the
+  * changed nodes and their ancestors rather than the whole program.
+  *
+  * Recording a new version costs one pass over the program, which is shared
+  * by all the clients that fetch it afterwards.
+  *
+  * Memory: each recorded version holds a `VersionMap`, which costs roughly 40
+  * bytes per node when packed, and the keys that changed.  The total number
+  * of `VersionMap` entries kept is bounded by `maxNodes`, so the default of
+  * one million stays around 40 MB.  Least recently used programs are dropped
+  * first.
+  *
+  * @param maxNodes maximum total number of `VersionMap` entries kept
+  * @param maxVersions maximum number of versions kept per program
+  */
+final class ChangeLog(maxNodes: Long, maxVersions: Int) {
+
+  import ChangeLog._
+
+  private val logs = new WeightedLru[SPNodeKey, Log](maxNodes)(_.weight)
+
+  /** Returns what changed in program `p` since the version described by
+    * `remote`, if that version is known to the log.  Records the current
+    * version of `p` if necessary, so the caller must hold at least a read
+    * lock on the program.
+    */
+  def changedSince(p: ISPProgram, remote: VersionMap): Option[Changes] = {
+    val log = record(p)
+    val c   = clock(remote)
+    val i   = log.versions.indexWhere(v => (v.clock == c) && (v.vm == remote))
+
+    (i >= 0) option {
+      val newer = log.versions.take(i)
+      Changes(
+        (Set.empty[SPNodeKey]/:newer)(_ ++ _.changed),
+        (Set.empty[SPNodeKey]/:newer)(_ ++ _.touched),
+        log.removed,
+        log.maxObsNumber
+      )
+    }
+  }
+
+  /** Adds the current version of program `p` to the log if it isn't already
+    * the latest one recorded, and returns the program's log.
+    */
+  def record(p: ISPProgram): Log = {
+    val key  = p.getProgramKey
+    val vm   = p.getVersions
+    val prev = synchronized { logs.get(key) }
+
+    prev.filter(_.versions.head.vm eq vm).getOrElse {
+      val nodes   = p.nodeMap
+      val changed = prev.fold(Set.empty[SPNodeKey])(l => changedKeys(l.versions.head.vm, vm))
+
+      // The changed nodes along with all of their ancestors, which are the
+      // only nodes that a diff has to visit.
+      val touched = changed.flatMap { k =>
+        nodes.get(k).fold(Set(k))(n => (n #:: n.ancestors).map(_.key).toSet)
+      }
+
+      val version = new Version(vm, clock(vm), changed, touched)
+      val log     = new Log(
+        (version :: prev.toList.flatMap(_.versions)).take(maxVersions),
+        vm.keySet &~ nodes.keySet,
+        ProgramDiff.maxObsNumber(p)
+      )
+      synchronized { logs.put(key, log) }
+      log
+    }
+  }
+}
+
+object ChangeLog {
+  val DefaultMaxNodes    = 1000000L
+  val DefaultMaxVersions = 4
+
+  /** Total of the edit counters of all nodes, by lifespan. */
+  type Clock = Map[LifespanId, Long]
+
+  def clock(vm: VersionMap): Clock =
+    (Map.empty[LifespanId, Long]/:vm.valuesIterator) { (c, nv) =>
+      (c/:nv.clocks) { case (c0, (id, n)) => c0.updated(id, c0.getOrElse(id, 0L) + n.intValue) }
+    }
+
+  /** Keys whose versions differ between the two maps. */
+  def changedKeys(vm0: VersionMap, vm1: VersionMap): Set[SPNodeKey] =
+    vm1.iterator.collect { case (k, nv) if !vm0.get(k).contains(nv) => k }.toSet ++
+      vm0.keysIterator.filterNot(vm1.contains)
+
+  /** What changed in a program since a given version.
+    *
+    * @param changed keys of the nodes whose versions changed
+    * @param touched keys of the changed nodes that are still in the program
+    *                along with all of their ancestors
+    * @param removed keys of all nodes no longer in the current program
+    * @param maxObsNumber maximum observation number in the current program
+    */
+  final case class Changes(changed: Set[SPNodeKey], touched: Set[SPNodeKey], removed: Set[SPNodeKey], maxObsNumber: Option[Int])
+
+  /** A recorded version and the keys that changed since the previous one. */
+  final class Version(val vm: VersionMap, val clock: Clock, val changed: Set[SPNodeKey], val touched: Set[SPNodeKey])
+
+  /** Recorded versions of a program, newest first, along with information
+    * about the newest one that would otherwise require walking the program.
+    */
+  final class Log(val versions: List[Version], val removed: Set[SPNodeKey], val maxObsNumber: Option[Int]) {
+    val weight: Long =
+      (removed.size.toLong/:versions) { (w, v) => w + v.vm.size + v.touched.size }
+  }
+}
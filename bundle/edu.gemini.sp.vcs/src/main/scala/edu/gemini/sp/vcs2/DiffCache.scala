@@ -0,0 +1,78 @@
+package edu.gemini.sp.vcs2
+
+import edu.gemini.pot.sp.{ISPProgram, SPNodeKey}
+import edu.gemini.pot.sp.version.VersionMap
+
+/** A cache of the `ProgramDiff`s computed for remote fetch requests.
+  *
+  * Many clients tend to fetch the same program at nearly the same time, and
+  * most of them are in the same state with respect to the database copy
+  * because they last synchronized with the same version and made no local
+  * edits since. For them the `DiffState` sent with the fetch is identical and
+  * so is the resulting diff.
+  *
+  * Entries are kept per program and are tied to the program's `VersionMap`.
+  * Every edit to a program replaces its (immutable) `VersionMap`, so a
+  * reference comparison is enough to tell whether cached diffs are still
+  * valid.  When the program changes all of its cached diffs are discarded.
+  *
+  * Memory: the size of a diff is estimated as the number of nodes in its
+  * merge plan, and the cache holds at most `maxNodes` of them in total,
+  * dropping the least recently used programs first.  Modified nodes carry a
+  * copy of their data object, usually well under 2 KB, so the default of
+  * 20000 nodes keeps the cache to a few tens of MB.  Unmodified nodes are
+  * just a key.
+  *
+  * @param maxNodes maximum total number of merge plan nodes cached
+  * @param maxStates maximum number of distinct `DiffState`s cached per
+  *                  program
+  */
+final class DiffCache(maxNodes: Long, maxStates: Int) {
+
+  private final class Entry(val versions: VersionMap, val diffs: List[(DiffState, ProgramDiff.Transport)]) {
+    val weight: Long = (0L/:diffs) { case (w, (_, d)) => w + DiffCache.weight(d) }
+  }
+
+  private val entries = new WeightedLru[SPNodeKey, Entry](maxNodes)(_.weight)
+
+  /** Returns the cached diff between program `p` and the given state if
+    * available, or else computes, caches and returns it.  The caller must
+    * hold at least a read lock on the program so that it cannot change while
+    * the diff is being computed.
+    */
+  def getOrElseUpdate(p: ISPProgram, state: DiffState)(compute: => ProgramDiff.Transport): ProgramDiff.Transport = {
+    val versions = p.getVersions
+    val key      = p.getProgramKey
+
+    def current: Option[Entry] =
+      entries.get(key).filter(_.versions eq versions)
+
+    val cached = synchronized {
+      current.flatMap(_.diffs.collectFirst { case (s, d) if s == state => d })
+    }
+
+    cached.getOrElse {
+      // Compute outside of the cache lock so that diffs for different
+      // programs can be computed concurrently.
+      val diff = compute
+      synchronized {
+        val diffs = current.fold(List.empty[(DiffState, ProgramDiff.Transport)])(_.diffs)
+        entries.put(key, new Entry(versions, ((state, diff) :: diffs.filterNot(_._1 == state)).take(maxStates)))
+      }
+      diff
+    }
+  }
+}
+
+object DiffCache {
+  val DefaultMaxNodes  = 20000L
+  val DefaultMaxStates = 4
+
+  /** Estimated size of a diff, as the number of nodes in its merge plan. */
+  def weight(d: ProgramDiff.Transport): Long = {
+    def count(t: MergePlan.TreeTransport): Long =
+      (1L/:t.children) { (n, c) => n + count(c) }
+
+    count(d.plan.update) + d.plan.delete.size
+  }
+}
@@ -99,7 +99,35 @@ object ProgramDiff {
     * @return `ProgramDiff` describing differences between the two program
     *         instances
     */
-  def compare(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey]): ProgramDiff = {
+  def compare(p: ISPProgram, vm: VersionMap, removed: Set[SPNodeKey]): ProgramDiff =
+    compare(p, vm, removed, _ => true, removedKeys(p), vm.keySet &~ p.getVersions.keySet, maxObsNumber(p))
+
+  /** Returns the same differences as `compare(p, vs)` but only visits the
+    * nodes that changed since the remote version, as found in a
+    * [[edu.gemini.sp.vcs2.ChangeLog]].
+    *
+    * @param changes what changed in `p` since the version described by `vs`
+    */
+  def compare(p: ISPProgram, vs: DiffState, changes: ChangeLog.Changes): ProgramDiff = {
+    // A node that was absent remotely may have been added back without
+    // being edited itself, in which case its subtree must be visited too.
+    def visit(n: ISPNode): Boolean =
+      changes.touched.contains(n.key) || vs.removed.contains(n.key)
+
+    val vmOnlyKeys = changes.changed.filter(k => vs.vm.contains(k) && !p.getVersions.contains(k))
+    compare(p, vs.vm, vs.removed, visit, changes.removed, vmOnlyKeys, changes.maxObsNumber)
+  }
+
+  /** Computes the differences, descending only into the subtrees whose roots
+    * pass `visit`.  Any subtree that isn't visited must not differ.
+    */
+  private def compare(p: ISPProgram,
+                      vm: VersionMap,
+                      removed: Set[SPNodeKey],
+                      visit: ISPNode => Boolean,
+                      localRemoved: Set[SPNodeKey],
+                      vmOnlyKeys: Set[SPNodeKey],
+                      maxObs: Option[Int]): ProgramDiff = {
     def versionDiffers(k: SPNodeKey): Boolean =
       vm.get(k).forall(_ =/= p.getVersions(k))
 
@@ -116,6 +144,9 @@ object ProgramDiff {
     // Present differences in in-use nodes rooted at r.
     def presentDiffs(r: ISPNode, in: List[ObsStatusPair]): (Tree[MergeNode], List[ObsStatusPair]) =
       r match {
+        case _ if !visit(r)    =>
+          (unmodified(r).leaf, in)
+
         case o: ISPObservation =>
           // Observations are atomic.  If anything differs at all in either
           // version copy the entire observation.
@@ -142,25 +173,23 @@ object ProgramDiff {
     def missingDiffs(keys: Set[SPNodeKey]): Set[Missing] =
       keys.map(k => Missing(k, p.getVersions(k)))
 
-    val pKeys       = p.getVersions.keySet
-    val vmKeys      = vm.keySet
-
-    // Any remote keys that we don't have locally are missing.
-    val vmOnlyKeys  = vmKeys &~ pKeys
-
     // Any removed keys that either differ from the remote version or are not
-    // deleted remotely.
-    val deletedKeys = removedKeys(p).filter { missingDiffers }
+    // deleted remotely.  Any remote keys that we don't have locally are
+    // missing as well.
+    val deletedKeys = localRemoved.filter { missingDiffers }
 
     val (update, pairs) = presentDiffs(p, Nil)
     val plan            = MergePlan(update, missingDiffs(vmOnlyKeys ++ deletedKeys))
 
-    val allObs          = new ObservationIterator(p).asScala
-    val maxObs          = if (allObs.isEmpty) none else some(allObs.maxBy(_.getObservationNumber).getObservationNumber)
-
     ProgramDiff(plan, pairs, maxObs)
   }
 
+  /** The maximum observation number in use in the program, if any. */
+  def maxObsNumber(p: ISPProgram): Option[Int] = {
+    val allObs = new ObservationIterator(p).asScala
+    if (allObs.isEmpty) none else some(allObs.maxBy(_.getObservationNumber).getObservationNumber)
+  }
+
   def compare(p: ISPProgram, vs: DiffState): ProgramDiff =
     compare(p, vs.vm, vs.removed)
 
@@ -28,6 +28,20 @@ class VcsServer(odb: IDBDatabaseService) { vs =>
 
   import SPNodeKeyLocks.instance
 
+  private val diffCache = new DiffCache(DiffCache.DefaultMaxNodes, DiffCache.DefaultMaxStates)
+  private val changeLog = new ChangeLog(ChangeLog.DefaultMaxNodes, ChangeLog.DefaultMaxVersions)
+
+  /** Computes the differences between program `p` and a remote copy, only
+    * visiting the nodes that changed when the remote version is recent enough
+    * to be in the change log.  The caller must hold a read lock on `p`.
+    */
+  private def diff(p: ISPProgram, state: DiffState): ProgramDiff.Transport =
+    diffCache.getOrElseUpdate(p, state) {
+      changeLog.changedSince(p, state.vm).fold(ProgramDiff.compare(p, state)) { changes =>
+        ProgramDiff.compare(p, state, changes)
+      }.encode
+    }
+
   def hasPermission(p: Permission, user: Set[Principal]): VcsAction[Boolean] =
     VcsAction(ImplicitPolicy.hasPermission(odb, user, p).unsafePerformIO())
 
@@ -139,9 +153,9 @@ class VcsServer(odb: IDBDatabaseService) { vs =>
 
     override def fetchDiffs(id: SPProgramID, state: DiffState): TryVcs[ProgramDiff.Transport] =
       vs.read(id, user) { p =>
-        vcsLog.log(OpFetch, id, geminiPrincipals)
-        ProgramDiff.compare(p, state)
-      }.map(_.encode).unsafeRun
+        vcsLog.append(OpFetch, id, geminiPrincipals)
+        diff(p, state)
+      }.unsafeRun
 
     override def storeDiffs(id: SPProgramID, mpt: MergePlan.Transport): TryVcs[Boolean] = {
       def versionCheck(p: ISPProgram, mp: MergePlan): VcsAction[Boolean] =
@@ -161,7 +175,9 @@ class VcsServer(odb: IDBDatabaseService) { vs =>
           cc <- conflictCheck(mp)
         } yield vc && cc,
         identity,
-        (f, p, _) => (mp.merge(f, p) >> VcsAction(vcsLog.log(OpStore, id, geminiPrincipals))).as(())
+        // Record the new version right away since the client that stored it
+        // will fetch from this version next.
+        (f, p, _) => (mp.merge(f, p) >> VcsAction(changeLog.record(p)) >> VcsAction(vcsLog.append(OpStore, id, geminiPrincipals))).as(())
       ).unsafeRun
     }
 
@@ -0,0 +1,37 @@
+package edu.gemini.sp.vcs2
+
+import java.util.{LinkedHashMap => JLinkedHashMap}
+
+/** A least-recently-used map bounded by the total estimated weight of its
+  * values rather than by their number.  When adding a value pushes the total
+  * over `maxWeight`, the least recently used entries are dropped until it
+  * fits again, which may include the new value itself if it alone is too
+  * heavy.  Not thread-safe; callers synchronize.
+  *
+  * @param maxWeight maximum total weight of the values kept
+  * @param weight estimates the weight of a value, which must not change
+  *               while it is in the map
+  */
+private[vcs2] final class WeightedLru[K, V](maxWeight: Long)(weight: V => Long) {
+
+  private val entries = new JLinkedHashMap[K, V](16, 0.75f, true)
+  private var total   = 0L
+
+  def get(k: K): Option[V] =
+    Option(entries.get(k))
+
+  def put(k: K, v: V): Unit = {
+    Option(entries.put(k, v)).foreach { old => total -= weight(old) }
+    total += weight(v)
+
+    // Iterates from the least recently used entry.
+    val it = entries.values.iterator
+    while ((total > maxWeight) && it.hasNext) {
+      total -= weight(it.next())
+      it.remove()
+    }
+  }
+
+  def totalWeight: Long =
+    total
+}
@@ -3,6 +3,7 @@ package edu.gemini.sp.vcs2
 import edu.gemini.pot.sp.{ObservationIterator, ISPFactory, SPNodeKey, ISPProgram}
 import edu.gemini.pot.sp.version._
 import edu.gemini.sp.vcs2.NodeDetail.Obs
+import edu.gemini.sp.vcs2.ProgramDiff.ObsStatusPair
 import edu.gemini.spModel.obs.ObservationStatus
 import edu.gemini.spModel.rich.pot.sp._
 
@@ -148,6 +149,32 @@ class ProgramDiffTest extends JUnitSuite {
 
   private def mpKeys(mp: MergePlan): Set[SPNodeKey] = missingKeys(mp) ++ presentKeys(mp)
 
+  // Everything about a diff except the data objects, which are copies.
+  private def summary(pd: ProgramDiff): (String, Set[Missing], List[ObsStatusPair], Option[Int]) =
+    (pd.plan.update.map(mn => s"${mn.key} ${mn.isModified}").drawTree, pd.plan.delete, pd.obsStatus, pd.maxObsNumber)
+
+  @Test
+  def testChangeLogDiffMatchesFullDiff(): Unit = {
+    // The local program is an edited copy of the starting program, so the
+    // change log knows what changed since the start.
+    def mkDiffs(f: ISPFactory, s: ISPProgram, l: ISPProgram, r: ISPProgram): (ProgramDiff, Option[ProgramDiff]) = {
+      val log   = new ChangeLog(ChangeLog.DefaultMaxNodes, ChangeLog.DefaultMaxVersions)
+      val state = DiffState(s)
+      log.record(s)
+      (ProgramDiff.compare(l, state), log.changedSince(l, state.vm).map(ProgramDiff.compare(l, state, _)))
+    }
+
+    new MergePropertyTest(mkDiffs).checkAllProperties(List(
+      ("diff computed from the change log must match the full diff",
+        (start, local, remote, diffs) => diffs match {
+          case (full, Some(logged)) => summary(full) == summary(logged)
+          case _                    =>
+            false
+        }
+      )
+    ))
+  }
+
   @Test
   def testAllDiffProperties(): Unit = {
     def mkDiffs(f: ISPFactory, s: ISPProgram, l: ISPProgram, r: ISPProgram): ProgramDiff =
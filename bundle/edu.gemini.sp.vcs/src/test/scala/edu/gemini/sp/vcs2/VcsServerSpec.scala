@@ -214,6 +214,45 @@ class VcsServerSpec extends VcsSpecification with NoLanguageFeatures {
         case _ => ko("expected a merge plan here")
       }
     }
+
+    "reuse the diff computed for an identical state" in withVcs { env =>
+      val diffState = DiffState(env.local.prog)
+      val svs       = new env.local.server.SecureVcsService(StaffUser, MockVcsLog)
+
+      (svs.fetchDiffs(Q1, diffState), svs.fetchDiffs(Q1, diffState)) match {
+        case (\/-(pdt0), \/-(pdt1)) => pdt0 must beTheSameAs(pdt1)
+        case _                      => ko("expected merge plans here")
+      }
+    }
+
+    "not keep diffs over the memory budget" in withVcs { env =>
+      val p         = env.local.prog
+      val diffState = DiffState(p)
+      def fetch(c: DiffCache): ProgramDiff.Transport =
+        c.getOrElseUpdate(p, diffState)(ProgramDiff.compare(p, diffState).encode)
+
+      val roomy = new DiffCache(DiffCache.DefaultMaxNodes, DiffCache.DefaultMaxStates)
+      val tight = new DiffCache(0, DiffCache.DefaultMaxStates)
+
+      (fetch(roomy) must beTheSameAs(fetch(roomy))) and
+        (fetch(tight) must not(beTheSameAs(fetch(tight))))
+    }
+
+    "recompute the diff when the program changes" in withVcs { env =>
+      val diffState = DiffState(env.local.prog)
+      val svs       = new env.local.server.SecureVcsService(StaffUser, MockVcsLog)
+      val before    = svs.fetchDiffs(Q1, diffState)
+
+      val dob = env.local.prog.getDataObject.asInstanceOf[SPProgram] <| (_.setTitle("The Stranger"))
+      env.local.prog.setDataObject(dob)
+
+      (before, svs.fetchDiffs(Q1, diffState)) match {
+        case (\/-(pdt0), \/-(pdt1)) =>
+          (pdt0 must not(beTheSameAs(pdt1))) and
+            (pdt1.decode.plan.update.rootLabel.isModified must beTrue)
+        case _                      => ko("expected merge plans here")
+      }
+    }
   }
 
   "storeDiffs" should {
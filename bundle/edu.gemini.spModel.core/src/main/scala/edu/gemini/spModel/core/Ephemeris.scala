@@ -1,120 +1,190 @@
 package edu.gemini.spModel.core
 
-import java.util.TimerTask
-import java.util.logging.Logger
+import java.util.Arrays
 
-import scalaz._, Scalaz._
+import scala.collection.immutable.NumericRange
 
-final class Ephemeris(val site: Site, val compressedData: Deflated[List[(Long, Float, Float)]]) extends Serializable {
+import scalaz._, Scalaz._
 
-  // Internal state for managing the inflated ephemeris data.
-  @transient @volatile private var _data: Long ==>> Coordinates = null
-  @transient @volatile private var _task: TimerTask = null
+/**
+ * A time/coordinate table for a non-sidereal target, stored as three parallel primitive arrays
+ * ordered by time. Coordinates are kept as single-precision degrees, as they always have been in
+ * the persisted form. Instances are immutable: the arrays are never exposed or modified after
+ * construction, so lookups need no locking and serialization simply writes the arrays.
+ */
+final class Ephemeris private (
+  val site: Site,
+  private val times: Array[Long],
+  private val ras:   Array[Float],
+  private val decs:  Array[Float]
+) extends Serializable {
+
+  private def coordinatesAt(i: Int): Coordinates =
+    Coordinates.fromDegrees(ras(i), decs(i)).getOrElse(sys.error(s"corrupted ephemeris data: ${times(i)} ${ras(i)} ${decs(i)}"))
+
+  private def elementAt(i: Int): (Long, Coordinates) =
+    (times(i), coordinatesAt(i))
 
   /**
-   * A map from time to coordinates. This value is stored in compressed form and is deflated (and
-   * cached for a while) on demand. The deflated value is transient, and is thus not serialized.
+   * A map from time to coordinates, built when first needed and then kept. It is not serialized;
+   * prefer the lookup methods below, which work directly on the primitive representation.
    */
-  def data: Long ==>> Coordinates = synchronized {
-    import Ephemeris.{ timer, logger }
-
-    // Decompress if needed
-    if (_data == null) {
-      logger.fine("Inflating compressed ephemeris.")
-      _data = ==>>.fromList(compressedData.inflate.map { case (t, r, d) =>
-        t -> Coordinates.fromDegrees(r, d).getOrElse(sys.error(s"corrupted ephemeris data: $t $r $d"))
-      })
-    }
-
-    // Reset the cache timer to a point the future
-    if (_task != null) _task.cancel()
-    _task = new TimerTask {
-      def run(): Unit = {
-        logger.fine("Discarding inflated ephemeris.")
-        Ephemeris.this.synchronized(_data = null)
-      }
-    }
-    timer.schedule(_task, 3000)
+  @transient lazy val data: Long ==>> Coordinates =
+    ==>>.fromList(toList)
 
-    // Done
-    _data
-
-  }
+  /** The persisted form of the ephemeris, compressed on every call. */
+  def compressedData: Deflated[List[(Long, Float, Float)]] =
+    Deflated(times.indices.toList.map(i => (times(i), ras(i), decs(i))))
 
   /** Perform an exact or interpolated lookup. */
-  def iLookup(k: Long): Option[Coordinates] =
-    data.iLookup(k)
+  def iLookup(k: Long): Option[Coordinates] = {
+    val i = Arrays.binarySearch(times, k)
+    if (i >= 0) Some(coordinatesAt(i))
+    else {
+      val hi = -(i + 1)
+      if (hi == 0 || hi == times.length) None
+      else Interpolate[Long, Coordinates].interpolate(elementAt(hi - 1), elementAt(hi), k)
+    }
+  }
 
   /** Construct an exact or interpolated slice. */
   def iSlice(lo: Long, hi: Long): Option[Ephemeris] =
-    data.iSlice(lo, hi).map(Ephemeris(site, _))
+    ^(iLookup(lo), iLookup(hi)) { (lov, hiv) =>
+      val (a, b) = if (lo <= hi) ((lo, lov), (hi, hiv)) else ((hi, hiv), (lo, lov))
+
+      // Elements strictly between the end points, if they are given in order.
+      val from  = Ephemeris.upperBound(times, a._1)
+      val until = if (lo <= hi) Ephemeris.lowerBound(times, b._1) max from else from
+      val ends  = if (a._1 == b._1) 1 else 2
+      val n     = until - from + ends
+
+      val ts = new Array[Long](n)
+      val rs = new Array[Float](n)
+      val ds = new Array[Float](n)
+      ts(0) = a._1
+      rs(0) = a._2.ra.toDegrees.toFloat
+      ds(0) = a._2.dec.toDegrees.toFloat
+      System.arraycopy(times, from, ts, 1, until - from)
+      System.arraycopy(ras,   from, rs, 1, until - from)
+      System.arraycopy(decs,  from, ds, 1, until - from)
+      if (ends == 2) {
+        ts(n - 1) = b._1
+        rs(n - 1) = b._2.ra.toDegrees.toFloat
+        ds(n - 1) = b._2.dec.toDegrees.toFloat
+      }
+      new Ephemeris(site, ts, rs, ds)
+    }
 
   /** Construct a table of (Long, Coordinates) values on the given interval. */
   def iTable(lo: Long, hi: Long, step: Long): Option[List[(Long, Coordinates)]] =
-    data.iTable(lo, hi, step)
+    NumericRange.inclusive(lo, hi, step).toList.traverse(k => iLookup(k).strengthL(k))
 
   /** Number of elements in the ephemeris. */
   def size: Int =
-    data.size
+    times.length
 
-  /** Ephemeris elements as an association list. */
+  /** Ephemeris elements as an association list, in time order. */
   def toList: List[(Long, Coordinates)] =
-    data.toList
+    times.indices.toList.map(elementAt)
 
   /** Are there no elements? */
   def isEmpty: Boolean =
-    data.isEmpty
+    times.isEmpty
 
   /** Is there at least one element? */
   def nonEmpty: Boolean =
     !isEmpty
 
-  /** Find the closest matching element, if any. */
+  /** Find the closest matching element, if any. Ties go to the earlier element. */
   def lookupClosestAssoc(k: Long): Option[(Long, Coordinates)] =
-    data.lookupClosestAssoc(k)
+    if (isEmpty) None
+    else {
+      val i = Ephemeris.lowerBound(times, k)
+      val j =
+        if (i == 0) 0
+        else if (i == times.length) i - 1
+        else if ((times(i - 1) - k).abs <= (times(i) - k).abs) i - 1
+        else i
+      Some(elementAt(j))
+    }
 
   /** Find the closest matching Coordinates, if any. */
   def lookupClosest(k: Long): Option[Coordinates] =
-    data.lookupClosest(k)
+    lookupClosestAssoc(k).map(_._2)
 
   /** Find the closest matching time, if any. */
   def lookupClosestKey(k: Long): Option[Long] =
-    data.lookupClosestKey(k)
+    lookupClosestAssoc(k).map(_._1)
 
   /** Copy. */
   def copy(site: Site = site, data: (Long ==>> Coordinates) = data): Ephemeris =
     Ephemeris.apply(site, data)
 
+  /** Copy with a new site, sharing the (immutable) element arrays. */
+  private[core] def withSite(s: Site): Ephemeris =
+    new Ephemeris(s, times, ras, decs)
+
   override def equals(a: Any): Boolean =
     a match {
-      case e: Ephemeris => e.site == site && e.compressedData == compressedData
+      case e: Ephemeris =>
+        e.site == site && Arrays.equals(e.times, times) && Arrays.equals(e.ras, ras) && Arrays.equals(e.decs, decs)
       case _            => false
     }
 
   override def hashCode: Int =
-    site.## ^ compressedData.##
+    site.## ^ Arrays.hashCode(times) ^ (31 * Arrays.hashCode(ras) + Arrays.hashCode(decs))
 
 }
 
 object Ephemeris extends EphemerisInstances with EphemerisLenses {
 
-  // A timer to discard inflated ephemerides after a while
-  private val timer  = new java.util.Timer
-  private val logger = Logger.getLogger(classOf[Ephemeris].getName)
-
   /** The empty ephemeris, with site arbitrarily chosen to be GN. */
   val empty: Ephemeris =
-    apply(Site.GN, ==>>.empty)
+    new Ephemeris(Site.GN, Array.emptyLongArray, Array.emptyFloatArray, Array.emptyFloatArray)
 
   /** A single-point ephemeris. */
   def singleton(site: Site, time: Long, coordinates: Coordinates): Ephemeris =
     apply(site, ==>>.singleton(time, coordinates))
 
   /** Construct an ephemeris from a time/coordinate map. */
-  def apply(site: Site, data: Long ==>> Coordinates): Ephemeris = {
-    new Ephemeris(site, Deflated(data.toList.map { case (t, cs) =>
+  def apply(site: Site, data: Long ==>> Coordinates): Ephemeris =
+    fromElements(site, data.toAscList.map { case (t, cs) =>
       (t, cs.ra.toDegrees.toFloat, cs.dec.toDegrees.toFloat)
-    }))
+    })
+
+  /** Construct an ephemeris from its persisted form. */
+  def fromCompressed(site: Site, compressed: Deflated[List[(Long, Float, Float)]]): Ephemeris = {
+    val es = compressed.inflate
+
+    // Always written in time order, but be careful with anything else.
+    val sorted = es.zip(es.drop(1)).forall { case ((t0, _, _), (t1, _, _)) => t0 < t1 }
+    fromElements(site, if (sorted) es else ==>>.fromList(es.map(e => e._1 -> e)).values)
+  }
+
+  // Elements must be strictly ordered by time.
+  private def fromElements(site: Site, es: List[(Long, Float, Float)]): Ephemeris = {
+    val n  = es.length
+    val ts = new Array[Long](n)
+    val rs = new Array[Float](n)
+    val ds = new Array[Float](n)
+    es.zipWithIndex.foreach { case ((t, r, d), i) =>
+      ts(i) = t
+      rs(i) = r
+      ds(i) = d
+    }
+    new Ephemeris(site, ts, rs, ds)
+  }
+
+  // Index of the first time >= k.
+  private def lowerBound(times: Array[Long], k: Long): Int = {
+    val i = Arrays.binarySearch(times, k)
+    if (i >= 0) i else -(i + 1)
+  }
+
+  // Index of the first time > k.
+  private def upperBound(times: Array[Long], k: Long): Int = {
+    val i = Arrays.binarySearch(times, k)
+    if (i >= 0) i + 1 else -(i + 1)
   }
 
 }
@@ -122,19 +192,19 @@ object Ephemeris extends EphemerisInstances with EphemerisLenses {
 trait EphemerisInstances {
 
   implicit val EqualEphemeris: Equal[Ephemeris] =
-    Equal.equalBy(e => (e.site, e.data))
+    Equal.equalA[Ephemeris]
 
 }
 
 trait EphemerisLenses {
 
   val site: Ephemeris @> Site =
-    Lens.lensu((a, b) => a.copy(site = b), _.site)
+    Lens.lensu((a, b) => a.withSite(b), _.site)
 
   val data: Ephemeris @> (Long ==>> Coordinates) =
     Lens.lensu((a, b) => a.copy(data = b), _.data)
 
   val compressedData: Ephemeris @> Deflated[List[(Long, Float, Float)]] =
-    Lens.lensu((a, b) => new Ephemeris(a.site, b), _.compressedData)
+    Lens.lensu((a, b) => Ephemeris.fromCompressed(a.site, b), _.compressedData)
 
 }
@@ -1,7 +1,5 @@
 package edu.gemini.spModel.core
 
-import org.specs2.mutable.Specification
-
 import scalaz._
 import Scalaz._
 import org.scalacheck.Prop._
@@ -10,17 +8,9 @@ import org.specs2.mutable.Specification
 
 object EphemerisSpec extends Specification with ScalaCheck with Arbitraries with Helpers {
 
-  implicit class EphemerisTrickery(e: Ephemeris) {
-
-    // Peek at the transient lazy field to see if it has been assigned.
-    // Look how nutty the mangled field name is!
-    def isCompressed: Boolean = {
-      val f = e.getClass.getDeclaredField("edu$gemini$spModel$core$Ephemeris$$_data")
-      f.setAccessible(true)
-      f.get(e) == null
-    }
-
-  }
+  // Lookup keys at, around and between the ephemeris elements.
+  def keys(e: Ephemeris, k: Long): List[Long] =
+    k :: e.toList.flatMap { case (t, _) => List(t - 1, t, t + 1) }
 
   "Ephemeris Data" should {
 
@@ -28,20 +18,30 @@ object EphemerisSpec extends Specification with ScalaCheck with Arbitraries with
       canSerialize(e)
     }
 
-    "be compressed on construction" ! forAll { (e: Ephemeris) =>
-      e.isCompressed
+    "survive a compressed roundtrip" ! forAll { (e: Ephemeris) =>
+      Ephemeris.compressedData.set(Ephemeris.empty, e.compressedData) === e.copy(site = Site.GN)
     }
 
+    "survive a map roundtrip" ! forAll { (e: Ephemeris) =>
+      Ephemeris(e.site, e.data) === e
+    }
+
+    "be in time order" ! forAll { (e: Ephemeris) =>
+      e.toList === e.data.toAscList
+    }
+
+    "agree with the map on iLookup" ! forAll { (e: Ephemeris, k: Long) =>
+      keys(e, k).forall(k => e.iLookup(k) === e.data.iLookup(k))
+    }
 
-    "be decompressed on access to '_data' field" ! forAll { (e: Ephemeris) =>
-      e.data
-      e.isCompressed == false
+    "agree with the map on lookupClosestAssoc" ! forAll { (e: Ephemeris, k: Long) =>
+      keys(e, k).forall(k => e.lookupClosestAssoc(k) === e.data.lookupClosestAssoc(k))
     }
 
-    "be compressed after serialization roundtrip" ! forAll { (e: Ephemeris) =>
-      e.data
-      canSerializeP(e) { (e, e2) =>
-        e2.isCompressed && !e.isCompressed
+    "agree with the map on iSlice" ! forAll { (e: Ephemeris, a: Long, b: Long) =>
+      val ks = keys(e, a)
+      ks.zip(b :: ks.reverse).forall { case (lo, hi) =>
+        e.iSlice(lo, hi) === e.data.iSlice(lo, hi).map(Ephemeris(e.site, _))
       }
     }
 
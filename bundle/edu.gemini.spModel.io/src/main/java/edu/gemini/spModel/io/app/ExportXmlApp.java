@@ -24,14 +24,21 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.Charset;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class ExportXmlApp {
     private static final Logger LOG = Logger.getLogger(ExportXmlApp.class.getName());
@@ -115,6 +122,93 @@ public class ExportXmlApp {
 
     }
 
+    /**
+     * Receives the XML of each exported program or plan.  Called
+     * concurrently by the export threads.
+     */
+    public interface ExportSink {
+        void write(String name, byte[] xml) throws IOException, InterruptedException;
+
+        /**
+         * Whether the sink can no longer accept documents, in which case the
+         * remaining exports are cancelled.
+         */
+        default boolean isAbandoned() {
+            return false;
+        }
+    }
+
+    // Writes each program or plan to its own file in a directory.
+    private static final class FileSink implements ExportSink {
+        private final File _destDir;
+
+        FileSink(File destDir) {
+            _destDir = destDir;
+        }
+
+        public void write(String name, byte[] xml) throws IOException {
+            File dest = new File(_destDir, name + ".xml");
+            FileOutputStream fout = new FileOutputStream(dest);
+            BufferedOutputStream bos = new BufferedOutputStream(fout);
+            try {
+                bos.write(xml);
+            } finally {
+                try {
+                    bos.flush();
+                } catch (Exception ex) {
+                    LOG.log(Level.SEVERE, "Trouble flushing output to " + dest, ex);
+                }
+                try {
+                    bos.close();
+                } catch (Exception ex) {
+                    LOG.log(Level.SEVERE, "Trouble closing output to " + dest, ex);
+                }
+            }
+        }
+    }
+
+    // An exported document waiting to be written to a zip stream.
+    private static final class ZipItem {
+        static final ZipItem END = new ZipItem(null, null);
+
+        final String name;
+        final byte[] xml;
+
+        ZipItem(String name, byte[] xml) {
+            this.name = name;
+            this.xml  = xml;
+        }
+    }
+
+    // Queues each program or plan to be written to a zip stream by another
+    // thread, until that thread gives up.
+    private static final class ZipSink implements ExportSink {
+        final BlockingQueue<ZipItem> queue;
+        final AtomicBoolean abandoned = new AtomicBoolean(false);
+        private final String _dir;
+
+        ZipSink(String dir, int maxQueued) {
+            queue = new ArrayBlockingQueue<>(maxQueued);
+            _dir  = dir;
+        }
+
+        public void write(String name, byte[] xml) throws IOException, InterruptedException {
+            enqueue(new ZipItem(_dir + "/" + name + ".xml", xml));
+        }
+
+        // Waits for room in the queue, unless the zip stream has been
+        // abandoned.
+        void enqueue(ZipItem item) throws IOException, InterruptedException {
+            while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+                if (abandoned.get()) throw new IOException("Zip stream abandoned");
+            }
+        }
+
+        @Override public boolean isAbandoned() {
+            return abandoned.get();
+        }
+    }
+
     private IDBDatabaseService _database;
     private Set<Principal> _user;
 
@@ -135,15 +229,15 @@ public class ExportXmlApp {
 
     private static class ExportWorker implements Runnable {
         private final IDBDatabaseService _db;
-        private final File _destDir;
+        private final ExportSink _sink;
         private final DBProgramKeyAndId _key;
         private final int _dbNum;
         private final NodeType _type;
         private final Set<Principal> _user;
 
-        ExportWorker(IDBDatabaseService db, int dbNum, File destDir, DBProgramKeyAndId key, NodeType type, final Set<Principal> user) {
+        ExportWorker(IDBDatabaseService db, int dbNum, ExportSink sink, DBProgramKeyAndId key, NodeType type, final Set<Principal> user) {
             _db = db;
-            _destDir = destDir;
+            _sink = sink;
             _key = key;
             _dbNum = dbNum;
             _type = type;
@@ -162,14 +256,16 @@ public class ExportXmlApp {
             }
             String humanReadable = buf.toString();
 
+            // The remaining exports are dropped when the sink gives up.
+            if (_sink.isAbandoned()) return;
+
             try {
                 ISPNode node = _type.lookup(_db, progKey);
                 if (node == null) {
                     LOG.warning(String.format("No %s was found for the key: %s", _type.name(), progKey));
                     return;
                 }
-                File dest = new File(_destDir, fileName + ".xml");
-                System.out.println(String.format("Exporting (db %2d) %s to %s", _dbNum, humanReadable, dest));
+                System.out.println(String.format("Exporting (db %2d) %s", _dbNum, humanReadable));
 
 
                 SpExportFunctor functor = new SpExportFunctor();
@@ -178,27 +274,16 @@ public class ExportXmlApp {
                 String msg = functor.getProblem();
                 String xml = functor.getXmlProgram();
                 if (msg != null || xml == null) {
-                    LOG.warning("Error writing " + dest + ": " + msg);
+                    LOG.warning("Error exporting " + humanReadable + ": " + msg);
                     return;
                 }
 
-                FileOutputStream fout = new FileOutputStream(dest);
-                BufferedOutputStream bos = new BufferedOutputStream(fout);
-                try {
-                    bos.write(xml.getBytes(Charset.forName("UTF-8")));
-                } finally {
-                    try {
-                        bos.flush();
-                    } catch (Exception ex) { 
-                        LOG.log(Level.SEVERE, "Trouble flushing output to " + dest, ex);
-                    }
-                    try {
-                        bos.close();
-                    } catch (Exception ex) { 
-                        LOG.log(Level.SEVERE, "Trouble closing output to " + dest, ex);
-                    }
-                }
+                _sink.write(fileName, xml.getBytes(Charset.forName("UTF-8")));
             } catch (Exception e) {
+                if (_sink.isAbandoned()) {
+                    LOG.fine("Export of " + humanReadable + " abandoned");
+                    return;
+                }
                 LOG.log(Level.SEVERE, "Export of " + humanReadable + " failed", e);
                 SimpleEmailer.appendLine("Export of " + humanReadable + " failed: " + e);
             } catch (Error e) {
@@ -214,23 +299,89 @@ public class ExportXmlApp {
     }
 
     public int exportAll(File dest)  {
-        return exportAllProgs(dest) + exportAllPlans(dest);
+        return exportAll(new FileSink(dest));
     }
 
     public int exportAllProgs(File dest)  {
+        return exportAllProgs(new FileSink(dest));
+    }
+
+    public int exportAllPlans(File dest)  {
+        return exportAllPlans(new FileSink(dest));
+    }
+
+    public int exportAll(ExportSink sink)  {
+        return exportAllProgs(sink) + exportAllPlans(sink);
+    }
+
+    public int exportAllProgs(ExportSink sink)  {
         Collection<Collection<DBProgramKeyAndId>> allProgs;
         allProgs = DBSlaveSegregatedListFunctor.getProgramList(_database, _user);
-        return _exportAll(dest, allProgs, NodeType.program);
+        return _exportAll(sink, allProgs, NodeType.program);
     }
 
-    public int exportAllPlans(File dest)  {
+    public int exportAllPlans(ExportSink sink)  {
         Collection<Collection<DBProgramKeyAndId>> allPlans;
         allPlans = DBSlaveSegregatedListFunctor.getNightlyPlanList(_database, _user);
-        return _exportAll(dest, allPlans, NodeType.plan);
+        return _exportAll(sink, allPlans, NodeType.plan);
     }
 
+    /**
+     * Exports all programs and plans straight into a zip stream, as entries
+     * named <code>dir/name.xml</code>.  Programs are exported concurrently
+     * as with {@link #exportAll(File)}, but the entries are written by the
+     * calling thread.  At most <code>maxQueued</code> exported documents wait
+     * in memory to be written, after which the export threads block.
+     *
+     * <p>If writing the zip stream fails, the exports that have not started
+     * yet are cancelled and the method returns once the others are done.</p>
+     *
+     * @return the number of programs and plans that were to be exported; the
+     * zip stream has fewer entries than this if some could not be exported
+     */
+    public int exportAll(ZipOutputStream zos, String dir, int maxQueued) throws IOException {
+        final ZipSink sink = new ZipSink(dir, maxQueued);
+        final AtomicInteger listed = new AtomicInteger();
+
+        final Thread exporter = new Thread(() -> {
+            try {
+                listed.set(exportAll(sink));
+            } finally {
+                try {
+                    sink.enqueue(ZipItem.END);
+                } catch (Exception ex) {
+                    LOG.log(Level.WARNING, "Export to zip stream abandoned", ex);
+                }
+            }
+        }, "ExportXmlApp zip export");
+        exporter.setDaemon(true);
+        exporter.start();
+
+        try {
+            for (ZipItem item = sink.queue.take(); item != ZipItem.END; item = sink.queue.take()) {
+                zos.putNextEntry(new ZipEntry(item.name));
+                zos.write(item.xml);
+                zos.closeEntry();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            sink.abandoned.set(true);
+            throw new InterruptedIOException("Interrupted writing zip stream");
+        } catch (IOException | RuntimeException ex) {
+            // Release export threads waiting on a full queue and let them
+            // wind down before reporting the problem.
+            sink.abandoned.set(true);
+            try {
+                exporter.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            throw ex;
+        }
+        return listed.get();
+    }
 
-    private int _exportAll(File dest, Collection<Collection<DBProgramKeyAndId>> all, NodeType type) {
+    private int _exportAll(ExportSink sink, Collection<Collection<DBProgramKeyAndId>> all, NodeType type) {
         ExecutorService[] execs = new ExecutorService[all.size()];
         for (int i = 0; i < execs.length; ++i) {
             execs[i] = Executors.newSingleThreadExecutor();
@@ -243,7 +394,7 @@ public class ExportXmlApp {
         int i = 0;
         for (Collection<DBProgramKeyAndId> slaveProgs : all) {
             for (DBProgramKeyAndId key : slaveProgs) {
-                execs[i].execute(new ExportWorker(_database, i, dest, key, type, _user));
+                execs[i].execute(new ExportWorker(_database, i, sink, key, type, _user));
             }
             sum += slaveProgs.size();
             ++i;
@@ -251,8 +402,15 @@ public class ExportXmlApp {
 
         for (ExecutorService exec : execs) {
             exec.shutdown();
+        }
+        for (ExecutorService exec : execs) {
             try {
-                exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                while (!exec.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Stop queued exports if there is nowhere to put them.
+                    if (sink.isAbandoned()) {
+                        for (ExecutorService e : execs) e.shutdownNow();
+                    }
+                }
             } catch (InterruptedException e) {
                 // empty
             }
@@ -0,0 +1,71 @@
+package edu.gemini.spModel.io.app
+
+import edu.gemini.pot.sp.SPNodeKey
+import edu.gemini.pot.spdb.DBLocalDatabase
+import edu.gemini.spModel.core.SPProgramID
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, IOException, OutputStream}
+import java.security.Principal
+import java.util.Collections
+import java.util.zip.{ZipInputStream, ZipOutputStream}
+
+import org.junit.{Assert, Test}
+
+import scala.io.Source
+
+class ExportXmlAppTest {
+
+  private val Ids = (1 to 5).map(i => s"GS-2017A-Q-$i").toList
+
+  private def withPrograms(ids: List[String])(f: ExportXmlApp => Unit): Unit = {
+    val odb = DBLocalDatabase.createTransient()
+    try {
+      ids.foreach { id =>
+        odb.put(odb.getFactory.createProgram(new SPNodeKey(), SPProgramID.toProgramID(id)))
+      }
+      f(new ExportXmlApp(odb, Collections.emptySet[Principal]))
+    } finally {
+      odb.getDBAdmin.shutdown()
+    }
+  }
+
+  @Test def testExportToZipStream(): Unit =
+    withPrograms(Ids) { app =>
+      // A queue of one makes the export threads wait for the zip stream.
+      val bos = new ByteArrayOutputStream()
+      val zos = new ZipOutputStream(bos)
+      val count = app.exportAll(zos, "archive", 1)
+      zos.close()
+      Assert.assertEquals(Ids.size, count)
+
+      val zis = new ZipInputStream(new ByteArrayInputStream(bos.toByteArray))
+      val entries = Iterator.continually(zis.getNextEntry).takeWhile(_ != null).map { e =>
+        e.getName -> Source.fromInputStream(zis, "UTF-8").mkString
+      }.toMap
+      zis.close()
+
+      Assert.assertEquals(Ids.map(id => s"archive/$id.xml").toSet, entries.keySet)
+      Ids.foreach { id =>
+        Assert.assertTrue(entries(s"archive/$id.xml").contains(id))
+      }
+    }
+
+  @Test def testFailedZipStreamCancelsExport(): Unit =
+    withPrograms((1 to 50).map(i => s"GS-2017A-Q-$i").toList) { app =>
+      val broken = new OutputStream {
+        override def write(b: Int): Unit = throw new IOException("disk full")
+      }
+
+      val problems = ExportXmlApp.SimpleEmailer.getLines.size
+      try {
+        app.exportAll(new ZipOutputStream(broken), "archive", 1)
+        Assert.fail("expected the export to fail")
+      } catch {
+        case _: IOException => // expected
+      }
+
+      // The remaining programs are dropped without being reported as
+      // failed exports.
+      Assert.assertEquals(problems, ExportXmlApp.SimpleEmailer.getLines.size)
+    }
+}
@@ -85,7 +85,7 @@ public class QueueProgramStatusInternalTable extends AbstractTable {
             String semester = ReportUtils.getSemester(id);
 
             // Fetch the program itself.
-            final SPProgram prog = (SPProgram) progShell.getDataObject();
+            final SPProgram prog = (SPProgram) progShell.getReadOnlyDataObject();
 
             // Get the Queue band. If it's missing or invalid, log and punt.
             final String sband = prog.getQueueBand();
@@ -146,7 +146,7 @@ public class QueueProgramStatusInternalTable extends AbstractTable {
             // Are all obs in phase 2?
             boolean allPhase2 = false;
             for (ISPObservation obsShell: progShell.getAllObservations()) {
-                SPObservation obs = (SPObservation) obsShell.getDataObject();
+                SPObservation obs = (SPObservation) obsShell.getReadOnlyDataObject();
                 if (obs.getPhase2Status() == ObsPhase2Status.PI_TO_COMPLETE) {
                     allPhase2 = true;
                 } else {
@@ -88,7 +88,7 @@ public class TemplateSummaryTable extends AbstractTable {
             LOGGER.fine("Program has no id: " + programShell);
             return Collections.emptyList();
         }
-        final SPProgram progDataObj = (SPProgram) programShell.getDataObject();
+        final SPProgram progDataObj = (SPProgram) programShell.getReadOnlyDataObject();
 
         // Get the Queue band. If it's missing or invalid, log and punt.
         final String sband = progDataObj.getQueueBand();
@@ -109,12 +109,12 @@ public class TemplateSummaryTable extends AbstractTable {
             return Collections.emptyList();
         }
         for(ISPTemplateGroup ispTemplateGroup : ispTemplateFolder.getTemplateGroups()) {
-            TemplateGroup templateGroup = (TemplateGroup)ispTemplateGroup.getDataObject();
+            TemplateGroup templateGroup = (TemplateGroup)ispTemplateGroup.getReadOnlyDataObject();
             String templateId = templateGroup.getVersionToken().toString();
             for(ISPTemplateParameters ispTemplateParameters : ispTemplateGroup.getTemplateParameters()) {
                 String instConfig = templateGroup.getTitle().replace(",", "");
 
-                TemplateParameters ps = (TemplateParameters)ispTemplateParameters.getDataObject();
+                TemplateParameters ps = (TemplateParameters)ispTemplateParameters.getReadOnlyDataObject();
                 SPTarget target = ps.getTarget();
                 SPSiteQuality.Conditions conditions = ps.getSiteQuality().conditions();
                 TimeValue time = ps.getTime();
@@ -106,7 +106,7 @@ public class TimeAccountingSummaryTable extends AbstractTable {
 
         // Ok. Keep going, get the time accounting categories in use.
         // If none, then we cannot report for this program.
-        final SPProgram progDataObj = (SPProgram) programShell.getDataObject();
+        final SPProgram progDataObj = (SPProgram) programShell.getReadOnlyDataObject();
         final TimeAcctAllocation alloc = progDataObj.getTimeAcctAllocation();
         if ((alloc == null) || (alloc.getSum().getProgramAward().isZero())) {
             LOGGER.fine("No time accounting information for " + id);
@@ -138,7 +138,7 @@ public class TimeAccountingSummaryTable extends AbstractTable {
             if (log == null) continue;
 
             // Get the target
-            final SPObservation obs = (SPObservation) obsShell.getDataObject();
+            final SPObservation obs = (SPObservation) obsShell.getReadOnlyDataObject();
             final String target = "[" + obsShell.getObservationNumber() + "] " + obs.getTitle();
 
             // Find the charge class for this observation.
@@ -193,7 +193,7 @@ public class TimeAccountingSummaryTable extends AbstractTable {
         // correction. These are listed one by one, so we don't need to
         // do any summing up.
         for (final ISPObservation obsShell : programShell.getAllObservations()) {
-            final SPObservation obs = (SPObservation) obsShell.getDataObject();
+            final SPObservation obs = (SPObservation) obsShell.getReadOnlyDataObject();
             for (final ObsTimeCorrection corr : obs.getObsTimeCorrections()) {
 
                 final ObservingNight night = new ObservingNight(site, corr.getTimestamp());
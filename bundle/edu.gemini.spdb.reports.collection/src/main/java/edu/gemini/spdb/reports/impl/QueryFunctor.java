@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.SPNodeKey;
 import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.spdb.reports.IColumn;
@@ -14,9 +15,12 @@ import edu.gemini.spdb.reports.IQuery;
 import edu.gemini.spdb.reports.IRow;
 import edu.gemini.spdb.reports.ISort;
 import edu.gemini.spdb.reports.ITable;
+import edu.gemini.util.security.principal.StaffPrincipal;
 
 /**
  * SPDB functor that can execute IQuery definitions and return results.
+ * Rows of database nodes come from the table's {@link TableRowCache}, so
+ * only the rows of programs that changed since the last query are computed.
  * Internal to the implementation.
  * @author rnorris
  */
@@ -35,6 +39,22 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	 */
 	private final List<Map<IColumn, ?>> rows = new ArrayList<Map<IColumn, ?>>();
 
+	/**
+	 * Keys of the nodes whose rows were brought up to date in the table's
+	 * row cache during execute(). Also cleared before the functor returns.
+	 */
+	private final Set<SPNodeKey> keys = new HashSet<SPNodeKey>();
+
+	/** The row cache run that this execution belongs to. */
+	private long run;
+
+	/**
+	 * Whether every node of the domain was brought up to date in the row
+	 * cache, so that rows of nodes not seen can be forgotten. Not the case
+	 * for users who may not see every program, or if a node failed.
+	 */
+	private boolean fullScan;
+
 	/**
 	 * Storage for returned rows, which get serialized and returned to the
 	 * client.
@@ -60,23 +80,32 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	@Override
 	public void init() {
 		results.clear();
+		run = TableRowCache.forTable(query.getTable()).startRun();
+		fullScan = true;
 	}
 
 	/**
 	 * Delegate to getRows() and filter immediately, accumulating non-
-	 * filtered rows as we go.
+	 * filtered rows as we go. The rows of database nodes are instead brought
+	 * up to date in the row cache, and filtered in finished() once sorted.
+	 * This runs at low priority, so there's no need to yield between nodes.
 	 */
 	@SuppressWarnings("unchecked")
 	public void execute(IDBDatabaseService db, ISPNode node, Set<Principal> principals) {
 		try {
 			ITable table = query.getTable();
+			if (node != null) {
+				if (!principals.contains(StaffPrincipal.Gemini())) fullScan = false;
+				keys.add(TableRowCache.forTable(table).update(table, node, run));
+				return;
+			}
 			for (Map<IColumn, ?> row: table.getRows(node)) {
 				IFilter f = query.getFilter();
 				if (f == null || f.accept(row))
 					rows.add(row);
 			}
-			Thread.yield(); // Try not to bog down the server.
 		} catch (Throwable t) {
+			fullScan = false;
 			LOGGER.log(Level.SEVERE, "Problem executing functor.", t);
 		}
 	}
@@ -89,12 +118,17 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 	public void finished() {
 		try {
 
-			// Group and sort the rows.
-			Map<IColumn, ?>[] rowArray = rows.toArray(new Map[rows.size()]);
-			RowComparator rc = new RowComparator();
-			for (ISort s: query.getGroups()) rc.addComparator(s);
-			for (ISort s: query.getSorts()) rc.addComparator(s);
-			Arrays.sort(rowArray, rc);
+			// Group and sort the rows, unless they come sorted from the cache.
+			final List<Map<IColumn, ?>> rowArray;
+			if (keys.isEmpty()) {
+				rowArray = new ArrayList<Map<IColumn, ?>>(rows);
+				RowComparator rc = new RowComparator();
+				for (ISort s: query.getGroups()) rc.addComparator(s);
+				for (ISort s: query.getSorts()) rc.addComparator(s);
+				Collections.sort(rowArray, rc);
+			} else {
+				rowArray = cachedRows();
+			}
 
 			// And turn them into IRows.
 			final IColumn[] outputColumns = query.getOutputColumns().toArray(new IColumn[0]);
@@ -124,19 +158,36 @@ class QueryFunctor extends DBAbstractQueryFunctor {
 				// Done.
 				results.add(prev = new Row(values, groupValues, groupIndex));
 
-				// Let the server breathe.
-				Thread.yield();
-
 			}
 
 			// Clean up a little. Don't need this anymore.
 			rows.clear();
+			keys.clear();
 
 		} catch (Throwable t) {
 			LOGGER.log(Level.SEVERE, "Problem finishing functor.", t);
 		}
 	}
 
+	// Returns the cached rows of the nodes found in this run, grouped and
+	// sorted, leaving out those that don't pass the filter.
+	private List<Map<IColumn, ?>> cachedRows() {
+		final List<ISort> sorts = new ArrayList<ISort>(query.getGroups());
+		sorts.addAll(query.getSorts());
+		final TableRowCache cache = TableRowCache.forTable(query.getTable());
+
+		final IFilter f = query.getFilter();
+		final List<Map<IColumn, ?>> res = new ArrayList<Map<IColumn, ?>>();
+		for (Map<IColumn, ?> row: cache.getRows(sorts, keys))
+			if (f == null || f.accept(row))
+				res.add(row);
+
+		// Forget the rows of programs that weren't found this time, unless
+		// some of them may simply not have been visited.
+		if (fullScan) cache.evict(run);
+		return res;
+	}
+
 	private static boolean equiv(Object a, Object b) {
 		return (a == b) || (a != null && a.equals(b));
 	}
@@ -0,0 +1,179 @@
+package edu.gemini.spdb.reports.impl;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.spdb.reports.IColumn;
+import edu.gemini.spdb.reports.ISort;
+import edu.gemini.spdb.reports.ITable;
+
+/**
+ * Materialized rows of an ITable, kept current from program versions.
+ * Each domain node's rows are remembered along with the version map of the
+ * program that contains it, and are only computed again when that program
+ * changes. Sorted views of the rows are kept in indices that are updated as
+ * node rows change, so a query doesn't have to sort every row again.
+ * Internal to the implementation.
+ */
+final class TableRowCache {
+
+	// Caches by table class, since the functor (and with it the table) may
+	// have been serialized on its way to the database.
+	private static final Map<Class<?>, TableRowCache> CACHES = new WeakHashMap<Class<?>, TableRowCache>();
+
+	/**
+	 * Returns the cache for the given table. Note that the cache doesn't
+	 * refer to the table, so it goes away when the table's bundle does.
+	 */
+	static TableRowCache forTable(ITable table) {
+		synchronized (CACHES) {
+			TableRowCache c = CACHES.get(table.getClass());
+			if (c == null) {
+				c = new TableRowCache();
+				CACHES.put(table.getClass(), c);
+			}
+			return c;
+		}
+	}
+
+	/** One row of one node, which is ordered by node and position as a last resort. */
+	private static final class NodeRow {
+		final SPNodeKey key;
+		final int index;
+		final Map<IColumn, ?> row;
+
+		NodeRow(SPNodeKey key, int index, Map<IColumn, ?> row) {
+			this.key = key;
+			this.index = index;
+			this.row = row;
+		}
+	}
+
+	/** The rows of a node and the program version they were computed for. */
+	private static final class NodeRows {
+		final Object version;
+		final List<NodeRow> rows;
+		long lastRun;
+
+		NodeRows(Object version, List<NodeRow> rows, long lastRun) {
+			this.version = version;
+			this.rows = rows;
+			this.lastRun = lastRun;
+		}
+	}
+
+	private final AtomicLong runs = new AtomicLong();
+	private final Map<SPNodeKey, NodeRows> nodes = new HashMap<SPNodeKey, NodeRows>();
+
+	// Sorted indices keyed by the sort specification that orders them.
+	private final Map<List<Object>, TreeSet<NodeRow>> indices = new HashMap<List<Object>, TreeSet<NodeRow>>();
+
+	TableRowCache() {
+	}
+
+	/**
+	 * Starts a new run over the table's domain, returning an identifier to
+	 * pass to {@link #update} and {@link #evict}.
+	 */
+	long startRun() {
+		return runs.incrementAndGet();
+	}
+
+	/**
+	 * Brings the rows of the given node up to date, computing them only if
+	 * the node's program has changed since they were last computed.
+	 * @return the key of the node
+	 */
+	SPNodeKey update(ITable table, ISPNode node, long run) {
+		final SPNodeKey key = node.getNodeKey();
+		final ISPProgram prog = (node instanceof ISPProgram) ? (ISPProgram) node : node.getProgram();
+		final Object version = (prog == null) ? null : prog.getVersions();
+
+		synchronized (this) {
+			final NodeRows nr = nodes.get(key);
+			if ((nr != null) && (version != null) && ((nr.version == version) || nr.version.equals(version))) {
+				nr.lastRun = Math.max(nr.lastRun, run);
+				return key;
+			}
+		}
+
+		// Compute the rows outside of the lock, since this is the slow part.
+		final List<Map<IColumn, Object>> raw = table.getRows(node);
+		final List<NodeRow> rows = new ArrayList<NodeRow>(raw.size());
+		for (Map<IColumn, Object> row: raw)
+			rows.add(new NodeRow(key, rows.size(), Collections.unmodifiableMap(row)));
+
+		synchronized (this) {
+			final NodeRows old = nodes.put(key, new NodeRows(version, rows, run));
+			for (TreeSet<NodeRow> index: indices.values()) {
+				if (old != null) remove(index, old.rows);
+				index.addAll(rows);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the rows of the given nodes in the order given by the sorts.
+	 */
+	List<Map<IColumn, ?>> getRows(List<ISort> sorts, Set<SPNodeKey> keys) {
+		final List<Object> spec = new ArrayList<Object>();
+		for (ISort s: sorts) {
+			spec.add(s.getColumn());
+			spec.add(s.getOrder());
+			spec.add(s.getNullPolicy());
+		}
+
+		final List<Map<IColumn, ?>> res = new ArrayList<Map<IColumn, ?>>();
+		synchronized (this) {
+			TreeSet<NodeRow> index = indices.get(spec);
+			if (index == null) {
+				index = new TreeSet<NodeRow>(comparator(sorts));
+				for (NodeRows nr: nodes.values())
+					index.addAll(nr.rows);
+				indices.put(spec, index);
+			}
+			for (NodeRow r: index)
+				if (keys.contains(r.key)) res.add(r.row);
+		}
+		return res;
+	}
+
+	/**
+	 * Forgets the rows of nodes that haven't been seen since the given run
+	 * started, which normally means their programs were deleted. Only call
+	 * this for runs that visited every node in the domain.
+	 */
+	synchronized void evict(long run) {
+		for (Iterator<NodeRows> it = nodes.values().iterator(); it.hasNext(); ) {
+			final NodeRows nr = it.next();
+			if (nr.lastRun < run) {
+				for (TreeSet<NodeRow> index: indices.values())
+					remove(index, nr.rows);
+				it.remove();
+			}
+		}
+	}
+
+	private static void remove(TreeSet<NodeRow> index, List<NodeRow> rows) {
+		for (NodeRow r: rows)
+			index.remove(r);
+	}
+
+	private static Comparator<NodeRow> comparator(List<ISort> sorts) {
+		final RowComparator rc = new RowComparator();
+		for (ISort s: sorts) rc.addComparator(s);
+		return new Comparator<NodeRow>() {
+			public int compare(NodeRow a, NodeRow b) {
+				int ret = rc.compare(a.row, b.row);
+				if (ret == 0) ret = a.key.compareTo(b.key);
+				if (ret == 0) ret = a.index - b.index;
+				return ret;
+			}
+		};
+	}
+
+}
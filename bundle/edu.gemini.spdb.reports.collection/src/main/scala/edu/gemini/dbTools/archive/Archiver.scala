@@ -13,7 +13,7 @@ import java.io._
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.logging.Logger
-import java.util.zip.{ZipEntry, ZipOutputStream}
+import java.util.zip.{ZipEntry, ZipInputStream, ZipOutputStream}
 import scala.annotation.tailrec
 import scalaz._
 import Scalaz._
@@ -25,6 +25,11 @@ object Archiver {
 
   val ARCHIVE_DIRECTORY_PROP = "edu.gemini.dbTools.archive.directory"
 
+  // Maximum number of exported programs waiting to be written to the zip.
+  val QueueSize = 64
+
+  val BufferSize = 1024 * 64
+
   def run(ctx: BundleContext)(store: CronStorage, log: Logger, env: java.util.Map[String, String], user: java.util.Set[Principal]): Unit = {
     val archiveDir = Option(ctx.getProperty(ARCHIVE_DIRECTORY_PROP)).fold(store.tempDir) { dirName =>
       new File(dirName)
@@ -53,71 +58,92 @@ object Archiver {
 }
 
 class Archiver(log: Logger, ks: KeyServer, vl: VcsLog, user: java.util.Set[Principal]) {
+  import Archiver.{BufferSize, QueueSize}
 
+  /**
+   * Exports the database straight into a new zip file in `tempDir`/archive,
+   * then reads the file back to check it.  If either step fails the file is
+   * renamed to `.zip.failed` so that it is never taken for a valid backup.
+   */
   def run(tempDir: File): IO[File] =
-    for {
-      d <- mkdir(tempDir)
-      _ <- export(d)
-      z <- zip(d)
-      _ <- cleanup(d)
-    } yield z
-
-  def mkdir(tempDir: File): IO[File] =
     for {
       n <- IO(new Date) map (new SimpleDateFormat("yyyyMMdd-HHmm").format)
-      d <- IO(new File(new File(tempDir, "archive"), n))
+      d <- IO(new File(tempDir, "archive"))
       _ <- IO(d.mkdirs)
-    } yield d
+      z <- IO(new File(d, n + ".zip"))
+      _ <- (zip(z, n) >>= (verify(z, _))).onException(discard(z))
+    } yield z
 
-  def export(dir: File): IO[Unit] =
-    for {
-      _ <- IO(log.info(s"exporting to $dir"))
-      _ <- IO(new ExportXmlApp(SPDB.get, user).exportAll(dir))
-      _ <- ks.backup(new File(dir, "keydb.zip")).run
-      _ <- IO(vl.archive(new File(dir, "vcsdb.zip")))
-    } yield ()
+  // Moves an unverified archive out of the way, or deletes it if it can't be
+  // moved.
+  def discard(z: File): IO[Unit] =
+    IO {
+      val failed = new File(z.getPath + ".failed")
+      if (z.renameTo(failed)) log.warning(s"archive $z failed, kept as $failed")
+      else if (z.delete()) log.warning(s"archive $z failed, deleted")
+    }
 
-  def zip(dir: File): IO[File] =
+  // Writes the archive, with every entry in a directory named `dir`, and
+  // returns the number of entries it should contain: one per program and
+  // plan in the database plus the two database backups.
+  def zip(z: File, dir: String): IO[Int] =
     for {
-      z <- IO(new File(dir.getParentFile, dir.getName + ".zip"))
       _ <- IO(log.info(s"writing zipfile $z"))
-      _ <- IO(new FileOutputStream(z)).bracket(a => IO(a.close)) { a =>
-        IO(new ZipOutputStream(a)).bracket(b => IO(b.close)) { b =>
+      c <- IO(new FileOutputStream(z)).bracket(a => IO(a.close)) { a =>
+        IO(new ZipOutputStream(new BufferedOutputStream(a, BufferSize))).bracket(b => IO(b.close)) { b =>
           for {
-            _ <- xmlFiles(dir) >>= (_.traverseU(add(b)))
-            _ <- zipFiles(dir) >>= (_.traverseU(add(b)))
-          } yield ()
+            p <- IO(new ExportXmlApp(SPDB.get, user).exportAll(b, dir, QueueSize))
+            _ <- addTemp(b, z.getParentFile, s"$dir/keydb.zip")(f => ks.backup(f).run)
+            _ <- addTemp(b, z.getParentFile, s"$dir/vcsdb.zip")(f => IO(vl.archive(f)))
+          } yield p + 2
         }
       }
-    } yield z
+    } yield c
+
+  // The key and vcs databases can only back themselves up to files, so they
+  // go through a temporary file.
+  def addTemp[A](zos: ZipOutputStream, tempDir: File, name: String)(backup: File => IO[A]): IO[Unit] =
+    IO(File.createTempFile("archive", ".zip", tempDir)).bracket(f => IO(f.delete)) { f =>
+      backup(f) >> add(zos, name)(f)
+    }
 
-  def cleanup(dir: File): IO[Unit] =
+  // Reads back every entry, which checks each against its CRC, and makes
+  // sure the expected number of entries is there.
+  def verify(z: File, expected: Int): IO[Unit] =
     for {
-      _ <- IO(log.info("cleaning up..."))
-      _ <- IO(dir.listFiles.toList) >>= (_.traverseU(f => IO(f.delete)))
-      _ <- IO(dir.delete)
+      _ <- IO(log.info(s"verifying zipfile $z"))
+      c <- IO(new ZipInputStream(new BufferedInputStream(new FileInputStream(z), BufferSize))).bracket(s => IO(s.close))(countEntries)
+      _ <- IO {
+        if (c != expected) throw new IOException(s"$z contains $c entries, expected $expected")
+      }
     } yield ()
 
-  def xmlFiles(dir: File): IO[List[File]] =
-    filterFiles(dir, ".xml")
-
-  def zipFiles(dir: File): IO[List[File]] =
-    filterFiles(dir, ".zip")
-
-  def filterFiles(dir: File, ext: String): IO[List[File]] =
-    IO(dir.listFiles.toList.filter(_.getName.toLowerCase.endsWith(ext)))
+  def countEntries(zis: ZipInputStream): IO[Int] =
+    IO {
+      val buf = new Array[Byte](BufferSize)
+      @tailrec def drain(): Unit =
+        if (zis.read(buf) >= 0) drain()
+      @tailrec def go(c: Int): Int =
+        Option(zis.getNextEntry) match {
+          case None    => c
+          case Some(_) =>
+            drain()
+            go(c + 1)
+        }
+      go(0)
+    }
 
-  def add(zos: ZipOutputStream)(f: File): IO[Unit] =
+  def add(zos: ZipOutputStream, name: String)(f: File): IO[Unit] =
     for {
-      e <- zipEntry(f)
+      e <- zipEntry(name, f)
       _ <- IO(zos.putNextEntry(e))
       _ <- copyFile(f, zos)
       _ <- IO(zos.closeEntry)
     } yield ()
 
-  def zipEntry(f: File): IO[ZipEntry] =
+  def zipEntry(name: String, f: File): IO[ZipEntry] =
     for {
-      e <- IO(new ZipEntry(s"${f.getParentFile.getName}/${f.getName}"))
+      e <- IO(new ZipEntry(name))
       _ <- IO(e.setSize(f.length()))
       _ <- IO(e.setTime(f.lastModified()))
     } yield e
@@ -127,7 +153,7 @@ class Archiver(log: Logger, ks: KeyServer, vl: VcsLog, user: java.util.Set[Princ
 
   def copy(out: OutputStream)(in: InputStream): IO[Unit] =
     IO {
-      val buf = new Array[Byte](1024 * 64)
+      val buf = new Array[Byte](BufferSize)
       @tailrec def go(): Unit = {
         val len = in.read(buf)
         if (len >= 0) {
@@ -0,0 +1,166 @@
+package edu.gemini.spdb.reports.impl;
+
+import edu.gemini.pot.sp.ISPFactory;
+import edu.gemini.pot.sp.ISPProgram;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.gemini.obscomp.SPProgram;
+import edu.gemini.spdb.reports.IColumn;
+import edu.gemini.spdb.reports.ISort;
+import edu.gemini.spdb.reports.ITable;
+import edu.gemini.spdb.reports.util.SimpleSort;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that cached rows are only computed again when their program changes,
+ * that the sorted indices follow the changes, and that eviction forgets the
+ * rows of nodes that weren't seen.
+ */
+public final class TableRowCacheTest {
+
+    private enum Column implements IColumn<String> {
+        TITLE;
+
+        public String getCaption()               { return "Title"; }
+        public String format(String value)       { return value;   }
+        public Comparator<String> getComparator() { return null;    }
+    }
+
+    // A table with the title of each program, which counts the times its
+    // rows are computed.
+    private static final class TitleTable implements ITable {
+        int computed;
+
+        public Set<IColumn> getColumns() { return Collections.<IColumn>singleton(Column.TITLE); }
+        public Domain getDomain() { return Domain.PROGRAM; }
+        public String getDisplayName() { return "Titles"; }
+        public String getShortDescription() { return "Program titles"; }
+
+        public List<Map<IColumn, Object>> getRows(Object domainObject) {
+            ++computed;
+            final SPProgram dataObj = (SPProgram) ((ISPProgram) domainObject).getDataObject();
+            final Map<IColumn, Object> row = new HashMap<IColumn, Object>();
+            row.put(Column.TITLE, dataObj.getTitle());
+            return Collections.singletonList(row);
+        }
+    }
+
+    private static final List<ISort> ASC  = Collections.<ISort>singletonList(new SimpleSort(Column.TITLE, ISort.Order.ASC));
+    private static final List<ISort> DESC = Collections.<ISort>singletonList(new SimpleSort(Column.TITLE, ISort.Order.DESC));
+
+    private IDBDatabaseService odb;
+    private final TitleTable table = new TitleTable();
+    private final TableRowCache cache = new TableRowCache();
+
+    @Before
+    public void setUp() {
+        odb = DBLocalDatabase.createTransient();
+    }
+
+    @After
+    public void tearDown() {
+        odb.getDBAdmin().shutdown();
+    }
+
+    private ISPProgram create(String title) throws Exception {
+        final ISPFactory factory = odb.getFactory();
+        final ISPProgram prog = factory.createProgram(new SPNodeKey(), null);
+        setTitle(prog, title);
+        odb.put(prog);
+        return prog;
+    }
+
+    private static void setTitle(ISPProgram prog, String title) {
+        final SPProgram dataObj = (SPProgram) prog.getDataObject();
+        dataObj.setTitle(title);
+        prog.setDataObject(dataObj);
+    }
+
+    private Set<SPNodeKey> update(ISPProgram... progs) {
+        final long run = cache.startRun();
+        final Set<SPNodeKey> keys = new HashSet<SPNodeKey>();
+        for (ISPProgram p: progs) keys.add(cache.update(table, p, run));
+        return keys;
+    }
+
+    private List<String> titles(List<ISort> sorts, Set<SPNodeKey> keys) {
+        final List<String> res = new ArrayList<String>();
+        for (Map<IColumn, ?> row: cache.getRows(sorts, keys))
+            res.add((String) row.get(Column.TITLE));
+        return res;
+    }
+
+    @Test
+    public void testUnchangedProgramNotComputedAgain() throws Exception {
+        final ISPProgram p = create("b");
+        update(p);
+        update(p);
+        assertEquals(1, table.computed);
+    }
+
+    @Test
+    public void testChangedProgramComputedAgain() throws Exception {
+        final ISPProgram p = create("b");
+        final Set<SPNodeKey> keys = update(p);
+
+        setTitle(p, "c");
+        update(p);
+        assertEquals(2, table.computed);
+        assertEquals(Arrays.asList("c"), titles(ASC, keys));
+    }
+
+    @Test
+    public void testIndexOrder() throws Exception {
+        final ISPProgram a = create("a");
+        final ISPProgram b = create("b");
+        final ISPProgram c = create("c");
+        final Set<SPNodeKey> keys = update(b, c, a);
+
+        assertEquals(Arrays.asList("a", "b", "c"), titles(ASC, keys));
+        assertEquals(Arrays.asList("c", "b", "a"), titles(DESC, keys));
+
+        // The existing indices are updated as the rows change.
+        setTitle(a, "d");
+        update(a, b, c);
+        assertEquals(Arrays.asList("b", "c", "d"), titles(ASC, keys));
+        assertEquals(Arrays.asList("d", "c", "b"), titles(DESC, keys));
+
+        // Only the requested nodes are returned.
+        assertEquals(Arrays.asList("c", "d"), titles(ASC, new HashSet<SPNodeKey>(Arrays.asList(a.getNodeKey(), c.getNodeKey()))));
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        final ISPProgram a = create("a");
+        final ISPProgram b = create("b");
+        final Set<SPNodeKey> keys = update(a, b);
+        assertEquals(Arrays.asList("a", "b"), titles(ASC, keys));
+
+        // A run that doesn't see b forgets it.
+        final long run = cache.startRun();
+        cache.update(table, a, run);
+        cache.evict(run);
+        assertEquals(Arrays.asList("a"), titles(ASC, keys));
+
+        // So it is computed again if it shows up later.
+        update(a, b);
+        assertEquals(3, table.computed);
+        assertEquals(Arrays.asList("a", "b"), titles(ASC, keys));
+    }
+}
@@ -36,4 +36,29 @@ public interface TooService {
      * the given time
      */
     List<TooEvent> events(TooTimestamp since);
+
+    /**
+     * Maximum time in milliseconds that {@link #awaitEvents} will wait for
+     * a new event before returning.  Each waiting call holds on to a server
+     * thread, so this is kept short.
+     */
+    long MAX_WAIT_TIME = 20 * 1000;
+
+    /**
+     * Like {@link #events} but if there are no events visible to the caller
+     * since the given time, waits until there are or until the timeout
+     * expires.  Clients can call this method repeatedly to be notified of
+     * ToO events as soon as they happen without polling.  If too many clients
+     * are already waiting, the service returns immediately like
+     * {@link #events}, in which case the client should wait before calling
+     * again.
+     *
+     * @param since events before and on this timestamp are filtered from
+     *              the results
+     * @param timeoutMs maximum time to wait in milliseconds, limited to
+     *                  {@link #MAX_WAIT_TIME}
+     * @return all TooEvents known to the service that have happened since
+     * the given time, which is empty only if the timeout expired
+     */
+    List<TooEvent> awaitEvents(TooTimestamp since, long timeoutMs);
 }
@@ -3,7 +3,6 @@ package edu.gemini.too.event.client
 import edu.gemini.too.event.api.{TooTimestamp, TooService, TooPublisher}
 import edu.gemini.util.trpc.client.TrpcClient
 
-import java.util.{Timer, TimerTask}
 import java.util.logging.{Level, Logger}
 
 import scala.collection.JavaConverters._
@@ -11,14 +10,28 @@ import scalaz._
 import edu.gemini.util.security.auth.keychain.KeyChain
 
 /**
- * Polls a remote TooService at a given host and port.
+ * Receives ToO events from a remote TooService at a given host and port.  The
+ * client waits on the service for new events, so they are published as soon as
+ * they happen without polling the service periodically.  It falls back to
+ * polling when the service is too busy to wait or too old to support it.
+ *
+ * @param retryPeriodMs time to wait before trying again if the service cannot
+ *                      be reached, and the polling period if it cannot wait
  */
-class TooClient(kc: KeyChain, dbHost: String, dbPort: Int, pollPeriodMs: Long) extends TooPublisher {
+class TooClient(kc: KeyChain, dbHost: String, dbPort: Int, retryPeriodMs: Long) extends TooPublisher {
   private val LOG = Logger.getLogger(classOf[TooClient].getName)
 
-  private val task = new TimerTask {
+  private class Listener extends Thread("TooClient %s:%d".format(dbHost, dbPort)) {
+    setDaemon(true)
+
+    @volatile var running = true
+
     var timestamp = Option.empty[TooTimestamp]
-    var exception = Option.empty[Exception] // sorry, trying to avoid an exception per poll when the dbHost is down
+    var exception = Option.empty[Exception] // sorry, trying to avoid an exception per call when the dbHost is down
+
+    // Whether the service supports awaitEvents.  Services that predate it
+    // answer with a NoSuchMethodException and are polled instead.
+    var canAwait = true
 
     private def call[T](op: TooService => T): Option[T] = {
 
@@ -27,17 +40,21 @@ class TooClient(kc: KeyChain, dbHost: String, dbPort: Int, pollPeriodMs: Long) e
       (remoteService { remote => op(remote[TooService]) }) match {
         case \/-(t)  =>
           exception foreach { _ =>
-            LOG.info("Good news, now successfully polling %s:%d for ToO events.".format(dbHost, dbPort))
+            LOG.info("Good news, now successfully listening to %s:%d for ToO events.".format(dbHost, dbPort))
           }
           exception = None
           Some(t)
+        case -\/(_: NoSuchMethodException) if canAwait =>
+          LOG.info("%s:%d cannot wait for ToO events, will poll instead.".format(dbHost, dbPort))
+          canAwait = false
+          None
         case -\/(ex) =>
           if (!exception.exists(_.getClass == ex.getClass)) {
             ex match {
               case ce: java.net.ConnectException =>
-                LOG.log(Level.WARNING, "Problem polling %s:%d for ToO events: %s.  Will keep trying ...".format(dbHost, dbPort, ex.getMessage))
+                LOG.log(Level.WARNING, "Problem listening to %s:%d for ToO events: %s.  Will keep trying ...".format(dbHost, dbPort, ex.getMessage))
               case _ =>
-                LOG.log(Level.WARNING, "Problem polling %s:%d for ToO events.  Will keep trying ...".format(dbHost, dbPort), ex)
+                LOG.log(Level.WARNING, "Problem listening to %s:%d for ToO events.  Will keep trying ...".format(dbHost, dbPort), ex)
             }
             exception = Some(ex)
           }
@@ -49,36 +66,61 @@ class TooClient(kc: KeyChain, dbHost: String, dbPort: Int, pollPeriodMs: Long) e
       timestamp = timestamp orElse call(_.lastEventTimestamp())
     }
 
-    def run() {
+    // Gets the next events, waiting for them if the service can.  Returns
+    // true if the service waited (or returned events) so that it can be asked
+    // again right away, false if the client should pause before trying again.
+    private def await(): Boolean = {
       initTimestamp()
-      timestamp foreach { since =>
-        call(_.events(since)) foreach { lst =>
-            lst.asScala foreach { evt =>
-              timestamp = Some(evt.timestamp)
-              publish(evt)
-            }
+      timestamp.exists { since =>
+        val start = System.currentTimeMillis
+        val res   = if (canAwait) call(_.awaitEvents(since, TooService.MAX_WAIT_TIME))
+                    else call(_.events(since))
+
+        res.exists { lst =>
+          lst.asScala foreach { evt =>
+            timestamp = Some(evt.timestamp)
+            if (running) publish(evt)
+          }
+          canAwait && (!lst.isEmpty || (System.currentTimeMillis - start >= TooService.MAX_WAIT_TIME))
+        }
+      }
+    }
+
+    override def run() {
+      while (running) {
+        if (!await() && running) {
+          try {
+            Thread.sleep(retryPeriodMs)
+          } catch {
+            case _: InterruptedException => // stopped
+          }
         }
       }
     }
   }
 
-  private var timer = Option.empty[Timer]
+  private var listener = Option.empty[Listener]
 
   def start() {
     synchronized {
-      if (timer.isEmpty) {
-        LOG.info("Start polling %s:%d for ToO events.".format(dbHost, dbPort))
-        timer = Some(new Timer)
-        timer foreach { _.schedule(task, 0, pollPeriodMs)}
+      if (listener.isEmpty) {
+        LOG.info("Start listening to %s:%d for ToO events.".format(dbHost, dbPort))
+        listener = Some(new Listener)
+        listener foreach { _.start() }
       }
     }
   }
 
+  // A call that is waiting on the service can't be interrupted, but its
+  // results are dropped and the thread ends when it returns.
   def stop() {
     synchronized {
-      timer foreach { _.cancel() }
-      timer = None
-      LOG.info("Stop polling %s:%d for ToO events.".format(dbHost, dbPort))
+      listener foreach { l =>
+        l.running = false
+        l.interrupt()
+      }
+      listener = None
+      LOG.info("Stop listening to %s:%d for ToO events.".format(dbHost, dbPort))
     }
   }
 }
@@ -2,7 +2,7 @@ package edu.gemini.too.event.service
 
 import edu.gemini.pot.sp._
 import edu.gemini.pot.spdb.{ProgramEvent, ProgramEventListener, IDBTriggerAction, IDBDatabaseService}
-import edu.gemini.spModel.core.Site
+import edu.gemini.spModel.core.{SPProgramID, Site}
 import edu.gemini.spModel.gemini.obscomp.SPProgram
 import edu.gemini.spModel.obs.{ObservationStatus, ObsSchedulingReport}
 import ObservationStatus.{READY, ON_HOLD}
@@ -11,38 +11,108 @@ import edu.gemini.too.event.api.{TooEvent, TooService => TooServiceApi, TooPubli
 import edu.gemini.util.security.permission.ProgramPermission
 import edu.gemini.util.security.policy.ImplicitPolicy
 
+import scala.annotation.tailrec
 import scala.collection.JavaConverters._
+import scala.collection.immutable.{SortedMap, TreeMap}
 import scala.concurrent.Future
 import scala.concurrent.ExecutionContext.Implicits.global
 import java.security.Principal
 
 object TooService {
   val DefaultEventRetentionTime = 30 * 60 * 1000
+
+  // A small fraction of the web server's request threads (200 by default).
+  val DefaultMaxWaiting = 20
 }
 
 /**
  * The TooService is notified by the database whenever the TooCondition matches
  * a change event.  It creates a correspond TooEvent, publishes it to any local
- * subscribers and holds on to it (for a limited time) in case remote clients
- * should poll for updates.
+ * subscribers and holds on to it (for a limited time) for remote clients.
+ * Remote clients may poll for events or wait for them with `awaitEvents`, in
+ * which case their request is parked until an event arrives.  Each parked
+ * request holds a server thread so only a limited number of them are parked
+ * at a time; the others are answered right away as if polling.
  *
  * @param eventRetentionTime minimum tme that ToO events will be kept
+ * @param maxWaiting maximum number of `awaitEvents` requests parked at once
  */
-class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime: Long = TooService.DefaultEventRetentionTime) extends IDBTriggerAction with ProgramEventListener[ISPProgram] with TooPublisher { outer =>
-  private var timestamp                    = TooTimestamp.now
-  private var recentEvents: List[TooEvent] = Nil
+class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime: Long = TooService.DefaultEventRetentionTime, val maxWaiting: Int = TooService.DefaultMaxWaiting) extends IDBTriggerAction with ProgramEventListener[ISPProgram] with TooPublisher { outer =>
+  private var timestamp = TooTimestamp.now
+
+  // Recent events indexed by timestamp, in the order they happened.
+  private var recentEvents: SortedMap[TooTimestamp, List[TooEvent]] = TreeMap.empty
+
+  // Whether a set of principals may read a program, remembered for the
+  // programs with recent events and forgotten when the program is updated.
+  private var readable: Map[(Set[Principal], SPProgramID), Boolean] = Map.empty
+
+  // Number of awaitEvents requests currently parked.
+  private var waiting = 0
 
   def lastEventTimestamp: TooTimestamp = synchronized { timestamp }
 
+  private def isReadable(ps: Set[Principal], pid: SPProgramID): Boolean =
+    synchronized { readable.get((ps, pid)) }.getOrElse {
+      val b = ImplicitPolicy.forJava.hasPermission(db, ps.asJava, new ProgramPermission.Read(pid))
+      synchronized { readable = readable.updated((ps, pid), b) }
+      b
+    }
+
+  private def eventsSince(since: TooTimestamp): List[TooEvent] =
+    synchronized { recentEvents.from(since) - since }.values.flatten.toList
+
+  /** Gets the events since the given time that are visible to the principals. */
+  def events(ps: Set[Principal], since: TooTimestamp): List[TooEvent] =
+    eventsSince(since).filter(evt => isReadable(ps, evt.report.getObservationId.getProgramID))
+
+  /**
+   * Gets the events since the given time that are visible to the principals,
+   * waiting up to `timeoutMs` for them if there are none yet.  Returns right
+   * away if `maxWaiting` requests are already waiting.
+   */
+  def awaitEvents(ps: Set[Principal], since: TooTimestamp, timeoutMs: Long): List[TooEvent] = {
+    val deadline = System.currentTimeMillis + timeoutMs.min(TooServiceApi.MAX_WAIT_TIME)
+
+    // Events that are not visible to the caller don't end the wait but need
+    // not be checked again.
+    @tailrec def go(after: TooTimestamp): List[TooEvent] = {
+      val latest = synchronized {
+        def newest = recentEvents.lastOption.map(_._1).filter(_ > after)
+        if (newest.isEmpty && waiting < maxWaiting) {
+          waiting += 1
+          try {
+            var remaining = deadline - System.currentTimeMillis
+            while (newest.isEmpty && remaining > 0) {
+              wait(remaining)
+              remaining = deadline - System.currentTimeMillis
+            }
+          } finally {
+            waiting -= 1
+          }
+        }
+        newest
+      }
+      latest match {
+        case None    => Nil
+        case Some(t) =>
+          val visible = events(ps, since)
+          if (visible.nonEmpty) visible else go(t)
+      }
+    }
+
+    go(since)
+  }
+
   def serviceApi(ps: java.util.Set[Principal]): TooServiceApi =
     new TooServiceApi {
+      private val principals = ps.asScala.toSet
 
-      def events(since: TooTimestamp): java.util.List[TooEvent] = {
-        def isVisible(evt: TooEvent): Boolean =
-          ImplicitPolicy.forJava.hasPermission(db, ps, new ProgramPermission.Read(evt.report.getObservationId.getProgramID))
+      def events(since: TooTimestamp): java.util.List[TooEvent] =
+        outer.events(principals, since).asJava
 
-        (recentEvents takeWhile { _.timestamp > since} filter { isVisible }).reverse.asJava
-      }
+      def awaitEvents(since: TooTimestamp, timeoutMs: Long): java.util.List[TooEvent] =
+        outer.awaitEvents(principals, since, timeoutMs).asJava
 
       def lastEventTimestamp: TooTimestamp =
         outer.lastEventTimestamp
@@ -62,8 +132,14 @@ class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime:
     val cutoff = time.less(eventRetentionTime)
 
     synchronized {
-      recentEvents = events ++ (recentEvents filter { _.timestamp > cutoff })
+      val retained = recentEvents.from(cutoff) - cutoff
+      recentEvents = if (events.isEmpty) retained
+                     else retained.updated(time, retained.getOrElse(time, Nil) ++ events)
       timestamp    = time
+
+      val pids = recentEvents.values.flatten.map(_.report.getObservationId.getProgramID).toSet
+      readable = readable.filter { case ((_, pid), _) => pids.contains(pid) }
+      notifyAll()
     }
 
     if (obsList.nonEmpty) Future {
@@ -71,6 +147,13 @@ class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime:
     }
   }
 
+  // Forgets the remembered permissions for a program that may have changed.
+  private def forgetPermissions(p: ISPProgram) {
+    Option(p).flatMap(p => Option(p.getProgramID)).foreach { pid =>
+      synchronized { readable = readable.filter { case ((_, id), _) => id != pid } }
+    }
+  }
+
   def doTriggerAction(change: SPCompositeChange, handback: Object) {
     // This solution assumes you will never be able to process multiple events in
     // the same millisecond.  If you could and a client happened to poll in the
@@ -81,6 +164,8 @@ class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime:
   }
 
   def programReplaced(pme: ProgramEvent[ISPProgram]) {
+    forgetPermissions(pme.getNewProgram)
+
     def isTooProgram(p: ISPProgram) =
       if (Option(p.getProgramID).isEmpty) false
       else {
@@ -117,7 +202,7 @@ class TooService(db: IDBDatabaseService, val site: Site, val eventRetentionTime:
     }
   }
 
-  def programAdded(pme: ProgramEvent[ISPProgram]) { /* ignore */ }
-  def programRemoved(pme: ProgramEvent[ISPProgram]) { /* ignore */ }
+  def programAdded(pme: ProgramEvent[ISPProgram]) { forgetPermissions(pme.getNewProgram) }
+  def programRemoved(pme: ProgramEvent[ISPProgram]) { forgetPermissions(pme.getOldProgram) }
 }
 
@@ -0,0 +1,120 @@
+package edu.gemini.too.event.service
+
+import edu.gemini.pot.sp._
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.spModel.core.{SPProgramID, Site}
+import edu.gemini.too.event.api.TooEvent
+import edu.gemini.util.security.principal.StaffPrincipal
+
+import org.specs2.matcher.MatchResult
+import org.specs2.mutable.Specification
+
+import java.security.Principal
+
+import scala.concurrent.{Await, Future}
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+object TooServiceSpec extends Specification {
+
+  private val Pid = SPProgramID.toProgramID("GS-2016B-Q-1")
+
+  private val Staff: Set[Principal] = Set(StaffPrincipal.Gemini)
+
+  private def withTooService[A](f: (TooService, () => Unit) => MatchResult[A]): MatchResult[A] =
+    withLimitedTooService(TooService.DefaultMaxWaiting)(f)
+
+  private def withLimitedTooService[A](maxWaiting: Int)(f: (TooService, () => Unit) => MatchResult[A]): MatchResult[A] = {
+
+    val odb = DBLocalDatabase.createTransient
+
+    try {
+      val p = odb.getFactory.createProgram(new SPNodeKey, Pid)
+      odb.put(p)
+
+      val o = odb.getFactory.createObservation(p, Instrument.none, null)
+      p.addObservation(o)
+
+      val service = new TooService(odb, Site.GS, maxWaiting = maxWaiting)
+
+      // Stands in for the database trigger, making sure that the event does
+      // not happen in the same millisecond as any earlier timestamp.
+      def fakeTrigger(): Unit = {
+        Thread.sleep(2)
+        service.doTriggerAction(null, o)
+      }
+
+      f(service, fakeTrigger _)
+
+    } finally {
+      odb.getDBAdmin.shutdown
+    }
+
+  }
+
+  "TooService" should {
+
+    "return waiting clients an event as soon as it happens" in {
+      withTooService { (service, fakeTrigger) =>
+        val since  = service.lastEventTimestamp
+        val start  = System.currentTimeMillis
+        val result = Future(service.awaitEvents(Staff, since, 30000))
+        Thread.sleep(100)
+        fakeTrigger()
+
+        val events = Await.result(result, 10.seconds)
+        (events.map(_.report.getObservationId.getProgramID) must_== List(Pid)) and
+          ((System.currentTimeMillis - start) must be_<(10000L))
+      }
+    }
+
+    "return events that have already happened without waiting" in {
+      withTooService { (service, fakeTrigger) =>
+        val since = service.lastEventTimestamp
+        fakeTrigger()
+        service.awaitEvents(Staff, since, 30000).size must_== 1
+      }
+    }
+
+    "return nothing when the wait times out" in {
+      withTooService { (service, _) =>
+        service.awaitEvents(Staff, service.lastEventTimestamp, 100) must beEmpty
+      }
+    }
+
+    "not park more than maxWaiting requests" in {
+      withLimitedTooService(1) { (service, fakeTrigger) =>
+        val since  = service.lastEventTimestamp
+        val parked = Future(service.awaitEvents(Staff, since, 30000))
+        Thread.sleep(100)
+
+        val start = System.currentTimeMillis
+        val busy  = service.awaitEvents(Staff, since, 30000)
+        val time  = System.currentTimeMillis - start
+        fakeTrigger()
+
+        (busy must beEmpty) and (time must be_<(10000L)) and
+          (Await.result(parked, 10.seconds).size must_== 1)
+      }
+    }
+
+    "not return events for programs the caller cannot read" in {
+      withTooService { (service, fakeTrigger) =>
+        val since = service.lastEventTimestamp
+        fakeTrigger()
+        (service.awaitEvents(Set.empty[Principal], since, 100) must beEmpty) and
+          (service.events(Staff, since).size must_== 1)
+      }
+    }
+
+    "only return events after the given time" in {
+      withTooService { (service, fakeTrigger) =>
+        fakeTrigger()
+        val since = service.lastEventTimestamp
+        fakeTrigger()
+        val events: List[TooEvent] = service.events(Staff, since)
+        (events.size must_== 1) and (events.forall(_.timestamp > since) must beTrue)
+      }
+    }
+  }
+}
@@ -57,6 +57,40 @@ public final class FileUtil {
         writeBuf(channel, buf, pos);
     }
 
+    /**
+     * Moves the bytes in the region [<code>start</code>, <code>end</code>) of
+     * the file <code>distance</code> bytes toward the end of the file,
+     * extending the file if necessary.  The region is copied back to front
+     * so that it may overlap its destination.  The bytes left behind in
+     * [<code>start</code>, <code>start + distance</code>) are not modified.
+     *
+     * @param channel channel associated with the file to update
+     * @param start position of the first byte to move
+     * @param end position just after the last byte to move
+     * @param distance number of bytes to move the region; must not be
+     * negative
+     * @param tmp buffer to use for copying; a larger buffer means fewer
+     * reads and writes
+     *
+     * @throws IOException if there is a problem reading from or writing to
+     * the channel
+     */
+    public static void shift(FileChannel channel, long start, long end, long distance, ByteBuffer tmp)
+            throws IOException {
+
+        if (distance < 0) throw new IllegalArgumentException("distance < 0");
+        if (distance == 0) return;
+
+        long chunkEnd = end;
+        while (chunkEnd > start) {
+            long chunkStart = Math.max(start, chunkEnd - tmp.capacity());
+            tmp.clear();
+            tmp.limit((int) (chunkEnd - chunkStart));
+            _shift(channel, tmp, chunkStart, distance);
+            chunkEnd = chunkStart;
+        }
+    }
+
     /**
      * Reads from the given <code>channel</code> into the given buffer, starting
      * at file position <code>pos</code>.  Completely fills the buffer unless
@@ -12,10 +12,14 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,18 +45,10 @@ public final class Hedit {
         FileChannel channel = lfc.getChannel();
 
         List<Header> allHeaders = new ArrayList<Header>();
-        Set<String> keywords = null;
-        long endTime = System.currentTimeMillis();
 
         try {
-            int headerIndex = 0;
-            while (channel.position() < channel.size()) {
-                Header currentHeader = _readHeader(channel, keywords, headerIndex++);
-                allHeaders.add(currentHeader);
-
-                int dataSize = calculateDataSectionSize(currentHeader);
-
-                channel.position(dataSize + channel.position());
+            for (HeaderLayout layout : _scan(channel, Integer.MAX_VALUE, null)) {
+                allHeaders.add(layout.header);
             }
         } finally {
             try {
@@ -65,20 +61,24 @@ public final class Hedit {
                 lfc.close();
             }
         }
-
+        long endTime = System.currentTimeMillis();
 
         if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, "Read Primary Header in " +
+            LOG.log(Level.FINE, "Read All Headers in " +
                     (endTime - startTime) + "ms");
         }
         return allHeaders;
     }
 
-    private static int calculateDataSectionSize(Header pdu) {
+    /**
+     * Computes the size of the data section following the given header,
+     * including the padding to a whole number of records.
+     */
+    private static long calculateDataSectionSize(Header pdu) {
         if (!pdu.getKeywords().isEmpty()) {
             int bytesSize = pdu.get("BITPIX").getIntValue();
             int nAxis = pdu.get("NAXIS").getIntValue();
-            int totalAxis = 1;
+            long totalAxis = (nAxis == 0) ? 0 : 1;
             for (int i = 1; i <= nAxis; i++) {
                 totalAxis *= pdu.get("NAXIS" + i).getIntValue();
             }
@@ -91,14 +91,104 @@ public final class Hedit {
             if (pdu.getKeywords().contains("GCOUNT")) {
                 gCount = pdu.get("GCOUNT").getIntValue();
             }
-            int dataSize = totalAxis * gCount * Math.abs(bytesSize) / 8;
-            dataSize += dataSize % FitsConstants.RECORD_SIZE;
-            return dataSize;
+            long dataSize = totalAxis * gCount * Math.abs(bytesSize) / 8;
+            long over = dataSize % FitsConstants.RECORD_SIZE;
+            return (over == 0) ? dataSize : dataSize + FitsConstants.RECORD_SIZE - over;
         } else {
             return 0;
         }
     }
 
+    /**
+     * Keywords needed to compute the size of the data section that follows a
+     * header.
+     */
+    private static boolean _isStructural(String keyword) {
+        return "BITPIX".equals(keyword) || keyword.startsWith("NAXIS") ||
+               "PCOUNT".equals(keyword) || "GCOUNT".equals(keyword);
+    }
+
+    /**
+     * Position of a header and its data within the file.
+     */
+    private static final class HeaderLayout {
+        final Header header;
+        final Map<String, Long> cardPositions; // first card for each keyword
+        final long endCard;                    // position of the END card
+        final long dataStart;                  // first byte after the header
+        final long dataEnd;                    // first byte after the data
+
+        HeaderLayout(Header header, Map<String, Long> cardPositions, long endCard, long dataStart, long dataEnd) {
+            this.header        = header;
+            this.cardPositions = cardPositions;
+            this.endCard       = endCard;
+            this.dataStart     = dataStart;
+            this.dataEnd       = dataEnd;
+        }
+
+        /** Number of card slots from the END card to the end of the header. */
+        int endSlots() {
+            return (int) ((dataStart - endCard) / FitsConstants.HEADER_ITEM_SIZE);
+        }
+    }
+
+    /**
+     * Reads the layout of the headers in the file up to and including the
+     * header with index <code>lastIndex</code>, or of all headers if the file
+     * has fewer.  Header items are parsed only for the given keywords (or all
+     * keywords if <code>null</code>) along with those needed to skip over the
+     * data.
+     */
+    private static List<HeaderLayout> _scan(FileChannel channel, int lastIndex, Set<String> keywords)
+            throws IOException, FitsParseException {
+
+        List<HeaderLayout> res = new ArrayList<HeaderLayout>();
+
+        ByteBuffer buf = ByteBuffer.allocate(FitsConstants.RECORD_SIZE);
+        byte[] bytes = new byte[FitsConstants.RECORD_SIZE];
+
+        long size = channel.size();
+        long pos  = 0;
+        for (int index = 0; (index <= lastIndex) && (pos < size); ++index) {
+            Header header = new DefaultHeader(index);
+            Map<String, Long> cardPositions = new HashMap<String, Long>();
+
+            long endCard = -1;
+            while (endCard < 0) {
+                buf.clear();
+                if (FileUtil.readBuf(channel, buf, pos) < FitsConstants.RECORD_SIZE) {
+                    throw new FitsParseException("Header " + index + " has no END");
+                }
+                buf.flip();
+                buf.get(bytes);
+
+                for (int offset = 0; offset < bytes.length; offset += FitsConstants.HEADER_ITEM_SIZE) {
+                    String keyword = (new String(bytes, offset, 8, FitsConstants.CHARSET_NAME)).trim();
+                    if ("END".equals(keyword)) {
+                        endCard = pos + offset;
+                        break;
+                    }
+
+                    if (!cardPositions.containsKey(keyword)) {
+                        cardPositions.put(keyword, pos + offset);
+                    }
+
+                    if ((keywords == null) || keywords.contains(keyword) || _isStructural(keyword)) {
+                        String image = new String(bytes, offset,
+                                FitsConstants.HEADER_ITEM_SIZE, FitsConstants.CHARSET_NAME);
+                        header.add(HeaderItemFormat.parse(image));
+                    }
+                }
+                pos += FitsConstants.RECORD_SIZE;
+            }
+
+            long dataEnd = pos + calculateDataSectionSize(header);
+            res.add(new HeaderLayout(header, cardPositions, endCard, pos, dataEnd));
+            pos = dataEnd;
+        }
+        return res;
+    }
+
     public Header readPrimary() throws IOException, FitsParseException, InterruptedException {
         return readPrimary(null);
     }
@@ -181,6 +271,22 @@ public final class Hedit {
     }
 
     public void updateHeader(Collection<? extends HeaderItem> updates, int headerIndex) throws IOException, InterruptedException {
+        updateHeaders(Collections.singletonMap(headerIndex, updates));
+    }
+
+    /**
+     * Updates any number of headers at once.  Existing keywords are
+     * overwritten in place and new keywords are added to the end of their
+     * header.  All the headers are located in a single pass over the file, and
+     * if any of them have to grow the space needed by all of them is worked
+     * out before anything is moved.  The remainder of the file is then shifted
+     * once, from the back, so each byte is copied at most one time no matter
+     * how many headers grow.
+     *
+     * @param updates header items to write, keyed by header index (where the
+     * primary header is 0)
+     */
+    public void updateHeaders(Map<Integer, ? extends Collection<? extends HeaderItem>> updates) throws IOException, InterruptedException {
 
         long startTime = System.currentTimeMillis();
         LockedFileChannel lfc = new LockedFileChannel(_file, LockedFileChannel.Mode.rw);
@@ -189,7 +295,7 @@ public final class Hedit {
         FileChannel channel = lfc.getChannel();
 
         try {
-            _updateHeader(channel, updates, headerIndex);
+            _updateHeaders(channel, updates);
         } finally {
             try {
                 lfc.unlock();
@@ -204,132 +310,124 @@ public final class Hedit {
         long endTime = System.currentTimeMillis();
 
         if (LOG.isLoggable(Level.FINE)) {
-            LOG.log(Level.FINE, "Updated Primary Header in " +
+            LOG.log(Level.FINE, "Updated " + updates.size() + " Headers in " +
                     (endTime - startTime) + "ms");
         }
     }
 
+    // Size of the buffer used to move data when headers grow.
+    private static final int SHIFT_BUF_SIZE = 1024 * FitsConstants.RECORD_SIZE;
 
-    private static <H extends HeaderItem> void _updateHeader(FileChannel channel, Collection<H> updates, int headerIndex)
-            throws IOException {
-        if (updates.size() == 0) {
-            return; // nothing to do
+    /**
+     * New cards to add to a header along with the number of records that
+     * must be inserted after the header to hold them.
+     */
+    private static final class Growth {
+        final HeaderLayout layout;
+        final List<HeaderItem> cards;
+        final int records;
+
+        Growth(HeaderLayout layout, List<HeaderItem> cards) {
+            this.layout = layout;
+            this.cards  = cards;
+
+            // One extra card for END.
+            int extra = cards.size() + 1 - layout.endSlots();
+            this.records = (extra <= 0) ? 0 :
+                    (extra + FitsConstants.ITEMS_PER_RECORD - 1) / FitsConstants.ITEMS_PER_RECORD;
         }
 
-        Map<String, H> hash = HeaderItemUtil.hash(updates);
-
-        boolean done = false;
-        int offset = 0;
-        long pos = 0;
-
-        byte[] bytes = new byte[FitsConstants.RECORD_SIZE];
-
-        advanceToHeader(channel, headerIndex);
-        
-        RecordIterator fit = RecordIterator.iterateFile(channel);
-        while (!done && fit.hasNext()) {
-            Record rec = fit.next();
-
-            pos = rec.position();
-            rec.getBuffer().get(bytes);
-            offset = 0;
-
-            while (offset < bytes.length) {
-
-                String keyword = (new String(bytes, offset, 8, FitsConstants.CHARSET_NAME)).trim();
-                if ("END".equals(keyword)) {
-                    done = true;
-                    break;
-                }
+        long insertedBytes() {
+            return (long) records * FitsConstants.RECORD_SIZE;
+        }
 
-                if (hash.containsKey(keyword)) {
-                    HeaderItem item = hash.get(keyword);
-                    ByteBuffer writeBuf = HeaderItemFormat.toByteBuffer(item);
-                    FileUtil.writeBuf(channel, writeBuf, pos + offset);
-                    hash.remove(keyword);
-                }
-                offset += FitsConstants.HEADER_ITEM_SIZE;
+        /**
+         * Creates the new content of the header starting at its current END
+         * card: new cards, END and blank fill to the end of the header.
+         */
+        ByteBuffer toByteBuffer() {
+            int size = layout.endSlots() * FitsConstants.HEADER_ITEM_SIZE + records * FitsConstants.RECORD_SIZE;
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            for (HeaderItem item : cards) {
+                buf.put(HeaderItemFormat.toBytes(item));
             }
+            buf.put("END".getBytes(FitsConstants.CHARSET));
+            while (buf.hasRemaining()) {
+                buf.put((byte) ' ');
+            }
+            buf.flip();
+            return buf;
         }
+    }
 
+    private static void _updateHeaders(FileChannel channel, Map<Integer, ? extends Collection<? extends HeaderItem>> updates)
+            throws IOException {
 
-        if (hash.size() == 0) {
-            return; // nothing to add
+        SortedMap<Integer, Collection<? extends HeaderItem>> todo = new TreeMap<Integer, Collection<? extends HeaderItem>>();
+        for (Map.Entry<Integer, ? extends Collection<? extends HeaderItem>> me : updates.entrySet()) {
+            if (!me.getValue().isEmpty()) {
+                todo.put(me.getKey(), me.getValue());
+            }
+        }
+        if (todo.isEmpty()) {
+            return; // nothing to do
         }
 
-        // Create a List of the remaining header items.
-        List<H> remUpdates = new ArrayList<H>(updates);
-        for (ListIterator<H> it = remUpdates.listIterator(); it.hasNext();) {
-            HeaderItem item = it.next();
-            if (!hash.containsKey(item.getKeyword())) {
-                it.remove();
-            }
+        List<HeaderLayout> layouts;
+        try {
+            layouts = _scan(channel, todo.lastKey(), Collections.<String>emptySet());
+        } catch (FitsParseException ex) {
+            throw new IOException(ex);
+        }
+        if (layouts.size() <= todo.lastKey()) {
+            throw new IOException("No header with index " + todo.lastKey());
         }
 
-        // Fill up any remaining space in the current record.
-        int remainingCards = done ? ((FitsConstants.RECORD_SIZE - offset) / FitsConstants.HEADER_ITEM_SIZE) : 0;
-        int limit = Math.min(remainingCards, remUpdates.size());
-        if (limit > 0) {
-            int bufsize = limit * FitsConstants.HEADER_ITEM_SIZE;
-            if (limit < remainingCards) {
-                bufsize += FitsConstants.HEADER_ITEM_SIZE; // for END
-            }
-            ByteBuffer buf = ByteBuffer.allocate(bufsize);
-            for (int i = 0; i < limit; ++i) {
-                HeaderItem item = remUpdates.get(i);
-                buf.put(HeaderItemFormat.toBytes(item));
+        // Overwrite the existing keywords in place and collect the new ones.
+        List<Growth> growths = new ArrayList<Growth>();
+        for (Map.Entry<Integer, Collection<? extends HeaderItem>> me : todo.entrySet()) {
+            HeaderLayout layout = layouts.get(me.getKey());
+
+            Map<String, HeaderItem> hash = HeaderItemUtil.hash(new ArrayList<HeaderItem>(me.getValue()));
+            for (HeaderItem item : hash.values()) {
+                Long pos = layout.cardPositions.get(item.getKeyword());
+                if (pos != null) {
+                    FileUtil.writeBuf(channel, HeaderItemFormat.toByteBuffer(item), pos);
+                }
             }
 
-            if (limit < remainingCards) {
-                buf.put("END".getBytes());
+            List<HeaderItem> added = new ArrayList<HeaderItem>();
+            for (HeaderItem item : me.getValue()) {
+                if (!layout.cardPositions.containsKey(item.getKeyword())) {
+                    added.add(item);
+                }
             }
-            buf.flip();
-            FileUtil.writeBuf(channel, buf, pos + offset);
-            if (limit < remainingCards) {
-                return;
+            if (!added.isEmpty()) {
+                growths.add(new Growth(layout, added));
             }
         }
 
-        // Now we know we'll have to insert one or more records.
-        // Figure out how many.
-        pos += FitsConstants.RECORD_SIZE; // where the insert will happen
-        int rem = remUpdates.size() - limit + 1;  // + 1 for "END"
-
-        int nrecs = rem / FitsConstants.ITEMS_PER_RECORD +
-                ((rem % FitsConstants.ITEMS_PER_RECORD == 0) ? 0 : 1);
-        ByteBuffer buf = ByteBuffer.allocate(nrecs * FitsConstants.RECORD_SIZE);
-        for (int i = limit; i < remUpdates.size(); ++i) {
-            HeaderItem item = remUpdates.get(i);
-            buf.put(HeaderItemFormat.toBytes(item));
+        // Move everything after each growing header, back to front, by the
+        // total number of bytes inserted at or before it.
+        long shift = 0;
+        for (Growth g : growths) {
+            shift += g.insertedBytes();
         }
-        buf.put("END".getBytes());
-
-        // Fill remainder of the buffer with blank chars.
-        for (int i = buf.position(); i < buf.capacity(); ++i) {
-            buf.put((byte) ' ');
-        }
-
-        buf.flip();
-        FileUtil.insert(channel, buf, pos);
-    }
-
-    /**
-     * Moves the channel position to the header with index headerIndex
-     */
-    private static void advanceToHeader(FileChannel channel, int headerIndex) throws IOException {
-        int currentHeaderIndex = 0;
-
-        while (headerIndex > currentHeaderIndex) {
-            Header currentHeader = null;
-            try {
-                currentHeader = _readHeader(channel, null, currentHeaderIndex++);
-            } catch (FitsParseException e) {
-                throw new IOException(e);
+        if (shift > 0) {
+            ByteBuffer tmp = ByteBuffer.allocateDirect(SHIFT_BUF_SIZE);
+            long end = channel.size();
+            for (ListIterator<Growth> it = growths.listIterator(growths.size()); it.hasPrevious();) {
+                Growth g = it.previous();
+                FileUtil.shift(channel, g.layout.dataStart, end, shift, tmp);
+                shift -= g.insertedBytes();
+                end = g.layout.dataStart;
             }
+        }
 
-            int dataSize = calculateDataSectionSize(currentHeader);
-
-            channel.position(dataSize + channel.position());
+        // Write the new cards, which start where each END card has moved to.
+        for (Growth g : growths) {
+            FileUtil.writeBuf(channel, g.toByteBuffer(), g.layout.endCard + shift);
+            shift += g.insertedBytes();
         }
     }
 }
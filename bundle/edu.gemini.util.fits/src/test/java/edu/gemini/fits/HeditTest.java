@@ -16,9 +16,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -329,6 +331,80 @@ public class HeditTest extends TestCase {
         assertEquals("New Comment", extensionHeader.get("TFORM13").getComment());
     }
 
+    private static List<HeaderItem> _createNamedItems(String prefix, int nkeys) {
+        List<HeaderItem> lst = new ArrayList<HeaderItem>();
+        for (int i = 0; i < nkeys; ++i) {
+            //noinspection StringContatenationInLoop
+            lst.add(DefaultHeaderItem.create(prefix + i, "Value " + i, "Comment " + i));
+        }
+        return lst;
+    }
+
+    private static byte[] readFile(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            ByteBuffer buf = ByteBuffer.allocate((int) raf.length());
+            FileUtil.readBuf(raf.getChannel(), buf, 0);
+            return buf.array();
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Batch updates must produce exactly the same file as applying the same
+    // updates one header at a time.
+    private void _testBatchUpdate(int primaryKeys, int extensionKeys) throws Exception {
+        File fitsFile = new File(HeditTest.class.getResource("FITS_WITH_EXTENSIONS.fits").toURI());
+        copyFile(fitsFile, _f);
+
+        File seq = File.createTempFile("seq", ".fits");
+        try {
+            copyFile(fitsFile, seq);
+
+            List<HeaderItem> primary = _createNamedItems("PKEY", primaryKeys);
+            primary.add(DefaultHeaderItem.create("TFORM13", "NOTINPRIMARY", "Comment"));
+
+            List<HeaderItem> extension = _createNamedItems("XKEY", extensionKeys);
+            extension.add(new DefaultHeaderItem("TFORM13", "NEWVALUE", "New Comment", true));
+
+            Map<Integer, List<HeaderItem>> updates = new HashMap<Integer, List<HeaderItem>>();
+            updates.put(0, primary);
+            updates.put(1, extension);
+            new Hedit(_f).updateHeaders(updates);
+
+            Hedit seqHedit = new Hedit(seq);
+            seqHedit.updateHeader(primary, 0);
+            seqHedit.updateHeader(extension, 1);
+
+            assertTrue(Arrays.equals(readFile(seq), readFile(_f)));
+
+            List<Header> headers = new Hedit(_f).readAllHeaders();
+            assertEquals(2, headers.size());
+            assertEquals(212 + primaryKeys + 1, headers.get(0).getKeywords().size());
+            assertEquals(109 + extensionKeys, headers.get(1).getKeywords().size());
+            assertEquals("NEWVALUE", headers.get(1).get("TFORM13").getValue());
+            assertEquals("NOTINPRIMARY", headers.get(0).get("TFORM13").getValue());
+        } finally {
+            seq.delete();
+        }
+    }
+
+    public void testBatchUpdateNoGrowth() throws Exception {
+        _testBatchUpdate(0, 0);
+    }
+
+    public void testBatchUpdateGrowPrimary() throws Exception {
+        _testBatchUpdate(40, 0);
+    }
+
+    public void testBatchUpdateGrowExtension() throws Exception {
+        _testBatchUpdate(0, 40);
+    }
+
+    public void testBatchUpdateGrowBoth() throws Exception {
+        _testBatchUpdate(75, 40);
+    }
+
     private static void copyFile(File sourceFile, File destFile) throws IOException {
         if (!destFile.exists()) {
             destFile.createNewFile();
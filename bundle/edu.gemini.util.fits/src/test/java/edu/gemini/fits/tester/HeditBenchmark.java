@@ -0,0 +1,109 @@
+package edu.gemini.fits.tester;
+
+import edu.gemini.fits.DefaultHeaderItem;
+import edu.gemini.fits.Header;
+import edu.gemini.fits.HeaderItem;
+import edu.gemini.fits.Hedit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the throughput of updating each header of a multi-extension FITS
+ * file separately with that of a single batch update.  Each iteration works
+ * on a fresh copy of the given file and adds enough new keywords to every
+ * header to make it grow, which is the expensive case.
+ *
+ * <pre>
+ * HeditBenchmark file.fits [iterations] [new keywords per header]
+ * </pre>
+ */
+public class HeditBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: HeditBenchmark file.fits [iterations] [keywords]");
+            System.exit(1);
+        }
+
+        File src        = new File(args[0]);
+        int  iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int  nkeys      = (args.length > 2) ? Integer.parseInt(args[2]) : 40;
+
+        int headers = new Hedit(src).readAllHeaders().size();
+        Map<Integer, List<HeaderItem>> updates = new HashMap<Integer, List<HeaderItem>>();
+        for (int h = 0; h < headers; ++h) {
+            List<HeaderItem> items = new ArrayList<HeaderItem>();
+            for (int k = 0; k < nkeys; ++k) {
+                items.add(DefaultHeaderItem.create("BENCH" + k, "Value " + k, "Benchmark keyword"));
+            }
+            updates.put(h, items);
+        }
+
+        System.out.printf("%s: %d bytes, %d headers, %d new keywords per header%n",
+                src.getName(), src.length(), headers, nkeys);
+
+        // Warm up both code paths before timing.
+        run(src, updates, false, 2);
+        run(src, updates, true, 2);
+
+        report("per header", src, iterations, run(src, updates, false, iterations));
+        report("batched",    src, iterations, run(src, updates, true,  iterations));
+    }
+
+    private static long run(File src, Map<Integer, List<HeaderItem>> updates, boolean batch, int iterations)
+            throws Exception {
+
+        long total = 0;
+        for (int i = 0; i < iterations; ++i) {
+            File f = File.createTempFile("hedit-bench", ".fits");
+            try {
+                copy(src, f);
+                Hedit hedit = new Hedit(f);
+
+                long start = System.nanoTime();
+                if (batch) {
+                    hedit.updateHeaders(updates);
+                } else {
+                    for (Map.Entry<Integer, List<HeaderItem>> me : updates.entrySet()) {
+                        hedit.updateHeader(me.getValue(), me.getKey());
+                    }
+                }
+                total += System.nanoTime() - start;
+
+                // Sanity check the result.
+                List<Header> hs = hedit.readAllHeaders();
+                if (hs.size() != updates.size()) {
+                    throw new IllegalStateException("Expected " + updates.size() + " headers, found " + hs.size());
+                }
+            } finally {
+                f.delete();
+            }
+        }
+        return total;
+    }
+
+    private static void report(String name, File src, int iterations, long nanos) {
+        double ms   = nanos / 1e6 / iterations;
+        double mbps = (src.length() / 1e6) / (ms / 1e3);
+        System.out.printf("%-10s %9.2f ms/file %9.1f MB/s%n", name, ms, mbps);
+    }
+
+    private static void copy(File src, File dest) throws IOException {
+        FileChannel in  = new FileInputStream(src).getChannel();
+        FileChannel out = new FileOutputStream(dest).getChannel();
+        try {
+            in.transferTo(0, in.size(), out);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
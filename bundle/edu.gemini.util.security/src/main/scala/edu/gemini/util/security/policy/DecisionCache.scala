@@ -0,0 +1,111 @@
+package edu.gemini.util.security.policy
+
+import edu.gemini.pot.sp.ISPProgram
+import edu.gemini.pot.spdb.{IDBDatabaseService, ProgramEvent, ProgramEventListener}
+import edu.gemini.spModel.core.SPProgramID
+
+import java.security.{Permission, Principal}
+
+import scala.collection.mutable
+
+/** Remembers the `ImplicitPolicy` decisions for the permissions of each
+  * program in a database, along with the program version they were made for.
+  * A decision is reused until the program's versions change or a program
+  * event arrives for its id, so repeated checks don't look up the program,
+  * copy its data object and parse its contact emails every time.
+  */
+private[policy] final class DecisionCache extends ProgramEventListener[ISPProgram] {
+  import DecisionCache._
+
+  // All guarded by this.
+  private val programs   = mutable.Map.empty[SPProgramID, Entry]
+  private var generation = 0L
+
+  /** Returns the remembered decision for `p` with principals `ps`, or
+    * computes and remembers it if the program has changed since.
+    */
+  def decide(db: IDBDatabaseService, pid: SPProgramID, ps: Set[Principal], p: Permission)(compute: => Boolean): Boolean = {
+    val key = (ps, p)
+    val hit = synchronized {
+      programs.get(pid).filter(_.isCurrent).flatMap(_.decisions.get(key))
+    }
+
+    hit.getOrElse {
+      // Look up the program first so that a change made while deciding is
+      // noticed on the next check, and don't keep the decision if a program
+      // event arrived in the meantime.
+      val gen  = synchronized(generation)
+      val prog = Option(db.lookupProgramByID(pid))
+      val vers = prog.map(_.getVersions)
+      val b    = compute
+
+      synchronized {
+        if (gen == generation) {
+          val e = programs.get(pid).filter(e => e.prog == prog && e.versions == vers) getOrElse {
+            val n = new Entry(prog, vers)
+            programs.put(pid, n)
+            n
+          }
+          if (e.decisions.size >= MaxDecisions) e.decisions.clear()
+          e.decisions.put(key, b)
+        }
+      }
+      b
+    }
+  }
+
+  private def forget(prog: ISPProgram): Unit =
+    synchronized {
+      generation += 1
+      Option(prog).flatMap(p => Option(p.getProgramID)).foreach(programs.remove)
+    }
+
+  override def programAdded(e: ProgramEvent[ISPProgram]): Unit =
+    forget(e.getNewProgram)
+
+  override def programReplaced(e: ProgramEvent[ISPProgram]): Unit = {
+    forget(e.getOldProgram)
+    forget(e.getNewProgram)
+  }
+
+  override def programRemoved(e: ProgramEvent[ISPProgram]): Unit =
+    forget(e.getOldProgram)
+}
+
+private[policy] object DecisionCache {
+
+  // Decisions kept per program, which bounds the cache when many different
+  // principal sets are checked against the same program.
+  val MaxDecisions = 256
+
+  /** Decisions for one program version.  A missing program is remembered as
+    * `None`, which stays current until the program is added.
+    */
+  private final class Entry(val prog: Option[ISPProgram], val versions: Option[AnyRef]) {
+    val decisions = mutable.Map.empty[(Set[Principal], Permission), Boolean]
+
+    def isCurrent: Boolean =
+      (prog, versions) match {
+        case (Some(p), Some(v)) =>
+          val cur = p.getVersions
+          (cur eq v) || cur == v
+        case _                  =>
+          true
+      }
+  }
+
+  private val caches = new java.util.WeakHashMap[IDBDatabaseService, DecisionCache]
+
+  /** Gets the cache for the given database, registering it for program
+    * events the first time it is requested.
+    */
+  def forDatabase(db: IDBDatabaseService): DecisionCache =
+    caches.synchronized {
+      Option(caches.get(db)).getOrElse {
+        val c = new DecisionCache
+        db.addProgramEventListener(c)
+        caches.put(db, c)
+        c
+      }
+    }
+}
@@ -155,7 +155,25 @@ object ImplicitPolicy {
   }
 
   def hasPermission(db: IDBDatabaseService, ps: Set[Principal], p: Permission): IO[Boolean] =
-    IO(EventCache.check(p)(new ImplicitPolicy(db, ps).implies(p)))
+    IO(EventCache.check(p)(decide(db, ps, p)))
+
+  // Decisions about a program's permissions depend on the principals and on
+  // that program alone, so they are remembered until the program changes.
+  private def decide(db: IDBDatabaseService, ps: Set[Principal], p: Permission): Boolean = {
+    def compute = new ImplicitPolicy(db, ps).implies(p)
+    programId(p).filter(_ => db != null).fold(compute) { pid =>
+      DecisionCache.forDatabase(db).decide(db, pid, ps, p)(compute)
+    }
+  }
+
+  private def programId(p: Permission): Option[SPProgramID] =
+    p match {
+      case StaffPermission(Some(pid)) => Some(pid)
+      case NgoPermission(oid)         => oid
+      case PiPermission(oid)          => oid
+      case ProgramPermission.Read(id) => Some(id)
+      case _                          => None
+    }
 
   def hasPermission(db: IDBDatabaseService, kc: KeyChain, p: Permission): Action[Boolean] =
     kc.selection.flatMap {
@@ -0,0 +1,63 @@
+package edu.gemini.util.security.policy
+
+import edu.gemini.pot.sp.{ISPProgram, SPNodeKey}
+import edu.gemini.pot.spdb.{DBLocalDatabase, IDBDatabaseService}
+import edu.gemini.spModel.core.SPProgramID
+import edu.gemini.spModel.gemini.obscomp.SPProgram
+import edu.gemini.spModel.gemini.obscomp.SPProgram.PIInfo
+import edu.gemini.util.security.permission.{PiPermission, ProgramPermission}
+import edu.gemini.util.security.principal.UserPrincipal
+
+import org.specs2.mutable.Specification
+
+import java.security.{Permission, Principal}
+
+object ImplicitPolicySpec extends Specification {
+
+  val pid = SPProgramID.toProgramID("GS-2017A-Q-1")
+  val pi  = Set[Principal](UserPrincipal("pi@example.com"))
+
+  def withProgram[A](f: (IDBDatabaseService, ISPProgram) => A): A = {
+    val db = DBLocalDatabase.createTransient()
+    try {
+      val p = db.getFactory.createProgram(new SPNodeKey(), pid)
+      setPiEmail(p, "pi@example.com")
+      db.put(p)
+      f(db, p)
+    } finally {
+      db.getDBAdmin.shutdown()
+    }
+  }
+
+  def setPiEmail(p: ISPProgram, email: String): Unit = {
+    val dob = p.getDataObject.asInstanceOf[SPProgram]
+    dob.setPIInfo(new PIInfo("First", "Last", email, "", null))
+    p.setDataObject(dob)
+  }
+
+  def check(db: IDBDatabaseService, ps: Set[Principal], p: Permission): Boolean =
+    ImplicitPolicy.hasPermission(db, ps, p).unsafePerformIO
+
+  "ImplicitPolicy" should {
+    "grant PI permission from the program's PI email" in withProgram { (db, _) =>
+      check(db, pi, PiPermission(Some(pid))) must beTrue
+      check(db, pi, ProgramPermission.Read(pid)) must beTrue
+      check(db, Set[Principal](UserPrincipal("other@example.com")), PiPermission(Some(pid))) must beFalse
+    }
+
+    "notice when the program is updated" in withProgram { (db, p) =>
+      check(db, pi, PiPermission(Some(pid))) must beTrue
+      setPiEmail(p, "new@example.com")
+      check(db, pi, PiPermission(Some(pid))) must beFalse
+      check(db, Set[Principal](UserPrincipal("new@example.com")), PiPermission(Some(pid))) must beTrue
+    }
+
+    "notice when the program is removed and added" in withProgram { (db, p) =>
+      check(db, pi, PiPermission(Some(pid))) must beTrue
+      db.remove(p)
+      check(db, pi, PiPermission(Some(pid))) must beFalse
+      db.put(p)
+      check(db, pi, PiPermission(Some(pid))) must beTrue
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package edu.gemini.skycalc;
+
+import java.util.Arrays;
+
+/**
+ * Solver for constraints of the form <code>lower &lt;= g(t) &lt;= upper</code> where g is a
+ * continuous function such as an elevation or a sky brightness. Rather than walking the whole
+ * interval until the constraint flips, g is sampled at a coarse step and the limit crossings
+ * between neighbouring samples are located by bisection. Local extrema that show up in the
+ * samples are located by golden section search, so short intervals around a peak or a valley
+ * that lie between two samples are found as well. All interval boundaries are accurate to
+ * within the tolerance.
+ * <p>
+ * Intervals can only be missed if g turns around more than once between two samples, so the
+ * step should be short compared to the time scale on which g changes direction.
+ * <p>
+ * This is a drop-in replacement for the stepping {@link Solver}; single domains (see
+ * {@link Solver#solve(Interval, long)}) are still found by stepping.
+ */
+public abstract class BracketingSolver extends Solver {
+
+	private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+
+	private final long stepSize, tolerance;
+	private final double lower, upper;
+
+	/**
+	 * @param stepSize the sampling step
+	 * @param tolerance the accuracy of the interval boundaries
+	 * @param lower the lowest acceptable value of g, or negative infinity
+	 * @param upper the highest acceptable value of g, or positive infinity
+	 */
+	protected BracketingSolver(long stepSize, long tolerance, double lower, double upper) {
+		super(stepSize, tolerance);
+		this.stepSize = stepSize;
+		this.tolerance = tolerance;
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/**
+	 * The continuous function whose value is constrained.
+	 */
+	protected abstract double g(long t);
+
+	@Override
+	protected boolean f(long t) {
+		return met(g(t));
+	}
+
+	private boolean met(double v) {
+		return aboveLower(v) && belowUpper(v);
+	}
+
+	private boolean aboveLower(double v) {
+		return v >= lower;
+	}
+
+	private boolean belowUpper(double v) {
+		return v <= upper;
+	}
+
+	/**
+	 * Find all domains on the specified interval.
+	 */
+	@Override
+	public Union<Interval> solve(Interval interval) {
+		final Union<Interval> ret = new Union<Interval>();
+		if (interval.getEnd() <= interval.getStart()) return ret;
+
+		final long start = interval.getStart(), last = interval.getEnd() - 1;
+
+		// Coarse samples, including both ends of the interval.
+		final Samples samples = new Samples((int) ((last - start + stepSize - 1) / stepSize) + 1);
+		for (long t = start; t < last; t += stepSize) samples.add(t, g(t));
+		samples.add(last, g(last));
+
+		// Add a sample at each extremum between samples that might cross a limit.
+		final Samples extrema = new Samples(4);
+		for (int i = 1; i < samples.size - 1; i++) {
+			final double a = samples.v[i - 1], b = samples.v[i], c = samples.v[i + 1];
+			if (b > a && b >= c && (lower > b || (upper > b && upper != Double.POSITIVE_INFINITY))) {
+				extremum(samples.t[i - 1], samples.t[i + 1], b, true, extrema);
+			} else if (b < a && b <= c && (upper < b || (lower < b && lower != Double.NEGATIVE_INFINITY))) {
+				extremum(samples.t[i - 1], samples.t[i + 1], b, false, extrema);
+			}
+		}
+		for (int i = 0; i < extrema.size; i++) samples.insert(extrema.t[i], extrema.v[i]);
+
+		// Find the limit crossings between neighbouring samples.
+		final Samples crossings = new Samples(4);
+		for (int i = 1; i < samples.size; i++) {
+			final long t0 = samples.t[i - 1], t1 = samples.t[i];
+			final double v0 = samples.v[i - 1], v1 = samples.v[i];
+			if (aboveLower(v0) != aboveLower(v1)) crossings.insert(crossing(t0, t1, true, aboveLower(v0)), 0);
+			if (belowUpper(v0) != belowUpper(v1)) crossings.insert(crossing(t0, t1, false, belowUpper(v0)), 0);
+		}
+		crossings.insert(interval.getEnd(), 0);
+
+		// The constraint is either met or not met between two crossings.
+		long from = start;
+		for (int i = 0, j = 0; i < crossings.size; i++) {
+			final long to = crossings.t[i];
+			if (to <= from) continue;
+			while (j < samples.size && samples.t[j] < from) j++;
+			final double v = (j < samples.size && samples.t[j] < to) ? samples.v[j] : g(from + (to - from) / 2);
+			if (met(v)) ret.add(new Interval(from, to));
+			from = to;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Finds the first time in (t0 .. t1] on the same side of the lower or upper limit as t1 by
+	 * bisection, given that t0 is on the other side.
+	 */
+	private long crossing(long t0, long t1, boolean isLower, boolean side0) {
+		while (t1 - t0 > tolerance) {
+			final long t = t0 + (t1 - t0) / 2;
+			final double v = g(t);
+			if ((isLower ? aboveLower(v) : belowUpper(v)) == side0) t0 = t;
+			else t1 = t;
+		}
+		return t1;
+	}
+
+	/**
+	 * Locates the peak or valley of g in (t0 .. t1) by golden section search and adds it to the
+	 * samples. The search stops early as soon as it finds a value on the other side of a limit
+	 * than the best known sample value, since that is all that is needed to bracket the crossings.
+	 */
+	private void extremum(long t0, long t1, double best, boolean peak, Samples samples) {
+		long x1 = t1 - Math.round((t1 - t0) * GOLDEN), x2 = t0 + Math.round((t1 - t0) * GOLDEN);
+		double v1 = g(x1), v2 = g(x2);
+		while (true) {
+			if (crosses(best, v1)) { samples.insert(x1, v1); return; }
+			if (crosses(best, v2)) { samples.insert(x2, v2); return; }
+			if (t1 - t0 <= tolerance) break;
+			if (peak ? v1 > v2 : v1 < v2) {
+				t1 = x2; x2 = x1; v2 = v1;
+				x1 = t1 - Math.round((t1 - t0) * GOLDEN);
+				v1 = g(x1);
+			} else {
+				t0 = x1; x1 = x2; v1 = v2;
+				x2 = t0 + Math.round((t1 - t0) * GOLDEN);
+				v2 = g(x2);
+			}
+		}
+		if (peak ? v1 > v2 : v1 < v2) samples.insert(x1, v1);
+		else samples.insert(x2, v2);
+	}
+
+	private boolean crosses(double v0, double v1) {
+		return aboveLower(v0) != aboveLower(v1) || belowUpper(v0) != belowUpper(v1);
+	}
+
+	/**
+	 * Times and values of g, ordered by time.
+	 */
+	private static final class Samples {
+
+		long[] t;
+		double[] v;
+		int size;
+
+		Samples(int capacity) {
+			t = new long[capacity];
+			v = new double[capacity];
+		}
+
+		/** Adds a sample after all others. */
+		void add(long time, double value) {
+			if (size == t.length) grow();
+			t[size] = time;
+			v[size] = value;
+			size++;
+		}
+
+		/** Adds a sample in order, unless there already is one for the time. */
+		void insert(long time, double value) {
+			int i = Arrays.binarySearch(t, 0, size, time);
+			if (i >= 0) return;
+			i = -i - 1;
+			if (size == t.length) grow();
+			System.arraycopy(t, i, t, i + 1, size - i);
+			System.arraycopy(v, i, v, i + 1, size - i);
+			t[i] = time;
+			v[i] = value;
+			size++;
+		}
+
+		private void grow() {
+			t = Arrays.copyOf(t, t.length * 2);
+			v = Arrays.copyOf(v, v.length * 2);
+		}
+
+	}
+
+}
@@ -3,21 +3,21 @@ package edu.gemini.skycalc;
 import edu.gemini.spModel.core.*;
 import jsky.coords.WorldCoords;
 
-import static java.lang.Math.cos;
 import java.util.Date;
 
 /**
  * Improved version of SkyCalc that supports lunar calculations. All instance stuff is here;
  * the superclass is exclusively static stuff.
+ * <p>
+ * The calculations are done by a {@link SkyCalcEngine}, this class keeps the results of the last
+ * calculation around for its accessors and is therefore not thread safe. Use the engine directly
+ * for calculations from several threads or for many targets.
  * @author brighton, rnorris
  */
 @SuppressWarnings("serial")
 public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
 
-    // Site parameters
-    private final double hoursLongitude;
-    private final double degreesLatitude;
-    private final double siteAltitude;
+    private final SkyCalcEngine engine;
 
     // calculated results
     private double altitude;
@@ -38,10 +38,12 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     private Date cachedDate;
     private boolean cachedCalculateMoon;
 
+    // the time dependent values are shared between all targets calculated for the same time
+    private SkyCalcEngine.Epoch epoch;
+    private final SkyCalcEngine.Circumstances circumstances = new SkyCalcEngine.Circumstances();
+
     public ImprovedSkyCalc(final Site site) {
-        hoursLongitude = -site.longitude/15.;
-        degreesLatitude = site.latitude;
-        siteAltitude = site.altitude;
+        engine = new SkyCalcEngine(site);
     }
 
     public void calculate(final edu.gemini.spModel.core.Coordinates coords, final Date date, final boolean calculateMoon) {
@@ -60,89 +62,33 @@ public final class ImprovedSkyCalc extends ImprovedSkyCalcMethods {
     	cachedDate = date;
     	cachedCalculateMoon = calculateMoon;
 
-        final DateTime dateTime = new DateTime(date);
-        final DoubleRef jdut = new DoubleRef();
-        final DoubleRef sid = new DoubleRef();
-        final DoubleRef curepoch = new DoubleRef();
-
-        setup_time_place(dateTime, hoursLongitude, jdut, sid, curepoch);
-
-        final double objra = obj.getRaDeg()/15;
-        final double objdec = obj.getDecDeg();
-        final double objepoch = 2000.;
-
-        getCircumstances(objra, objdec, objepoch, curepoch.d, sid.d, degreesLatitude, jdut, calculateMoon);
-    }
-
-    private void getCircumstances(double objra, double objdec, double objepoch,
-                                  double curep, double sid, double lat, DoubleRef jdut, boolean calculateMoon) {
-
-        final double ha, alt;
-        final DoubleRef az = new DoubleRef();
-        final DoubleRef par = new DoubleRef();
-        final DoubleRef curra = new DoubleRef();
-        final DoubleRef curdec = new DoubleRef();
-
-        cooxform(objra, objdec, objepoch, curep, curra, curdec, XFORM_JUSTPRE, XFORM_FROMSTD);
-
-        ha = adj_time(sid - curra.d);
-        alt = altit(curdec.d, ha, lat, az, par);
-
-        airmass = getAirmass(alt);
-        altitude = alt;
-        azimuth = az.d;
-        parallacticAngle = par.d;
-        hourAngle = ha;
-
-		if (calculateMoon) {
-
-			final DoubleRef ramoon = new DoubleRef();
-			final DoubleRef decmoon= new DoubleRef();
-			final DoubleRef distmoon = new DoubleRef();
-			final DoubleRef georamoon = new DoubleRef();
-			final DoubleRef geodecmoon = new DoubleRef();
-			final DoubleRef geodistmoon = new DoubleRef();
-			final DoubleRef rasun = new DoubleRef();
-			final DoubleRef decsun = new DoubleRef();
-			final DoubleRef distsun = new DoubleRef();
-			final DoubleRef x = new DoubleRef();
-			final DoubleRef y = new DoubleRef();
-			final DoubleRef z = new DoubleRef();
-			final DoubleRef toporasun = new DoubleRef();
-			final DoubleRef topodecsun = new DoubleRef();
-			final double elevsea = siteAltitude;
-
-			accusun(jdut.d,sid,degreesLatitude,rasun,decsun,distsun, toporasun,topodecsun,x,y,z);
-			sunAltitude=altit(topodecsun.d,(sid-toporasun.d),degreesLatitude,az, new DoubleRef() /* [out] parang, ignored */);
-
-			accumoon(jdut.d,degreesLatitude,sid,elevsea,georamoon,geodecmoon,geodistmoon, ramoon,decmoon,distmoon);
-			lunarElevation=altit(decmoon.d,(sid-ramoon.d),degreesLatitude,az, new DoubleRef()  /* [out] parang, ignored */);
-
-			// Sky brightness
-			lunarSkyBrightness = null;
-			lunarDistance = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,objra,objdec);
-			lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d,decmoon.d,toporasun.d,topodecsun.d);
-			if(lunarElevation > -2.) {
-				if((lunarElevation > 0.) && (altitude > 0.5) && (sunAltitude < -9.)) {
-				  lunarSkyBrightness =
-				     lunskybright(lunarPhaseAngle,lunarDistance,KZEN,lunarElevation,
-						altitude,distmoon.d);
-				}
-			}
-			totalSkyBrightness = sb(180. - lunarPhaseAngle, lunarDistance, 90 - lunarElevation, 90 - altitude, 90 - sunAltitude);
-			lunarIlluminatedFraction=(float) (0.5*(1.-cos(subtend(ramoon.d,decmoon.d,rasun.d,decsun.d))));
-
-		}
+        if (epoch == null || epoch.getTime() != date.getTime() || (calculateMoon && !epoch.hasMoon())) {
+            epoch = engine.epoch(date.getTime(), calculateMoon);
+        }
+        engine.calculate(epoch, obj.getRaDeg(), obj.getDecDeg(), circumstances);
+
+        altitude = circumstances.getAltitude();
+        azimuth = circumstances.getAzimuth();
+        parallacticAngle = circumstances.getParallacticAngle();
+        airmass = circumstances.getAirmass();
+        hourAngle = circumstances.getHourAngle();
+
+        if (calculateMoon) {
+            sunAltitude = epoch.getSunAltitude();
+            lunarElevation = epoch.getLunarElevation();
+            lunarPhaseAngle = epoch.getLunarPhaseAngle();
+            lunarIlluminatedFraction = epoch.getLunarIlluminatedFraction();
+            lunarDistance = circumstances.getLunarDistance();
+            lunarSkyBrightness = Double.isNaN(circumstances.getLunarSkyBrightness()) ? null : circumstances.getLunarSkyBrightness();
+            totalSkyBrightness = circumstances.getTotalSkyBrightness();
+        }
     }
 
     /**
      * Return the LST time for the given UT time at the given site.
      */
     public Date getLst(final Date date) {
-        final DateTime dateTime = new DateTime(date);
-        final double jd = date_to_jd(dateTime);
-        final double lstHours = lst(jd, hoursLongitude);
-        return getLst(lstHours, date);
+        return engine.getLst(date);
     }
 
     public double getAltitude() {
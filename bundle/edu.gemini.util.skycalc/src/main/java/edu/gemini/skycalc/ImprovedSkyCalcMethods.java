@@ -10,6 +10,8 @@ import static java.lang.Math.pow;
 import static java.lang.Math.sin;
 import static java.lang.Math.sqrt;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
@@ -72,18 +74,20 @@ public class ImprovedSkyCalcMethods {
         final short mn;
         final double s;
 
-        private static final Calendar cal = Calendar.getInstance(UTC);
-
         DateTime(Date date) {
-        	synchronized (cal) { // v. important! [QPT-206]
-		        cal.setTime(date);
-		        y = (short)cal.get(Calendar.YEAR);
-		        mo = (short)(cal.get(Calendar.MONTH) + 1);
-		        d = (short)cal.get(Calendar.DAY_OF_MONTH);
-		        h = (short)cal.get(Calendar.HOUR_OF_DAY);
-		        mn = (short)cal.get(Calendar.MINUTE);
-		        s = cal.get(Calendar.SECOND) + cal.get(Calendar.MILLISECOND)/1000.;
-        	}
+            this(date.getTime());
+        }
+
+        // Note: this used to share a synchronized calendar [QPT-206], which made it a point of contention for
+        // concurrent calculations; the java.time classes are immutable and thread safe.
+        DateTime(long time) {
+            final LocalDateTime t = LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1000L), 0, ZoneOffset.UTC);
+            y = (short)t.getYear();
+            mo = (short)t.getMonthValue();
+            d = (short)t.getDayOfMonth();
+            h = (short)t.getHour();
+            mn = (short)t.getMinute();
+            s = t.getSecond() + Math.floorMod(time, 1000L)/1000.;
         }
     }
 
@@ -162,8 +166,6 @@ public class ImprovedSkyCalcMethods {
 	    /* all the 3-d stuff is declared as [4] 'cause I'm not using the
 	      zeroth element. */
 
-	    double ti, tf, zeta, z, theta;  /* all as per  Taff */
-	    double cosz, coszeta, costheta, sinz, sinzeta, sintheta;  /* ftns */
 	    double[][] p = new double[4][4];
 	    /* elements of the rotation matrix */
 	    double[][] n = new double[4][4];
@@ -183,44 +185,7 @@ public class ImprovedSkyCalcMethods {
 	    int i, j, k;
 
 
-	    ti = (std_epoch - 2000.) / 100.;
-	    tf = (date_epoch - 2000. - 100. * ti) / 100.;
-
-	    zeta = (2306.2181 + 1.39656 * ti + 0.000139 * ti * ti) * tf +
-	            (0.30188 - 0.000344 * ti) * tf * tf + 0.017998 * tf * tf * tf;
-	    z = zeta + (0.79280 + 0.000410 * ti) * tf * tf + 0.000205 * tf * tf * tf;
-	    theta = (2004.3109 - 0.8533 * ti - 0.000217 * ti * ti) * tf
-	            - (0.42665 + 0.000217 * ti) * tf * tf - 0.041833 * tf * tf * tf;
-
-	    /* convert to radians */
-
-	    zeta = zeta / ARCSEC_IN_RADIAN;
-	    z = z / ARCSEC_IN_RADIAN;
-	    theta = theta / ARCSEC_IN_RADIAN;
-
-	    /* compute the necessary trig functions for speed and simplicity */
-
-	    cosz = Math.cos(z);
-	    coszeta = Math.cos(zeta);
-	    costheta = Math.cos(theta);
-	    sinz = Math.sin(z);
-	    sinzeta = Math.sin(zeta);
-	    sintheta = Math.sin(theta);
-
-	    /* compute the elements of the precession matrix -- set up
-	       here as *from* standard epoch *to* input jd. */
-
-	    p[1][1] = coszeta * cosz * costheta - sinzeta * sinz;
-	    p[1][2] = -1. * sinzeta * cosz * costheta - coszeta * sinz;
-	    p[1][3] = -1. * cosz * sintheta;
-
-	    p[2][1] = coszeta * sinz * costheta + sinzeta * cosz;
-	    p[2][2] = -1. * sinzeta * sinz * costheta + coszeta * cosz;
-	    p[2][3] = -1. * sinz * sintheta;
-
-	    p[3][1] = coszeta * sintheta;
-	    p[3][2] = -1. * sinzeta * sintheta;
-	    p[3][3] = costheta;
+	    precession_matrix(std_epoch, date_epoch, p);
 
 	    if (just_precess == XFORM_DOAPPAR) {  /* if apparent place called for */
 
@@ -308,6 +273,76 @@ public class ImprovedSkyCalcMethods {
 	    xyz_cel(fin[1], fin[2], fin[3], rout, dout);
 	}
 
+	/**
+	 * Computes the precession matrix from the standard epoch to the epoch of date; the matrix
+	 * is returned in elements [1..3][1..3] of p, like in {@link #cooxform}. The matrix only depends
+	 * on the epochs so it can be shared for all coordinates that are precessed to the same epoch.
+	 */
+	protected static void precession_matrix(double std_epoch, double date_epoch, double[][] p) {
+
+	    double ti, tf, zeta, z, theta;  /* all as per  Taff */
+	    double cosz, coszeta, costheta, sinz, sinzeta, sintheta;  /* ftns */
+
+	    ti = (std_epoch - 2000.) / 100.;
+	    tf = (date_epoch - 2000. - 100. * ti) / 100.;
+
+	    zeta = (2306.2181 + 1.39656 * ti + 0.000139 * ti * ti) * tf +
+	            (0.30188 - 0.000344 * ti) * tf * tf + 0.017998 * tf * tf * tf;
+	    z = zeta + (0.79280 + 0.000410 * ti) * tf * tf + 0.000205 * tf * tf * tf;
+	    theta = (2004.3109 - 0.8533 * ti - 0.000217 * ti * ti) * tf
+	            - (0.42665 + 0.000217 * ti) * tf * tf - 0.041833 * tf * tf * tf;
+
+	    /* convert to radians */
+
+	    zeta = zeta / ARCSEC_IN_RADIAN;
+	    z = z / ARCSEC_IN_RADIAN;
+	    theta = theta / ARCSEC_IN_RADIAN;
+
+	    /* compute the necessary trig functions for speed and simplicity */
+
+	    cosz = Math.cos(z);
+	    coszeta = Math.cos(zeta);
+	    costheta = Math.cos(theta);
+	    sinz = Math.sin(z);
+	    sinzeta = Math.sin(zeta);
+	    sintheta = Math.sin(theta);
+
+	    /* compute the elements of the precession matrix -- set up
+	       here as *from* standard epoch *to* input jd. */
+
+	    p[1][1] = coszeta * cosz * costheta - sinzeta * sinz;
+	    p[1][2] = -1. * sinzeta * cosz * costheta - coszeta * sinz;
+	    p[1][3] = -1. * cosz * sintheta;
+
+	    p[2][1] = coszeta * sinz * costheta + sinzeta * cosz;
+	    p[2][2] = -1. * sinzeta * sinz * costheta + coszeta * cosz;
+	    p[2][3] = -1. * sinz * sintheta;
+
+	    p[3][1] = coszeta * sintheta;
+	    p[3][2] = -1. * sinzeta * sintheta;
+	    p[3][3] = costheta;
+	}
+
+	/**
+	 * Precesses coordinates from the standard epoch with a matrix computed by {@link #precession_matrix};
+	 * this gives the same result as {@link #cooxform} with XFORM_JUSTPRE and XFORM_FROMSTD.
+	 */
+	protected static void precess(double[][] p, double rin, double din, DoubleRef rout, DoubleRef dout) {
+	    final double radian_ra = rin / HRS_IN_RADIAN;
+	    final double radian_dec = din / DEG_IN_RADIAN;
+
+	    final double x = Math.cos(radian_dec) * Math.cos(radian_ra);
+	    final double y = Math.cos(radian_dec) * Math.sin(radian_ra);
+	    final double z = Math.sin(radian_dec);
+
+	    double fx = 0., fy = 0., fz = 0.;
+	    fx += p[1][1] * x; fx += p[1][2] * y; fx += p[1][3] * z;
+	    fy += p[2][1] * x; fy += p[2][2] * y; fy += p[2][3] * z;
+	    fz += p[3][1] * x; fz += p[3][2] * y; fz += p[3][3] * z;
+
+	    xyz_cel(fx, fy, fz, rout, dout);
+	}
+
 	/**
 	 * computes the nutation parameters delta psi and
 	 * delta epsilon at julian epoch (in years) using approximate
@@ -0,0 +1,326 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Site;
+
+import java.util.Date;
+
+import static java.lang.Math.cos;
+
+/**
+ * Stateless version of the {@link ImprovedSkyCalc} calculations which can be shared between threads.
+ * <p>
+ * The calculations are split into the parts that only depend on the time, i.e. the sidereal time,
+ * the precession matrix and the sun and moon ephemerides, which are kept in an immutable {@link Epoch},
+ * and the parts that depend on the target. Calculating many targets for the same time only requires
+ * one epoch, which is where most of the work is done; use {@link #calculate(long[], double[][], double[][], boolean)}
+ * to calculate many targets for many times at once.
+ */
+public final class SkyCalcEngine extends ImprovedSkyCalcMethods {
+
+    private final double hoursLongitude;
+    private final double degreesLatitude;
+    private final double siteAltitude;
+
+    public SkyCalcEngine(final Site site) {
+        hoursLongitude = -site.longitude/15.;
+        degreesLatitude = site.latitude;
+        siteAltitude = site.altitude;
+    }
+
+    /**
+     * The time dependent part of the calculations for a site.
+     * Epochs are immutable and can be used for any number of targets.
+     */
+    public static final class Epoch {
+
+        private final long time;
+        private final boolean moon;
+
+        private final double jdut;
+        private final double sid;
+        private final double[][] precession = new double[4][4];
+
+        private final double sunAltitude;
+        private final double ramoon;
+        private final double decmoon;
+        private final double distmoon;
+        private final double lunarElevation;
+        private final double lunarPhaseAngle;
+        private final float lunarIlluminatedFraction;
+
+        private Epoch(final SkyCalcEngine engine, final long time, final boolean calculateMoon) {
+            this.time = time;
+            this.moon = calculateMoon;
+
+            final DoubleRef jdut = new DoubleRef();
+            final DoubleRef sid = new DoubleRef();
+            final DoubleRef curepoch = new DoubleRef();
+            setup_time_place(new DateTime(time), engine.hoursLongitude, jdut, sid, curepoch);
+            precession_matrix(2000., curepoch.d, precession);
+            this.jdut = jdut.d;
+            this.sid = sid.d;
+
+            if (calculateMoon) {
+                final DoubleRef ramoon = new DoubleRef();
+                final DoubleRef decmoon = new DoubleRef();
+                final DoubleRef distmoon = new DoubleRef();
+                final DoubleRef georamoon = new DoubleRef();
+                final DoubleRef geodecmoon = new DoubleRef();
+                final DoubleRef geodistmoon = new DoubleRef();
+                final DoubleRef rasun = new DoubleRef();
+                final DoubleRef decsun = new DoubleRef();
+                final DoubleRef distsun = new DoubleRef();
+                final DoubleRef x = new DoubleRef();
+                final DoubleRef y = new DoubleRef();
+                final DoubleRef z = new DoubleRef();
+                final DoubleRef toporasun = new DoubleRef();
+                final DoubleRef topodecsun = new DoubleRef();
+                final DoubleRef az = new DoubleRef();
+                final double lat = engine.degreesLatitude;
+
+                accusun(jdut.d, sid.d, lat, rasun, decsun, distsun, toporasun, topodecsun, x, y, z);
+                sunAltitude = altit(topodecsun.d, (sid.d - toporasun.d), lat, az, new DoubleRef() /* [out] parang, ignored */);
+
+                accumoon(jdut.d, lat, sid.d, engine.siteAltitude, georamoon, geodecmoon, geodistmoon, ramoon, decmoon, distmoon);
+                lunarElevation = altit(decmoon.d, (sid.d - ramoon.d), lat, az, new DoubleRef() /* [out] parang, ignored */);
+
+                lunarPhaseAngle = DEG_IN_RADIAN * subtend(ramoon.d, decmoon.d, toporasun.d, topodecsun.d);
+                lunarIlluminatedFraction = (float) (0.5*(1.-cos(subtend(ramoon.d, decmoon.d, rasun.d, decsun.d))));
+                this.ramoon = ramoon.d;
+                this.decmoon = decmoon.d;
+                this.distmoon = distmoon.d;
+            } else {
+                sunAltitude = Double.NaN;
+                lunarElevation = Double.NaN;
+                lunarPhaseAngle = Double.NaN;
+                lunarIlluminatedFraction = Float.NaN;
+                this.ramoon = Double.NaN;
+                this.decmoon = Double.NaN;
+                this.distmoon = Double.NaN;
+            }
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /** True if the sun and moon have been calculated for this epoch. */
+        public boolean hasMoon() {
+            return moon;
+        }
+
+        /** The sidereal time in hours. */
+        public double getSiderealTime() {
+            return sid;
+        }
+
+        public double getSunAltitude() {
+            return sunAltitude;
+        }
+
+        public double getLunarElevation() {
+            return lunarElevation;
+        }
+
+        public double getLunarPhaseAngle() {
+            return lunarPhaseAngle;
+        }
+
+        public float getLunarIlluminatedFraction() {
+            return lunarIlluminatedFraction;
+        }
+
+    }
+
+    /**
+     * The target dependent results of a calculation. Instances are mutable so that callers can reuse
+     * them for many calculations, they must not be shared between threads.
+     */
+    public static final class Circumstances {
+
+        private double altitude;
+        private double azimuth;
+        private double parallacticAngle;
+        private double airmass;
+        private double hourAngle;
+        private double lunarDistance = Double.NaN;
+        private double lunarSkyBrightness = Double.NaN;
+        private double totalSkyBrightness = Double.NaN;
+
+        public double getAltitude() {
+            return altitude;
+        }
+
+        public double getAzimuth() {
+            return azimuth;
+        }
+
+        public double getParallacticAngle() {
+            return parallacticAngle;
+        }
+
+        public double getAirmass() {
+            return airmass;
+        }
+
+        public double getHourAngle() {
+            return hourAngle;
+        }
+
+        /** The lunar distance, NaN if the moon has not been calculated. */
+        public double getLunarDistance() {
+            return lunarDistance;
+        }
+
+        /** The lunar sky brightness, NaN if the moon is down or it has not been calculated. */
+        public double getLunarSkyBrightness() {
+            return lunarSkyBrightness;
+        }
+
+        /** The total sky brightness, NaN if the moon has not been calculated. */
+        public double getTotalSkyBrightness() {
+            return totalSkyBrightness;
+        }
+
+    }
+
+    /**
+     * The results of a batch calculation for one target, one value per time in each column.
+     * The arrays must not be modified.
+     */
+    public static final class Columns {
+
+        public final double[] altitude;
+        public final double[] azimuth;
+        public final double[] parallacticAngle;
+        public final double[] airmass;
+        public final double[] hourAngle;
+        public final double[] lunarDistance;
+        public final double[] lunarSkyBrightness;
+        public final double[] totalSkyBrightness;
+
+        private Columns(final int size) {
+            altitude = new double[size];
+            azimuth = new double[size];
+            parallacticAngle = new double[size];
+            airmass = new double[size];
+            hourAngle = new double[size];
+            lunarDistance = new double[size];
+            lunarSkyBrightness = new double[size];
+            totalSkyBrightness = new double[size];
+        }
+
+        private void set(final int ix, final Circumstances c) {
+            altitude[ix] = c.altitude;
+            azimuth[ix] = c.azimuth;
+            parallacticAngle[ix] = c.parallacticAngle;
+            airmass[ix] = c.airmass;
+            hourAngle[ix] = c.hourAngle;
+            lunarDistance[ix] = c.lunarDistance;
+            lunarSkyBrightness[ix] = c.lunarSkyBrightness;
+            totalSkyBrightness[ix] = c.totalSkyBrightness;
+        }
+
+    }
+
+    /**
+     * Return the LST time for the given UT time at the given site.
+     */
+    public Date getLst(final Date date) {
+        final double lstHours = lst(date_to_jd(new DateTime(date)), hoursLongitude);
+        return getLst(lstHours, date);
+    }
+
+    /**
+     * Calculates the time dependent part for the given time; the sun and moon are only calculated
+     * if requested.
+     */
+    public Epoch epoch(final long time, final boolean calculateMoon) {
+        return new Epoch(this, time, calculateMoon);
+    }
+
+    /**
+     * Calculates the circumstances for a target at the given epoch.
+     * @param raDeg the J2000 right ascension in degrees
+     * @param decDeg the J2000 declination in degrees
+     */
+    public Circumstances calculate(final Epoch epoch, final double raDeg, final double decDeg) {
+        final Circumstances c = new Circumstances();
+        calculate(epoch, raDeg, decDeg, c);
+        return c;
+    }
+
+    /**
+     * Calculates the circumstances for a target at the given epoch and stores them in the given object.
+     * The moon related values are only calculated if the epoch has the moon.
+     */
+    public void calculate(final Epoch epoch, final double raDeg, final double decDeg, final Circumstances out) {
+        final DoubleRef az = new DoubleRef();
+        final DoubleRef par = new DoubleRef();
+        final DoubleRef curra = new DoubleRef();
+        final DoubleRef curdec = new DoubleRef();
+
+        final double objra = raDeg/15;
+        final double objdec = decDeg;
+
+        precess(epoch.precession, objra, objdec, curra, curdec);
+
+        final double ha = adj_time(epoch.sid - curra.d);
+        final double alt = altit(curdec.d, ha, degreesLatitude, az, par);
+
+        out.airmass = getAirmass(alt);
+        out.altitude = alt;
+        out.azimuth = az.d;
+        out.parallacticAngle = par.d;
+        out.hourAngle = ha;
+
+        if (epoch.moon) {
+            final double lunarDistance = DEG_IN_RADIAN * subtend(epoch.ramoon, epoch.decmoon, objra, objdec);
+            out.lunarDistance = lunarDistance;
+            out.lunarSkyBrightness = Double.NaN;
+            if ((epoch.lunarElevation > 0.) && (alt > 0.5) && (epoch.sunAltitude < -9.)) {
+                out.lunarSkyBrightness =
+                    lunskybright(epoch.lunarPhaseAngle, lunarDistance, KZEN, epoch.lunarElevation, alt, epoch.distmoon);
+            }
+            out.totalSkyBrightness = sb(180. - epoch.lunarPhaseAngle, lunarDistance, 90 - epoch.lunarElevation, 90 - alt, 90 - epoch.sunAltitude);
+        } else {
+            out.lunarDistance = Double.NaN;
+            out.lunarSkyBrightness = Double.NaN;
+            out.totalSkyBrightness = Double.NaN;
+        }
+    }
+
+    /**
+     * Calculates the circumstances for many targets at many times. The epoch for each time is only
+     * calculated once and shared between all targets.
+     * @param times the times to calculate
+     * @param raDeg the J2000 right ascensions in degrees for each target; each row holds either one
+     *              position per time for moving targets or a single position that is used for all times
+     * @param decDeg the J2000 declinations in degrees, organised like the right ascensions
+     * @param calculateMoon true if the moon related values are needed
+     * @return the results for each target
+     */
+    public Columns[] calculate(final long[] times, final double[][] raDeg, final double[][] decDeg, final boolean calculateMoon) {
+        if (raDeg.length != decDeg.length) throw new IllegalArgumentException("different number of right ascensions and declinations");
+
+        final Columns[] result = new Columns[raDeg.length];
+        for (int i = 0; i < result.length; ++i) {
+            if (raDeg[i].length != decDeg[i].length || (raDeg[i].length != 1 && raDeg[i].length != times.length)) {
+                throw new IllegalArgumentException("expected 1 or " + times.length + " positions for target " + i);
+            }
+            result[i] = new Columns(times.length);
+        }
+
+        final Circumstances c = new Circumstances();
+        for (int ix = 0; ix < times.length; ++ix) {
+            final Epoch epoch = epoch(times[ix], calculateMoon);
+            for (int i = 0; i < result.length; ++i) {
+                final int p = (raDeg[i].length == 1) ? 0 : ix;
+                calculate(epoch, raDeg[i][p], decDeg[i][p], c);
+                result[i].set(ix, c);
+            }
+        }
+        return result;
+    }
+
+}
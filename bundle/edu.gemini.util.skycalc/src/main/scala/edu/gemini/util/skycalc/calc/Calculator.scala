@@ -4,16 +4,26 @@ package edu.gemini.util.skycalc.calc
  * Base trait for all calculators.
  * A calculator basically holds a matrix of values which are sampled at defined points in time over a given interval.
  * For each sampling point in time a vector with an arbitrary number of values can be stored.
+ * The values are stored as one primitive array (column) per field, the sampling times are kept in a primitive
+ * array too; calculators for many targets are kept around in places like QV so we want to avoid boxing here.
  */
 trait Calculator {
 
-  val times: Vector[Long]
+  def times: Vector[Long]
   def toIndex(t: Long): Int
-  val values: Vector[Vector[Double]]
 
-  lazy val start = times.head
-  lazy val end = times.last
-  lazy val samples = times.size
+  /** The sampling times as a primitive array; must not be modified. */
+  protected def timeColumn: Array[Long]
+
+  /**
+   * One column with a value for each sampling time per field; must not be modified. The arrays are
+   * shared, so they are only visible to the calculators, everybody else uses the accessors below.
+   */
+  protected[skycalc] val values: Array[Array[Double]]
+
+  lazy val start = timeColumn(0)
+  lazy val end = timeColumn(timeColumn.length - 1)
+  lazy val samples = timeColumn.length
 
   /** True if the values for the given time are covered by this target. */
   def isDefinedAt(t: Long) = t >= start && t <= end
@@ -21,9 +31,29 @@ trait Calculator {
   def valueAt(field: Int, t: Long) = values(field)(toIndex(t))
   def timedValues(field: Int) = times.zip(values(field))
 
-  def min(field: Int): Double = values(field).min
-  def max(field: Int): Double = values(field).max
-  def mean(field: Int): Double = values(field).sum / samples
+  def min(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    var ix = 1
+    while (ix < vs.length) { m = Math.min(m, vs(ix)); ix += 1 }
+    m
+  }
+
+  def max(field: Int): Double = {
+    val vs = values(field)
+    var m = vs(0)
+    var ix = 1
+    while (ix < vs.length) { m = Math.max(m, vs(ix)); ix += 1 }
+    m
+  }
+
+  def mean(field: Int): Double = {
+    val vs = values(field)
+    var sum = 0.0
+    var ix = 0
+    while (ix < vs.length) { sum += vs(ix); ix += 1 }
+    sum / samples
+  }
 
 }
 
@@ -33,7 +63,8 @@ trait Calculator {
  */
 trait SingleValueCalculator extends Calculator {
   val time: Long
-  val times = Vector(time)
+  lazy val times = Vector(time)
+  protected val timeColumn: Array[Long] = Array(time)
   def toIndex(t: Long) = 0
 }
 
@@ -52,25 +83,26 @@ trait FixedRateCalculator extends Calculator {
   // the precise rate in milliseconds that corresponds to the expected rate
   private val preciseRate: Double = defined.duration.toDouble / cnt
 
-  /** Calculates a vector with times that cover the given interval. */
-  val times: Vector[Long] = {
-    val ts = for {
-      i <- 0 to cnt
-    } yield {
-      Math.ceil(defined.start + i*preciseRate).toLong     // always round up
+  /** Calculates the times that cover the given interval. */
+  protected val timeColumn: Array[Long] = {
+    val ts = new Array[Long](cnt + 1)
+    for (i <- 0 to cnt) {
+      ts(i) = Math.ceil(defined.start + i*preciseRate).toLong     // always round up
     }
-    require(ts.head == defined.start)
-    require(ts.last >= defined.end)
-    Vector(ts:_*)
+    require(ts(0) == defined.start)
+    require(ts(cnt) >= defined.end)
+    ts
   }
 
+  lazy val times: Vector[Long] = timeColumn.toVector
+
   /** Gets the index to the left of the given value t. */
   def toIndex(t: Long) = {
     require(t >= start)
     require(t <= end)
     val ix = Math.floor((t - start) / preciseRate).toInt   // always round down; the sample at this index gives a value <= t
-    require(times(ix) <= t)
-    require(ix == samples-1 || times(ix+1) > t)
+    require(timeColumn(ix) <= t)
+    require(ix == samples-1 || timeColumn(ix+1) > t)
     ix
   }
 
@@ -84,13 +116,22 @@ trait IrregularIntervalCalculator extends Calculator {
   require(times.size > 0)
 
   /** Irregular interval calculators need to define a vector of times at which to sample the data. */
-  val times: Vector[Long]
+  def times: Vector[Long]
+
+  protected lazy val timeColumn: Array[Long] = times.toArray
 
   /** Gets the index to the left of the given value t. */
   def toIndex(t: Long) = {
     require(t >= start)
     require(t <= end)
-    val ix = times.zipWithIndex.reverse.dropWhile(_._1 > t).head._2
+    // binary search for the last sample at or before t
+    var lo = 0
+    var hi = samples - 1
+    while (lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if (timeColumn(mid) <= t) lo = mid else hi = mid - 1
+    }
+    val ix = lo
     // postconditions: useful for debugging / documentation
     // require(ix >= 0 && ix < samples)
     // require(times(ix) <= t && (ix == samples-1 || times(ix+1) > t))
@@ -110,11 +151,11 @@ trait LinearInterpolatingCalculator extends Calculator {
    */
   override def valueAt(field: Int, t: Long): Double = {
     val ix = toIndex(t)
-    val t0 = times(ix)
+    val t0 = timeColumn(ix)
     val v0 = values(field)(ix)
     if (t0 == t || ix == samples-1) v0
     else {
-      val t1 = times(ix+1)
+      val t1 = timeColumn(ix+1)
       // require(t0 <= t && t < t1)
       val v1 = values(field)(ix+1)
       val v = v0 + (t - t0).toDouble/(t1 - t0) * (v1 - v0)
@@ -1,9 +1,7 @@
 package edu.gemini.util.skycalc.calc
 
-import edu.gemini.skycalc.{MoonCalc, TimeUtils, ImprovedSkyCalc}
-import java.util.Date
+import edu.gemini.skycalc.{MoonCalc, TimeUtils, SkyCalcEngine}
 import edu.gemini.spModel.core.Site
-import jsky.coords.WorldCoords
 import edu.gemini.util.skycalc.calc.MoonCalculator.Fields
 import javax.swing.Icon
 import java.awt.geom.Arc2D
@@ -17,7 +15,7 @@ trait MoonCalculator extends Calculator {
 
   val site: Site
 
-  val values: Vector[Vector[Double]] = calculate()
+  protected[skycalc] val values: Array[Array[Double]] = calculate()
 
   import Fields._
 
@@ -45,38 +43,20 @@ trait MoonCalculator extends Calculator {
   lazy val fullMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.FULL)
   lazy val lastQuarterMoons: Seq[Long] = MoonCalculator.calculatePhases(site, Interval(start, end), MoonCalc.Phase.LAST_QUARTER)
 
-  protected def calculate() = {
-    val skycalc = new ImprovedSkyCalc(site)
-    val dummy = new WorldCoords(0, 0)
-
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
+  protected def calculate(): Array[Array[Double]] = {
+    val engine = new SkyCalcEngine(site)
+
+    // IMPORTANT: The columns are indexed by the id values of the field enums!
+    val values = Array.fill(Fields.maxId)(new Array[Double](samples))
     for (ix <- 0 to samples-1) {
-      val t = times(ix)
-      skycalc.calculate(dummy, new Date(t), true)
-      values(Elevation.id)(ix) = skycalc.getLunarElevation
-      values(PhaseAngle.id)(ix) = skycalc.getLunarPhaseAngle
-      values(IlluminatedFraction.id)(ix) = skycalc.getLunarIlluminatedFraction
-      values(SkyBrightness.id)(ix) = if (skycalc.getLunarSkyBrightness == null) 0.0 else skycalc.getLunarSkyBrightness.toDouble
+      val epoch = engine.epoch(timeColumn(ix), true)
+      val lunarSkyBrightness = engine.calculate(epoch, 0, 0).getLunarSkyBrightness
+      values(Elevation.id)(ix) = epoch.getLunarElevation
+      values(PhaseAngle.id)(ix) = epoch.getLunarPhaseAngle
+      values(IlluminatedFraction.id)(ix) = epoch.getLunarIlluminatedFraction
+      values(SkyBrightness.id)(ix) = if (lunarSkyBrightness.isNaN) 0.0 else lunarSkyBrightness
     }
-
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(PhaseAngle.id):_*),
-      Vector(values(IlluminatedFraction.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
+    values
   }
 }
 
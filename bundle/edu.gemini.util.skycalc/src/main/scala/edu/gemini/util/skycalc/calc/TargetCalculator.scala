@@ -1,8 +1,7 @@
 package edu.gemini.util.skycalc.calc
 
 import edu.gemini.spModel.core.{Coordinates, Site}
-import edu.gemini.skycalc.{ImprovedSkyCalc, TimeUtils}
-import java.util.Date
+import edu.gemini.skycalc.{SkyCalcEngine, TimeUtils}
 
 import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
 
@@ -10,7 +9,7 @@ import edu.gemini.util.skycalc.calc.TargetCalculator.Fields
  * Target calculator that allows to calculate different attributes of a target for a given interval at a given sampling
  * rate. The purpose of this trait is twofold:
  * <ul>
- *   <li>It is a Scala facade to the Java skycalc code in {@see edu.gemini.skycalc.ImprovedSkyCalc}.</li>
+ *   <li>It is a Scala facade to the Java skycalc code in {@see edu.gemini.skycalc.SkyCalcEngine}.</li>
  *   <li>It caches the values for a target for a given interval and sampling rate; this is relevant for places
  *       where these values are needed repetitively because the calculation is pretty complex and slow.</li>
  * </ul>
@@ -23,7 +22,7 @@ trait TargetCalculator extends Calculator {
   val site: Site
   val targetLocation: Long => Coordinates
 
-  val values: Vector[Vector[Double]] = calculate()
+  protected[skycalc] val values: Array[Array[Double]] = calculate()
 
   import Fields._
 
@@ -69,30 +68,35 @@ trait TargetCalculator extends Calculator {
   // If the target is visible during the scheduled time, return the weighted mean parallactic angle as Some(angle in degrees).
   // Otherwise, the target is not visible, so return None.
   lazy val weightedMeanParallacticAngle: Option[Double] = {
-    val (weightedAngles, weights) = values(ParallacticAngle.id).zip(times).zip(values(Airmass.id)).map {
-      case ((angle, t), airmass) =>
-        // Wrap negative angles as per Andy's comment in OCSADV-16.
-        val normalizedAngle = {
-          if (angle < 0) {
-            val normalizingFactor = {
-              val dec = targetLocation(t).dec.toDegrees
-              if (dec - site.latitude < -10) 0
-              else if (dec - site.latitude < 10) 180
-              else 360
-            }
-            angle + normalizingFactor
+    val angles = values(ParallacticAngle.id)
+    val airmasses = values(Airmass.id)
+    var weightedAngles = 0.0
+    var weights = 0.0
+    for (ix <- 0 until samples) {
+      val angle = angles(ix)
+      val airmass = airmasses(ix)
+      // Wrap negative angles as per Andy's comment in OCSADV-16.
+      val normalizedAngle = {
+        if (angle < 0) {
+          val normalizingFactor = {
+            val dec = targetLocation(timeColumn(ix)).dec.toDegrees
+            if (dec - site.latitude < -10) 0
+            else if (dec - site.latitude < 10) 180
+            else 360
           }
-          else angle
+          angle + normalizingFactor
         }
+        else angle
+      }
 
-        //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
-        val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
-        (normalizedAngle * weight, weight)
-    }.unzip
+      //val weight = if (airmass <= 1.0) 0.0 else 1.6 * math.pow(airmass - 1.0, 0.6)
+      val weight = if (airmass <= 1.0) 0.0 else math.pow(airmass - 1.0, 1.3)
+      weightedAngles += normalizedAngle * weight
+      weights += weight
+    }
 
-    val weightedSum = weights.sum
-    if (weightedSum == 0) None
-    else Some(weightedAngles.sum / weightedSum)
+    if (weights == 0) None
+    else Some(weightedAngles / weights)
   }
 
   def hourAngleAt(t: Long): Double = valueAt(HourAngle.id, t)
@@ -109,45 +113,9 @@ trait TargetCalculator extends Calculator {
    * Calculates all values for the given times.
    * @return
    */
-  protected def calculate() = {
-    val skycalc = new ImprovedSkyCalc(site)
-
-    // prepare temporary data structure
-    val values = Array (
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples),
-      new Array[Double](samples)
-    )
-    // fill temporary data structure with calculated values
-    for (ix <- 0 to samples-1) {
-      val t = times(ix)
-      skycalc.calculate(targetLocation(t), new Date(t), true)
-      values(Elevation.id)(ix) = skycalc.getAltitude
-      values(Azimuth.id)(ix) = skycalc.getAzimuth
-      values(Airmass.id)(ix) = skycalc.getAirmass
-      values(LunarDistance.id)(ix) = skycalc.getLunarDistance
-      values(ParallacticAngle.id)(ix) = skycalc.getParallacticAngle
-      values(HourAngle.id)(ix) = skycalc.getHourAngle
-      values(SkyBrightness.id)(ix) = skycalc.getTotalSkyBrightness.doubleValue
-    }
-
-    // turn into immutable data structure
-    Vector(
-      // IMPORTANT: Make sure the order reflects the id values of the field enums!
-      Vector(values(Elevation.id):_*),
-      Vector(values(Azimuth.id):_*),
-      Vector(values(Airmass.id):_*),
-      Vector(values(LunarDistance.id):_*),
-      Vector(values(ParallacticAngle.id):_*),
-      Vector(values(HourAngle.id):_*),
-      Vector(values(SkyBrightness.id):_*)
-    )
+  protected def calculate(): Array[Array[Double]] =
+    TargetCalculator.calculate(site, Vector(targetLocation), timeColumn).head
 
-  }
 }
 
 case class IntervalTargetCalculator(site: Site, targetLocation: Long => Coordinates, defined: Interval, rate: Long) extends FixedRateCalculator with LinearInterpolatingCalculator with TargetCalculator
@@ -156,6 +124,11 @@ case class SampleTargetCalculator(site: Site, targetLocation: Long => Coordinate
 
 case class SingleValueTargetCalculator(site: Site, targetLocation: Long => Coordinates, time: Long) extends SingleValueCalculator with TargetCalculator
 
+/** Target calculator for one of several targets whose values are calculated together, see {@link TargetCalculator.batch}. */
+private class BatchTargetCalculator(val site: Site, val targetLocation: Long => Coordinates, val defined: Interval, val rate: Long, batch: TargetCalculator.Batch, index: Int) extends FixedRateCalculator with LinearInterpolatingCalculator with TargetCalculator {
+  override protected def calculate(): Array[Array[Double]] = batch.values(timeColumn)(index)
+}
+
 object TargetCalculator {
 
   /** Enumeration that defines the different fields for this calculator for indexed access in sequence. */
@@ -173,5 +146,52 @@ object TargetCalculator {
   def apply(site: Site, targetLocation: Long => Coordinates, times: Vector[Long]): TargetCalculator = {
     new SampleTargetCalculator(site, targetLocation, times)
   }
+
+  /**
+   * Creates calculators for several targets for the same interval and sampling rate. The values for all targets
+   * are calculated together, this allows to share the sun, moon and sidereal time calculations for a given
+   * time between all targets, which makes up for most of the work needed for a single target.
+   */
+  def batch(site: Site, targetLocations: Seq[Long => Coordinates], defined: Interval, rate: Long = TimeUtils.seconds(30)): Seq[TargetCalculator] = {
+    val b = new Batch(site, targetLocations.toVector)
+    targetLocations.zipWithIndex.map { case (l, ix) => new BatchTargetCalculator(site, l, defined, rate, b, ix) }
+  }
+
+  /** Calculates the values for all targets of a batch the first time they are needed. */
+  private[calc] class Batch(site: Site, targetLocations: Vector[Long => Coordinates]) {
+    private var calculated: Vector[Array[Array[Double]]] = null
+
+    def values(times: Array[Long]): Vector[Array[Array[Double]]] = synchronized {
+      if (calculated == null) calculated = calculate(site, targetLocations, times)
+      calculated
+    }
+  }
+
+  /**
+   * Calculates the values for the given targets at the given times, the result holds the columns for each target.
+   * The engine calculates the time dependent parts only once for all targets.
+   */
+  private def calculate(site: Site, targetLocations: Vector[Long => Coordinates], times: Array[Long]): Vector[Array[Array[Double]]] = {
+    val ras  = targetLocations.map(_ => new Array[Double](times.length)).toArray
+    val decs = targetLocations.map(_ => new Array[Double](times.length)).toArray
+    for (i <- targetLocations.indices; ix <- times.indices) {
+      val c = targetLocations(i)(times(ix))
+      ras(i)(ix)  = c.ra.toDegrees
+      decs(i)(ix) = c.dec.toDegrees
+    }
+
+    new SkyCalcEngine(site).calculate(times, ras, decs, true).toVector.map { c =>
+      // IMPORTANT: Make sure the order reflects the id values of the field enums!
+      Array(
+        c.altitude,
+        c.azimuth,
+        c.airmass,
+        c.lunarDistance,
+        c.parallacticAngle,
+        c.hourAngle,
+        c.totalSkyBrightness
+      )
+    }
+  }
 }
 
@@ -0,0 +1,66 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Site;
+import jsky.coords.WorldCoords;
+import junit.framework.TestCase;
+
+import java.util.Date;
+import java.util.Iterator;
+
+/**
+ * Compares the bracketing elevation constraint solvers with a stepping solver that
+ * evaluates the constraint every minute.
+ */
+public class ElevationConstraintSolverTest extends TestCase {
+
+    private static final long START = 1477958400000L; // 2016-11-01 00:00 UTC
+    private static final long END   = START + 3 * TimeUtils.MS_PER_DAY;
+
+    private static Solver stepping(final Site site, final WorldCoords coords, final boolean airmass, final double min, final double max) {
+        final ImprovedSkyCalc calc = new ImprovedSkyCalc(site);
+        return new Solver(TimeUtils.MS_PER_MINUTE, TimeUtils.MS_PER_MINUTE) {
+            @Override
+            protected boolean f(long t) {
+                calc.calculate(coords, new Date(t), false);
+                final double v = airmass ? calc.getAirmass() : calc.getHourAngle();
+                return (min <= v) && (v <= max);
+            }
+        };
+    }
+
+    private static void assertSameSolution(Union<Interval> expected, Union<Interval> actual) {
+        final String msg = "expected " + expected + " but was " + actual;
+        assertEquals(msg, expected.getIntervals().size(), actual.getIntervals().size());
+        final Iterator<Interval> it = actual.iterator();
+        for (Interval e : expected) {
+            final Interval a = it.next();
+            assertTrue(msg, Math.abs(e.getStart() - a.getStart()) <= 2 * TimeUtils.MS_PER_MINUTE);
+            assertTrue(msg, Math.abs(e.getEnd() - a.getEnd()) <= 2 * TimeUtils.MS_PER_MINUTE);
+        }
+    }
+
+    public void testAirmass() {
+        for (Site site : Site.values()) {
+            for (int ra = 0; ra < 360; ra += 60) {
+                for (int dec = -85; dec < 90; dec += 35) {
+                    final WorldCoords coords = new WorldCoords(ra, dec);
+                    for (double[] l : new double[][] {{1.0, 2.0}, {1.1, 1.3}}) {
+                        assertSameSolution(stepping(site, coords, true, l[0], l[1]).solve(START, END),
+                                   ElevationConstraintSolver.forAirmass(site, coords, l[0], l[1]).solve(START, END));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testHourAngle() {
+        for (int ra = 0; ra < 360; ra += 60) {
+            for (int dec = -85; dec < 90; dec += 35) {
+                final WorldCoords coords = new WorldCoords(ra, dec);
+                assertSameSolution(stepping(Site.GS, coords, false, -2.5, 1.5).solve(START, END),
+                           ElevationConstraintSolver.forHourAngle(Site.GS, coords, -2.5, 1.5).solve(START, END));
+            }
+        }
+    }
+
+}
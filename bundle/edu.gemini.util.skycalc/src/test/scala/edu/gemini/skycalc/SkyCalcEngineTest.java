@@ -0,0 +1,130 @@
+package edu.gemini.skycalc;
+
+import edu.gemini.spModel.core.Site;
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for the {@link SkyCalcEngine} class.
+ */
+public final class SkyCalcEngineTest extends TestCase {
+
+    private static final long START = 1477958400000L; // 2016-11-01 00:00 UTC
+
+    private static long[] times(int count) {
+        final long[] times = new long[count];
+        for (int i = 0; i < count; ++i) times[i] = START + i * TimeUtils.MS_PER_HOUR / 4;
+        return times;
+    }
+
+    public void testDateTime() {
+        final Random r = new Random(1);
+        final Calendar cal = new GregorianCalendar(ImprovedSkyCalcMethods.UTC);
+        for (int i = 0; i < 10000; ++i) {
+            final long t = START + (r.nextLong() % (40L * 365 * TimeUtils.MS_PER_DAY));
+            cal.setTimeInMillis(t);
+            final ImprovedSkyCalcMethods.DateTime dt = new ImprovedSkyCalcMethods.DateTime(t);
+            assertEquals(cal.get(Calendar.YEAR), dt.y);
+            assertEquals(cal.get(Calendar.MONTH) + 1, dt.mo);
+            assertEquals(cal.get(Calendar.DAY_OF_MONTH), dt.d);
+            assertEquals(cal.get(Calendar.HOUR_OF_DAY), dt.h);
+            assertEquals(cal.get(Calendar.MINUTE), dt.mn);
+            assertEquals(cal.get(Calendar.SECOND) + cal.get(Calendar.MILLISECOND)/1000., dt.s, 0);
+        }
+    }
+
+    public void testEpoch() {
+        final SkyCalcEngine engine = new SkyCalcEngine(Site.GS);
+        final SkyCalcEngine.Epoch withMoon = engine.epoch(START, true);
+        final SkyCalcEngine.Epoch withoutMoon = engine.epoch(START, false);
+        assertTrue(withMoon.hasMoon());
+        assertFalse(withoutMoon.hasMoon());
+        assertEquals(withMoon.getSiderealTime(), withoutMoon.getSiderealTime(), 0);
+        assertTrue(Double.isNaN(withoutMoon.getLunarElevation()));
+
+        // the target dependent values must not depend on whether the moon was calculated
+        final SkyCalcEngine.Circumstances a = engine.calculate(withMoon, 150, -30);
+        final SkyCalcEngine.Circumstances b = engine.calculate(withoutMoon, 150, -30);
+        assertEquals(a.getAltitude(), b.getAltitude(), 0);
+        assertEquals(a.getAzimuth(), b.getAzimuth(), 0);
+        assertEquals(a.getHourAngle(), b.getHourAngle(), 0);
+        assertFalse(Double.isNaN(a.getTotalSkyBrightness()));
+        assertTrue(Double.isNaN(b.getTotalSkyBrightness()));
+    }
+
+    public void testBatch() {
+        final SkyCalcEngine engine = new SkyCalcEngine(Site.GN);
+        final long[] times = times(96);
+
+        // two fixed targets and a moving one
+        final double[][] ra = { {10}, {200}, new double[times.length] };
+        final double[][] dec = { {-20}, {45}, new double[times.length] };
+        for (int ix = 0; ix < times.length; ++ix) {
+            ra[2][ix] = 100 + ix * 0.1;
+            dec[2][ix] = 10 - ix * 0.1;
+        }
+
+        final SkyCalcEngine.Columns[] columns = engine.calculate(times, ra, dec, true);
+        assertEquals(3, columns.length);
+        for (int i = 0; i < columns.length; ++i) {
+            for (int ix = 0; ix < times.length; ++ix) {
+                final int p = (ra[i].length == 1) ? 0 : ix;
+                final SkyCalcEngine.Circumstances c = engine.calculate(engine.epoch(times[ix], true), ra[i][p], dec[i][p]);
+                assertEquals(c.getAltitude(), columns[i].altitude[ix], 0);
+                assertEquals(c.getAirmass(), columns[i].airmass[ix], 0);
+                assertEquals(c.getParallacticAngle(), columns[i].parallacticAngle[ix], 0);
+                assertEquals(c.getLunarDistance(), columns[i].lunarDistance[ix], 0);
+                assertEquals(c.getLunarSkyBrightness(), columns[i].lunarSkyBrightness[ix], 0);
+                assertEquals(c.getTotalSkyBrightness(), columns[i].totalSkyBrightness[ix], 0);
+            }
+        }
+    }
+
+    public void testBatchPositions() {
+        final SkyCalcEngine engine = new SkyCalcEngine(Site.GN);
+        try {
+            engine.calculate(times(10), new double[][] {{0, 1}}, new double[][] {{0, 1}}, false);
+            fail("expected an exception for a wrong number of positions");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testConcurrentUse() throws Exception {
+        final SkyCalcEngine engine = new SkyCalcEngine(Site.GS);
+        final long[] times = times(96);
+        final double[][] ra = new double[24][], dec = new double[24][];
+        for (int i = 0; i < ra.length; ++i) {
+            ra[i] = new double[] { i * 15 };
+            dec[i] = new double[] { -80 + i * 7 };
+        }
+        final SkyCalcEngine.Columns[] expected = engine.calculate(times, ra, dec, true);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final Future<?>[] fs = new Future<?>[8];
+            for (int n = 0; n < fs.length; ++n) {
+                fs[n] = pool.submit(() -> {
+                    final SkyCalcEngine.Columns[] actual = engine.calculate(times, ra, dec, true);
+                    for (int i = 0; i < ra.length; ++i) {
+                        for (int ix = 0; ix < times.length; ++ix) {
+                            assertEquals(expected[i].altitude[ix], actual[i].altitude[ix], 0);
+                            assertEquals(expected[i].totalSkyBrightness[ix], actual[i].totalSkyBrightness[ix], 0);
+                        }
+                    }
+                });
+            }
+            for (Future<?> f : fs) f.get(1, TimeUnit.MINUTES);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
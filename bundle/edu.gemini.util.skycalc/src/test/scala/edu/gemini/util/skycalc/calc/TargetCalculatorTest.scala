@@ -46,6 +46,37 @@ class TargetCalculatorTest {
     assertEquals(37, target.minElevation, 1)
   }
 
+  @Test def calculatesTargetSamples(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val c = (_: Long) => Coordinates.fromDegrees(150, 20).get
+    val times = Vector(t, t + TimeUtils.minutes(10), t + TimeUtils.hours(1), t + TimeUtils.hours(3))
+    val target = TargetCalculator(Site.GN, c, times)
+
+    // check lookup of samples and interpolation between them
+    times.foreach(s => assertEquals(TargetCalculator(Site.GN, c, s).elevation, target.elevationAt(s), 0))
+    val e0 = target.elevationAt(times(1))
+    val e1 = target.elevationAt(times(2))
+    assertEquals((e0 + e1) / 2, target.elevationAt(times(1) + TimeUtils.minutes(25)), 1e-9)
+    assertEquals(times.map(target.elevationAt).max, target.maxElevation, 0)
+  }
+
+  @Test def calculatesTargetBatch(): Unit = {
+    val t = TimeUtils.time(2014, 3, 1, 20, 0, Site.GN.timezone)
+    val interval = Interval(t, t + TimeUtils.hours(4))
+    val cs = for (ra <- 0 until 360 by 60; dec <- -60 to 60 by 60) yield (_: Long) => Coordinates.fromDegrees(ra, dec).get
+    val batch = TargetCalculator.batch(Site.GN, cs, interval, TimeUtils.minutes(5))
+
+    // batch calculations must give the same results as calculations for single targets
+    assertEquals(cs.size, batch.size)
+    cs.zip(batch).foreach { case (c, b) =>
+      val single = TargetCalculator(Site.GN, c, interval, TimeUtils.minutes(5))
+      assertEquals(single.times, b.times)
+      TargetCalculator.Fields.values.foreach { f =>
+        assertArrayEquals(single.values(f.id), b.values(f.id), 0)
+      }
+    }
+  }
+
   // === this is for performance trimming purposes, not an actual test case
 
   @Ignore
@@ -10,6 +10,7 @@ import javax.security.auth.Subject
 import scalaz._
 import Scalaz._
 import edu.gemini.spModel.core.{VersionException, Version}
+import edu.gemini.shared.util.metrics.Metrics
 import java.util.logging.{Level, Logger}
 import scala.util.DynamicVariable
 
@@ -34,11 +35,16 @@ abstract class TrpcServlet(auth: KeyService) extends HttpServlet {
             a  <- req.payload // our argument array
             ps <- subject(a._2)
             a <- withService(c, ps) { t => t.getClass.getCompatibleMethod(n, a._1).map { m =>
+                // Timed once the method is known, so that bad requests can't
+                // create metrics.
+                val start = System.nanoTime
                 try {
                   m.setAccessible(true) // public stuff isn't visible if the class isn't public
                   m.invoke(t, a._1: _*)
                 } catch {
                   case ite:InvocationTargetException => throw ite.getCause // unwrap the exception
+                } finally {
+                  Metrics.instance.recordTime(s"${TrpcServlet.MetricPrefix}$c.$n", start)
                 }
               }
             }
@@ -70,3 +76,10 @@ abstract class TrpcServlet(auth: KeyService) extends HttpServlet {
   protected def withService[B](clazz: String, ps: Set[Principal])(f: Any => B): B
 
 }
+
+object TrpcServlet {
+
+  /** Prefix of the metrics recording remote calls, by service class and method. */
+  val MetricPrefix = "trpc."
+
+}
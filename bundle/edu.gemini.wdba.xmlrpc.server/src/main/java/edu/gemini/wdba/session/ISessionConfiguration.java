@@ -9,4 +9,10 @@ public interface ISessionConfiguration {
 
     public void initialize(ISessionEventProducer producer);
 
+    /**
+     * Releases whatever the configuration created for its sessions, once
+     * they are no longer used.
+     */
+    public void shutdown();
+
 }
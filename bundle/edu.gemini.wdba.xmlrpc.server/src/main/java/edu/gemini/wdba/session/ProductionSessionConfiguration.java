@@ -4,26 +4,63 @@ import edu.gemini.wdba.glue.api.WdbaContext;
 import edu.gemini.wdba.session.dbup.DBUpdateService;
 import edu.gemini.wdba.session.dbup.AllEventsLoggingService;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
 //
 // Gemini Observatory/AURA
 // $Id: ProductionSessionConfiguration.java 838 2007-05-06 05:10:20Z gillies $
 //
 
 public final class ProductionSessionConfiguration implements ISessionConfiguration {
+    private static final Logger LOG = Logger.getLogger(ProductionSessionConfiguration.class.getName());
+
+    // Number of observations whose events may be written at the same time.
+    private static final int WRITER_THREADS = 4;
+
+    // How long shutdown waits for the events being written.
+    private static final long SHUTDOWN_WAIT_SECS = 30;
 
     private final WdbaContext ctx;
 
+    // Writes the observation events of all the sessions.
+    private final ExecutorService writers;
+
     public ProductionSessionConfiguration(WdbaContext ctx) {
         this.ctx = ctx;
+        this.writers = Executors.newFixedThreadPool(WRITER_THREADS, r -> {
+            final Thread w = new Thread(r, "DBUpdate-writer");
+            w.setDaemon(true);
+            return w;
+        });
     }
 
     public void initialize(ISessionEventProducer producer) {
 
         // Start the service that logs events to the database
-        new DBUpdateService(producer, ctx);
+        new DBUpdateService(producer, ctx, writers);
 
         // Start a service that logs all events to LOG4j
         new AllEventsLoggingService(producer);
     }
 
+    /**
+     * Stops the event writers, waiting for the events already queued to be
+     * written.
+     */
+    public void shutdown() {
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(SHUTDOWN_WAIT_SECS, TimeUnit.SECONDS)) {
+                LOG.warning("Observation events still being written after " + SHUTDOWN_WAIT_SECS + " seconds, giving up.");
+                writers.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
@@ -102,6 +102,14 @@ public final class SessionManagement {
         return _sessions.size() == 0;
     }
 
+    /**
+     * Releases the resources shared by the sessions; called when the
+     * sessions are no longer used.
+     */
+    public void shutdown() {
+        _config.shutdown();
+    }
+
     /**
      * Returns the number of sessions.
      *
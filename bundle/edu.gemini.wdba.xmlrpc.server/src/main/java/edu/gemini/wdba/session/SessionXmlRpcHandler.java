@@ -73,6 +73,7 @@ public final class SessionXmlRpcHandler implements ISessionXmlRpc {
     // SessionXmlRpcHandler that is eventually created.
     private static SessionManagement sm = null;
     public static synchronized void setContext(WdbaContext context) {
+        if (sm != null) sm.shutdown();
         sm = (context == null) ? null : new SessionManagement(context, new ProductionSessionConfiguration(context));
     }
 
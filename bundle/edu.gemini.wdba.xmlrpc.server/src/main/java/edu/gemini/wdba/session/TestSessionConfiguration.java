@@ -15,4 +15,7 @@ public class TestSessionConfiguration implements ISessionConfiguration {
         new AllEventsLoggingService(producer);
     }
 
+    public void shutdown() {
+    }
+
 }
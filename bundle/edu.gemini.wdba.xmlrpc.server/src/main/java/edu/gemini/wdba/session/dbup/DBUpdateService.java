@@ -18,7 +18,8 @@ import edu.gemini.wdba.session.AbstractSessionEventConsumer;
 import edu.gemini.wdba.session.ISessionEventProducer;
 import edu.gemini.wdba.session.OneLineLogFormatter;
 
-
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -26,20 +27,32 @@ import java.util.logging.Logger;
 
 /**
  * This class responds to session events and updates the database as needed.
+ * Observation events are queued by observation so that the updates of
+ * different observations are made in parallel, while those of a single
+ * observation are made in order and combined when they arrive faster than
+ * they can be written.
  */
 public class DBUpdateService extends AbstractSessionEventConsumer {
     private static final Logger LOG = Logger.getLogger(DBUpdateService.class.getName());
+
     private WdbaContext _context;
+    private final ObsExecEventQueue _obsEvents;
 
     // Made this static since XMLRPC Creates a new instance  every time and the logger is static
     static {
         _initLogger();
     }
 
-    public DBUpdateService(ISessionEventProducer ssp, WdbaContext context) {
+    /**
+     * @param writers executor on which observation events are written; it is
+     * owned by the caller, who shuts it down when the service is no longer
+     * used
+     */
+    public DBUpdateService(ISessionEventProducer ssp, WdbaContext context, Executor writers) {
         super(ssp);
         assert context != null : "Session Context is null";
         _context = context;
+        _obsEvents = new ObsExecEventQueue(writers, this::_handle);
         Thread t = new Thread(this, "DBUpdate");
         t.start();
     }
@@ -63,8 +76,9 @@ public class DBUpdateService extends AbstractSessionEventConsumer {
     }
 
     // Add the given obs id to nightly log, creating the log if necessary
-    // for the current night.
-    private void _addToNightlyRecord(SPObservationID obsId) {
+    // for the current night.  Synchronized since events of different
+    // observations are handled in parallel.
+    private synchronized void _addToNightlyRecord(SPObservationID obsId) {
         final Site site = _context.getSite();
 
         SPProgramID recordId = NightlyProgIdGenerator.getProgramID(NightlyProgIdGenerator.PLAN_ID_PREFIX, site);
@@ -90,14 +104,23 @@ public class DBUpdateService extends AbstractSessionEventConsumer {
     }
 
     public void doMsgUpdate(ExecEvent evt) throws WdbaGlueException {
+        if (evt instanceof ObsExecEvent) {
+            _obsEvents.submit((ObsExecEvent) evt);
+        }
+    }
+
+    // Handles the queued events of one observation with a single update of
+    // its exec log.
+    private void _handle(SPObservationID obsId, List<ObsExecEvent> events) {
         try {
-            if (evt instanceof StartSequenceEvent) {
-                _addToNightlyRecord(((ObsExecEvent) evt).getObsId());
-            }
-            if (evt instanceof ObsExecEvent) {
-                final WdbaDatabaseAccessService dbAccess = _context.getWdbaDatabaseAccessService();
-                ObsExecEventFunctor.handle((ObsExecEvent) evt, dbAccess.getDatabase(), _context.user);
+            for (ObsExecEvent evt : events) {
+                if (evt instanceof StartSequenceEvent) {
+                    _addToNightlyRecord(obsId);
+                    break;
+                }
             }
+            final WdbaDatabaseAccessService dbAccess = _context.getWdbaDatabaseAccessService();
+            ObsExecEventFunctor.handle(events, dbAccess.getDatabase(), _context.user);
         } catch (Throwable ex) {
             LOG.log(Level.INFO, ex.getMessage(), ex);
         }
@@ -0,0 +1,110 @@
+package edu.gemini.wdba.session.dbup;
+
+import edu.gemini.pot.sp.SPObservationID;
+import edu.gemini.spModel.event.ObsExecEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queues {@link ObsExecEvent}s by observation and hands them to a
+ * {@link Handler} on the threads of an executor.
+ * <p>
+ * Events of one observation are always handled in the order they were
+ * submitted, and never by more than one thread at a time.  Events that arrive
+ * while the observation's previous events are still being handled are
+ * collected and handed over together, so that a burst of events for an
+ * observation results in one update of its log.  Events of different
+ * observations are handled independently, in parallel if the executor
+ * allows it.
+ */
+public final class ObsExecEventQueue {
+    private static final Logger LOG = Logger.getLogger(ObsExecEventQueue.class.getName());
+
+    /**
+     * Handles the events of one observation.
+     */
+    public interface Handler {
+        /**
+         * @param obsId observation to which all the events refer
+         * @param events one or more events in the order they were submitted
+         */
+        void handle(SPObservationID obsId, List<ObsExecEvent> events) throws Exception;
+    }
+
+    // Events waiting to be handled for one observation.  The lane is
+    // scheduled while a task to drain it has been given to the executor.
+    private static final class Lane {
+        final List<ObsExecEvent> pending = new ArrayList<>();
+        boolean scheduled;
+    }
+
+    private final Executor _executor;
+    private final Handler _handler;
+    private final Map<SPObservationID, Lane> _lanes = new HashMap<>();
+
+    public ObsExecEventQueue(Executor executor, Handler handler) {
+        if (executor == null) throw new NullPointerException("executor");
+        if (handler == null) throw new NullPointerException("handler");
+        _executor = executor;
+        _handler  = handler;
+    }
+
+    /**
+     * Adds an event to the queue of its observation, scheduling the queue to
+     * be drained if it isn't already.
+     */
+    public void submit(ObsExecEvent evt) {
+        final SPObservationID obsId = evt.getObsId();
+        final boolean schedule;
+        synchronized (_lanes) {
+            Lane lane = _lanes.get(obsId);
+            if (lane == null) {
+                lane = new Lane();
+                _lanes.put(obsId, lane);
+            }
+            lane.pending.add(evt);
+            schedule = !lane.scheduled;
+            lane.scheduled = true;
+        }
+        if (schedule) _executor.execute(() -> _drain(obsId));
+    }
+
+    /**
+     * Returns the number of observations with events that have not been
+     * completely handled.
+     */
+    public int getActiveCount() {
+        synchronized (_lanes) {
+            return _lanes.size();
+        }
+    }
+
+    // Handles the pending events of the observation until there are none
+    // left, at which point the lane is dropped.
+    private void _drain(SPObservationID obsId) {
+        while (true) {
+            final List<ObsExecEvent> batch;
+            synchronized (_lanes) {
+                final Lane lane = _lanes.get(obsId);
+                if (lane.pending.isEmpty()) {
+                    _lanes.remove(obsId);
+                    return;
+                }
+                batch = new ArrayList<>(lane.pending);
+                lane.pending.clear();
+            }
+
+            try {
+                _handler.handle(obsId, batch);
+            } catch (Throwable ex) {
+                LOG.log(Level.WARNING, String.format("Could not handle %d event(s) for %s", batch.size(), obsId), ex);
+            }
+        }
+    }
+}
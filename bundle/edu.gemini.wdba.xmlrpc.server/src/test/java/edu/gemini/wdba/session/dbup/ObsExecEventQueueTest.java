@@ -0,0 +1,136 @@
+package edu.gemini.wdba.session.dbup;
+
+import edu.gemini.pot.sp.SPObservationID;
+import edu.gemini.spModel.event.ObsExecEvent;
+import edu.gemini.spModel.event.SlewEvent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the ordering, coalescing and parallelism of the
+ * {@link ObsExecEventQueue}.  Events carry a sequence number as their time so
+ * that the order in which they are handled can be checked.
+ */
+public final class ObsExecEventQueueTest {
+    private static final long TIMEOUT = 10;
+
+    private ExecutorService executor;
+
+    @After public void tearDown() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private static SPObservationID obsId(int i) throws Exception {
+        return new SPObservationID("GS-2017A-Q-1-" + i);
+    }
+
+    private static List<Long> times(List<ObsExecEvent> events) {
+        final List<Long> res = new ArrayList<>();
+        for (ObsExecEvent e : events) res.add(e.getTimestamp());
+        return res;
+    }
+
+    private static void awaitIdle(ObsExecEventQueue q) throws Exception {
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (q.getActiveCount() > 0) {
+            Assert.assertTrue("timed out", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test public void testCoalesceWhileBusy() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        final SPObservationID id = obsId(1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        final ObsExecEventQueue q = new ObsExecEventQueue(executor, (obsId, events) -> {
+            Assert.assertEquals(id, obsId);
+            batches.add(times(events));
+            started.countDown();
+            release.await();
+        });
+
+        q.submit(new SlewEvent(0, id));
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        // These arrive while the first event is being handled.
+        for (long t = 1; t <= 5; ++t) q.submit(new SlewEvent(t, id));
+        release.countDown();
+        awaitIdle(q);
+
+        Assert.assertEquals(Arrays.asList(
+                Collections.singletonList(0L),
+                Arrays.asList(1L, 2L, 3L, 4L, 5L)), batches);
+    }
+
+    @Test public void testObservationsInParallel() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+
+        // Each handler waits for the other, which only works if the two
+        // observations are handled at the same time.
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final Set<SPObservationID> handled = Collections.synchronizedSet(new HashSet<>());
+
+        final ObsExecEventQueue q = new ObsExecEventQueue(executor, (obsId, events) -> {
+            barrier.await(TIMEOUT, TimeUnit.SECONDS);
+            handled.add(obsId);
+        });
+
+        q.submit(new SlewEvent(0, obsId(1)));
+        q.submit(new SlewEvent(0, obsId(2)));
+        awaitIdle(q);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(obsId(1), obsId(2))), handled);
+    }
+
+    @Test public void testOrderPerObservation() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        final int obsCount   = 3;
+        final int eventCount = 500;
+
+        final Map<SPObservationID, List<Long>> seen   = new HashMap<>();
+        final Set<SPObservationID>             active = new HashSet<>();
+        final List<String>                     errors = Collections.synchronizedList(new ArrayList<>());
+
+        final ObsExecEventQueue q = new ObsExecEventQueue(executor, (obsId, events) -> {
+            synchronized (active) {
+                if (!active.add(obsId)) errors.add("concurrent batches for " + obsId);
+            }
+            synchronized (seen) {
+                seen.computeIfAbsent(obsId, k -> new ArrayList<>()).addAll(times(events));
+            }
+            synchronized (active) {
+                active.remove(obsId);
+            }
+        });
+
+        for (long t = 0; t < eventCount; ++t) {
+            for (int i = 1; i <= obsCount; ++i) q.submit(new SlewEvent(t, obsId(i)));
+        }
+        awaitIdle(q);
+
+        Assert.assertEquals(Collections.emptyList(), errors);
+        final List<Long> expected = new ArrayList<>();
+        for (long t = 0; t < eventCount; ++t) expected.add(t);
+        for (int i = 1; i <= obsCount; ++i) Assert.assertEquals(expected, seen.get(obsId(i)));
+    }
+}
@@ -5,15 +5,11 @@ import edu.gemini.pot.spdb.DBAbstractQueryFunctor;
 import edu.gemini.pot.spdb.IDBDatabaseService;
 import edu.gemini.pot.spdb.IDBQueryRunner;
 import edu.gemini.shared.util.immutable.Option;
-import edu.gemini.spModel.ao.AOConstants;
-import edu.gemini.spModel.ao.AOTreeUtil;
 import edu.gemini.spModel.core.Affiliate;
 import edu.gemini.spModel.core.SPProgramID;
 import edu.gemini.spModel.data.ISPDataObject;
 import edu.gemini.spModel.data.YesNoType;
 import edu.gemini.spModel.dataset.DataflowStatus;
-import edu.gemini.spModel.gemini.altair.AltairParams;
-import edu.gemini.spModel.gemini.altair.InstAltair;
 import edu.gemini.spModel.gemini.obscomp.SPProgram;
 import edu.gemini.spModel.gemini.obscomp.SPSiteQuality;
 import edu.gemini.spModel.obs.*;
@@ -33,8 +29,6 @@ import edu.gemini.spModel.time.ChargeClass;
 import edu.gemini.spModel.time.ObsTimeCharges;
 import edu.gemini.spModel.time.ObsTimes;
 import edu.gemini.spModel.time.TimeAmountFormatter;
-import edu.gemini.spModel.too.Too;
-import edu.gemini.spModel.too.TooType;
 import edu.gemini.spModel.type.DisplayableSpType;
 import edu.gemini.spModel.util.SPTreeUtil;
 import edu.gemini.util.security.permission.ProgramPermission;
@@ -138,9 +132,10 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
 
             // check for program related constraints, such as AFFILIATES and PI Last Name
             if (_match(prog)) {
-                // check each observation and add a row to the result vector for any matches
-                for (ISPObservation o : prog.getAllObservations()) {
-                    _match(prog, o);
+                // check each observation and add a row to the result vector for any matches,
+                // using the database's index of observation attributes to skip the others
+                for (ObsAttributeIndex.ObsAttributes a : ObsAttributeIndex.lookup(database, prog).getObservations()) {
+                    if (_match(a)) _match(prog, a);
                 }
             }
         } catch (AccessControlException ace) {
@@ -226,8 +221,57 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
         return true;
     }
 
+    /**
+     * Return true if the indexed attributes of an observation match the conditions
+     * that apply to them.  Observations without instruments never match.
+     */
+    private boolean _match(ObsAttributeIndex.ObsAttributes a) {
+        if (a.getInstruments().isEmpty())
+            return false;
+
+        if (_sc != null) {
+            for (SearchCondition a_sc : _sc) {
+                final String name = a_sc.getName();
+                if (name.equals(ObsCatalogInfo.TARGET_NAME)) {
+                    final String targetName = a.getTargetName();
+                    if (targetName == null || !a_sc.isTrueFor(targetName))
+                        return false;
+                } else if (name.equals(ObsCatalogInfo.INSTRUMENT)) {
+                    // checked again for each instrument in _match(ISPObservation, ...)
+                    boolean any = false;
+                    for (SPComponentType t : a.getInstruments()) {
+                        if (a_sc.isTrueFor(t.readableStr)) {
+                            any = true;
+                            break;
+                        }
+                    }
+                    if (!any) return false;
+                } else if (name.equals(ObsCatalogInfo.OBS_STATUS)) {
+                    if (!a_sc.isTrueFor(a.getStatus().name())) {
+                        return false;
+                    }
+                } else if (name.equals(ObsCatalogInfo.AO)) {
+                    if (!a_sc.isTrueFor(a.getAO().name())) {
+                        return false;
+                    }
+                } else if (name.equals(ObsCatalogInfo.OBS_CLASS)) {
+                    final ObsClass obsClass = a.getObsClass();
+                    if (!a_sc.isTrueFor((obsClass == null) ? null : obsClass.name())) {
+                        return false;
+                    }
+                } else if (name.equals(ObsCatalogInfo.TOO)) {
+                    if (!a_sc.isTrueFor(a.getTooType().name())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     // Add any matching observations to the query results.
-    private void _match(ISPProgram prog, ISPObservation o) {
+    private void _match(ISPProgram prog, ObsAttributeIndex.ObsAttributes a) {
+        final ISPObservation o = a.getObservation();
         final List<ISPDataObject> instruments = _getInstruments(o);
         final Iterator<ISPDataObject> it = instruments.iterator();
         final PioFactory factory = new PioXmlFactory();
@@ -237,7 +281,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
             final ParamSet instParamSet = inst.getParamSet(factory);
             if (_match(o, inst, instConfigInfoList, instParamSet)) {
                 final ISPDataObject mainInst = instruments.get(0);
-                _result.add(_makeRow(prog, o, mainInst, instConfigInfoList, instParamSet));
+                _result.add(_makeRow(prog, a, mainInst, instConfigInfoList, instParamSet));
                 _ids.add(_makeIdRow(prog, o));
                 break;
             }
@@ -246,6 +290,8 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
 
     /**
      * Return true if the given observation and related subnodes match the conditions.
+     * Conditions on indexed attributes other than the instrument have already been
+     * checked by <code>_match(ObsAttributes)</code>.
      *
      * @param o                  the observation node
      * @param inst               the instrument for the observation, or null
@@ -273,10 +319,6 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
                     minDec = a_sc.getValueAsString();
                 } else if (name.equals(ObsCatalogInfo.MAX_DEC)) {
                     maxDec = a_sc.getValueAsString();
-                } else if (name.equals(ObsCatalogInfo.TARGET_NAME)) {
-                    final String targetName = _getTargetName(o);
-                    if (targetName == null || !a_sc.isTrueFor(targetName))
-                        return false;
                 } else if (name.equals(ObsCatalogInfo.SKY_BACKGROUND)) {
                     String sb = null;
                     if (siteQuality != null) {
@@ -317,11 +359,6 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
                     if (!a_sc.isTrueFor(instName)) {
                         return false;
                     }
-                } else if (name.equals(ObsCatalogInfo.OBS_STATUS)) {
-                    if (!a_sc.isTrueFor(ObservationStatus.computeFor(o).name())) {
-                        return false;
-                    }
-
                 } else if (name.equals(ObsCatalogInfo.OBS_QA)) {
                     final ObsQaState qa = ObsQaStateService.getObsQaState(o);
                     if (!a_sc.isTrueFor(qa.name())) return false;
@@ -339,24 +376,6 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
                     if (!a_sc.isTrueFor(obs.getPriority().displayValue())) {
                         return false;
                     }
-                } else if (name.equals(ObsCatalogInfo.AO)) {
-                    if (!a_sc.isTrueFor(_getAO(o).name())) {
-                        return false;
-                    }
-                } else if (name.equals(ObsCatalogInfo.OBS_CLASS)) {
-                    final ObsClass obsClass = ObsClassService.lookupObsClass(o);
-                    String desc = null;
-                    if (obsClass != null) {
-                        desc = obsClass.name();
-                    }
-                    if (!a_sc.isTrueFor(desc)) {
-                        return false;
-                    }
-                } else if (name.equals(ObsCatalogInfo.TOO)) {
-                    final TooType too = Too.get(o);
-                    if (!a_sc.isTrueFor(too.name())) {
-                        return false;
-                    }
                 }
             }
         }
@@ -381,23 +400,6 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
         }
     }
 
-    // Return a description of the observations AO type.
-    private AOConstants.AO _getAO(ISPObservation o) {
-        final ISPObsComponent obsComp = AOTreeUtil.findAOSystem(o);
-        if (obsComp != null) {
-            final SPComponentType type = obsComp.getType();
-            if (type.equals(InstAltair.SP_TYPE)) {
-                final InstAltair inst = (InstAltair) obsComp.getDataObject();
-                if (inst.getGuideStarType() == AltairParams.GuideStarType.LGS) {
-                    return AOConstants.AO.Altair_LGS;
-                } else if (inst.getGuideStarType() == AltairParams.GuideStarType.NGS) {
-                    return AOConstants.AO.Altair_NGS;
-                }
-            }
-        }
-        return AOConstants.AO.NONE;
-    }
-
     /**
      * Return the index of the given instrument name in the _instruments array, or -1 if not found
      */
@@ -429,25 +431,6 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
     }
 
 
-    /**
-     * Return the target name for the given observation, or null if none is defined.
-     */
-    private String _getTargetName(ISPObservation o) {
-        try {
-            final ISPObsComponent targetEnvNode = SPTreeUtil.findTargetEnvNode(o);
-            if (targetEnvNode == null)
-                return null;
-            final TargetObsComp targetEnv = (TargetObsComp) targetEnvNode.getDataObject();
-            if (targetEnv == null)
-                return null;
-            return targetEnv.getAsterism().name();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-
     /**
      * Return true if any of the requested values match the given SiteQuality value.
      */
@@ -564,14 +547,15 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
      * Make and return a result table row for the given observation, in the given science program.
      *
      * @param prog               the program node
-     * @param o                  the observation node
+     * @param a                  the indexed attributes of the observation
      * @param inst               the instrument for the observation, or null
      * @param instConfigInfoList maps instrument specific column names to map keys
      * @param instParamSet       describes the instrument settings
      */
-    private Vector<Object> _makeRow(ISPProgram prog, ISPObservation o, ISPDataObject inst,
+    private Vector<Object> _makeRow(ISPProgram prog, ObsAttributeIndex.ObsAttributes a, ISPDataObject inst,
                             List<InstConfigInfo> instConfigInfoList, ParamSet instParamSet) {
 
+        final ISPObservation o = a.getObservation();
         final SPProgram spProg = (SPProgram) prog.getDataObject();
         final SPObservation obs = (SPObservation) o.getDataObject();
         final SPProgram.PIInfo piInfo = spProg.getPIInfo();
@@ -580,7 +564,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
         final SPProgramID geminiRef = prog.getProgramID();
         final SPObservationID obsId = o.getObservationID();
         final String queueBand = spProg.getQueueBand();
-        final ObservationStatus status = ObservationStatus.computeFor(o);
+        final ObservationStatus status = a.getStatus();
         final String priority = obs.getPriority().displayValue();
 
         String skyBackground = null;
@@ -637,7 +621,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
 
         // Get the ObsClass for the observation, which should default to
         // SCIENCE if there is no other alternative (i.e., not be null).
-        final ObsClass obsClass = ObsClassService.lookupObsClass(o);
+        final ObsClass obsClass = a.getObsClass();
         final String obsClassName = obsClass.displayValue();
 
         // Figure out how time was spent on this observation.
@@ -680,7 +664,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
             }
         }
 
-        final String targetName = _getTargetName(o);
+        final String targetName = a.getTargetName();
 
         final String[] ar = ObsCatalogInfo.getTableColumns();
         final int n = ar.length;
@@ -708,7 +692,7 @@ public class ObsQueryFunctor extends DBAbstractQueryFunctor {
         map.put(ObsCatalogInfo.CHARGED_TIME, chargedTimeStr);
         map.put(ObsCatalogInfo.OBS_CLASS, obsClassName);
         map.put(ObsCatalogInfo.INSTRUMENT, instrument);
-        map.put(ObsCatalogInfo.AO, _getAO(o).displayValue());
+        map.put(ObsCatalogInfo.AO, a.getAO().displayValue());
         map.put(ObsCatalogInfo.GROUP, groupName);
         map.put(ObsCatalogInfo.GROUP_TYPE, groupType);
         map.put(ObsCatalogInfo.ELEVATION_CONSTRAINT, elevationConstraint);
@@ -13,6 +13,9 @@ import jsky.util.gui.ToggleButtonPanel;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ItemListener;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 
 /**
@@ -81,6 +84,43 @@ public class ObsStatusPanel extends JPanel implements StatusFilter {
         return _panel.getButton(status.ordinal()).isSelected();
     }
 
+    /**
+     * Returns a copy of the current selection which, unlike the panel itself,
+     * may be consulted from a background thread.  Changing the copy does not
+     * affect the panel.
+     */
+    public StatusFilter snapshot() {
+        final Set<ObservationStatus> enabled = EnumSet.noneOf(ObservationStatus.class);
+        for (ObservationStatus status : ObservationStatus.values()) {
+            if (_panel.getButton(status.ordinal()).isSelected()) enabled.add(status);
+        }
+        return new Selection(_panel.getButton(GROUPS).isSelected(), enabled);
+    }
+
+    // A thread safe copy of the selected buttons.
+    private static final class Selection implements StatusFilter {
+        private volatile boolean groups;
+        private volatile Set<ObservationStatus> enabled;
+
+        Selection(boolean groups, Set<ObservationStatus> enabled) {
+            this.groups  = groups;
+            this.enabled = Collections.unmodifiableSet(EnumSet.copyOf(enabled));
+        }
+
+        public boolean isStatusEnabled(ISPGroup grp) {
+            return groups;
+        }
+
+        public boolean isStatusEnabled(ISPObservation obs) {
+            return enabled.contains(ObservationStatus.computeFor(obs));
+        }
+
+        public void setStatusEnabled() {
+            groups  = true;
+            enabled = Collections.unmodifiableSet(EnumSet.allOf(ObservationStatus.class));
+        }
+    }
+
     /**
      * Enable the display of observations with any status
      */
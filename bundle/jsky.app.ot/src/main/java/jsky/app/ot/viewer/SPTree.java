@@ -41,6 +41,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 
 /**
@@ -208,6 +209,15 @@ public final class SPTree extends JPanel {
     // SORT_BY_... values defined in DBTreeListService.
     private static final String SORT_BY = DBTreeListService.SORT_BY_NONE;
 
+    // Incremented whenever the tree model is updated so that a background
+    // visibility update computed before the change can be recognized as stale.
+    private int _generation = 0;
+
+    // The background visibility update in progress, if any, and whether
+    // another was requested while it was running.
+    private VisibilityWorker _visibilityWorker;
+    private boolean _visibilityPending = false;
+
     /**
      * Constructs a <code>{@link SPTree}</code> to display a science program or nightly plan.
      * This constructor constructs an empty tree with no program, call
@@ -254,13 +264,13 @@ public final class SPTree extends JPanel {
         // Update the tree when the selected observation status changes
         _obsStatusPanel.addItemListener(new ItemListener() {
             public void itemStateChanged(final ItemEvent e) {
-                _rebuildTree(saveState(_root));
+                _refreshVisibility();
             }
         });
 
         StaffBean.addPropertyChangeListener(new PropertyChangeListener() {
             @Override public void propertyChange(PropertyChangeEvent evt) {
-                _rebuildTree(saveState(_root));
+                _refreshVisibility();
             }
         });
 
@@ -331,8 +341,19 @@ public final class SPTree extends JPanel {
     }
 
     public void setRoot(final ISPProgram root, StateSnapshot ss) {
+        if (_isShowing(root)) {
+            // Same program, so just apply whatever changed.  Events may have
+            // been suspended though, so refresh the existing nodes as well.
+            final DefaultMutableTreeNode treeRoot = (DefaultMutableTreeNode) getModel().getRoot();
+            _updateSubtree(root, treeRoot, ss);
+            _updateGroupNodeIcons(treeRoot);
+            _tree.repaint();
+            return;
+        }
+
         if (ss == null) ss = saveState(root);
 
+        ++_generation;
         _root = root;
         if (root == null) {
             _tree.setModel(null);
@@ -345,7 +366,11 @@ public final class SPTree extends JPanel {
      * Redraw the tree from the root
      */
     public void redraw() {
-        setRoot(_root);
+        if (_isShowing(_root)) {
+            _updateSubtree(_root, (DefaultMutableTreeNode) getModel().getRoot(), null);
+        } else {
+            setRoot(_root);
+        }
     }
 
     /**
@@ -361,35 +386,6 @@ public final class SPTree extends JPanel {
         return n != null ? n.getContextObservation() : null;
     }
 
-    /**
-     * Returns the tree node for the given science program node, if the node should
-     * be displayed in the tree, otherwise returns null.
-     */
-    private DefaultMutableTreeNode _modelNodeIf(final DBTreeListService.Node node, final StateSnapshot ss) {
-        if (!_shouldBeVisibleToUser(node)) return null;
-
-        final NodeData newNd = createNodeData(node, ss.nodeState.get(node.getNodeKey()));
-        if (newNd == null) return null;
-
-        return new DefaultMutableTreeNode(newNd);
-    }
-
-
-    // Add the given child node to the tree under the given parent and return the
-    // new tree node, if the child node should be in the tree, otherwise do nothing
-    // and return null.
-    private DefaultMutableTreeNode _addModelNodeIf(final DefaultMutableTreeNode parentModelNode,
-                                                   final DBTreeListService.Node node,
-                                                   final StateSnapshot ss) {
-
-        final DefaultMutableTreeNode child = _modelNodeIf(node, ss);
-        if (child == null) return null;
-
-        parentModelNode.add(child);
-        return child;
-    }
-
-
     // Return the name of the icon to use for the given group node, based on the state of the
     // observations it contains.
     // [from #OT-63:]
@@ -432,6 +428,18 @@ public final class SPTree extends JPanel {
         if (nd != null) nd.setIcon(_getGroupIcon(group));
     }
 
+    // Update the icons of all the groups at or under the given tree node.
+    private void _updateGroupNodeIcons(final DefaultMutableTreeNode treeNode) {
+        final NodeData nd = (NodeData) treeNode.getUserObject();
+        if (nd.getNode() instanceof ISPGroup) {
+            nd.setIcon(_getGroupIcon((ISPGroup) nd.getNode()));
+        } else {
+            for (int i = 0; i < treeNode.getChildCount(); ++i) {
+                _updateGroupNodeIcons((DefaultMutableTreeNode) treeNode.getChildAt(i));
+            }
+        }
+    }
+
     private void _updateContainingGroupNodeIcon(final ISPNode n) {
         if (n != null) {
             if (n instanceof ISPGroup) {
@@ -446,50 +454,167 @@ public final class SPTree extends JPanel {
     private DefaultMutableTreeNode _rebuildTreeFromRoot(StateSnapshot ss) {
         if (_root != null) {
             final DBTreeListService.Node node = DBTreeListService.getNodeTree(_root, true, SORT_BY);
-            if (node != null) {
-                final DefaultMutableTreeNode parentNode = _modelNodeIf(node, ss);
-                if (parentNode != null) {
-                    _rebuildNode(node, parentNode, ss);
-                    return parentNode;
-                }
-            }
+            if (node != null) return SPTreeModelUpdater.build(nodeSource(_obsStatusPanel, ss), node);
         }
         return null;
     }
 
+    /**
+     * Update the part of the tree under the given node in place, adding and
+     * removing tree nodes as necessary.
+     *
+     * @param remoteNode the SP tree node
+     * @param treeNode   the corresponding JTree node (parent node of that part of the JTree)
+     * @param ss         state for nodes that are not yet in the tree, may be null
+     */
+    private void _updateSubtree(final ISPNode remoteNode, final DefaultMutableTreeNode treeNode, final StateSnapshot ss) {
+        if (remoteNode instanceof ISPContainerNode) {
+            final DBTreeListService.Node node = DBTreeListService.getNodeTree(remoteNode, true, SORT_BY);
+            if (node != null) _applyUpdate(treeNode, node, nodeSource(_obsStatusPanel, ss));
+        }
+    }
+
+    // Apply the difference between the tree model under treeNode and the given
+    // science program node to the model.
+    private void _applyUpdate(final DefaultMutableTreeNode treeNode,
+                              final DBTreeListService.Node node,
+                              final SPTreeModelUpdater.NodeSource source) {
+        ++_generation;
+
+        final SPTreeModelUpdater updater = new SPTreeModelUpdater(getModel(), source);
+        final boolean ignore = _ignoreSelection;
+        _ignoreSelection = true;
+        try {
+            updater.update(treeNode, node);
+        } finally {
+            _ignoreSelection = ignore;
+        }
 
-    // Rebuild the tree from the given science program node and tree model node
-    private void _rebuildNode(final DBTreeListService.Node node,
-                              final DefaultMutableTreeNode parentNode,
-                              final StateSnapshot ss) {
+        // The JTree shows new nodes collapsed, so reopen any that were open.
+        for (final DefaultMutableTreeNode tn : updater.getInserted()) {
+            final DefaultMutableTreeNode parent = (DefaultMutableTreeNode) tn.getParent();
+            if (_tree.isExpanded(new TreePath(parent.getPath()))) _restoreExpansion(tn);
+        }
+    }
 
-        for (final Object o : node.getSubNodes()) {
-            final DBTreeListService.Node subnode = (DBTreeListService.Node) o;
-            final DefaultMutableTreeNode treeNode = _addModelNodeIf(parentNode, subnode, ss);
-            if (treeNode != null && subnode.getRemoteNode() instanceof ISPContainerNode) {
-                _rebuildNode(subnode, treeNode, ss);
+    private void _restoreExpansion(final DefaultMutableTreeNode treeNode) {
+        if (((NodeData) treeNode.getUserObject()).isOpen()) {
+            final TreePath path = new TreePath(treeNode.getPath());
+            if (!_tree.isExpanded(path)) _tree.expandPath(path);
+            for (int i = 0; i < treeNode.getChildCount(); ++i) {
+                _restoreExpansion((DefaultMutableTreeNode) treeNode.getChildAt(i));
             }
         }
     }
 
+    // Determines whether the tree model currently displays the given program.
+    private boolean _isShowing(final ISPProgram prog) {
+        final TreeModel model = _tree.getModel();
+        if ((prog == null) || (prog != _root) || (model == null)) return false;
+
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
+        return (root != null) && (((NodeData) root.getUserObject()).getNode() == prog);
+    }
+
+    // The source of tree nodes for the given filter, with state for new nodes
+    // taken from the snapshot, if any.
+    static SPTreeModelUpdater.NodeSource nodeSource(final StatusFilter filter, final StateSnapshot ss) {
+        return new SPTreeModelUpdater.NodeSource() {
+            @Override public boolean isVisible(final DBTreeListService.Node node) {
+                return _shouldBeVisibleToUser(node, filter);
+            }
+            @Override public NodeData createNodeData(final DBTreeListService.Node node) {
+                return SPTree.createNodeData(node, (ss == null) ? null : ss.nodeState.get(node.getNodeKey()));
+            }
+            @Override public void refresh(final NodeData nd, final DBTreeListService.Node node) {
+                if (node.getRemoteNode() instanceof ISPGroup) {
+                    nd.setIcon(_getGroupIcon((ISPGroup) node.getRemoteNode()));
+                }
+            }
+        };
+    }
 
     /**
-     * Rebuild the part of the tree under the given node.
-     *
-     * @param remoteNode the SP tree node
-     * @param treeNode   the corresponding JTree node (parent node of that part of the JTree)
+     * Apply the current observation status filter and staff setting to the
+     * tree.  Deciding which nodes are visible means computing the status of
+     * every observation, so when the program is already displayed that is done
+     * in the background and only the difference is applied to the tree.
      */
-    private void _rebuildSubnodes(final ISPNode remoteNode, final DefaultMutableTreeNode treeNode) {
-        if (remoteNode instanceof ISPContainerNode) {
-            final DefaultTreeModel model = getModel();
-            final StateSnapshot ss = snapshot();
+    private void _refreshVisibility() {
+        if (!_isShowing(_root)) {
+            _rebuildTree(saveState(_root));
+        } else if (_visibilityWorker != null) {
+            _visibilityPending = true;
+        } else {
+            _visibilityWorker = new VisibilityWorker();
+            _visibilityWorker.execute();
+        }
+    }
 
-            treeNode.removeAllChildren();
-            final DBTreeListService.Node node = DBTreeListService.getNodeTree(remoteNode, true, SORT_BY);
-            if (node != null) _rebuildNode(node, treeNode, ss);
+    // Fetches the program tree and works out which nodes are visible off the
+    // event dispatch thread, then updates the tree model.
+    private final class VisibilityWorker extends SwingWorker<DBTreeListService.Node, Void> {
+        private final ISPProgram _program;
+        private final int _startGeneration;
+        private final StatusFilter _filter;
+        private final Set<SPNodeKey> _visible = new HashSet<SPNodeKey>();
+        private final Map<SPNodeKey, Icon> _groupIcons = new HashMap<SPNodeKey, Icon>();
 
-            model.nodeStructureChanged(treeNode);
-            ss.restore(this);
+        VisibilityWorker() {
+            _program         = _root;
+            _startGeneration = _generation;
+            _filter          = _obsStatusPanel.snapshot();
+        }
+
+        @Override protected DBTreeListService.Node doInBackground() {
+            final DBTreeListService.Node node = DBTreeListService.getNodeTree(_program, true, SORT_BY);
+            if (node != null) _addVisible(node);
+            return node;
+        }
+
+        private void _addVisible(final DBTreeListService.Node node) {
+            if (_shouldBeVisibleToUser(node, _filter)) {
+                _visible.add(node.getNodeKey());
+                if (node.getRemoteNode() instanceof ISPGroup) {
+                    _groupIcons.put(node.getNodeKey(), _getGroupIcon((ISPGroup) node.getRemoteNode()));
+                }
+                for (final DBTreeListService.Node sub : node.getSubNodes()) _addVisible(sub);
+            }
+        }
+
+        @Override protected void done() {
+            _visibilityWorker = null;
+            if (!_isShowing(_program)) {
+                // Another program was loaded with the current settings.
+                _visibilityPending = false;
+            } else if (_visibilityPending || (_startGeneration != _generation)) {
+                // The settings changed again, or the tree was updated from a
+                // newer version of the program, so the result is stale.
+                _visibilityPending = false;
+                _refreshVisibility();
+            } else {
+                final DBTreeListService.Node node;
+                try {
+                    node = get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    DialogUtil.error(ex);
+                    return;
+                }
+                if (node != null) {
+                    _applyUpdate((DefaultMutableTreeNode) getModel().getRoot(), node, new SPTreeModelUpdater.NodeSource() {
+                        @Override public boolean isVisible(final DBTreeListService.Node n) {
+                            return _visible.contains(n.getNodeKey());
+                        }
+                        @Override public NodeData createNodeData(final DBTreeListService.Node n) {
+                            return SPTree.createNodeData(n, null);
+                        }
+                        @Override public void refresh(final NodeData nd, final DBTreeListService.Node n) {
+                            final Icon icon = _groupIcons.get(n.getNodeKey());
+                            if (icon != null) nd.setIcon(icon);
+                        }
+                    });
+                }
+            }
         }
     }
 
@@ -591,11 +716,11 @@ public final class SPTree extends JPanel {
      * To be displayed it must have a UIInfo object with the "visible"
      * property true.
      */
-    private boolean _shouldBeVisibleToUser(final DBTreeListService.Node node) {
+    private static boolean _shouldBeVisibleToUser(final DBTreeListService.Node node, final StatusFilter filter) {
         final ISPNode rn = node.getRemoteNode();
-        if ((rn instanceof ISPGroup) && !_obsStatusPanel.isStatusEnabled((ISPGroup) rn)) {
+        if ((rn instanceof ISPGroup) && !filter.isStatusEnabled((ISPGroup) rn)) {
             return false;
-        } else if ((rn instanceof ISPObservation) && !_obsStatusPanel.isStatusEnabled((ISPObservation) rn)) {
+        } else if ((rn instanceof ISPObservation) && !filter.isStatusEnabled((ISPObservation) rn)) {
             return false;
         }
         final Object dataObject = node.getDataObject();
@@ -1109,18 +1234,18 @@ public final class SPTree extends JPanel {
      * Called whenever the SP tree structure is modified
      */
     public void treeStructureChanged(final ISPNode modifiedNode) {
-        // For simplicity, just redraw the part of the tree under the modified node.
+        // Update the part of the tree under the modified node in place.
         if (modifiedNode instanceof ISPProgram) {
-            // If the top level of the tree is involved, redraw the whole tree
+            // If the top level of the tree is involved, update the whole tree
             redraw();
         } else if (modifiedNode instanceof ISPGroup) {
             _updateGroupNodeIcon((ISPGroup) modifiedNode);
             redraw();
         } else if (modifiedNode != null) {
-            // otherwise redraw only the subtree under the modified node
+            // otherwise update only the subtree under the modified node
             final DefaultMutableTreeNode treeNode = getTreeNode(modifiedNode);
             if (treeNode != null) {
-                _rebuildSubnodes(modifiedNode, treeNode);
+                _updateSubtree(modifiedNode, treeNode, null);
             }
         }
     }
@@ -0,0 +1,252 @@
+package jsky.app.ot.viewer;
+
+import edu.gemini.pot.sp.ISPContainerNode;
+import edu.gemini.pot.sp.ISPNode;
+import edu.gemini.pot.sp.SPNodeKey;
+import edu.gemini.spModel.util.DBTreeListService;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import java.util.*;
+
+/**
+ * Brings an existing tree model up to date with a freshly fetched
+ * {@link DBTreeListService.Node} tree by inserting and removing only the tree
+ * nodes that differ.
+ *
+ * <p>Replacing the whole model on a filter change or a structure edit means
+ * creating a new {@link NodeData} (and icon) for every node and then
+ * re-expanding and re-selecting everything, which takes seconds for programs
+ * with thousands of observations.  Here tree nodes that still correspond to
+ * the same science program node are kept, along with their state, and the
+ * model fires one batched insertion and removal event per changed parent.
+ */
+final class SPTreeModelUpdater {
+
+    /**
+     * Decides which science program nodes are displayed and creates the
+     * {@link NodeData} for those that are not already in the tree.
+     */
+    interface NodeSource {
+        boolean isVisible(DBTreeListService.Node node);
+
+        /** Returns the NodeData for a new tree node, or <code>null</code> to skip it. */
+        NodeData createNodeData(DBTreeListService.Node node);
+
+        /**
+         * Brings the NodeData of a tree node that is kept up to date, for
+         * example recomputing a group's status icon.
+         */
+        void refresh(NodeData nd, DBTreeListService.Node node);
+    }
+
+    private final DefaultTreeModel _model;
+    private final NodeSource _source;
+
+    // Tree nodes added to the model by the update, not including their
+    // children.  The caller may need to expand them.
+    private final List<DefaultMutableTreeNode> _inserted = new ArrayList<>();
+
+    private int _changeCount = 0;
+
+    SPTreeModelUpdater(final DefaultTreeModel model, final NodeSource source) {
+        _model  = model;
+        _source = source;
+    }
+
+    /**
+     * Makes the children of <code>treeNode</code> (recursively) match the
+     * visible children of <code>node</code>, which should be the same science
+     * program node.
+     */
+    void update(final DefaultMutableTreeNode treeNode, final DBTreeListService.Node node) {
+        final List<DefaultMutableTreeNode> oldChildren = _children(treeNode);
+
+        // Index the current children by key so that they can be reused.
+        final Map<SPNodeKey, DefaultMutableTreeNode> current = new HashMap<>();
+        for (final DefaultMutableTreeNode child : oldChildren) {
+            current.put(key(child), child);
+        }
+
+        // Work out the new list of children, reusing tree nodes wherever they
+        // still refer to the same science program node.
+        final List<DefaultMutableTreeNode> newChildren = new ArrayList<>();
+        final Set<DefaultMutableTreeNode> created = new HashSet<>();
+        final Map<DefaultMutableTreeNode, DBTreeListService.Node> retained = new LinkedHashMap<>();
+        for (final DBTreeListService.Node sub : _subNodes(node)) {
+            if (!_source.isVisible(sub)) continue;
+
+            final DefaultMutableTreeNode existing = current.get(sub.getNodeKey());
+            if ((existing != null) && (nodeData(existing).getNode() == sub.getRemoteNode())) {
+                newChildren.add(existing);
+                retained.put(existing, sub);
+            } else {
+                final DefaultMutableTreeNode child = build(_source, sub);
+                if (child != null) {
+                    newChildren.add(child);
+                    created.add(child);
+                }
+            }
+        }
+
+        boolean structureChanged = false;
+        if (!newChildren.equals(oldChildren)) {
+            if (_sameRelativeOrder(oldChildren, newChildren, retained.keySet())) {
+                _removeAndInsert(treeNode, oldChildren, newChildren, created, retained.keySet());
+            } else {
+                _replaceChildren(treeNode, newChildren);
+                structureChanged = true;
+            }
+        }
+
+        // Refresh the kept children and tell the model they may have changed,
+        // unless it was told the whole structure changed already.
+        final List<Integer> changedIndices = new ArrayList<>();
+        for (final Map.Entry<DefaultMutableTreeNode, DBTreeListService.Node> me : retained.entrySet()) {
+            _source.refresh(nodeData(me.getKey()), me.getValue());
+            changedIndices.add(treeNode.getIndex(me.getKey()));
+        }
+        if (!structureChanged && !changedIndices.isEmpty()) {
+            Collections.sort(changedIndices);
+            _model.nodesChanged(treeNode, _toArray(changedIndices));
+        }
+
+        for (final Map.Entry<DefaultMutableTreeNode, DBTreeListService.Node> me : retained.entrySet()) {
+            if (me.getValue().getRemoteNode() instanceof ISPContainerNode) {
+                update(me.getKey(), me.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates a new tree node for the given science program node and all of
+     * its visible descendants, or returns <code>null</code> if it should not
+     * be displayed.  The result is not added to the model.
+     */
+    static DefaultMutableTreeNode build(final NodeSource source, final DBTreeListService.Node node) {
+        if (!source.isVisible(node)) return null;
+
+        final NodeData nd = source.createNodeData(node);
+        if (nd == null) return null;
+
+        final DefaultMutableTreeNode treeNode = new DefaultMutableTreeNode(nd);
+        if (node.getRemoteNode() instanceof ISPContainerNode) {
+            for (final DBTreeListService.Node sub : _subNodes(node)) {
+                final DefaultMutableTreeNode child = build(source, sub);
+                if (child != null) treeNode.add(child);
+            }
+        }
+        return treeNode;
+    }
+
+    /** Tree nodes that were added to the model, with their subtrees. */
+    List<DefaultMutableTreeNode> getInserted() {
+        return Collections.unmodifiableList(_inserted);
+    }
+
+    /** Number of tree nodes inserted or removed by the updates so far. */
+    int getChangeCount() {
+        return _changeCount;
+    }
+
+    // Common case: nodes were shown, hidden, added or removed but nothing was
+    // rearranged, so the change can be reported as removals plus insertions.
+    private void _removeAndInsert(final DefaultMutableTreeNode parent,
+                                  final List<DefaultMutableTreeNode> oldChildren,
+                                  final List<DefaultMutableTreeNode> newChildren,
+                                  final Set<DefaultMutableTreeNode> created,
+                                  final Set<DefaultMutableTreeNode> retained) {
+
+        // Removals, reported in ascending index order as the model requires.
+        final List<Integer> removedIndices = new ArrayList<>();
+        final List<Object> removed = new ArrayList<>();
+        for (int i = 0; i < oldChildren.size(); ++i) {
+            final DefaultMutableTreeNode child = oldChildren.get(i);
+            if (!retained.contains(child)) {
+                removedIndices.add(i);
+                removed.add(child);
+            }
+        }
+        if (!removed.isEmpty()) {
+            for (int i = removedIndices.size() - 1; i >= 0; --i) {
+                parent.remove((int) removedIndices.get(i));
+            }
+            _model.nodesWereRemoved(parent, _toArray(removedIndices), removed.toArray());
+            _changeCount += removed.size();
+        }
+
+        // Insertions at their final positions, again in ascending order.
+        final List<Integer> insertedIndices = new ArrayList<>();
+        for (int i = 0; i < newChildren.size(); ++i) {
+            final DefaultMutableTreeNode child = newChildren.get(i);
+            if (created.contains(child)) {
+                parent.insert(child, i);
+                insertedIndices.add(i);
+                _inserted.add(child);
+            }
+        }
+        if (!insertedIndices.isEmpty()) {
+            _model.nodesWereInserted(parent, _toArray(insertedIndices));
+            _changeCount += insertedIndices.size();
+        }
+    }
+
+    // Rare case: children were rearranged.  Reattach them all and tell the
+    // model the structure under the parent changed.  Reused children are
+    // reported as inserted as well since the JTree forgets their expansion.
+    private void _replaceChildren(final DefaultMutableTreeNode parent,
+                                  final List<DefaultMutableTreeNode> newChildren) {
+        _changeCount += parent.getChildCount() + newChildren.size();
+        parent.removeAllChildren();
+        for (final DefaultMutableTreeNode child : newChildren) {
+            parent.add(child);
+            _inserted.add(child);
+        }
+        _model.nodeStructureChanged(parent);
+    }
+
+    // Determines whether the retained children appear in the same order in
+    // both lists.
+    private static boolean _sameRelativeOrder(final List<DefaultMutableTreeNode> oldChildren,
+                                              final List<DefaultMutableTreeNode> newChildren,
+                                              final Set<DefaultMutableTreeNode> retained) {
+        final Iterator<DefaultMutableTreeNode> it = newChildren.iterator();
+        for (final DefaultMutableTreeNode child : oldChildren) {
+            if (!retained.contains(child)) continue;
+
+            // Advance to the same child in the new list.
+            boolean found = false;
+            while (!found && it.hasNext()) found = (it.next() == child);
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static List<DefaultMutableTreeNode> _children(final DefaultMutableTreeNode treeNode) {
+        final List<DefaultMutableTreeNode> res = new ArrayList<>(treeNode.getChildCount());
+        for (int i = 0; i < treeNode.getChildCount(); ++i) {
+            res.add((DefaultMutableTreeNode) treeNode.getChildAt(i));
+        }
+        return res;
+    }
+
+    private static List<DBTreeListService.Node> _subNodes(final DBTreeListService.Node node) {
+        final List<DBTreeListService.Node> subs = node.getSubNodes();
+        return (subs == null) ? Collections.<DBTreeListService.Node>emptyList() : subs;
+    }
+
+    private static int[] _toArray(final List<Integer> l) {
+        final int[] res = new int[l.size()];
+        for (int i = 0; i < res.length; ++i) res[i] = l.get(i);
+        return res;
+    }
+
+    private static NodeData nodeData(final DefaultMutableTreeNode treeNode) {
+        return (NodeData) treeNode.getUserObject();
+    }
+
+    private static SPNodeKey key(final DefaultMutableTreeNode treeNode) {
+        final ISPNode n = nodeData(treeNode).getNode();
+        return n.getNodeKey();
+    }
+}
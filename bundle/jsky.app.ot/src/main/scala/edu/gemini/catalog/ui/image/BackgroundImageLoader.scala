@@ -10,6 +10,7 @@ import java.util.logging.{Level, Logger}
 import edu.gemini.catalog.image._
 import edu.gemini.shared.util.immutable.ScalaConverters._
 
+import edu.gemini.pot.ModelConverters._
 import edu.gemini.pot.sp._
 import edu.gemini.spModel.core.{Angle, Coordinates, Site, Wavelength}
 import edu.gemini.spModel.obs.ObservationStatus
@@ -180,9 +181,9 @@ object BackgroundImageLoader {
   private def requestedImage(tpe: TpeContext): Option[TargetImageRequest] =
     for {
       ctx    <- tpe.obsContext
-      ast    <- tpe.targets.asterism
-      when   = ctx.getSchedulingBlockStart.asScalaOpt.map(ms => Instant.ofEpochMilli(ms.toLong))
-      coords <- ast.basePosition(when orElse Some(Instant.now))
+      _      <- tpe.targets.asterism
+      when   = ctx.getSchedulingBlockStart.asScalaOpt.map(_.longValue) | Instant.now.toEpochMilli
+      coords <- ctx.getBaseCoordinates(when).asScalaOpt.map(_.toNewModel)
       key    <- tpe.obsKey
       site   = Option(ObserverPreferences.fetch.observingSite())
     } yield TargetImageRequest(key, coords, ObsWavelengthExtractor.extractObsWavelength(tpe), site)
@@ -14,7 +14,7 @@ import edu.gemini.ags.api.{AgsHash, AgsRegistrar, AgsStrategy}
 import edu.gemini.catalog.votable.{CatalogException, GenericError}
 import edu.gemini.pot.sp._
 import edu.gemini.spModel.guide.GuideProbe
-import edu.gemini.spModel.obs.{ObsClassService, ObservationStatus}
+import edu.gemini.spModel.obs.{ObsClassService, ObsContextService, ObservationStatus}
 import edu.gemini.spModel.obs.context.ObsContext
 import edu.gemini.spModel.obsclass.ObsClass
 import edu.gemini.spModel.rich.pot.sp._
@@ -74,7 +74,7 @@ object BagsState {
   }
 
   def hashObs(o: ISPObservation): Option[AgsHashVal] =
-    ObsContext.create(o).asScalaOpt.map(hashObs)
+    ObsContextService.lookupObsContext(o).asScalaOpt.map(hashObs)
 
   def fetchObs(k: ObsKey): Option[ISPObservation] =
     Option(SPDB.get().lookupProgram(k.prog.key)).flatMap { p =>
@@ -114,7 +114,7 @@ object BagsState {
         // Get the ObsContext and AgsStrategy, if possible.  If not possible,
         // we won't be able to do AGS for this observation.
         val tup = for {
-          c <- ObsContext.create(obs).asScalaOpt
+          c <- ObsContextService.lookupObsContext(obs).asScalaOpt
           s <- agsStrategy(obs, c)
         } yield (c, s)
 
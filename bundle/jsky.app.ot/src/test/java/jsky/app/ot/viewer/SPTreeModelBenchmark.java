@@ -0,0 +1,168 @@
+package jsky.app.ot.viewer;
+
+import edu.gemini.pot.sp.*;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.util.DBTreeListService;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import java.util.*;
+
+/**
+ * Compares rebuilding the science program tree model from scratch with
+ * updating it in place via {@link SPTreeModelUpdater}, for a filter change
+ * that hides or shows half the observations and for a single new observation.
+ * Runs headless against a transient database.
+ *
+ * <pre>
+ * SPTreeModelBenchmark [observations] [iterations]
+ * </pre>
+ */
+public final class SPTreeModelBenchmark {
+    private static final int OBS_PER_GROUP = 20;
+
+    private final ISPProgram prog;
+    private final JTree tree = new JTree((DefaultTreeModel) null);
+
+    // Keys of observations hidden by the "filter".
+    private final Set<SPNodeKey> hidden = new HashSet<SPNodeKey>();
+    private boolean filtered = false;
+
+    private final SPTreeModelUpdater.NodeSource source = new SPTreeModelUpdater.NodeSource() {
+        @Override public boolean isVisible(DBTreeListService.Node node) {
+            return !(filtered && hidden.contains(node.getNodeKey()));
+        }
+        @Override public NodeData createNodeData(DBTreeListService.Node node) {
+            return new NodeData(node.getRemoteNode(), null, NodeData.State.EMPTY);
+        }
+        @Override public void refresh(NodeData nd, DBTreeListService.Node node) {
+        }
+    };
+
+    private SPTreeModelBenchmark(ISPProgram prog) {
+        this.prog = prog;
+        final List<ISPObservation> obsList = prog.getAllObservations();
+        for (int i = 0; i < obsList.size(); i += 2) hidden.add(obsList.get(i).getNodeKey());
+    }
+
+    private DBTreeListService.Node fetch() {
+        return DBTreeListService.getNodeTree(prog, true, DBTreeListService.SORT_BY_NONE);
+    }
+
+    private DefaultTreeModel model() {
+        return (DefaultTreeModel) tree.getModel();
+    }
+
+    // What SPTree used to do: build a new model, install it and then reopen
+    // the previously open nodes.
+    private void rebuild() {
+        final DefaultTreeModel model = new DefaultTreeModel(SPTreeModelUpdater.build(source, fetch()));
+        tree.setModel(model);
+        expandAll((DefaultMutableTreeNode) model.getRoot());
+    }
+
+    private int update() {
+        final SPTreeModelUpdater u = new SPTreeModelUpdater(model(), source);
+        u.update((DefaultMutableTreeNode) model().getRoot(), fetch());
+        return u.getChangeCount();
+    }
+
+    private void expandAll(DefaultMutableTreeNode tn) {
+        tree.expandPath(new TreePath(tn.getPath()));
+        for (int i = 0; i < tn.getChildCount(); ++i) {
+            final DefaultMutableTreeNode child = (DefaultMutableTreeNode) tn.getChildAt(i);
+            if (child.getChildCount() > 0) expandAll(child);
+        }
+    }
+
+    private static int count(DefaultMutableTreeNode tn) {
+        int res = 1;
+        for (int i = 0; i < tn.getChildCount(); ++i) res += count((DefaultMutableTreeNode) tn.getChildAt(i));
+        return res;
+    }
+
+    private void toggleFilter(boolean incremental, int iterations) {
+        final long start = System.nanoTime();
+        int changes = 0;
+        for (int i = 0; i < iterations; ++i) {
+            filtered = !filtered;
+            if (incremental) changes += update(); else rebuild();
+        }
+        report(incremental ? "filter, incremental" : "filter, rebuild", iterations, System.nanoTime() - start, changes);
+    }
+
+    private void addObservation(boolean incremental, IDBDatabaseService odb, int iterations) throws Exception {
+        long total = 0;
+        int changes = 0;
+        for (int i = 0; i < iterations; ++i) {
+            final ISPObservation obs = odb.getFactory().createObservation(prog, Instrument.none, null);
+            prog.addObservation(obs);
+
+            final long start = System.nanoTime();
+            if (incremental) changes += update(); else rebuild();
+            total += System.nanoTime() - start;
+        }
+        report(incremental ? "add obs, incremental" : "add obs, rebuild", iterations, total, changes);
+    }
+
+    private static void report(String name, int iterations, long nanos, int changes) {
+        System.out.printf("%-22s %9.2f ms/update %8d node changes/update%n",
+                name, nanos / 1e6 / iterations, changes / iterations);
+    }
+
+    private static ISPProgram createProgram(IDBDatabaseService odb, int observations) throws Exception {
+        final ISPFactory fact = odb.getFactory();
+        final ISPProgram prog = fact.createProgram(new SPNodeKey(), null);
+        odb.put(prog);
+
+        ISPGroup group = null;
+        for (int i = 0; i < observations; ++i) {
+            final ISPObservation obs = fact.createObservation(prog, Instrument.none, null);
+            if ((i % OBS_PER_GROUP) == 0) {
+                group = fact.createGroup(prog, null);
+                prog.addGroup(group);
+            }
+            group.addObservation(obs);
+        }
+        return prog;
+    }
+
+    private void run(final IDBDatabaseService odb, final int iterations) throws Exception {
+        rebuild();
+        System.out.printf("%d tree nodes%n", count((DefaultMutableTreeNode) model().getRoot()));
+
+        // Warm up.
+        toggleFilter(false, 4);
+        toggleFilter(true, 4);
+
+        toggleFilter(false, iterations);
+        toggleFilter(true, iterations);
+        addObservation(false, odb, iterations);
+        addObservation(true, odb, iterations);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int observations = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final int iterations   = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        System.setProperty("java.awt.headless", "true");
+        final IDBDatabaseService odb = DBLocalDatabase.createTransient();
+        try {
+            final SPTreeModelBenchmark b = new SPTreeModelBenchmark(createProgram(odb, observations));
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override public void run() {
+                    try {
+                        b.run(odb, iterations);
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            });
+        } finally {
+            odb.getDBAdmin().shutdown();
+        }
+    }
+}
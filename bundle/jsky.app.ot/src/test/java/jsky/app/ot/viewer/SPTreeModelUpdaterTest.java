@@ -0,0 +1,194 @@
+package jsky.app.ot.viewer;
+
+import edu.gemini.pot.sp.*;
+import edu.gemini.pot.spdb.DBLocalDatabase;
+import edu.gemini.pot.spdb.IDBDatabaseService;
+import edu.gemini.spModel.obs.ObsPhase2Status;
+import edu.gemini.spModel.obs.ObservationStatus;
+import edu.gemini.spModel.obs.SPObservation;
+import edu.gemini.spModel.util.DBTreeListService;
+import jsky.app.ot.ui.util.UIConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that updating the tree model in place keeps unchanged nodes, only
+ * inserts and removes the nodes that differ, applies the status filter and
+ * refreshes the status icons of the groups.
+ */
+public final class SPTreeModelUpdaterTest {
+
+    // A status filter whose selection can be toggled by the test.
+    private static final class TestFilter implements StatusFilter {
+        final Set<ObservationStatus> enabled = EnumSet.allOf(ObservationStatus.class);
+
+        public boolean isStatusEnabled(ISPGroup group) { return true; }
+        public boolean isStatusEnabled(ISPObservation obs) {
+            return enabled.contains(ObservationStatus.computeFor(obs));
+        }
+        public void setStatusEnabled() { enabled.addAll(EnumSet.allOf(ObservationStatus.class)); }
+    }
+
+    private IDBDatabaseService odb;
+    private ISPProgram prog;
+    private ISPGroup group;
+    private ISPObservation obs;
+
+    @Before
+    public void setUp() throws Exception {
+        odb = DBLocalDatabase.createTransient();
+        final ISPFactory fact = odb.getFactory();
+        prog  = fact.createProgram(new SPNodeKey(), null);
+        odb.put(prog);
+        group = fact.createGroup(prog, null);
+        prog.addGroup(group);
+        obs   = fact.createObservation(prog, Instrument.none, null);
+        group.addObservation(obs);
+    }
+
+    @After
+    public void tearDown() {
+        odb.getDBAdmin().shutdown();
+    }
+
+    private DBTreeListService.Node fetch() {
+        return DBTreeListService.getNodeTree(prog, true, DBTreeListService.SORT_BY_NONE);
+    }
+
+    private static DefaultMutableTreeNode find(DefaultMutableTreeNode tn, ISPNode n) {
+        if (((NodeData) tn.getUserObject()).getNode() == n) return tn;
+        for (int i = 0; i < tn.getChildCount(); ++i) {
+            final DefaultMutableTreeNode res = find((DefaultMutableTreeNode) tn.getChildAt(i), n);
+            if (res != null) return res;
+        }
+        return null;
+    }
+
+    private static void collect(DefaultMutableTreeNode tn, List<DefaultMutableTreeNode> res) {
+        res.add(tn);
+        for (int i = 0; i < tn.getChildCount(); ++i) collect((DefaultMutableTreeNode) tn.getChildAt(i), res);
+    }
+
+    // A source that shows every node except those whose keys are hidden.
+    private static SPTreeModelUpdater.NodeSource hiding(final Set<SPNodeKey> hidden) {
+        return new SPTreeModelUpdater.NodeSource() {
+            @Override public boolean isVisible(DBTreeListService.Node node) {
+                return !hidden.contains(node.getNodeKey());
+            }
+            @Override public NodeData createNodeData(DBTreeListService.Node node) {
+                return new NodeData(node.getRemoteNode(), null, NodeData.State.EMPTY);
+            }
+            @Override public void refresh(NodeData nd, DBTreeListService.Node node) {
+            }
+        };
+    }
+
+    private void setStatus(ObsPhase2Status status) {
+        final SPObservation spObs = (SPObservation) obs.getDataObject();
+        spObs.setPhase2Status(status);
+        obs.setDataObject(spObs);
+    }
+
+    @Test
+    public void testOnlyChangedNodesAreInsertedOrRemoved() throws Exception {
+        final List<ISPObservation> obsList = new ArrayList<>();
+        obsList.add(obs);
+        for (int i = 0; i < 9; ++i) {
+            final ISPObservation o = odb.getFactory().createObservation(prog, Instrument.none, null);
+            group.addObservation(o);
+            obsList.add(o);
+        }
+
+        final Set<SPNodeKey> hidden = new HashSet<>();
+        final SPTreeModelUpdater.NodeSource source = hiding(hidden);
+        final DefaultTreeModel model = new DefaultTreeModel(SPTreeModelUpdater.build(source, fetch()));
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
+        final List<DefaultMutableTreeNode> before = new ArrayList<>();
+        collect(root, before);
+
+        // Hiding every other observation removes just those.
+        for (int i = 0; i < obsList.size(); i += 2) hidden.add(obsList.get(i).getNodeKey());
+        SPTreeModelUpdater u = new SPTreeModelUpdater(model, source);
+        u.update(root, fetch());
+        assertEquals(5, u.getChangeCount());
+        for (int i = 0; i < obsList.size(); ++i) {
+            assertEquals((i % 2) == 0, find(root, obsList.get(i)) == null);
+        }
+
+        // Showing them again inserts just those, and the rest of the tree is kept.
+        hidden.clear();
+        u = new SPTreeModelUpdater(model, source);
+        u.update(root, fetch());
+        assertEquals(5, u.getChangeCount());
+
+        // So does adding a single observation.
+        final ISPObservation added = odb.getFactory().createObservation(prog, Instrument.none, null);
+        group.addObservation(added);
+        u = new SPTreeModelUpdater(model, source);
+        u.update(root, fetch());
+        assertEquals(1, u.getChangeCount());
+        assertEquals(1, u.getInserted().size());
+        assertNotNull(find(root, added));
+
+        // Tree nodes outside the observations that were hidden are the originals.
+        final List<DefaultMutableTreeNode> after = new ArrayList<>();
+        collect(root, after);
+        for (DefaultMutableTreeNode tn : before) {
+            boolean wasHidden = false;
+            for (Object o : tn.getUserObjectPath()) {
+                final int i = obsList.indexOf(((NodeData) o).getNode());
+                wasHidden |= (i >= 0) && ((i % 2) == 0);
+            }
+            assertEquals(!wasHidden, after.contains(tn));
+        }
+    }
+
+    @Test
+    public void testToggleStatusUpdatesGroupIcon() {
+        final TestFilter filter = new TestFilter();
+        final SPTreeModelUpdater.NodeSource source = SPTree.nodeSource(filter, null);
+        final DefaultTreeModel model = new DefaultTreeModel(SPTreeModelUpdater.build(source, fetch()));
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
+
+        final DefaultMutableTreeNode groupNode = find(root, group);
+        assertNotNull(find(root, obs));
+        assertEquals(UIConstants.getGroupIcon(ObservationStatus.PHASE2), ((NodeData) groupNode.getUserObject()).getIcon());
+
+        final List<Object> changed = new ArrayList<>();
+        model.addTreeModelListener(new TreeModelListener() {
+            public void treeNodesChanged(TreeModelEvent e)     { for (Object o : e.getChildren()) changed.add(o); }
+            public void treeNodesInserted(TreeModelEvent e)    { }
+            public void treeNodesRemoved(TreeModelEvent e)     { }
+            public void treeStructureChanged(TreeModelEvent e) { }
+        });
+
+        // Make the observation ready and hide ready observations.
+        setStatus(ObsPhase2Status.PHASE_2_COMPLETE);
+        filter.enabled.remove(ObservationStatus.READY);
+        new SPTreeModelUpdater(model, source).update(root, fetch());
+
+        assertSame(groupNode, find(root, group));
+        assertNull(find(root, obs));
+        assertTrue(changed.contains(groupNode));
+        assertEquals(UIConstants.getGroupIcon(ObservationStatus.READY), ((NodeData) groupNode.getUserObject()).getIcon());
+
+        // Show them again.
+        filter.enabled.add(ObservationStatus.READY);
+        new SPTreeModelUpdater(model, source).update(root, fetch());
+        assertSame(groupNode, find(root, group));
+        assertNotNull(find(groupNode, obs));
+    }
+}
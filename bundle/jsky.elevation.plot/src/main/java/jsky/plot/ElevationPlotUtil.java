@@ -4,7 +4,7 @@ import edu.gemini.shared.util.immutable.Option;
 import edu.gemini.shared.util.immutable.Some;
 import edu.gemini.skycalc.ImprovedSkyCalcMethods;
 import edu.gemini.spModel.core.Site;
-import edu.gemini.skycalc.ImprovedSkyCalc;
+import edu.gemini.skycalc.SkyCalcEngine;
 
 import jsky.coords.WorldCoords;
 
@@ -43,7 +43,7 @@ public class ElevationPlotUtil {
     private TargetDesc[] _targets;
 
     // Utility object used for calculations
-    private ImprovedSkyCalc _skyCalc;
+    private SkyCalcEngine _skyCalc;
 
     // The UT time for each target index and elevation
     private Date[][] _xData;
@@ -84,7 +84,8 @@ public class ElevationPlotUtil {
         _yDataAirmass = new double[_targets.length][numSteps];
         _yDataPa = new double[_targets.length][numSteps];
 
-        _skyCalc = new ImprovedSkyCalc(_site);
+        _skyCalc = new SkyCalcEngine(_site);
+        SkyCalcEngine.Circumstances circumstances = new SkyCalcEngine.Circumstances();
 
         // Set start of plot to noon time at the site, so night is at center
         Calendar cal = Calendar.getInstance(_site.timezone());
@@ -94,15 +95,17 @@ public class ElevationPlotUtil {
         cal.set(Calendar.SECOND, 0);
 
         for (int j = 0; j < numSteps; j++) {
+            // the time dependent part of the calculation is shared by all targets
+            SkyCalcEngine.Epoch epoch = _skyCalc.epoch(cal.getTimeInMillis(), false);
             for (int i = 0; i < _targets.length; i++) {
                 Date utTime = cal.getTime();
                 Option<WorldCoords> pos = _targets[i].getCoordinates(new Some<>(utTime.getTime()));
                 _xData[i][j] = utTime;
                 if (pos.isDefined()) {
-                    _skyCalc.calculate(pos.getValue(), utTime, false);
-                    _yData[i][j] = _skyCalc.getAltitude();
-                    _yDataAirmass[i][j] = _skyCalc.getAirmass();
-                    _yDataPa[i][j] = _skyCalc.getParallacticAngle();
+                    _skyCalc.calculate(epoch, pos.getValue().getRaDeg(), pos.getValue().getDecDeg(), circumstances);
+                    _yData[i][j] = circumstances.getAltitude();
+                    _yDataAirmass[i][j] = circumstances.getAirmass();
+                    _yDataPa[i][j] = circumstances.getParallacticAngle();
                 } // otherwise zero
             }
             cal.add(Calendar.MINUTE, _stepIncrement);
@@ -211,6 +211,7 @@ trait OcsBundle {
       bundle_edu_gemini_ui_workspace,
       bundle_edu_gemini_util_security,
       bundle_edu_gemini_util_security_ext,
+      bundle_edu_gemini_util_skycalc,
       bundle_edu_gemini_util_ssh,
       bundle_jsky_coords,
       bundle_jsky_util
@@ -278,6 +279,8 @@ trait OcsBundle {
       bundle_edu_gemini_shared_util,
       bundle_edu_gemini_spModel_core,
       bundle_edu_gemini_spModel_pio,
+      bundle_edu_gemini_util_osgi,
+      bundle_edu_gemini_util_security,
       bundle_edu_gemini_util_skycalc
     )
 